@@ -0,0 +1,105 @@
+package overflowdb;
+
+import org.junit.Test;
+import overflowdb.testdomains.simple.SimpleDomain;
+import overflowdb.testdomains.simple.TestEdge;
+import overflowdb.testdomains.simple.TestNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EdgeCursorTest {
+
+  @Test
+  public void forEachAdjacentNode() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      Node n0 = graph.addNode(TestNode.LABEL);
+      Node n1 = graph.addNode(TestNode.LABEL);
+      Node n2 = graph.addNode(TestNode.LABEL);
+      n0.addEdge(TestEdge.LABEL, n1);
+      n0.addEdge(TestEdge.LABEL, n2);
+      n2.addEdge(TestEdge.LABEL, n0);
+
+      List<Node> out = new ArrayList<>();
+      n0.forEachOut(out::add);
+      assertEquals(Arrays.asList(n1, n2), out);
+
+      List<Node> in = new ArrayList<>();
+      n0.forEachIn(TestEdge.LABEL, in::add);
+      assertEquals(Arrays.asList(n2), in);
+
+      List<Node> none = new ArrayList<>();
+      n0.forEachOut("UNKNOWN_LABEL", none::add);
+      n1.forEachOut(none::add);
+      assertTrue(none.isEmpty());
+    }
+  }
+
+  @Test
+  public void walkEdgesWithProperties() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      Node n0 = graph.addNode(TestNode.LABEL);
+      Node n1 = graph.addNode(TestNode.LABEL);
+      Node n2 = graph.addNode(TestNode.LABEL);
+      n0.addEdge(TestEdge.LABEL, n1, TestEdge.LONG_PROPERTY, 1L);
+      n0.addEdge(TestEdge.LABEL, n2);
+      n1.addEdge(TestEdge.LABEL, n0, TestEdge.LONG_PROPERTY, 3L);
+
+      EdgeCursor cursor = new EdgeCursor();
+      cursor.reset(n0, Direction.OUT);
+      assertTrue(cursor.next());
+      assertEquals(n1, cursor.adjacentNode());
+      assertEquals(TestEdge.LABEL, cursor.label());
+      assertEquals(Direction.OUT, cursor.direction());
+      assertEquals(1L, cursor.property(TestEdge.LONG_PROPERTY));
+      assertEquals(n1.inE().next(), cursor.edge());
+      assertTrue(cursor.next());
+      assertEquals(n2, cursor.adjacentNode());
+      assertNull(cursor.property(TestEdge.LONG_PROPERTY));
+      assertFalse(cursor.next());
+      assertFalse(cursor.next());
+
+      // reuse the same cursor for both directions: all OUT edges first, then all IN edges
+      List<Node> adjacent = new ArrayList<>();
+      List<Direction> directions = new ArrayList<>();
+      cursor.reset(n0, Direction.BOTH, TestEdge.LABEL);
+      while (cursor.next()) {
+        adjacent.add(cursor.adjacentNode());
+        directions.add(cursor.direction());
+      }
+      assertEquals(Arrays.asList(n1, n2, n1), adjacent);
+      assertEquals(Arrays.asList(Direction.OUT, Direction.OUT, Direction.IN), directions);
+
+      assertTrue(cursor.reset(n0, Direction.IN).next());
+      assertEquals(n1, cursor.adjacentNode());
+      assertEquals(3L, (long) cursor.property(new PropertyKey<Long>(TestEdge.LONG_PROPERTY)));
+      assertEquals(n1.outE().next(), cursor.edge());
+    }
+  }
+
+  @Test
+  public void skipRemovedEdges() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      Node n0 = graph.addNode(TestNode.LABEL);
+      Node n1 = graph.addNode(TestNode.LABEL);
+      Node n2 = graph.addNode(TestNode.LABEL);
+      Edge e1 = n0.addEdge(TestEdge.LABEL, n1);
+      n0.addEdge(TestEdge.LABEL, n2);
+      e1.remove();
+
+      EdgeCursor cursor = new EdgeCursor().reset(n0, Direction.OUT);
+      assertTrue(cursor.next());
+      assertEquals(n2, cursor.adjacentNode());
+      assertFalse(cursor.next());
+
+      n2.remove();
+      assertFalse(cursor.reset(n0, Direction.OUT).next());
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package overflowdb;
+
+import org.junit.Test;
+import overflowdb.testdomains.simple.SimpleDomain;
+import overflowdb.testdomains.simple.TestEdge;
+import overflowdb.testdomains.simple.TestNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphStatisticsTest {
+
+  @Test
+  public void collectStatistics() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      assertFalse(graph.statistics().isPresent());
+      // every node has a STRING_PROPERTY (10 distinct values), every other node has an INT_PROPERTY
+      Node previous = null;
+      for (int i = 0; i < 100; i++) {
+        Node node = i % 2 == 0
+            ? graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "value" + i % 10, TestNode.INT_PROPERTY, i)
+            : graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "value" + i % 10);
+        if (previous != null) previous.addEdge(TestEdge.LABEL, node);
+        previous = node;
+      }
+      graph.indexManager.createNodePropertyIndex(TestNode.STRING_PROPERTY);
+
+      GraphStatistics statistics = graph.updateStatistics();
+      assertEquals(statistics, graph.statistics().get());
+      GraphStatistics.LabelStatistics nodeStatistics = statistics.forLabel(TestNode.LABEL);
+      assertEquals(100, nodeStatistics.nodeCount);
+      assertEquals(100, nodeStatistics.sampledNodeCount);
+      assertTrue(nodeStatistics.averageSerializedSize > 0);
+      assertEquals(1.0, nodeStatistics.fillRate(TestNode.STRING_PROPERTY), 0);
+      assertEquals(0.5, nodeStatistics.fillRate(TestNode.INT_PROPERTY), 0);
+      assertEquals(10, nodeStatistics.distinctValues(TestNode.STRING_PROPERTY));
+      assertEquals(-1, nodeStatistics.distinctValues(TestNode.INT_PROPERTY));
+      assertEquals(10.0, statistics.estimatedNodesPerValue(TestNode.LABEL, TestNode.STRING_PROPERTY), 0);
+      assertEquals(50.0, statistics.estimatedNodesPerValue(TestNode.LABEL, TestNode.INT_PROPERTY), 0);
+      assertEquals(-1.0, statistics.estimatedNodesPerValue("UNKNOWN_LABEL", TestNode.INT_PROPERTY), 0);
+      assertNull(statistics.forLabel("UNKNOWN_LABEL"));
+
+      // a chain: all nodes but the last have one outgoing edge
+      GraphStatistics.DegreeHistogram outDegree = nodeStatistics.outDegree(TestEdge.LABEL);
+      assertEquals(100, outDegree.nodeCount());
+      assertEquals(1, outDegree.count(0));
+      assertEquals(99, outDegree.count(GraphStatistics.DegreeHistogram.bucketOf(1)));
+      assertEquals(0.99, outDegree.mean(), 0.0001);
+      assertEquals(1, outDegree.max());
+      assertEquals(0, nodeStatistics.inDegree("UNKNOWN_LABEL").nodeCount());
+
+      // sampling inspects fewer nodes, but still counts all of them
+      GraphStatistics sampled = graph.updateStatistics(10);
+      assertEquals(100, sampled.forLabel(TestNode.LABEL).nodeCount);
+      assertEquals(10, sampled.forLabel(TestNode.LABEL).sampledNodeCount);
+      assertEquals(10, sampled.forLabel(TestNode.LABEL).outDegree(TestEdge.LABEL).nodeCount());
+    }
+  }
+
+  @Test
+  public void collectingDoesNotHideChangesFromCheckpoint() throws IOException {
+    final File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    Config config = Config.withoutOverflow().withStorageLocation(storageFile.getAbsolutePath());
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      NodeRef<?> node = (NodeRef<?>) graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a");
+      graph.updateStatistics();
+      assertTrue(node.get().isDirty());
+    }
+  }
+
+  @Test
+  public void persistStatistics() throws IOException {
+    final File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    Config config = Config.withoutOverflow().withStorageLocation(storageFile.getAbsolutePath());
+    final GraphStatistics statistics;
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      Node n0 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a");
+      Node n1 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "b", TestNode.INT_PROPERTY, 1);
+      n0.addEdge(TestEdge.LABEL, n1);
+      n0.addEdge(TestEdge.LABEL, n1);
+      graph.indexManager.createNodePropertyIndex(TestNode.STRING_PROPERTY);
+      statistics = graph.updateStatistics();
+    }
+
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      GraphStatistics loaded = graph.statistics().get();
+      assertEquals(statistics.createdAtMillis, loaded.createdAtMillis);
+      assertEquals(statistics.labels(), loaded.labels());
+      GraphStatistics.LabelStatistics nodeStatistics = loaded.forLabel(TestNode.LABEL);
+      assertEquals(2, nodeStatistics.nodeCount);
+      assertEquals(statistics.forLabel(TestNode.LABEL).averageSerializedSize, nodeStatistics.averageSerializedSize, 0);
+      assertEquals(0.5, nodeStatistics.fillRate(TestNode.INT_PROPERTY), 0);
+      assertEquals(2, nodeStatistics.distinctValues(TestNode.STRING_PROPERTY));
+      assertEquals(2, nodeStatistics.outDegree(TestEdge.LABEL).max());
+      assertEquals(1.0, nodeStatistics.inDegree(TestEdge.LABEL).mean(), 0);
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package overflowdb;
 
+import org.h2.mvstore.MVMap;
 import org.junit.Test;
+import overflowdb.storage.OdbStorage;
 import overflowdb.testdomains.gratefuldead.Artist;
 import overflowdb.testdomains.gratefuldead.FollowedBy;
 import overflowdb.testdomains.gratefuldead.GratefulDead;
@@ -9,12 +11,18 @@ import overflowdb.testdomains.gratefuldead.WrittenBy;
 import overflowdb.testdomains.simple.SimpleDomain;
 import overflowdb.testdomains.simple.TestEdge;
 import overflowdb.testdomains.simple.TestNode;
+import overflowdb.util.StringInterner;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class GraphTest {
 
@@ -56,6 +64,60 @@ public class GraphTest {
     assertEquals(Integer.valueOf(1), nodeCountByLabel.get(Song.label));
   }
 
+  @Test
+  public void maintainEdgeCounts() {
+    Graph graph = SimpleDomain.newGraph();
+    Node n0 = graph.addNode(TestNode.LABEL);
+    Node n1 = graph.addNode(TestNode.LABEL);
+    Edge e0 = n0.addEdge(TestEdge.LABEL, n1);
+    n1.addEdge(TestEdge.LABEL, n0);
+    assertEquals(2, graph.edgeCount());
+
+    e0.remove();
+    e0.remove(); // already removed, must not count twice
+    assertEquals(1, graph.edgeCount());
+    assertEquals(Integer.valueOf(1), graph.edgeCountByLabel().get(TestEdge.LABEL));
+
+    n0.remove();
+    assertEquals(0, graph.edgeCount());
+    assertTrue(graph.edgeCountByLabel().isEmpty());
+  }
+
+  @Test
+  public void persistEdgeCounts() throws IOException {
+    final File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    Config config = Config.withoutOverflow().withStorageLocation(storageFile.getAbsolutePath());
+    final long n0Id;
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      Node n0 = graph.addNode(TestNode.LABEL);
+      n0Id = n0.id();
+      Node n1 = graph.addNode(TestNode.LABEL);
+      n0.addEdge(TestEdge.LABEL, n1);
+      n1.addEdge(TestEdge.LABEL, n0);
+      n1.addEdge(TestEdge.LABEL, n1);
+    }
+
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      assertEquals(3, graph.edgeCount());
+      assertEquals(Integer.valueOf(3), graph.edgeCountByLabel().get(TestEdge.LABEL));
+      // counts come from the storage metadata, without loading any nodes
+      graph.nodes().forEachRemaining(node -> assertFalse(((NodeRef<?>) node).isSet()));
+      graph.node(n0Id).outE().next().remove();
+    }
+
+    // a storage without persisted counts, e.g. from an older version: edges are counted on open
+    try (OdbStorage storage = OdbStorage.createWithSpecificLocation(storageFile, new StringInterner())) {
+      MVMap<String, String> metaData = storage.getMetaDataMVMap();
+      new ArrayList<>(metaData.keySet()).stream()
+          .filter(key -> key.startsWith(OdbStorage.METADATA_KEY_EDGE_COUNT))
+          .forEach(metaData::remove);
+    }
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      assertEquals(2, graph.edgeCount());
+    }
+  }
+
   @Test
   public void shouldDeepCloneGraph() {
     Config config = Config.withoutOverflow();
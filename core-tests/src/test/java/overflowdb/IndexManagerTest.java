@@ -4,9 +4,14 @@ import org.junit.Test;
 import overflowdb.testdomains.simple.SimpleDomain;
 import overflowdb.testdomains.simple.TestNode;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -67,6 +72,265 @@ public class IndexManagerTest {
     }
   }
 
+  @Test
+  public void lookupRangesInRangeIndex() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      Node n1 = graph.addNode(TestNode.LABEL, TestNode.INT_PROPERTY, 1);
+      Node n2 = graph.addNode(TestNode.LABEL, TestNode.INT_PROPERTY, 2);
+      indexManager.createNodePropertyRangeIndex(TestNode.INT_PROPERTY);
+      Node n3 = graph.addNode(TestNode.LABEL, TestNode.INT_PROPERTY, 3);
+      Node n4 = graph.addNode(TestNode.LABEL, TestNode.INT_PROPERTY, 4);
+
+      assertTrue(indexManager.isIndexed(TestNode.INT_PROPERTY));
+      assertTrue(indexManager.isRangeIndexed(TestNode.INT_PROPERTY));
+      assertEqualContents(Arrays.asList(n2, n3), indexManager.lookupRange(TestNode.INT_PROPERTY, 2, 3));
+      assertEqualContents(Arrays.asList(n2, n3), indexManager.lookupRange(TestNode.INT_PROPERTY, 1, false, 4, false));
+      assertEqualContents(Arrays.asList(n3, n4), indexManager.lookupGreaterThan(TestNode.INT_PROPERTY, 2));
+      assertEqualContents(Arrays.asList(n1), indexManager.lookupLessThan(TestNode.INT_PROPERTY, 2));
+      assertTrue(indexManager.lookupRange(TestNode.INT_PROPERTY, 3, 2).isEmpty());
+      // numeric bounds are compared by value, irrespective of their type
+      assertEqualContents(Arrays.asList(n2, n3), indexManager.lookupRange(TestNode.INT_PROPERTY, 1.5d, 3L));
+      // exact lookups continue to work
+      assertEqualContents(Arrays.asList(n4), indexManager.lookup(TestNode.INT_PROPERTY, 4));
+
+      n4.setProperty(TestNode.INT_PROPERTY, 0);
+      n1.remove();
+      assertEqualContents(Arrays.asList(n4), indexManager.lookupLessThan(TestNode.INT_PROPERTY, 2));
+      assertEqualContents(Arrays.asList(n3), indexManager.lookupGreaterThan(TestNode.INT_PROPERTY, 2));
+    }
+  }
+
+  @Test
+  public void convertExactIndexToRangeIndex() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      Node a = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a");
+      Node b = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "b");
+      graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "c");
+      indexManager.createNodePropertyIndex(TestNode.STRING_PROPERTY);
+      assertFalse(indexManager.isRangeIndexed(TestNode.STRING_PROPERTY));
+
+      indexManager.createNodePropertyRangeIndex(TestNode.STRING_PROPERTY);
+      assertTrue(indexManager.isRangeIndexed(TestNode.STRING_PROPERTY));
+      assertEquals(3, indexManager.getIndexedNodeCount(TestNode.STRING_PROPERTY));
+      assertEqualContents(Arrays.asList(a, b), indexManager.lookupLessThan(TestNode.STRING_PROPERTY, "c"));
+    }
+  }
+
+  @Test
+  public void keepNumbersOfDifferentTypesApartInRangeIndex() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      final String key = "mixedNumbers";
+      NodeRef<?> asInteger = (NodeRef<?>) graph.addNode(TestNode.LABEL);
+      NodeRef<?> asLong = (NodeRef<?>) graph.addNode(TestNode.LABEL);
+      NodeRef<?> asDouble = (NodeRef<?>) graph.addNode(TestNode.LABEL);
+      NodeRef<?> large = (NodeRef<?>) graph.addNode(TestNode.LABEL);
+      NodeRef<?> largePlusOne = (NodeRef<?>) graph.addNode(TestNode.LABEL);
+      indexManager.createNodePropertyRangeIndex(key);
+      indexManager.putIfIndexed(key, 3, asInteger);
+      indexManager.putIfIndexed(key, 3L, asLong);
+      indexManager.putIfIndexed(key, 3.0d, asDouble);
+      // 2^53 + 1 is the first long that can't be represented as a double
+      indexManager.putIfIndexed(key, 1L << 53, large);
+      indexManager.putIfIndexed(key, (1L << 53) + 1, largePlusOne);
+
+      assertEquals(5, indexManager.getIndexedNodeCount(key));
+      // exact lookups give the same results as an exact index, i.e. by `equals`
+      assertEqualContents(Arrays.asList(asInteger), indexManager.lookup(key, 3));
+      assertEqualContents(Arrays.asList(asLong), indexManager.lookup(key, 3L));
+      assertEqualContents(Arrays.asList(asDouble), indexManager.lookup(key, 3.0d));
+      assertEqualContents(Arrays.asList(largePlusOne), indexManager.lookup(key, (1L << 53) + 1));
+
+      // range bounds include all numbers with the same value, irrespective of their type
+      assertEqualContents(Arrays.asList(asInteger, asLong, asDouble), indexManager.lookupRange(key, 3L, 3L));
+      assertEqualContents(Arrays.asList(asInteger, asLong, asDouble), indexManager.lookupRange(key, 2.5d, 3));
+      assertEqualContents(Arrays.asList(large, largePlusOne), indexManager.lookupGreaterThan(key, 3.0d));
+      assertEqualContents(Arrays.asList(largePlusOne), indexManager.lookupGreaterThan(key, (double) (1L << 53)));
+      assertEqualContents(Arrays.asList(asInteger, asLong, asDouble, large),
+          indexManager.lookupLessThan(key, (1L << 53) + 1));
+      assertTrue(indexManager.lookupRange(key, 3, false, 3.0d, true).isEmpty());
+    }
+  }
+
+  @Test
+  public void orderValuesConsistentlyWithEquals() {
+    assertTrue(IndexManager.compareValues(3, 3L) != 0);
+    assertEquals(0, IndexManager.compareToRangeBound(3, 3L));
+    assertTrue(IndexManager.compareValues(Long.MAX_VALUE, (double) Long.MAX_VALUE) < 0);
+    assertTrue(IndexManager.compareValues(Long.MAX_VALUE - 1, Long.MAX_VALUE) < 0);
+    assertTrue(IndexManager.compareValues(-1L, -0.5d) < 0);
+    assertTrue(IndexManager.compareValues(Long.MIN_VALUE, Double.NEGATIVE_INFINITY) > 0);
+    assertTrue(IndexManager.compareValues(Long.MAX_VALUE, Double.NaN) < 0);
+
+    // values without natural order that print the same, but aren't equal
+    Object a = new PrintsTheSame();
+    Object b = new PrintsTheSame();
+    assertTrue(IndexManager.compareValues(a, b) != 0);
+    assertEquals(-IndexManager.compareValues(a, b), IndexManager.compareValues(b, a));
+  }
+
+  private static class PrintsTheSame {
+    @Override
+    public String toString() {
+      return "same";
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rangeLookupRequiresRangeIndex() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      graph.indexManager.createNodePropertyIndex(TestNode.INT_PROPERTY);
+      graph.indexManager.lookupGreaterThan(TestNode.INT_PROPERTY, 1);
+    }
+  }
+
+  @Test
+  public void maintainCompositeIndex() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      Node a = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a");
+      indexManager.createNodePropertyIndex(TestNode.LABEL, TestNode.STRING_PROPERTY);
+      Node b = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a");
+      Node c = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "c");
+
+      assertTrue(indexManager.isIndexed(TestNode.LABEL, TestNode.STRING_PROPERTY));
+      assertFalse(indexManager.isIndexed(TestNode.STRING_PROPERTY));
+      assertFalse(indexManager.getIndexedNodeProperties().contains(TestNode.STRING_PROPERTY));
+      assertEquals(2, indexManager.lookupCount(TestNode.LABEL, TestNode.STRING_PROPERTY, "a"));
+      assertEqualContents(Arrays.asList(a, b), indexManager.lookup(TestNode.LABEL, TestNode.STRING_PROPERTY, "a"));
+      assertFalse(indexManager.hasIndexFor("otherLabel", TestNode.STRING_PROPERTY));
+
+      b.setProperty(TestNode.STRING_PROPERTY, "c");
+      a.remove();
+      assertEquals(0, indexManager.lookupCount(TestNode.LABEL, TestNode.STRING_PROPERTY, "a"));
+      assertEqualContents(Arrays.asList(b, c), indexManager.lookup(TestNode.LABEL, TestNode.STRING_PROPERTY, "c"));
+
+      indexManager.dropNodePropertyIndex(TestNode.LABEL, TestNode.STRING_PROPERTY);
+      assertFalse(indexManager.isIndexed(TestNode.LABEL, TestNode.STRING_PROPERTY));
+    }
+  }
+
+  @Test
+  public void intersectIndexesForMultiplePropertyValues() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      Node a1 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a", TestNode.INT_PROPERTY, 1);
+      graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a", TestNode.INT_PROPERTY, 2);
+      graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "b", TestNode.INT_PROPERTY, 1);
+      Node a1List = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a", TestNode.INT_PROPERTY, 1,
+          TestNode.STRING_LIST_PROPERTY, Arrays.asList("x"));
+      indexManager.createNodePropertyIndex(TestNode.LABEL, TestNode.STRING_PROPERTY);
+      indexManager.createNodePropertyIndex(TestNode.INT_PROPERTY);
+
+      Map<String, Object> query = new HashMap<>();
+      query.put(TestNode.STRING_PROPERTY, "a");
+      query.put(TestNode.INT_PROPERTY, 1);
+      assertEqualContents(Arrays.asList(a1, a1List), indexManager.lookup(TestNode.LABEL, query));
+      assertEqualContents(Arrays.asList(a1, a1List), indexManager.lookup(null, query));
+
+      // unindexed properties are verified on the intersection
+      query.put(TestNode.STRING_LIST_PROPERTY, Arrays.asList("x"));
+      assertEqualContents(Arrays.asList(a1List), indexManager.lookup(TestNode.LABEL, query));
+
+      query.put(TestNode.INT_PROPERTY, 3);
+      assertTrue(indexManager.lookup(TestNode.LABEL, query).isEmpty());
+    }
+  }
+
+  @Test
+  public void reportUnindexedScans() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      indexManager.recordUnindexedScan(TestNode.STRING_PROPERTY, false).record(100, 1, 1000);
+      indexManager.recordUnindexedScan(TestNode.STRING_PROPERTY, false).record(100, 3, 1000);
+      indexManager.recordUnindexedScan(TestNode.INT_PROPERTY, true).record(50, 25, 1000);
+
+      List<UnindexedScanStats> report = indexManager.getUnindexedScanReport();
+      assertEquals(2, report.size());
+      UnindexedScanStats stringScans = report.get(0);
+      assertEquals(TestNode.STRING_PROPERTY, stringScans.getPropertyName());
+      assertEquals(2, stringScans.getScans());
+      assertEquals(0, stringScans.getRangeScans());
+      assertEquals(200, stringScans.getNodesScanned());
+      assertEquals(0.02, stringScans.getSelectivity(), 0.0001);
+      assertEquals(2000, stringScans.getElapsed().toNanos());
+      assertEquals(1, report.get(1).getRangeScans());
+      assertFalse(indexManager.isIndexed(TestNode.STRING_PROPERTY));
+
+      indexManager.clearUnindexedScanStats();
+      assertTrue(indexManager.getUnindexedScanReport().isEmpty());
+    }
+  }
+
+  @Test
+  public void autoCreateIndexesAfterUnindexedScans() {
+    try (Graph graph = SimpleDomain.newGraph(Config.withoutOverflow().withIndexAutoCreationThreshold(2))) {
+      IndexManager indexManager = graph.indexManager;
+      Node node = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a", TestNode.INT_PROPERTY, 1);
+
+      indexManager.recordUnindexedScan(TestNode.STRING_PROPERTY, false);
+      assertFalse(indexManager.isIndexed(TestNode.STRING_PROPERTY));
+      indexManager.recordUnindexedScan(TestNode.STRING_PROPERTY, false);
+      assertTrue(indexManager.isIndexed(TestNode.STRING_PROPERTY));
+      assertFalse(indexManager.isRangeIndexed(TestNode.STRING_PROPERTY));
+      assertEquals(Arrays.asList(node), indexManager.lookup(TestNode.STRING_PROPERTY, "a"));
+
+      // any range scan makes it a range index
+      indexManager.recordUnindexedScan(TestNode.INT_PROPERTY, false);
+      indexManager.recordUnindexedScan(TestNode.INT_PROPERTY, true);
+      assertTrue(indexManager.isRangeIndexed(TestNode.INT_PROPERTY));
+      assertEquals(Arrays.asList(node), indexManager.lookupGreaterThan(TestNode.INT_PROPERTY, 0));
+    }
+  }
+
+  @Test
+  public void autoCreateIndexForPropertyThatNoNodeHasYet() {
+    try (Graph graph = SimpleDomain.newGraph(Config.withoutOverflow().withIndexAutoCreationThreshold(2))) {
+      IndexManager indexManager = graph.indexManager;
+      graph.addNode(TestNode.LABEL, TestNode.INT_PROPERTY, 1);
+
+      indexManager.recordUnindexedScan(TestNode.STRING_PROPERTY, false);
+      indexManager.recordUnindexedScan(TestNode.STRING_PROPERTY, false);
+      assertTrue(indexManager.isIndexed(TestNode.STRING_PROPERTY));
+      assertEquals(2, indexManager.getUnindexedScanReport().get(0).getScans());
+
+      Node node = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "a");
+      assertEquals(Arrays.asList(node), indexManager.lookup(TestNode.STRING_PROPERTY, "a"));
+    }
+  }
+
+  @Test
+  public void trackChangedValuesOnlyIfIndexesAreStored() throws IOException {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      indexManager.createNodePropertyIndex(TestNode.STRING_PROPERTY);
+      indexManager.createNodePropertyIndex(TestNode.LABEL, TestNode.INT_PROPERTY);
+      for (int i = 0; i < 100; i++) {
+        Node node = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "value " + i, TestNode.INT_PROPERTY, i);
+        if (i % 2 == 0) node.remove();
+      }
+      assertEquals(0, indexManager.dirtyValueCount());
+    }
+
+    File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    try (Graph graph = SimpleDomain.newGraph(Config.withoutOverflow().withStorageLocation(storageFile.getAbsolutePath()))) {
+      IndexManager indexManager = graph.indexManager;
+      indexManager.createNodePropertyIndex(TestNode.STRING_PROPERTY);
+      graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "before first save");
+      // the new index is written entirely
+      assertEquals(0, indexManager.dirtyValueCount());
+      graph.checkpoint();
+
+      graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "after first save");
+      assertTrue(indexManager.dirtyValueCount() > 0);
+      graph.checkpoint();
+      assertEquals(0, indexManager.dirtyValueCount());
+    }
+  }
+
   private void assertEqualContents(List expected, List actual) {
     assertEquals(expected.size(), actual.size());
 
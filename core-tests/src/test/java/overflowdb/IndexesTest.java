@@ -2,7 +2,9 @@ package overflowdb;
 
 import org.junit.Test;
 import overflowdb.formats.graphml.GraphMLImporter;
+import overflowdb.testdomains.gratefuldead.Artist;
 import overflowdb.testdomains.gratefuldead.GratefulDead;
+import overflowdb.testdomains.gratefuldead.Song;
 
 import java.io.File;
 import java.io.IOException;
@@ -11,6 +13,8 @@ import java.util.Arrays;
 import java.util.HashSet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 // currently, automatic index usage isn't implemented - TODO bring this back in some form
 public class IndexesTest {
@@ -129,6 +133,63 @@ public class IndexesTest {
     }
   }
 
+  @Test
+  public void shouldStoreAndRestoreRangeIndexes() throws IOException {
+    final File overflowDb = Files.createTempFile("overflowdb", "bin").toFile();
+    overflowDb.deleteOnExit();
+    final int songsWithFewPerformances;
+    try(Graph graph = openAndLoadSampleData(overflowDb.getAbsolutePath())) {
+      graph.indexManager.createNodePropertyRangeIndex("performances");
+      songsWithFewPerformances = graph.indexManager.lookupLessThan("performances", 3).size();
+      assertTrue(songsWithFewPerformances > 0);
+    }
+    try(Graph graph = GratefulDead.newGraph(Config.withDefaults().withStorageLocation(overflowDb.getAbsolutePath()))) {
+      assertTrue(graph.indexManager.isRangeIndexed("performances"));
+      assertEquals(584, graph.indexManager.getIndexedNodeCount("performances"));
+      assertEquals(songsWithFewPerformances, graph.indexManager.lookupLessThan("performances", 3).size());
+    }
+  }
+
+  @Test
+  public void shouldStoreAndRestoreCompositeIndexes() throws IOException {
+    final File overflowDb = Files.createTempFile("overflowdb", "bin").toFile();
+    overflowDb.deleteOnExit();
+    try(Graph graph = openAndLoadSampleData(overflowDb.getAbsolutePath())) {
+      graph.indexManager.createNodePropertyIndex(Song.label, Song.NAME);
+      assertEquals(1, graph.indexManager.lookupCount(Song.label, Song.NAME, "BERTHA"));
+    }
+    try(Graph graph = GratefulDead.newGraph(Config.withDefaults().withStorageLocation(overflowDb.getAbsolutePath()))) {
+      assertTrue(graph.indexManager.isIndexed(Song.label, Song.NAME));
+      assertFalse(graph.indexManager.isIndexed(Artist.label, Song.NAME));
+      assertTrue(graph.indexManager.getIndexedNodeProperties().isEmpty());
+      assertEquals(1, graph.indexManager.lookup(Song.label, Song.NAME, "BERTHA").size());
+      assertEquals(Song.label, graph.indexManager.lookup(Song.label, Song.NAME, "BERTHA").get(0).label());
+    }
+  }
+
+  @Test
+  public void shouldPersistIndexChangesIncrementally() throws IOException {
+    final File overflowDb = Files.createTempFile("overflowdb", "bin").toFile();
+    overflowDb.deleteOnExit();
+    final Config config = Config.withDefaults().withStorageLocation(overflowDb.getAbsolutePath());
+    try(Graph graph = openAndLoadSampleData(overflowDb.getAbsolutePath())) {
+      graph.indexManager.createNodePropertyIndex(Song.PERFORMANCES);
+    }
+    final int songsWithOnePerformance;
+    try(Graph graph = GratefulDead.newGraph(config)) {
+      songsWithOnePerformance = graph.indexManager.lookup(Song.PERFORMANCES, 1).size();
+      // move one song from `1` to a so far unused value, and remove another one
+      graph.indexManager.lookup(Song.PERFORMANCES, 1).get(0).setProperty(Song.PERFORMANCES, 9999);
+      graph.indexManager.lookup(Song.PERFORMANCES, 1).get(0).remove();
+    }
+    try(Graph graph = GratefulDead.newGraph(config)) {
+      assertEquals(583, graph.indexManager.getIndexedNodeCount(Song.PERFORMANCES));
+      assertEquals(songsWithOnePerformance - 2, graph.indexManager.lookup(Song.PERFORMANCES, 1).size());
+      assertEquals(1, graph.indexManager.lookup(Song.PERFORMANCES, 9999).size());
+      assertEquals(9999, (int) graph.indexManager.lookup(Song.PERFORMANCES, 9999).get(0).property(Song.PERFORMANCES));
+    }
+  }
+
   public static Graph openAndLoadSampleData(String path) {
     Graph graph = GratefulDead.newGraph(Config.withDefaults().withStorageLocation(path));
     GraphMLImporter.runImport(graph, "src/test/resources/grateful-dead.xml");
@@ -0,0 +1,91 @@
+package overflowdb;
+
+import org.junit.Test;
+import overflowdb.testdomains.simple.SimpleDomain;
+import overflowdb.testdomains.simple.TestEdge;
+import overflowdb.testdomains.simple.TestNode;
+import overflowdb.util.IteratorUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OrdinalsTest {
+
+  @Test
+  public void assignOrdinalsOnce() {
+    int ordinal = Ordinals.ofLabel("OrdinalsTest-label");
+    assertEquals(ordinal, Ordinals.ofLabel("OrdinalsTest-label"));
+    assertEquals(ordinal, Ordinals.lookupLabel("OrdinalsTest-label"));
+    assertEquals("OrdinalsTest-label", Ordinals.label(ordinal));
+    assertEquals(-1, Ordinals.lookupLabel("OrdinalsTest-unknown"));
+
+    int keyOrdinal = Ordinals.ofPropertyKey("OrdinalsTest-key");
+    assertEquals(keyOrdinal, Ordinals.lookupPropertyKey("OrdinalsTest-key"));
+    assertEquals("OrdinalsTest-key", Ordinals.propertyKey(keyOrdinal));
+    assertEquals(keyOrdinal, new PropertyKey<String>("OrdinalsTest-key").ordinal);
+  }
+
+  @Test
+  public void registerSchemaOnOpen() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      assertTrue(Ordinals.lookupLabel(TestNode.LABEL) != -1);
+      assertTrue(Ordinals.lookupLabel(TestEdge.LABEL) != -1);
+      assertTrue(Ordinals.lookupPropertyKey(TestNode.STRING_PROPERTY) != -1);
+      assertTrue(Ordinals.lookupPropertyKey(TestEdge.LONG_PROPERTY) != -1);
+    }
+  }
+
+  @Test
+  public void traverseAndReadPropertiesByOrdinal() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      Node n0 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0", TestNode.INT_PROPERTY, 42);
+      Node n1 = graph.addNode(TestNode.LABEL);
+      Node n2 = graph.addNode(TestNode.LABEL);
+      n0.addEdge(TestEdge.LABEL, n1, TestEdge.LONG_PROPERTY, 1L);
+      n2.addEdge(TestEdge.LABEL, n0);
+
+      int edgeLabel = Ordinals.ofLabel(TestEdge.LABEL);
+      int unknownLabel = Ordinals.ofLabel("OrdinalsTest-unusedEdgeLabel");
+      assertEquals(Arrays.asList(n1), IteratorUtils.toArrayList(n0.out(edgeLabel)));
+      assertEquals(Arrays.asList(n2), IteratorUtils.toArrayList(n0.in(edgeLabel)));
+      assertEquals(Arrays.asList(n1, n2), IteratorUtils.toArrayList(n0.both(edgeLabel)));
+      assertEquals(1L, (long) n0.outE(edgeLabel).next().property(TestEdge.LONG_PROPERTY));
+      assertEquals(n2, n0.inE(edgeLabel).next().outNode());
+      assertEquals(2, IteratorUtils.toArrayList(n0.bothE(edgeLabel)).size());
+      assertFalse(n0.out(unknownLabel).hasNext());
+      assertTrue(n0.hasOut(edgeLabel));
+      assertTrue(n0.hasIn(edgeLabel));
+      assertFalse(n1.hasOut(edgeLabel));
+      assertFalse(n0.hasOut(unknownLabel));
+
+      List<Node> visited = new ArrayList<>();
+      n0.forEachOut(edgeLabel, visited::add);
+      n0.forEachIn(edgeLabel, visited::add);
+      n0.forEachOut(unknownLabel, visited::add);
+      assertEquals(Arrays.asList(n1, n2), visited);
+
+      assertEquals("n0", n0.property(Ordinals.ofPropertyKey(TestNode.STRING_PROPERTY)));
+      assertEquals(42, n0.property(Ordinals.ofPropertyKey(TestNode.INT_PROPERTY)));
+      assertEquals(42, (int) n0.property(new PropertyKey<Integer>(TestNode.INT_PROPERTY)));
+      assertNull(n1.property(Ordinals.ofPropertyKey(TestNode.INT_PROPERTY)));
+
+      EdgeCursor cursor = new EdgeCursor().reset(n0, Direction.BOTH, edgeLabel);
+      assertTrue(cursor.next());
+      assertEquals(n1, cursor.adjacentNode());
+      assertEquals(edgeLabel, cursor.labelOrdinal());
+      assertEquals(TestEdge.LABEL, cursor.label());
+      assertEquals(1L, cursor.property(Ordinals.ofPropertyKey(TestEdge.LONG_PROPERTY)));
+      assertNull(cursor.property(Ordinals.ofPropertyKey(TestNode.STRING_PROPERTY)));
+      assertTrue(cursor.next());
+      assertEquals(n2, cursor.adjacentNode());
+      assertFalse(cursor.next());
+      assertFalse(cursor.reset(n0, Direction.OUT, unknownLabel).next());
+    }
+  }
+}
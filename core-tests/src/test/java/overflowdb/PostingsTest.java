@@ -0,0 +1,65 @@
+package overflowdb;
+
+import org.junit.Test;
+import overflowdb.testdomains.simple.SimpleDomain;
+import overflowdb.testdomains.simple.TestNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PostingsTest {
+
+  @Test
+  public void keepMembersSortedAcrossMerges() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      List<NodeRef<?>> nodes = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) nodes.add((NodeRef<?>) graph.addNode(TestNode.LABEL));
+
+      Postings postings = new Postings();
+      // insert in reverse order, with duplicates
+      for (int i = nodes.size() - 1; i >= 0; i--) {
+        postings.add(nodes.get(i));
+        postings.add(nodes.get(i));
+      }
+      assertEquals(1000, postings.size());
+      assertEquals(nodes, postings.snapshot());
+
+      for (int i = 0; i < nodes.size(); i += 2) postings.remove(nodes.get(i));
+      postings.remove(nodes.get(0)); // removing twice must not change the size
+      assertEquals(500, postings.size());
+      assertFalse(postings.contains(nodes.get(0)));
+      assertTrue(postings.contains(nodes.get(1)));
+
+      postings.add(nodes.get(0));
+      assertTrue(postings.contains(nodes.get(0)));
+      assertEquals(501, postings.size());
+      long[] expectedIds = new long[501];
+      expectedIds[0] = nodes.get(0).id();
+      for (int i = 1; i < 501; i++) expectedIds[i] = nodes.get(2 * i - 1).id();
+      assertArrayEquals(expectedIds, postings.ids());
+    }
+  }
+
+  @Test
+  public void snapshotIsNotAffectedByLaterWrites() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      NodeRef<?> a = (NodeRef<?>) graph.addNode(TestNode.LABEL);
+      NodeRef<?> b = (NodeRef<?>) graph.addNode(TestNode.LABEL);
+      Postings postings = new Postings();
+      postings.add(a);
+      List<NodeRef<?>> snapshot = postings.snapshot();
+
+      postings.add(b);
+      postings.remove(a);
+      assertEquals(1, snapshot.size());
+      assertEquals(a, snapshot.get(0));
+      assertEquals(b, postings.snapshot().get(0));
+    }
+  }
+
+}
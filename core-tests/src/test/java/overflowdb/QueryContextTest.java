@@ -0,0 +1,115 @@
+package overflowdb;
+
+import org.junit.Test;
+import overflowdb.testdomains.simple.SimpleDomain;
+import overflowdb.testdomains.simple.TestNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryContextTest {
+
+  @Test
+  public void abortWhenVisitingTooManyElements() {
+    QueryContext context = QueryContext.create().withMaxElementsVisited(10);
+    try {
+      context.run(() -> {
+        for (int i = 0; i < 100; i++) QueryContext.current().visit();
+        return null;
+      });
+      fail("expected the query to be aborted");
+    } catch (QueryAbortedException e) {
+      assertEquals(QueryAbortedException.Reason.MAX_ELEMENTS_VISITED, e.reason);
+      assertEquals(11, e.statistics.elementsVisited);
+    }
+    assertNull(QueryContext.current());
+  }
+
+  @Test
+  public void abortWhenCancelled() {
+    QueryContext context = QueryContext.create();
+    try {
+      context.run(() -> {
+        context.cancel();
+        for (int i = 0; i < 100_000; i++) context.visit();
+        return null;
+      });
+      fail("expected the query to be aborted");
+    } catch (QueryAbortedException e) {
+      assertEquals(QueryAbortedException.Reason.CANCELLED, e.reason);
+      assertEquals(1024, e.statistics.elementsVisited);
+    }
+  }
+
+  @Test
+  public void abortOnTimeout() {
+    QueryContext context = QueryContext.create().withTimeout(Duration.ofMillis(10));
+    try {
+      context.run(() -> {
+        while (true) context.visit();
+      });
+      fail("expected the query to be aborted");
+    } catch (QueryAbortedException e) {
+      assertEquals(QueryAbortedException.Reason.TIMEOUT, e.reason);
+      assertTrue(e.statistics.elapsed.compareTo(Duration.ofMillis(10)) > 0);
+    }
+  }
+
+  @Test
+  public void nestedContexts() {
+    QueryContext outer = QueryContext.create();
+    QueryContext inner = QueryContext.create();
+    outer.run(() -> {
+      inner.run(() -> {
+        assertSame(inner, QueryContext.current());
+        return null;
+      });
+      assertSame(outer, QueryContext.current());
+      return null;
+    });
+  }
+
+  @Test
+  public void abortWhenLoadingTooManyNodes() throws IOException {
+    final File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    Config config = Config.withoutOverflow().withStorageLocation(storageFile.getAbsolutePath());
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      for (int i = 0; i < 10; i++) graph.addNode(TestNode.LABEL, TestNode.INT_PROPERTY, i);
+    }
+
+    try (Graph graph = SimpleDomain.newGraph(config)) {
+      // nodes are only loaded from storage when they're accessed
+      QueryContext context = QueryContext.create().withMaxNodesLoaded(5);
+      try {
+        context.run(() -> {
+          Iterator<Node> nodes = graph.nodes();
+          while (nodes.hasNext()) nodes.next().property(TestNode.INT_PROPERTY);
+          return null;
+        });
+        fail("expected the query to be aborted");
+      } catch (QueryAbortedException e) {
+        assertEquals(QueryAbortedException.Reason.MAX_NODES_LOADED, e.reason);
+        assertEquals(6, e.statistics.nodesLoaded);
+      }
+
+      // without a context, all nodes can be loaded
+      Iterator<Node> nodes = graph.nodes();
+      int count = 0;
+      while (nodes.hasNext()) {
+        nodes.next().property(TestNode.INT_PROPERTY);
+        count++;
+      }
+      assertEquals(10, count);
+    }
+  }
+}
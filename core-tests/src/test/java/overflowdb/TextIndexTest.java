@@ -0,0 +1,81 @@
+package overflowdb;
+
+import org.junit.Test;
+import overflowdb.testdomains.simple.SimpleDomain;
+import overflowdb.testdomains.simple.TestNode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TextIndexTest {
+
+  @Test
+  public void extractRequiredLiteralsFromRegex() {
+    assertLiterals("exec", Arrays.asList("exec"), "exec");
+    assertLiterals("", Arrays.asList("exec"), ".*exec.*");
+    assertLiterals("", Arrays.asList("exec"), "(?s).*exec.*");
+    assertLiterals("java.", Arrays.asList("java.", "exec"), "java\\..*exec[a-z]+");
+    assertLiterals("fo", Arrays.asList("fo", "bar"), "^foo?bar$");
+    assertLiterals("", Arrays.asList("bar"), "(foo)*bar");
+    assertLiterals("ab", Arrays.asList("ab"), "abc{2,3}");
+    // unsupported constructs yield no literals, i.e. no narrowing down
+    assertLiterals("", Collections.emptyList(), "exec|system");
+    assertLiterals("", Collections.emptyList(), "(?i)exec");
+    assertLiterals("", Collections.emptyList(), "\\Qexec\\E");
+    assertLiterals("", Collections.emptyList(), "(?=exec).*");
+    assertEquals(Collections.emptyList(),
+        TextIndex.RegexLiterals.of(Pattern.compile("exec", Pattern.CASE_INSENSITIVE)).required);
+  }
+
+  @Test
+  public void lookupBySubstringPrefixAndRegex() {
+    try (Graph graph = SimpleDomain.newGraph()) {
+      IndexManager indexManager = graph.indexManager;
+      Node exec = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "exec");
+      Node execve = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "execve");
+      Node system = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "system");
+      indexManager.createNodePropertyTextIndex(TestNode.STRING_PROPERTY);
+      Node popen = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "popen");
+      Node runtimeExec = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "Runtime.exec");
+
+      assertTrue(indexManager.isIndexed(TestNode.STRING_PROPERTY));
+      assertTrue(indexManager.isTextIndexed(TestNode.STRING_PROPERTY));
+      assertEqualContents(Arrays.asList(exec, execve, runtimeExec), indexManager.lookupContaining(TestNode.STRING_PROPERTY, "exec"));
+      // too short for trigrams: served by scanning the distinct values
+      assertEqualContents(Arrays.asList(exec, execve, system, popen, runtimeExec),
+          indexManager.lookupContaining(TestNode.STRING_PROPERTY, "e"));
+      assertEqualContents(Arrays.asList(exec, execve), indexManager.lookupStartingWith(TestNode.STRING_PROPERTY, "exec"));
+      assertEqualContents(Arrays.asList(exec, execve, runtimeExec), lookupMatching(indexManager, ".*exec.*"));
+      assertEqualContents(Arrays.asList(runtimeExec), lookupMatching(indexManager, "Runtime\\.exec"));
+      assertEqualContents(Arrays.asList(exec, system), lookupMatching(indexManager, "exec|system"));
+      assertEqualContents(Arrays.asList(), lookupMatching(indexManager, ".*unknown.*"));
+
+      execve.setProperty(TestNode.STRING_PROPERTY, "fork");
+      runtimeExec.remove();
+      assertEqualContents(Arrays.asList(exec), indexManager.lookupContaining(TestNode.STRING_PROPERTY, "exec"));
+      assertEqualContents(Arrays.asList(execve), lookupMatching(indexManager, "fo.k"));
+    }
+  }
+
+  private List<NodeRef<?>> lookupMatching(IndexManager indexManager, String regex) {
+    return indexManager.lookupMatching(TestNode.STRING_PROPERTY, Pattern.compile(regex));
+  }
+
+  private void assertLiterals(String expectedPrefix, List<String> expectedLiterals, String regex) {
+    TextIndex.RegexLiterals literals = TextIndex.RegexLiterals.of(regex);
+    assertEquals(expectedPrefix, literals.prefix);
+    assertEquals(expectedLiterals, literals.required);
+  }
+
+  private void assertEqualContents(List expected, List actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+  }
+
+}
@@ -92,6 +92,8 @@ public class BackwardsCompatibilityTest {
       Graph graph = SchemaV1.newEmptyGraph(config);
       assertEquals(2, graph.nodeCount());
       assertEquals(1, graph.edgeCount());
+      // the edge count comes from the storage metadata - it's loading the nodes that fails
+      graph.edges().forEachRemaining(edge -> {});
 
       graph.close();
     }
@@ -121,6 +123,8 @@ public class BackwardsCompatibilityTest {
       Graph graph = SchemaV1.newEmptyGraph(config);
       assertEquals(2, graph.nodeCount());
       assertEquals(1, graph.edgeCount());
+      // the edge count comes from the storage metadata - it's loading the nodes that fails
+      graph.edges().forEachRemaining(edge -> {});
 
       graph.close();
     }
@@ -0,0 +1,296 @@
+package overflowdb.storage;
+
+import org.junit.Test;
+import overflowdb.BatchedUpdate;
+import overflowdb.Config;
+import overflowdb.DetachedNodeGeneric;
+import overflowdb.Edge;
+import overflowdb.Graph;
+import overflowdb.Node;
+import overflowdb.testdomains.simple.SimpleDomain;
+import overflowdb.testdomains.simple.TestEdge;
+import overflowdb.testdomains.simple.TestNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChangeLogTest {
+
+  @Test
+  public void replaysAppliedDiffsAfterCrash() throws IOException {
+    final File storageFile = newStorageFile();
+    final File crashedStorageFile = newStorageFile();
+
+    try (Graph graph = openGraph(storageFile)) {
+      Node n0 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0");
+      Node n1 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n1");
+      n0.addEdge(TestEdge.LABEL, n1);
+      graph.checkpoint();
+
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      DetachedNodeGeneric n2 = new DetachedNodeGeneric(TestNode.LABEL, TestNode.STRING_PROPERTY, "n2", TestNode.INT_PROPERTY, 42);
+      diff.addNode(n2);
+      diff.addEdge(n0, n2, TestEdge.LABEL, TestEdge.LONG_PROPERTY, 99L);
+      diff.setNodeProperty(n1, TestNode.INT_PROPERTY, 7);
+      BatchedUpdate.applyDiff(graph, diff);
+
+      BatchedUpdate.DiffGraphBuilder removals = new BatchedUpdate.DiffGraphBuilder();
+      removals.removeEdge(n0.outE(TestEdge.LABEL).next());
+      BatchedUpdate.applyDiff(graph, removals);
+
+      simulateCrash(storageFile, crashedStorageFile);
+    }
+
+    try (Graph graph = openGraph(crashedStorageFile)) {
+      assertEquals(3, graph.nodeCount());
+      assertEquals(1, graph.edgeCount());
+      Node n0 = findByName(graph, "n0");
+      Edge edge = n0.outE(TestEdge.LABEL).next();
+      assertEquals("n2", edge.inNode().property(TestNode.STRING_PROPERTY));
+      assertEquals(42, edge.inNode().property(TestNode.INT_PROPERTY));
+      assertEquals(99L, edge.property(TestEdge.LONG_PROPERTY));
+      assertEquals(7, findByName(graph, "n1").property(TestNode.INT_PROPERTY));
+    }
+  }
+
+  @Test
+  public void removesNodesOnReplay() throws IOException {
+    final File storageFile = newStorageFile();
+    final File crashedStorageFile = newStorageFile();
+
+    try (Graph graph = openGraph(storageFile)) {
+      Node n0 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0");
+      graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n1");
+      graph.checkpoint();
+
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      diff.removeNode(n0);
+      BatchedUpdate.applyDiff(graph, diff);
+
+      simulateCrash(storageFile, crashedStorageFile);
+    }
+
+    try (Graph graph = openGraph(crashedStorageFile)) {
+      assertEquals(1, graph.nodeCount());
+      assertEquals("n1", graph.nodes().next().property(TestNode.STRING_PROPERTY));
+    }
+  }
+
+  @Test
+  public void ignoresTornRecordAtEndOfLog() throws IOException {
+    final File storageFile = newStorageFile();
+    final File crashedStorageFile = newStorageFile();
+
+    try (Graph graph = openGraph(storageFile)) {
+      graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0");
+      graph.checkpoint();
+
+      BatchedUpdate.DiffGraphBuilder diff1 = new BatchedUpdate.DiffGraphBuilder();
+      diff1.addNode(new DetachedNodeGeneric(TestNode.LABEL, TestNode.STRING_PROPERTY, "n1"));
+      BatchedUpdate.applyDiff(graph, diff1);
+      BatchedUpdate.DiffGraphBuilder diff2 = new BatchedUpdate.DiffGraphBuilder();
+      diff2.addNode(new DetachedNodeGeneric(TestNode.LABEL, TestNode.STRING_PROPERTY, "n2"));
+      BatchedUpdate.applyDiff(graph, diff2);
+
+      simulateCrash(storageFile, crashedStorageFile);
+    }
+
+    // cut off the last couple of bytes, as if we had crashed while appending the second record
+    Path changeLog = ChangeLog.pathFor(crashedStorageFile);
+    try (RandomAccessFile file = new RandomAccessFile(changeLog.toFile(), "rw")) {
+      file.setLength(file.length() - 3);
+    }
+
+    try (Graph graph = openGraph(crashedStorageFile)) {
+      assertEquals(2, graph.nodeCount());
+      assertNull(findByName(graph, "n2"));
+    }
+  }
+
+  @Test
+  public void truncatesLogOnCheckpointAndDeletesItOnClose() throws IOException {
+    final File storageFile = newStorageFile();
+    final Path changeLog = ChangeLog.pathFor(storageFile);
+
+    try (Graph graph = openGraph(storageFile)) {
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      diff.addNode(new DetachedNodeGeneric(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0"));
+      BatchedUpdate.applyDiff(graph, diff);
+      long sizeBeforeCheckpoint = Files.size(changeLog);
+
+      graph.checkpoint();
+      assertTrue(Files.size(changeLog) < sizeBeforeCheckpoint);
+    }
+    assertFalse(Files.exists(changeLog));
+
+    try (Graph graph = openGraph(storageFile)) {
+      assertEquals(1, graph.nodeCount());
+    }
+  }
+
+  @Test
+  public void skipsRecordsContainedInCheckpointOnReplay() throws IOException {
+    final File storageFile = newStorageFile();
+    final File crashedStorageFile = newStorageFile();
+    final Path changeLogBeforeCheckpoint = Files.createTempFile("overflowdb", "changelog");
+    changeLogBeforeCheckpoint.toFile().deleteOnExit();
+
+    try (Graph graph = openGraph(storageFile)) {
+      Node n0 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0");
+      Node n1 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n1");
+      graph.checkpoint();
+
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      diff.addEdge(n0, n1, TestEdge.LABEL);
+      diff.addEdge(n0, n1, TestEdge.LABEL);
+      BatchedUpdate.applyDiff(graph, diff);
+      BatchedUpdate.DiffGraphBuilder removal = new BatchedUpdate.DiffGraphBuilder();
+      removal.removeEdge(n0.outE(TestEdge.LABEL).next());
+      BatchedUpdate.applyDiff(graph, removal);
+
+      // crash after the checkpoint has been committed, but before the log was truncated
+      Files.copy(ChangeLog.pathFor(storageFile), changeLogBeforeCheckpoint, StandardCopyOption.REPLACE_EXISTING);
+      graph.checkpoint();
+      simulateCrash(storageFile, crashedStorageFile);
+      Files.copy(changeLogBeforeCheckpoint, ChangeLog.pathFor(crashedStorageFile), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    try (Graph graph = openGraph(crashedStorageFile)) {
+      assertEquals(2, graph.nodeCount());
+      assertEquals(1, graph.edgeCount());
+    }
+  }
+
+  @Test
+  public void continuesSequenceNumbersAfterReopen() throws IOException {
+    final File storageFile = newStorageFile();
+    final File crashedStorageFile = newStorageFile();
+
+    try (Graph graph = openGraph(storageFile)) {
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      diff.addNode(new DetachedNodeGeneric(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0"));
+      BatchedUpdate.applyDiff(graph, diff);
+    }
+
+    // the log has been deleted on close - new records must not be mistaken for the ones in the storage
+    try (Graph graph = openGraph(storageFile)) {
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      diff.addNode(new DetachedNodeGeneric(TestNode.LABEL, TestNode.STRING_PROPERTY, "n1"));
+      BatchedUpdate.applyDiff(graph, diff);
+      simulateCrash(storageFile, crashedStorageFile);
+    }
+
+    try (Graph graph = openGraph(crashedStorageFile)) {
+      assertEquals(2, graph.nodeCount());
+      assertEquals("n1", findByName(graph, "n1").property(TestNode.STRING_PROPERTY));
+    }
+  }
+
+  @Test
+  public void compactionCommitsCheckpointAndTruncatesLog() throws IOException {
+    final File storageFile = newStorageFile();
+    final File crashedStorageFile = newStorageFile();
+    final Path changeLog = ChangeLog.pathFor(storageFile);
+
+    try (Graph graph = openGraph(storageFile)) {
+      Node n0 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0");
+      graph.checkpoint();
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      diff.addNode(new DetachedNodeGeneric(TestNode.LABEL, TestNode.STRING_PROPERTY, "n1"));
+      diff.addEdge(n0, n0, TestEdge.LABEL);
+      BatchedUpdate.applyDiff(graph, diff);
+      long sizeBeforeCompaction = Files.size(changeLog);
+
+      CompactionResult result = graph.compact(50, Duration.ofSeconds(30));
+      assertTrue(result.completed);
+      assertTrue(Files.size(changeLog) < sizeBeforeCompaction);
+      simulateCrash(storageFile, crashedStorageFile);
+    }
+
+    try (Graph graph = openGraph(crashedStorageFile)) {
+      assertEquals(2, graph.nodeCount());
+      assertEquals(1, graph.edgeCount());
+    }
+  }
+
+  @Test
+  public void failsToReplayDiffsReferringToUnloggedNodes() throws IOException {
+    final File storageFile = newStorageFile();
+    final File crashedStorageFile = newStorageFile();
+    final long unloggedNodeId;
+
+    try (Graph graph = openGraph(storageFile)) {
+      Node n0 = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "n0");
+      graph.checkpoint();
+
+      // direct mutations aren't logged, only the diff is
+      Node unlogged = graph.addNode(TestNode.LABEL, TestNode.STRING_PROPERTY, "unlogged");
+      unloggedNodeId = unlogged.id();
+      BatchedUpdate.DiffGraphBuilder diff = new BatchedUpdate.DiffGraphBuilder();
+      diff.addEdge(n0, unlogged, TestEdge.LABEL);
+      BatchedUpdate.applyDiff(graph, diff);
+      simulateCrash(storageFile, crashedStorageFile);
+    }
+
+    try {
+      openGraph(crashedStorageFile).close();
+      fail("replaying the change log should have failed");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("node " + unloggedNodeId + " doesn't exist"));
+    }
+
+    // the files have been released: without the change log, the graph opens as of the last checkpoint
+    Files.delete(ChangeLog.pathFor(crashedStorageFile));
+    try (Graph graph = openGraph(crashedStorageFile)) {
+      assertEquals(1, graph.nodeCount());
+      assertEquals(0, graph.edgeCount());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cannotBeCombinedWithOverflow() throws IOException {
+    // overflow commits spilled nodes between checkpoints, the log could no longer be replayed on top of the storage
+    SimpleDomain.newGraph(Config.withDefaults()
+        .withStorageLocation(newStorageFile().getAbsolutePath())
+        .withChangeLogEnabled(true)).close();
+  }
+
+  /** copies the committed storage and the change log of a still open graph, i.e. what a crash would leave behind */
+  private void simulateCrash(File storageFile, File crashedStorageFile) throws IOException {
+    Files.copy(storageFile.toPath(), crashedStorageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    Path crashedChangeLog = ChangeLog.pathFor(crashedStorageFile);
+    Files.copy(ChangeLog.pathFor(storageFile), crashedChangeLog, StandardCopyOption.REPLACE_EXISTING);
+    crashedChangeLog.toFile().deleteOnExit();
+  }
+
+  private Node findByName(Graph graph, String name) {
+    for (java.util.Iterator<Node> nodes = graph.nodes(TestNode.LABEL); nodes.hasNext(); ) {
+      Node node = nodes.next();
+      if (name.equals(node.property(TestNode.STRING_PROPERTY))) return node;
+    }
+    return null;
+  }
+
+  private Graph openGraph(File storageFile) {
+    return SimpleDomain.newGraph(Config.withoutOverflow()
+        .withStorageLocation(storageFile.getAbsolutePath())
+        .withChangeLogEnabled(true));
+  }
+
+  private File newStorageFile() throws IOException {
+    File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    return storageFile;
+  }
+}
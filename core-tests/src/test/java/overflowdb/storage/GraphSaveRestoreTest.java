@@ -5,6 +5,7 @@ import overflowdb.Config;
 import overflowdb.Edge;
 import overflowdb.Graph;
 import overflowdb.Node;
+import overflowdb.NodeRef;
 import overflowdb.formats.graphml.GraphMLImporter;
 import overflowdb.testdomains.gratefuldead.FollowedBy;
 import overflowdb.testdomains.gratefuldead.GratefulDead;
@@ -14,11 +15,13 @@ import overflowdb.util.IteratorUtils;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.Iterator;
 import java.util.function.Function;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * save and restore a graph from disk overlay
@@ -171,6 +174,53 @@ public class GraphSaveRestoreTest {
     assertFalse("node should have been deleted from storage", getSongs(graph, "new song").hasNext());
   }
 
+  @Test
+  public void checkpointPersistsDirtyNodesWhileGraphRemainsOpen() throws IOException {
+    final File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+
+    try (Graph graph = openGratefulDeadGraph(storageFile, false)) {
+      Node n0 = graph.addNode(Song.label, Song.NAME, "Song 1");
+      Node n1 = graph.addNode(Song.label, Song.NAME, "Song 2");
+      n0.addEdge(FollowedBy.LABEL, n1, FollowedBy.WEIGHT, 42);
+
+      assertEquals(2, graph.checkpoint());
+      assertEquals(2, graph.getStorage().getNodesMVMap().size());
+      assertTrue("nodes should remain in memory", ((NodeRef<?>) n0).isSet());
+
+      // nothing changed since the last checkpoint
+      assertEquals(0, graph.checkpoint());
+
+      n1.setProperty(Song.PERFORMANCES, 5);
+      assertEquals(1, graph.checkpoint());
+      assertEquals(3, graph.nodeSerializer.getSerializedCount());
+    }
+
+    try (Graph graph = openGratefulDeadGraph(storageFile, false)) {
+      assertEquals(2, graph.nodeCount());
+      assertEquals(1, graph.edgeCount());
+      assertEquals(5, (int) getSongs(graph, "Song 2").next().property(Song.PERFORMANCES));
+    }
+  }
+
+  @Test
+  public void checkpointsInBackgroundIfIntervalIsConfigured() throws Exception {
+    final File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+
+    Config config = Config.withoutOverflow()
+        .withStorageLocation(storageFile.getAbsolutePath())
+        .withCheckpointInterval(Duration.ofMillis(20));
+    try (Graph graph = GratefulDead.newGraph(config)) {
+      graph.addNode(Song.label, Song.NAME, "Song 1");
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (graph.getStorage().getNodesMVMap().isEmpty() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(20);
+      }
+      assertEquals(1, graph.getStorage().getNodesMVMap().size());
+    }
+  }
+
   private void modifyAndCloseGraph(File storageFile, Function<Graph, Integer> graphModifications) {
     Graph graph = openGratefulDeadGraph(storageFile, false);
     int expectedSerializationCount = graphModifications.apply(graph);
@@ -6,6 +6,7 @@ import org.junit.Test;
 import overflowdb.Node;
 import overflowdb.Config;
 import overflowdb.Graph;
+import overflowdb.testdomains.gratefuldead.FollowedBy;
 import overflowdb.testdomains.gratefuldead.GratefulDead;
 import overflowdb.testdomains.gratefuldead.Song;
 import overflowdb.util.StringInterner;
@@ -13,9 +14,15 @@ import overflowdb.util.StringInterner;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class OdbStorageTest {
   private StringInterner stringInterner = new StringInterner();
@@ -52,6 +59,102 @@ public class OdbStorageTest {
     }
   }
 
+  @Test
+  public void persistNodesAcrossStorageShards() throws IOException {
+    final File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    final int shardCount = 4;
+    final int nodeCount = 200;
+    Config config = Config.withoutOverflow().withStorageLocation(storageFile.getAbsolutePath()).withStorageShards(shardCount);
+
+    try (Graph graph = GratefulDead.newGraph(config)) {
+      Node previous = null;
+      for (int i = 0; i < nodeCount; i++) {
+        Node song = graph.addNode(Song.label, Song.NAME, "Song " + i);
+        if (previous != null) previous.addEdge(FollowedBy.LABEL, song);
+        previous = song;
+      }
+    }
+
+    for (int shard = 1; shard < shardCount; shard++) {
+      new File(storageFile.getAbsolutePath() + ".shard" + shard).deleteOnExit();
+    }
+
+    // reopen with default config: the storage keeps its own shard count
+    try (Graph graph = GratefulDead.newGraph(Config.withoutOverflow().withStorageLocation(storageFile.getAbsolutePath()))) {
+      OdbStorage storage = graph.getStorage();
+      assertEquals(shardCount, storage.getShardCount());
+      assertEquals(nodeCount, storage.persistedNodeCount());
+      for (int shard = 0; shard < shardCount; shard++) {
+        assertTrue("every shard should hold some nodes", storage.getNodesMVMap(shard).size() > 0);
+        assertTrue(storage.getShardFile(shard).exists());
+      }
+
+      assertEquals(nodeCount, graph.nodeCount());
+      assertEquals(nodeCount - 1, graph.edgeCount());
+      graph.nodes().forEachRemaining(node ->
+          assertTrue(storage.getNodesMVMap(storage.shardOf(node.id())).containsKey(node.id())));
+    }
+  }
+
+  @Test
+  public void compactReclaimsDeadBytes() {
+    OdbStorage storage = OdbStorage.createWithTempFile(stringInterner, Config.withDefaults().withStorageCompressionMode(Config.StorageCompressionMode.NONE));
+    Random random = new Random(42);
+    // rewrite the same nodes a couple of times: every round leaves the previous round's chunks dead
+    for (int round = 0; round < 5; round++) {
+      for (long id = 0; id < 10_000; id++) {
+        byte[] data = new byte[200];
+        random.nextBytes(data);
+        storage.persist(id, data);
+      }
+      storage.flush();
+    }
+
+    StorageStats before = storage.getStorageStats();
+    assertTrue("expected dead bytes before compaction, but got " + before, before.deadBytes > 0);
+
+    List<StorageStats> progress = new ArrayList<>();
+    CompactionResult result = storage.compact(80, Duration.ofSeconds(30), progress::add);
+    assertTrue(result.completed);
+    assertFalse("should have reported progress", progress.isEmpty());
+    assertTrue("live ratio should have increased: " + result, result.after.liveRatio() > before.liveRatio());
+    assertTrue("dead bytes should have decreased: " + result, result.after.deadBytes < before.deadBytes);
+    assertEquals(10_000, storage.persistedNodeCount());
+    storage.close();
+  }
+
+  @Test
+  public void writesWaitForCompaction() throws InterruptedException {
+    OdbStorage storage = OdbStorage.createWithTempFile(stringInterner, Config.withDefaults().withStorageCompressionMode(Config.StorageCompressionMode.NONE));
+    for (int round = 0; round < 3; round++) {
+      for (long id = 0; id < 10_000; id++) {
+        storage.persist(id, new byte[200]);
+      }
+      storage.flush();
+    }
+
+    List<Thread> writers = new ArrayList<>();
+    List<Boolean> completedDuringCompaction = new ArrayList<>();
+    storage.compact(100, Duration.ofSeconds(30), stats -> {
+      if (writers.isEmpty()) {
+        Thread writer = new Thread(() -> storage.persist(10_000L, new byte[200]));
+        writers.add(writer);
+        writer.start();
+        try {
+          writer.join(200);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        completedDuringCompaction.add(!writer.isAlive());
+      }
+    });
+    assertEquals(List.of(false), completedDuringCompaction);
+    writers.get(0).join();
+    assertEquals(10_001, storage.persistedNodeCount());
+    storage.close();
+  }
+
   @Test
   public void shouldDeleteTmpStorageIfNoStorageLocationConfigured() {
     final File tmpStorageFile;
@@ -131,6 +234,26 @@ public class OdbStorageTest {
     assertEquals(c, storage.reverseLookupStringToIntMapping(stringIdC));
   }
 
+  @Test
+  public void shouldReverseLookupLargeGlossaryAfterRestart() throws IOException {
+    File storageFile = Files.createTempFile("overflowdb", "bin").toFile();
+    storageFile.deleteOnExit();
+    OdbStorage storage = OdbStorage.createWithSpecificLocation(storageFile, stringInterner);
+    int[] stringIds = new int[1000];
+    for (int i = 0; i < stringIds.length; i++) {
+      stringIds[i] = storage.lookupOrCreateStringToIntMapping("string" + i);
+    }
+    storage.close();
+
+    storage = OdbStorage.createWithSpecificLocation(storageFile, stringInterner);
+    for (int i = 0; i < stringIds.length; i++) {
+      assertEquals("string" + i, storage.reverseLookupStringToIntMapping(stringIds[i]));
+    }
+    assertNull(storage.reverseLookupStringToIntMapping(stringIds.length + 1));
+    assertNull(storage.reverseLookupStringToIntMapping(-1));
+    storage.close();
+  }
+
   @Test
   public void stringToIntMappingShouldBeConsistentUnderConcurrency() throws Exception {
     OdbStorage storage = OdbStorage.createWithTempFile(stringInterner);
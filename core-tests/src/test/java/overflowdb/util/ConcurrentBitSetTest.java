@@ -0,0 +1,51 @@
+package overflowdb.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentBitSetTest {
+
+  @Test
+  public void addAndContains() {
+    ConcurrentBitSet bitSet = new ConcurrentBitSet();
+    assertFalse(bitSet.contains(0));
+    assertTrue(bitSet.add(0));
+    assertFalse(bitSet.add(0));
+    assertTrue(bitSet.contains(0));
+
+    // far apart values, i.e. in different chunks
+    assertTrue(bitSet.add(63));
+    assertTrue(bitSet.add(64));
+    assertTrue(bitSet.add(10_000_000_000L));
+    assertTrue(bitSet.contains(63));
+    assertTrue(bitSet.contains(64));
+    assertTrue(bitSet.contains(10_000_000_000L));
+    assertFalse(bitSet.contains(65));
+    assertFalse(bitSet.contains(9_999_999_999L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectNegativeValues() {
+    new ConcurrentBitSet().add(-1);
+  }
+
+  @Test
+  public void addConcurrently() {
+    ConcurrentBitSet bitSet = new ConcurrentBitSet();
+    AtomicInteger newlyAdded = new AtomicInteger();
+    // every value is added by 4 threads, but only one of them may win
+    LongStream.range(0, 4_000_000).parallel().forEach(i -> {
+      if (bitSet.add(i / 4)) newlyAdded.incrementAndGet();
+    });
+    assertEquals(1_000_000, newlyAdded.get());
+    for (long i = 0; i < 1_000_000; i++) {
+      assertTrue(bitSet.contains(i));
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package overflowdb.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+
+  @Test
+  public void countSmallCardinalitiesAlmostExactly() {
+    HyperLogLog sketch = new HyperLogLog();
+    assertEquals(0, sketch.estimate());
+    for (int i = 0; i < 100; i++) {
+      sketch.add("value" + i);
+      sketch.add("value" + i);
+    }
+    assertWithinPercent(100, sketch.estimate(), 2);
+  }
+
+  @Test
+  public void estimateLargeCardinalities() {
+    HyperLogLog sketch = new HyperLogLog();
+    for (long i = 0; i < 100_000; i++) {
+      sketch.add(i);
+    }
+    assertWithinPercent(100_000, sketch.estimate(), 5);
+
+    // integral numbers are hashed by value, irrespective of their type
+    for (int i = 0; i < 100_000; i++) {
+      sketch.add(i);
+    }
+    assertWithinPercent(100_000, sketch.estimate(), 5);
+  }
+
+  @Test
+  public void mergeAndSerialize() {
+    HyperLogLog a = new HyperLogLog(10);
+    HyperLogLog b = new HyperLogLog(10);
+    for (int i = 0; i < 5000; i++) a.add("a" + i);
+    for (int i = 0; i < 5000; i++) b.add("b" + i);
+    a.merge(b);
+    assertWithinPercent(10_000, a.estimate(), 10);
+
+    HyperLogLog copy = HyperLogLog.fromByteArray(a.toByteArray());
+    assertEquals(a, copy);
+    assertEquals(10, copy.precision());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectMergingDifferentPrecisions() {
+    new HyperLogLog(10).merge(new HyperLogLog(12));
+  }
+
+  private static void assertWithinPercent(long expected, long actual, int percent) {
+    assertTrue("expected " + expected + " +/- " + percent + "%, but was " + actual,
+        Math.abs(actual - expected) * 100 <= expected * percent);
+  }
+}
@@ -0,0 +1,98 @@
+package overflowdb.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NodeBitSetTest {
+
+  @Test
+  public void denseAndSparseIds() {
+    NodeBitSet bitSet = new NodeBitSet();
+    long[] ids = {0, 1, 63, 64, 100_000, 10_000_000_000L, -5, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long id : ids) {
+      assertTrue(bitSet.add(id));
+      assertFalse(bitSet.add(id));
+    }
+    assertEquals(ids.length, bitSet.size());
+    for (long id : ids) assertTrue(bitSet.contains(id));
+    for (long id : new long[] {2, 65, 99_999, 10_000_000_001L, -4, Long.MAX_VALUE - 1}) assertFalse(bitSet.contains(id));
+
+    assertTrue(bitSet.remove(100_000));
+    assertTrue(bitSet.remove(-5));
+    assertFalse(bitSet.remove(-5));
+    assertFalse(bitSet.contains(100_000));
+    assertEquals(ids.length - 2, bitSet.size());
+  }
+
+  @Test
+  public void behaveLikeASet() {
+    NodeBitSet bitSet = new NodeBitSet();
+    Set<Long> reference = new HashSet<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      // mostly dense ids, with some far out ones, which may later become part of the dense range
+      long id = random.nextInt(10) == 0 ? random.nextInt(50_000_000) : random.nextInt(1_000_000);
+      if (random.nextInt(4) == 0) assertEquals(reference.remove(id), bitSet.remove(id));
+      else assertEquals(reference.add(id), bitSet.add(id));
+    }
+    assertEquals(reference.size(), bitSet.size());
+    for (long id : reference) assertTrue(bitSet.contains(id));
+  }
+
+  @Test
+  public void reusePooledInstances() {
+    NodeBitSet bitSet = NodeBitSet.acquire();
+    bitSet.add(42);
+    NodeBitSet other = NodeBitSet.acquire();
+    assertNotSame(bitSet, other);
+    bitSet.release();
+
+    NodeBitSet reused = NodeBitSet.acquire();
+    assertSame(bitSet, reused);
+    assertTrue(reused.isEmpty());
+    assertFalse(reused.contains(42));
+    reused.release();
+    other.release();
+  }
+
+  @Test
+  public void dropLargeArraysOfPooledInstances() {
+    NodeBitSet bitSet = NodeBitSet.acquire();
+    for (long id = 0; id < 1 << 20; id++) bitSet.add(id);
+    assertTrue(bitSet.denseCapacity() >= 1 << 20);
+    bitSet.release();
+
+    NodeBitSet reused = NodeBitSet.acquire();
+    assertSame(bitSet, reused);
+    assertTrue(reused.denseCapacity() < 1 << 20);
+    reused.add(42);
+    assertTrue(reused.contains(42));
+    reused.release();
+  }
+
+  @Test
+  public void reclaimInstancesOfUnreachableOwners() throws InterruptedException {
+    NodeBitSet bitSet = NodeBitSet.acquire(new Object());
+    bitSet.add(42);
+
+    NodeBitSet reused = null;
+    for (int attempt = 0; attempt < 100 && reused != bitSet; attempt++) {
+      if (reused != null) reused.release();
+      System.gc();
+      Thread.sleep(20);
+      reused = NodeBitSet.acquire();
+    }
+    assertSame(bitSet, reused);
+    assertTrue(reused.isEmpty());
+    reused.release();
+  }
+}
@@ -1,6 +1,8 @@
 package overflowdb;
 
+import overflowdb.storage.ChangeLog;
 import overflowdb.util.IteratorUtils;
+import overflowdb.util.PropertyHelper;
 
 import java.util.ArrayDeque;
 import java.util.Iterator;
@@ -14,11 +16,11 @@ public class BatchedUpdate {
     public static final Object[] emptyArray = new Object[]{};
 
     public static AppliedDiff applyDiff(Graph graph, DiffOrBuilder diff) {
-        return new DiffGraphApplier(graph, diff, null, null).run();
+        return applyDiff(graph, diff, null, null);
     }
 
     public static AppliedDiff applyDiff(Graph graph, DiffOrBuilder diff, KeyPool keyPool, ModificationListener listener) {
-        return new DiffGraphApplier(graph, diff, keyPool, listener).run();
+        return new DiffGraphApplier(graph, diff, keyPool, listener, graph.newChangeLogRecord()).run();
     }
 
     public static AppliedDiff applyFragment(Graph graph, byte[] fragmentBytes, long expectedSchemaHash, BoundaryResolver boundaryResolver, KeyPool keyPool) {
@@ -26,6 +28,16 @@ public class BatchedUpdate {
     }
 
     public static AppliedDiff applyFragment(Graph graph, byte[] fragmentBytes, long expectedSchemaHash, BoundaryResolver boundaryResolver, KeyPool keyPool, ModificationListener listener) {
+        // the fragment's nodes are created before the diff is applied - they need to end up in the same change log record
+        graph.changeLogLock.readLock().lock();
+        try {
+            return applyFragment(graph, fragmentBytes, expectedSchemaHash, boundaryResolver, keyPool, listener, graph.newChangeLogRecord());
+        } finally {
+            graph.changeLogLock.readLock().unlock();
+        }
+    }
+
+    private static AppliedDiff applyFragment(Graph graph, byte[] fragmentBytes, long expectedSchemaHash, BoundaryResolver boundaryResolver, KeyPool keyPool, ModificationListener listener, ChangeLog.Record changeLogRecord) {
         overflowdb.storage.GraphFragmentCodec.FragmentHeader header = overflowdb.storage.GraphFragmentCodec.peek(fragmentBytes);
         if (header.schemaHash != expectedSchemaHash) {
             throw new IllegalArgumentException("Schema hash mismatch: fragment schema hash is " + header.schemaHash + ", expected " + expectedSchemaHash);
@@ -44,6 +56,7 @@ public class BatchedUpdate {
             } else {
                 liveNode = graph.addNode(keyPool.next(), dNode.label);
             }
+            if (changeLogRecord != null) changeLogRecord.addNode(liveNode.id(), dNode.label);
             localToGlobalNode[i] = liveNode;
         }
 
@@ -72,6 +85,7 @@ public class BatchedUpdate {
                 }
                 return null;
             });
+            if (changeLogRecord != null) recordProperties(changeLogRecord, liveNode);
             if (listener != null) {
                 listener.onAfterInitNewNode(liveNode);
             }
@@ -105,7 +119,76 @@ public class BatchedUpdate {
         }
 
         DiffGraph diff = new DiffGraph(changes.toArray(new Change[0]));
-        return applyDiff(graph, diff, keyPool, listener);
+        return new DiffGraphApplier(graph, diff, keyPool, listener, changeLogRecord).run();
+    }
+
+    private static void recordProperties(ChangeLog.Record changeLogRecord, Node node) {
+        NodeDb nodeDb = node instanceof NodeRef ? ((NodeRef<?>) node).get() : (NodeDb) node;
+        changeLogRecord.setProperties(node.id(), nodeDb.propertiesMapForStorage());
+    }
+
+    /**
+     * Replays the given change log on top of the graph's current state, i.e. the last committed storage version.
+     * Records that are already contained in that version are skipped, see {@link ChangeLog}.
+     * @param committedSequenceNumber sequence number of the last record that's contained in the storage
+     * @return number of replayed diffs
+     */
+    static int replayChangeLog(Graph graph, ChangeLog changeLog, long committedSequenceNumber) {
+        return changeLog.replay(new ChangeLog.Visitor() {
+            /* only diffs are logged: they may refer to nodes that were created directly, which are lost in a crash */
+            private Node existingNode(long id) {
+                Node node = graph.node(id);
+                if (node == null) {
+                    throw new IllegalStateException("node " + id + " doesn't exist, presumably it was created " +
+                        "without BatchedUpdate after the last checkpoint - delete the change log to open the graph " +
+                        "as of the last checkpoint");
+                }
+                return node;
+            }
+
+            @Override
+            public void addNode(long id, String label) {
+                if (graph.node(id) == null) graph.addNode(id, label);
+            }
+
+            @Override
+            public void setProperties(long id, Object[] keyValues) {
+                PropertyHelper.attachProperties(existingNode(id), keyValues);
+            }
+
+            @Override
+            public void addEdge(long outNodeId, String label, long inNodeId, Object[] keyValues) {
+                existingNode(outNodeId).addEdgeSilentInternal(label, existingNode(inNodeId), keyValues);
+            }
+
+            @Override
+            public void setProperty(long id, String key, Object value) {
+                Node node = existingNode(id);
+                if (value == null) node.removePropertyInternal(key);
+                else node.setPropertyInternal(key, value);
+            }
+
+            @Override
+            public void removeNode(long id) {
+                Node node = graph.node(id);
+                if (node != null) node.removeInternal();
+            }
+
+            @Override
+            public void removeEdge(long outNodeId, String label, long inNodeId, int occurrence) {
+                int currentOccurrence = 0;
+                for (Iterator<Edge> edges = existingNode(outNodeId).outE(label); edges.hasNext(); ) {
+                    Edge edge = edges.next();
+                    if (edge.inNode().id() == inNodeId) {
+                        if (currentOccurrence == occurrence) {
+                            edge.removeInternal();
+                            return;
+                        }
+                        currentOccurrence++;
+                    }
+                }
+            }
+        }, committedSequenceNumber);
     }
 
     private static Object remapProperty(Object value, Node[] localToGlobalNode) {
@@ -345,24 +428,35 @@ public class BatchedUpdate {
         private final ModificationListener listener;
         private final ArrayDeque<DetachedNodeData> deferredInitializers = new ArrayDeque<>();
         private final Graph graph;
+        /* null if the change log is disabled */
+        private final ChangeLog.Record changeLogRecord;
         private int nChanges = 0;
 
-        DiffGraphApplier(Graph graph, DiffOrBuilder diff, KeyPool keyPool, ModificationListener listener) {
+        DiffGraphApplier(Graph graph, DiffOrBuilder diff, KeyPool keyPool, ModificationListener listener, ChangeLog.Record changeLogRecord) {
             this.diff = diff;
             this.keyPool = keyPool;
             this.listener = listener;
             this.graph = graph;
+            this.changeLogRecord = changeLogRecord;
         }
 
         AppliedDiff run() {
+            graph.changeLogLock.readLock().lock();
             try {
                 for (Iterator<Change> it = diff.iterator(); it.hasNext(); ) {
                     Change change = it.next();
                     applyChange(change);
                 }
             } finally {
-                if (listener != null)
-                    listener.finish();
+                try {
+                    // also if we failed halfway through: the log must reflect what has been applied to the graph
+                    if (changeLogRecord != null && !changeLogRecord.isEmpty())
+                        graph.appendToChangeLog(changeLogRecord);
+                } finally {
+                    graph.changeLogLock.readLock().unlock();
+                    if (listener != null)
+                        listener.finish();
+                }
             }
             return new AppliedDiff(graph, diff, listener, nChanges);
         }
@@ -380,6 +474,8 @@ public class BatchedUpdate {
                 } else {
                     linkedNode = graph.addNode((Long) linkedNode, detachedNode.label());
                 }
+                if (changeLogRecord != null)
+                    changeLogRecord.addNode(((Node) linkedNode).id(), detachedNode.label());
                 detachedNode.setRefOrId(linkedNode);
                 deferredInitializers.addLast(detachedNode);
             }
@@ -391,6 +487,8 @@ public class BatchedUpdate {
                 DetachedNodeData detachedNode = deferredInitializers.removeFirst();
                 Node actualNode = (Node) detachedNode.getRefOrId();
                 Node.initializeFromDetached(actualNode, detachedNode, this::mapDetached);
+                if (changeLogRecord != null)
+                    recordProperties(changeLogRecord, actualNode);
                 nChanges += 1;
                 if (listener != null) {
                     listener.onAfterInitNewNode(actualNode);
@@ -414,22 +512,30 @@ public class BatchedUpdate {
                 } else {
                     src.addEdgeSilentInternal(create.label, dst, properties);
                 }
+                if (changeLogRecord != null)
+                    changeLogRecord.addEdge(src.id(), create.label, dst.id(), properties);
             } else if (change instanceof RemoveEdge remove) {
                 nChanges += 1;
                 if (listener != null)
                     listener.onBeforeRemoveEdge(remove.edge);
+                if (changeLogRecord != null)
+                    changeLogRecord.removeEdge(remove.edge.outNode().id(), remove.edge.label(), remove.edge.inNode().id(), remove.edge.occurrence());
                 remove.edge.removeInternal();
             } else if (change instanceof RemoveNode remove) {
                 nChanges += 1;
                 if (listener != null)
                     listener.onBeforeRemoveNode(remove.node);
                 remove.node.removeInternal();
+                if (changeLogRecord != null)
+                    changeLogRecord.removeNode(remove.node.id());
 
             } else if (change instanceof SetNodeProperty setProp) {
                 nChanges += 1;
                 if (listener != null)
                     listener.onBeforePropertyChange(setProp.node, setProp.label);
                 setProp.node.setPropertyInternal(setProp.label, setProp.value);
+                if (changeLogRecord != null)
+                    changeLogRecord.setProperty(setProp.node.id(), setProp.label, setProp.node.property(setProp.label));
                 if (listener != null)
                     listener.onAfterPropertyChange(setProp.node, setProp.label, setProp.value);
                 drainDeferred();
@@ -2,6 +2,7 @@ package overflowdb;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 
@@ -20,6 +21,11 @@ public class Config {
     private Optional<Integer> pageSplitSize = Optional.empty();
     private StorageCompressionMode compressionMode = defaultCompressionMode();
     private boolean glossaryPreinitEnabled = true;
+    private Optional<Duration> checkpointInterval = Optional.empty();
+    private boolean changeLogEnabled = false;
+    private int storageShards = 1;
+    private Optional<BackgroundCompaction> backgroundCompaction = Optional.empty();
+    private Optional<Integer> indexAutoCreationThreshold = Optional.empty();
 
     /** The storage compression mode, overridable via {@code -Dodb.storage.compression=none|lzf|deflate}.
      *
@@ -180,6 +186,95 @@ public class Config {
         return glossaryPreinitEnabled;
     }
 
+    /**
+     * If specified (and a storage location is set), the graph runs {@link Graph#checkpoint()} in the background
+     * at this interval, so that a crash loses at most the changes since the last checkpoint rather than
+     * everything since the graph was opened.
+     */
+    public Config withCheckpointInterval(Duration interval) {
+        if (interval != null && (interval.isNegative() || interval.isZero()))
+            throw new IllegalArgumentException("checkpoint interval must be positive, but was " + interval);
+        this.checkpointInterval = Optional.ofNullable(interval);
+        return this;
+    }
+
+    public Optional<Duration> getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * If enabled (and a storage location is set), every diff applied via {@link BatchedUpdate} is appended to a
+     * write-ahead change log next to the storage file before `applyDiff` returns, and replayed when the graph is
+     * reopened. Makes small incremental updates durable without rewriting the affected nodes.
+     * Direct mutations (e.g. {@link Graph#addNode} or {@link Node#setProperty}) are not logged, i.e. they're only
+     * durable once they've been checkpointed. Logged diffs must not refer to nodes that were created directly since
+     * the last checkpoint: the log can't be replayed after a crash otherwise.
+     * The log is truncated whenever the graph state is committed, i.e. on {@link Graph#checkpoint()} and on close.
+     * Requires overflow to be disabled (see {@link #disableOverflow()}): the log is replayed on top of the last
+     * checkpoint, so the storage must not commit spilled nodes in between.
+     */
+    public Config withChangeLogEnabled(boolean enabled) {
+        this.changeLogEnabled = enabled;
+        return this;
+    }
+
+    public boolean isChangeLogEnabled() {
+        return changeLogEnabled;
+    }
+
+    /**
+     * Number of storage shards for nodes, defaults to 1. Each shard is a separate mvstore file (next to the storage
+     * location) with its own writer, nodes are assigned to shards by their id. That way spilling and persisting
+     * nodes runs in parallel, one thread per shard, which pays off on fast disks. The glossary, indexes and metadata
+     * always stay in the primary storage file.
+     * Only applies when a storage is created: an existing storage keeps the shard count it was created with.
+     */
+    public Config withStorageShards(int shardCount) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("shard count must be at least 1, but was " + shardCount);
+        this.storageShards = shardCount;
+        return this;
+    }
+
+    public int getStorageShards() {
+        return storageShards;
+    }
+
+    /**
+     * If specified, the storage is compacted on a background thread once no nodes have been written for `idleTime`,
+     * until `targetFillRate` (in percent) of the storage files is live data, for at most 2 seconds per run.
+     * Opportunistic compaction on the writing thread (i.e. during spills) is disabled in that case.
+     * Every run is part of a checkpoint, see {@link Graph#compact}.
+     */
+    public Config withBackgroundCompaction(Duration idleTime, int targetFillRate) {
+        return withBackgroundCompaction(idleTime, targetFillRate, BackgroundCompaction.DEFAULT_TIME_BUDGET);
+    }
+
+    public Config withBackgroundCompaction(Duration idleTime, int targetFillRate, Duration timeBudget) {
+        this.backgroundCompaction = Optional.of(new BackgroundCompaction(idleTime, targetFillRate, timeBudget));
+        return this;
+    }
+
+    public Optional<BackgroundCompaction> getBackgroundCompaction() {
+        return backgroundCompaction;
+    }
+
+    /**
+     * If specified, a property index is created automatically once traversals scanned nodes for a value of an
+     * unindexed property this many times (a range index if any of those scans was for a range of values).
+     * Unindexed scans are recorded either way, see {@link IndexManager#getUnindexedScanReport()}.
+     */
+    public Config withIndexAutoCreationThreshold(int unindexedScans) {
+        if (unindexedScans < 1)
+            throw new IllegalArgumentException("threshold must be at least 1, but was " + unindexedScans);
+        this.indexAutoCreationThreshold = Optional.of(unindexedScans);
+        return this;
+    }
+
+    public Optional<Integer> getIndexAutoCreationThreshold() {
+        return indexAutoCreationThreshold;
+    }
+
 
     // Enum for file system types
     public enum FileSystemType {
@@ -216,6 +311,24 @@ public class Config {
         }
     }
 
+    public static class BackgroundCompaction {
+        public static final Duration DEFAULT_TIME_BUDGET = Duration.ofSeconds(2);
+
+        public final Duration idleTime;
+        public final int targetFillRate;
+        public final Duration timeBudget;
+
+        public BackgroundCompaction(Duration idleTime, int targetFillRate, Duration timeBudget) {
+            if (idleTime.isNegative() || idleTime.isZero())
+                throw new IllegalArgumentException("idle time must be positive, but was " + idleTime);
+            if (targetFillRate < 0 || targetFillRate > 100)
+                throw new IllegalArgumentException("target fill rate must be between 0 and 100, but was " + targetFillRate);
+            this.idleTime = idleTime;
+            this.targetFillRate = targetFillRate;
+            this.timeBudget = timeBudget;
+        }
+    }
+
     public enum StorageCompressionMode {
         NONE,
         LZF,
@@ -114,8 +114,9 @@ public abstract class Edge extends Element {
   @Override
   protected void removeImpl() {
     fixupBlockOffsets();
-    outNode.get().removeEdge(Direction.OUT, label(), outBlockOffset);
+    boolean removed = outNode.get().removeEdge(Direction.OUT, label(), outBlockOffset);
     inNode.get().removeEdge(Direction.IN, label(), inBlockOffset);
+    if (removed) graph.edgeCounts.decrement(label);
   }
 
   @Override
@@ -212,6 +213,18 @@ public abstract class Edge extends Element {
     return Objects.hash(inNode.id(), outNode.id(), label);
   }
 
+  /**
+   * If there are multiple edges with the same label between the same two nodes, this differentiates between them.
+   * Both nodes use the same occurrence for the same edge.
+   */
+  int occurrence() {
+    if (outBlockOffset != UNINITIALIZED_BLOCK_OFFSET) {
+      return outNode.get().blockOffsetToOccurrence(Direction.OUT, label(), inNode, outBlockOffset);
+    } else {
+      return inNode.get().blockOffsetToOccurrence(Direction.IN, label(), outNode, inBlockOffset);
+    }
+  }
+
   private void fixupBlockOffsetsIfNecessary(Edge otherEdge) {
     if ((this.inBlockOffset == UNINITIALIZED_BLOCK_OFFSET ||
         otherEdge.inBlockOffset == UNINITIALIZED_BLOCK_OFFSET) &&
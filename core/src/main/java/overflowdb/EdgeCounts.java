@@ -0,0 +1,97 @@
+package overflowdb;
+
+import overflowdb.storage.OdbStorage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of edges per label, maintained as edges are added and removed, so that {@link Graph#edgeCount()} and
+ * {@link Graph#edgeCountByLabel()} don't need to visit (and possibly load) every node. The counters are striped
+ * ({@link LongAdder}), so that concurrent writers don't contend on a single counter, and indexed by label ordinal.
+ *
+ * The counts are persisted in the storage metadata on checkpoint and close. A storage that doesn't have them yet
+ * (e.g. written by an older version) is counted once when the graph is opened.
+ */
+final class EdgeCounts {
+  private volatile LongAdder[] countByLabelOrdinal = new LongAdder[0];
+
+  void increment(String label) {
+    counter(Ordinals.ofLabel(label)).increment();
+  }
+
+  void decrement(String label) {
+    counter(Ordinals.ofLabel(label)).decrement();
+  }
+
+  long total() {
+    long total = 0;
+    for (LongAdder count : countByLabelOrdinal) {
+      if (count != null) total += count.sum();
+    }
+    return total;
+  }
+
+  /** @return number of edges by label, for all labels that have edges */
+  Map<String, Long> byLabel() {
+    final LongAdder[] countByLabelOrdinal = this.countByLabelOrdinal;
+    final Map<String, Long> counts = new HashMap<>();
+    for (int labelOrdinal = 0; labelOrdinal < countByLabelOrdinal.length; labelOrdinal++) {
+      final LongAdder count = countByLabelOrdinal[labelOrdinal];
+      if (count != null && count.sum() > 0) counts.put(Ordinals.label(labelOrdinal), count.sum());
+    }
+    return counts;
+  }
+
+  void storeCounts(OdbStorage storage) {
+    storage.persistEdgeCounts(byLabel());
+  }
+
+  /**
+   * Initializes the counts from the given storage, which must have been loaded into the given graph already.
+   * Must be called before any edges are added or removed.
+   */
+  void initializeFromStorage(OdbStorage storage, Graph graph) {
+    final Map<String, Long> persisted = storage.getEdgeCounts();
+    if (persisted != null) {
+      persisted.forEach((label, count) -> counter(Ordinals.ofLabel(label)).add(count));
+    } else {
+      final EdgeCursor outEdges = new EdgeCursor();
+      final Iterator<Node> nodes = graph.nodes();
+      while (nodes.hasNext()) {
+        outEdges.reset(nodes.next(), Direction.OUT);
+        while (outEdges.next()) {
+          counter(outEdges.labelOrdinal()).increment();
+        }
+      }
+    }
+  }
+
+  private LongAdder counter(int labelOrdinal) {
+    final LongAdder[] countByLabelOrdinal = this.countByLabelOrdinal;
+    if (labelOrdinal < countByLabelOrdinal.length) {
+      final LongAdder count = countByLabelOrdinal[labelOrdinal];
+      if (count != null) return count;
+    }
+    return allocateCounter(labelOrdinal);
+  }
+
+  /* all writes to `countByLabelOrdinal` happen here, so that concurrently allocated counters don't get lost */
+  private synchronized LongAdder allocateCounter(int labelOrdinal) {
+    LongAdder[] countByLabelOrdinal = this.countByLabelOrdinal;
+    if (labelOrdinal >= countByLabelOrdinal.length) {
+      countByLabelOrdinal = Arrays.copyOf(countByLabelOrdinal, Math.max(labelOrdinal + 1, countByLabelOrdinal.length * 2));
+    } else if (countByLabelOrdinal[labelOrdinal] != null) {
+      return countByLabelOrdinal[labelOrdinal];
+    } else {
+      countByLabelOrdinal = countByLabelOrdinal.clone();
+    }
+    final LongAdder count = new LongAdder();
+    countByLabelOrdinal[labelOrdinal] = count;
+    this.countByLabelOrdinal = countByLabelOrdinal;
+    return count;
+  }
+}
@@ -0,0 +1,188 @@
+package overflowdb;
+
+/**
+ * Walks over the adjacent edges of a node without instantiating an {@link Edge} per edge: the cursor is positioned
+ * on one edge at a time, and exposes the adjacent node, label and properties of that edge. A cursor can be
+ * {@link #reset} to another node any number of times, i.e. a traversal that holds on to one cursor (or e.g. one per
+ * level of a depth first search) doesn't allocate anything per node or edge.
+ *
+ * Like the edge iterators, a cursor reads the adjacency arrays of the node without locking, i.e. it may or may not see
+ * concurrent modifications. Not thread-safe.
+ *
+ * <pre>{@code
+ * EdgeCursor cursor = new EdgeCursor();
+ * for (Node node : nodes) {
+ *   cursor.reset(node, Direction.OUT, "CFG");
+ *   while (cursor.next()) {
+ *     process(cursor.adjacentNode(), cursor.property("WEIGHT"));
+ *   }
+ * }
+ * }</pre>
+ */
+public final class EdgeCursor {
+  private NodeDb node;
+  private String[] labelFilter;
+  /* used instead of `labelFilter` if the cursor was reset to a label ordinal */
+  private final int[] labelOrdinalFilter = new int[1];
+  private boolean continueWithIn;
+
+  private Direction direction;
+  private String[] labels;
+  private int[] labelOrdinals;
+  private int nextLabelIndex;
+
+  private int labelOrdinal;
+  private Object[] array;
+  private int blockStart;
+  private int exclusiveEnd;
+  private int strideSize;
+  private int current;
+
+  /**
+   * Positions the cursor before the first edge of the given node.
+   * @param direction OUT, IN or BOTH (all OUT edges first, then all IN edges)
+   * @param edgeLabels the edge labels to follow - all if none are given
+   */
+  public EdgeCursor reset(Node node, Direction direction, String... edgeLabels) {
+    this.labelFilter = edgeLabels;
+    return reset(node, direction);
+  }
+
+  /**
+   * Positions the cursor before the first edge of the given node with the given label.
+   * @param direction OUT, IN or BOTH (all OUT edges first, then all IN edges)
+   * @param edgeLabelOrdinal see {@link Ordinals}
+   */
+  public EdgeCursor reset(Node node, Direction direction, int edgeLabelOrdinal) {
+    this.labelFilter = null;
+    this.labelOrdinalFilter[0] = edgeLabelOrdinal;
+    return reset(node, direction);
+  }
+
+  private EdgeCursor reset(Node node, Direction direction) {
+    this.node = node instanceof NodeRef ? ((NodeRef<?>) node).get() : (NodeDb) node;
+    if (direction == Direction.BOTH) {
+      continueWithIn = true;
+      startDirection(Direction.OUT);
+    } else {
+      continueWithIn = false;
+      startDirection(direction);
+    }
+    return this;
+  }
+
+  /** @return true if the cursor moved on to the next edge, false if there are no more edges */
+  public boolean next() {
+    if (node == null) return false;
+    while (true) {
+      current += strideSize;
+      while (current < exclusiveEnd && array[current] == null) {
+        // there may be holes, e.g. if an edge was removed
+        current += strideSize;
+      }
+      if (current < exclusiveEnd) return true;
+
+      if (!startNextLabel()) {
+        if (!continueWithIn) {
+          node = null;
+          return false;
+        }
+        continueWithIn = false;
+        startDirection(Direction.IN);
+      }
+    }
+  }
+
+  /** the node at the other end of the current edge */
+  public Node adjacentNode() {
+    return (Node) array[current];
+  }
+
+  public String label() {
+    return Ordinals.label(labelOrdinal);
+  }
+
+  /** ordinal of the label of the current edge, see {@link Ordinals} */
+  public int labelOrdinal() {
+    return labelOrdinal;
+  }
+
+  /** direction of the current edge, from the perspective of the node this cursor was reset to */
+  public Direction direction() {
+    return direction;
+  }
+
+  /** @return the property value of the current edge, or null if the edge doesn't have it */
+  public Object property(String key) {
+    return property(Ordinals.lookupPropertyKey(key));
+  }
+
+  @SuppressWarnings("unchecked")
+  public <A> A property(PropertyKey<A> key) {
+    return (A) property(key.ordinal);
+  }
+
+  /** @return the property value of the current edge by property key ordinal, or null if the edge doesn't have it */
+  public Object property(int propertyKeyOrdinal) {
+    final int offset =
+        node.layoutInformation().getEdgePropertyOffsetRelativeToAdjacentNodeRef(labelOrdinal, propertyKeyOrdinal);
+    return offset == -1 ? null : array[current + offset];
+  }
+
+  /** instantiates the current edge, for cases that need an actual {@link Edge} after all */
+  public Edge edge() {
+    final NodeRef<?> otherRef = (NodeRef<?>) array[current];
+    final String label = label();
+    final Edge edge;
+    if (direction == Direction.OUT) {
+      edge = node.instantiateDummyEdge(label, node.ref, otherRef);
+      edge.setOutBlockOffset(current - blockStart);
+    } else {
+      edge = node.instantiateDummyEdge(label, otherRef, node.ref);
+      edge.setInBlockOffset(current - blockStart);
+    }
+    return edge;
+  }
+
+  private void startDirection(Direction direction) {
+    this.direction = direction;
+    if (labelFilter == null) {
+      this.labels = null;
+      this.labelOrdinals = labelOrdinalFilter;
+    } else if (labelFilter.length == 0) {
+      this.labels = null;
+      this.labelOrdinals = direction == Direction.OUT
+          ? node.layoutInformation().allowedOutEdgeLabelOrdinals()
+          : node.layoutInformation().allowedInEdgeLabelOrdinals();
+    } else {
+      this.labels = labelFilter;
+      this.labelOrdinals = null;
+    }
+    this.nextLabelIndex = 0;
+    this.exclusiveEnd = 0;
+    this.current = 0;
+    this.strideSize = 0;
+  }
+
+  /** @return false if there are no more labels to go through in the current direction */
+  private boolean startNextLabel() {
+    final int labelCount = labelOrdinals != null ? labelOrdinals.length : labels.length;
+    while (nextLabelIndex < labelCount) {
+      final int labelOrdinal = labelOrdinals != null
+          ? labelOrdinals[nextLabelIndex++]
+          : Ordinals.lookupLabel(labels[nextLabelIndex++]);
+      final int offsetPos = node.getPositionInEdgeOffsets(direction, labelOrdinal);
+      if (offsetPos != -1) {
+        final AdjacentNodes adjacentNodes = node.getAdjacentNodes();
+        this.labelOrdinal = labelOrdinal;
+        this.array = adjacentNodes.nodesWithEdgeProperties;
+        this.strideSize = node.layoutInformation().getEdgePropertyCountByOffsetPos(offsetPos) + 1;
+        this.blockStart = node.startIndex(adjacentNodes, offsetPos);
+        this.exclusiveEnd = Math.min(array.length, blockStart + node.blockLength(adjacentNodes, offsetPos));
+        this.current = blockStart - strideSize;
+        return true;
+      }
+    }
+    return false;
+  }
+}
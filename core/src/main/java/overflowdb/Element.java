@@ -15,6 +15,11 @@ public abstract class Element {
 
   public abstract <A> A property(PropertyKey<A> key);
 
+  /** property by key ordinal, see {@link Ordinals} - element classes may override this to avoid the string lookup */
+  public Object property(int propertyKeyOrdinal) {
+    return property(Ordinals.propertyKey(propertyKeyOrdinal));
+  }
+
   @SuppressWarnings("unchecked")
   public <A> A property(String key, A defaultValue) {
     Object value = property(key);
@@ -1,7 +1,7 @@
 package overflowdb;
 
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.hash.TObjectIntHashMap;
+import overflowdb.storage.ChangeLog;
+import overflowdb.storage.CompactionResult;
 import overflowdb.storage.NodeDeserializer;
 import overflowdb.storage.NodeSerializer;
 import overflowdb.storage.NodesWriter;
@@ -9,8 +9,13 @@ import overflowdb.storage.OdbStorage;
 import overflowdb.util.*;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -19,6 +24,10 @@ public final class Graph implements AutoCloseable {
     private final AtomicLong currentId = new AtomicLong(-1L);
     final NodesList nodes = new NodesList();
     public final IndexManager indexManager = new IndexManager(this);
+    final EdgeCounts edgeCounts = new EdgeCounts();
+    /* null until collected (or loaded from storage) */
+    private volatile GraphStatistics statistics;
+    private GraphStatistics persistedStatistics;
     private final Config config;
     private volatile boolean closed = false;
 
@@ -32,6 +41,13 @@ public final class Graph implements AutoCloseable {
     private final boolean overflowEnabled;
     private final ReferenceManager referenceManager;
     private final NodesWriter nodesWriter;
+    private final Object maintenanceLock = new Object();
+    private final ScheduledExecutorService maintenanceScheduler;
+    /* null if the change log is disabled */
+    private final ChangeLog changeLog;
+    /* batched updates hold the read lock while applying and logging a diff - a checkpoint holds the write lock,
+     * so that all logged diffs are contained in the checkpoint when the log is truncated */
+    final ReentrantReadWriteLock changeLogLock = new ReentrantReadWriteLock();
 
     /**
      * @param convertPropertyForPersistence applied to all element property values by @{@link NodeSerializer} prior
@@ -59,10 +75,17 @@ public final class Graph implements AutoCloseable {
                   Map<String, NodeFactory<?>> nodeFactoryByLabel,
                   Map<String, EdgeFactory<?>> edgeFactoryByLabel,
                   Function<Object, Object> convertPropertyForPersistence) {
+        if (config.isChangeLogEnabled() && config.isOverflowEnabled() && config.getStorageLocation().isPresent()) {
+            throw new IllegalArgumentException("the change log can't be combined with overflow: spilled nodes are " +
+                "committed to the storage at any time, i.e. the log could no longer be replayed on top of it");
+        }
         this.config = config;
         this.nodeFactoryByLabel = nodeFactoryByLabel;
         this.edgeFactoryByLabel = edgeFactoryByLabel;
         this.stringInterner = new StringInterner();
+        // edge labels and property keys of the node layouts already have their ordinals, see `Ordinals`
+        nodeFactoryByLabel.keySet().forEach(Ordinals::ofLabel);
+        edgeFactoryByLabel.keySet().forEach(Ordinals::ofLabel);
 
         this.storage = config.getStorageLocation().isPresent()
                 ? OdbStorage.createWithSpecificLocation(config.getStorageLocation().get().toFile(), stringInterner, config)
@@ -83,7 +106,11 @@ public final class Graph implements AutoCloseable {
         this.nodeDeserializer = new NodeDeserializer(this, nodeFactoryByLabel, config.isSerializationStatsEnabled(), storage);
         this.nodeSerializer = new NodeSerializer(config.isSerializationStatsEnabled(), storage, convertPropertyForPersistence);
         this.nodesWriter = new NodesWriter(nodeSerializer, storage);
-        config.getStorageLocation().ifPresent(l -> initElementCollections(storage));
+        if (config.getStorageLocation().isPresent()) {
+            indexManager.trackDirtyValues();
+            initElementCollections(storage);
+        }
+        config.getIndexAutoCreationThreshold().ifPresent(indexManager::setAutoCreationThreshold);
 
         this.overflowEnabled = config.isOverflowEnabled();
         if (this.overflowEnabled) {
@@ -96,6 +123,42 @@ public final class Graph implements AutoCloseable {
         } else {
             this.referenceManager = null; // not using Optional only due to performance reasons - it's invoked *a lot*
         }
+
+        // after the reference manager is in place, because counting the edges of an older storage loads all nodes
+        if (config.getStorageLocation().isPresent()) {
+            edgeCounts.initializeFromStorage(storage, this);
+            this.statistics = loadStatistics();
+            this.persistedStatistics = statistics;
+        }
+
+        if (config.getStorageLocation().isPresent() && config.isChangeLogEnabled()) {
+            this.changeLog = ChangeLog.open(ChangeLog.pathFor(storage.getStorageFile()), nodeSerializer, nodeDeserializer);
+            try {
+                BatchedUpdate.replayChangeLog(this, changeLog, storage.getChangeLogSequenceNumber());
+            } catch (RuntimeException e) {
+                // release the files, so that the graph can be opened again, e.g. after removing the change log
+                changeLog.close();
+                storage.close();
+                throw e;
+            }
+        } else {
+            this.changeLog = null;
+        }
+
+        boolean checkpointsEnabled = config.getStorageLocation().isPresent() && config.getCheckpointInterval().isPresent();
+        if (checkpointsEnabled || config.getBackgroundCompaction().isPresent()) {
+            this.maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("overflowdb-maintenance"));
+            if (checkpointsEnabled) {
+                long intervalMillis = config.getCheckpointInterval().get().toMillis();
+                this.maintenanceScheduler.scheduleWithFixedDelay(this::checkpointQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+            config.getBackgroundCompaction().ifPresent(compaction -> {
+                long idleMillis = compaction.idleTime.toMillis();
+                this.maintenanceScheduler.scheduleWithFixedDelay(() -> compactIfIdle(compaction), idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+            });
+        } else {
+            this.maintenanceScheduler = null;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -250,23 +313,133 @@ public final class Graph implements AutoCloseable {
     }
 
     private void shutdownNow() {
-        try {
-            if (config.getStorageLocation().isPresent()) {
-
-                /* persist to disk: if overflow is enabled, ReferenceManager takes care of that
-                 * otherwise: persist all nodes here */
-                indexManager.storeIndexes(storage);
+        if (maintenanceScheduler != null) {
+            // not interrupting a running checkpoint: an interrupt during a write would close the underlying file channel
+            maintenanceScheduler.shutdown();
+        }
+        synchronized (maintenanceLock) {
+            try {
+                if (config.getStorageLocation().isPresent()) {
+
+                    /* persist to disk: if overflow is enabled, ReferenceManager takes care of that
+                     * otherwise: persist all nodes here */
+                    indexManager.storeIndexes(storage);
+                    edgeCounts.storeCounts(storage);
+                    storeStatistics();
+                    if (changeLog != null) storage.setChangeLogSequenceNumber(changeLog.lastSequenceNumber());
+                    if (referenceManager != null) {
+                        referenceManager.clearAllReferences();
+                    } else {
+                        nodes.persistAll(nodesWriter);
+                    }
+                }
+            } finally {
                 if (referenceManager != null) {
-                    referenceManager.clearAllReferences();
-                } else {
-                    nodes.persistAll(nodesWriter);
+                    referenceManager.close();
+                }
+                storage.close();
+                if (changeLog != null) {
+                    changeLog.close();
                 }
             }
-        } finally {
-            if (referenceManager != null) {
-                referenceManager.close();
+            // everything is committed to the storage now
+            if (changeLog != null) {
+                changeLog.delete();
+            }
+        }
+    }
+
+    /**
+     * Persists the current state to the configured storage location without closing the graph: writes all dirty
+     * nodes, all dirty indexes and the string glossary, then commits a new storage version. If the process dies
+     * afterwards, reopening the storage location restores the graph as of this checkpoint.
+     *
+     * Nodes remain in memory, and mutators are not blocked while the checkpoint runs: a node is marked clean before
+     * it is serialized, so a concurrent modification simply marks it dirty again for the next checkpoint.
+     * The only exception is the change log (see {@link Config#withChangeLogEnabled}): it is truncated by the
+     * checkpoint, so batched updates wait until a running checkpoint is complete.
+     *
+     * No-op if no storage location is configured, or if the graph is closed.
+     * @return number of nodes written
+     */
+    public int checkpoint() {
+        if (!config.getStorageLocation().isPresent()) return 0;
+        synchronized (maintenanceLock) {
+            if (isClosed()) return 0;
+            if (changeLog != null) changeLogLock.writeLock().lock();
+            try {
+                int writtenCount = commitCheckpoint();
+                if (changeLog != null) changeLog.truncate();
+                return writtenCount;
+            } finally {
+                if (changeLog != null) changeLogLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /* must be called holding the maintenance lock and (if the change log is enabled) the change log's write lock */
+    private int commitCheckpoint() {
+        int writtenCount = nodes.persistDirty(nodesWriter);
+        indexManager.storeIndexes(storage);
+        edgeCounts.storeCounts(storage);
+        storeStatistics();
+        if (changeLog != null) storage.setChangeLogSequenceNumber(changeLog.lastSequenceNumber());
+        storage.flush();
+        return writtenCount;
+    }
+
+    /**
+     * Compacts the storage as part of a checkpoint, see {@link #checkpoint()} and {@link OdbStorage#compact}: the
+     * checkpoint is committed first, then the storage is compacted, and only then is the change log truncated.
+     * Batched updates (if the change log is enabled) and all writes to the storage, e.g. spilled nodes, wait until
+     * compaction is complete.
+     * @return `null` if the graph is closed
+     */
+    public CompactionResult compact(int targetFillRate, Duration timeBudget) {
+        synchronized (maintenanceLock) {
+            if (isClosed()) return null;
+            if (changeLog != null) changeLogLock.writeLock().lock();
+            try {
+                if (config.getStorageLocation().isPresent()) commitCheckpoint();
+                CompactionResult result = storage.compact(targetFillRate, timeBudget);
+                if (changeLog != null) changeLog.truncate();
+                return result;
+            } finally {
+                if (changeLog != null) changeLogLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Compacts the storage if there haven't been any writes for the configured idle time, i.e. it usually doesn't
+     * compete with spilling nodes to disk - if it does, spilling waits, see {@link #compact}.
+     */
+    private void compactIfIdle(Config.BackgroundCompaction compaction) {
+        try {
+            synchronized (maintenanceLock) {
+                if (!isClosed() && storage.timeSinceLastWrite().compareTo(compaction.idleTime) >= 0) {
+                    compact(compaction.targetFillRate, compaction.timeBudget);
+                }
             }
-            storage.close();
+        } catch (RuntimeException e) {
+            // an exception would cancel all future runs - rather try again next time
+        }
+    }
+
+    /** @return a new record for the change log, or `null` if the change log is disabled */
+    ChangeLog.Record newChangeLogRecord() {
+        return changeLog == null ? null : changeLog.newRecord();
+    }
+
+    void appendToChangeLog(ChangeLog.Record record) {
+        changeLog.append(record);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            // an exception would cancel all future runs - rather try again next time, `close` persists everything anyway
         }
     }
 
@@ -290,35 +463,67 @@ public final class Graph implements AutoCloseable {
         return counts;
     }
 
-    /** calculates the number of edges in the graph
-     * Note: this is an expensive operation, because edges are stored as part of the nodes
-     */
+    /** overall number of edges - maintained as edges are added and removed, i.e. this doesn't visit any nodes */
     public int edgeCount() {
-        int edgeCount = 0;
-        final Iterator<Node> nodes = nodes();
-        while (nodes.hasNext()) {
-            NodeDb node = getNodeDb(nodes.next());
-            edgeCount += node.outEdgeCount();
-        }
-        return edgeCount;
+        return (int) edgeCounts.total();
     }
 
-    /** number of edges grouped by label */
+    /** number of edges grouped by label - maintained as edges are added and removed, i.e. this doesn't visit any nodes */
     public Map<String, Integer> edgeCountByLabel() {
-        TObjectIntHashMap<String> counts = new TObjectIntHashMap<>();
-        edges().forEachRemaining(edge ->
-                counts.adjustOrPutValue(edge.label(), 1, 1)
-        );
-
+        Map<String, Long> counts = edgeCounts.byLabel();
         Map<String, Integer> ret = new HashMap<>(counts.size());
-        TObjectIntIterator<String> iterator = counts.iterator();
-        while (iterator.hasNext()) {
-            iterator.advance();
-            ret.put(iterator.key(), iterator.value());
-        }
+        counts.forEach((label, count) -> ret.put(label, count.intValue()));
         return ret;
     }
 
+    /**
+     * @return the statistics as of the last {@link #updateStatistics} - which may have been before the graph was last
+     * closed, since they're persisted - or empty if they were never collected
+     */
+    public Optional<GraphStatistics> statistics() {
+        return Optional.ofNullable(statistics);
+    }
+
+    /** Collects new statistics, see {@link GraphStatistics}, sampling up to {@link GraphStatistics#DEFAULT_SAMPLE_SIZE} nodes per label */
+    public GraphStatistics updateStatistics() {
+        return updateStatistics(GraphStatistics.DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Collects new statistics, see {@link GraphStatistics}, which replace the current ones and are persisted with
+     * the next checkpoint (or on close). Loads the sampled nodes, but doesn't block concurrent writers.
+     * @param sampleSize maximum number of nodes per label to inspect for the sampled statistics
+     */
+    public GraphStatistics updateStatistics(int sampleSize) {
+        GraphStatistics statistics = GraphStatistics.collect(this, sampleSize);
+        this.statistics = statistics;
+        return statistics;
+    }
+
+    private GraphStatistics loadStatistics() {
+        byte[] bytes = storage.getStatistics();
+        if (bytes == null) return null;
+        try {
+            return GraphStatistics.deserialize(bytes);
+        } catch (IOException e) {
+            // they're just statistics, and can be collected again
+            return null;
+        }
+    }
+
+    /* must be called holding the maintenance lock */
+    private void storeStatistics() {
+        GraphStatistics statistics = this.statistics;
+        if (statistics != null && statistics != persistedStatistics) {
+            try {
+                storage.persistStatistics(statistics.serialize());
+                persistedStatistics = statistics;
+            } catch (IOException e) {
+                throw new RuntimeException("error while serializing graph statistics", e);
+            }
+        }
+    }
+
     /** Iterator over all edges - alias for `edges` */
     public Iterator<Edge> E() {
         return edges();
@@ -426,6 +631,7 @@ public final class Graph implements AutoCloseable {
             node.outE().forEachRemaining(edge -> {
                 NodeRef<?> other = (NodeRef<?>) destination.node(edge.inNode().id());
                 mapped.storeAdjacentNode(Direction.OUT, edge.label(), other, PropertyHelper.toKeyValueArray(edge.propertiesMap()));
+                destination.edgeCounts.increment(edge.label());
             });
             node.inE().forEachRemaining(edge -> {
                 NodeRef<?> other = (NodeRef<?>) destination.node(edge.outNode().id());
@@ -449,13 +655,6 @@ public final class Graph implements AutoCloseable {
             return ((NodeDb) node).ref;
     }
 
-    private NodeDb getNodeDb(Node node) {
-        if (node instanceof NodeDb)
-            return (NodeDb) node;
-        else
-            return ((NodeRef) node).get();
-    }
-
     public void persistLibraryVersion(String name, String version) {
         storage.persistLibraryVersion(name, version);
     }
@@ -0,0 +1,375 @@
+package overflowdb;
+
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import overflowdb.util.HyperLogLog;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of statistics about the contents of a graph, per node label: the number of nodes, their
+ * average serialized size, how many of them have a value for each property, the degree distribution for each edge
+ * label, and the number of distinct values of each indexed property. Created by {@link Graph#updateStatistics},
+ * persisted on checkpoint and close, and used by the traversal layer to decide which property filter to apply first.
+ *
+ * Everything that would require loading every node is sampled: only up to `sampleSize` evenly spread nodes per
+ * label are inspected. The distinct values are estimated via {@link HyperLogLog} from the property indexes, which
+ * doesn't load any nodes. The snapshot isn't updated as the graph changes, see {@link #createdAtMillis}.
+ */
+public final class GraphStatistics {
+  public static final int DEFAULT_SAMPLE_SIZE = 1000;
+  private static final int FORMAT_VERSION = 1;
+
+  public final long createdAtMillis;
+  public final int sampleSize;
+  private final Map<String, LabelStatistics> byLabel;
+
+  private GraphStatistics(long createdAtMillis, int sampleSize, Map<String, LabelStatistics> byLabel) {
+    this.createdAtMillis = createdAtMillis;
+    this.sampleSize = sampleSize;
+    this.byLabel = Collections.unmodifiableMap(byLabel);
+  }
+
+  /** @return all node labels that had nodes when the statistics were collected */
+  public Set<String> labels() {
+    return byLabel.keySet();
+  }
+
+  /** @return the statistics of the given node label, or null if there were no such nodes */
+  public LabelStatistics forLabel(String label) {
+    return byLabel.get(label);
+  }
+
+  /**
+   * @return the estimated number of nodes with given label and any single value of the given property, or -1 if
+   * there are no statistics for the label. Lower is more selective.
+   */
+  public double estimatedNodesPerValue(String label, String propertyKey) {
+    final LabelStatistics statistics = byLabel.get(label);
+    return statistics == null ? -1 : statistics.estimatedNodesPerValue(propertyKey);
+  }
+
+  static GraphStatistics collect(Graph graph, int sampleSize) {
+    if (sampleSize < 1) throw new IllegalArgumentException("sampleSize must be positive, but was " + sampleSize);
+    final Map<String, LabelStatistics> byLabel = new HashMap<>();
+    for (String label : graph.nodes.nodeLabels()) {
+      byLabel.put(label, LabelStatistics.collect(graph, label, sampleSize));
+    }
+    final Map<String, Map<String, HyperLogLog>> distinctValuesByLabel = new HashMap<>();
+    for (String propertyKey : graph.indexManager.getIndexedNodeProperties()) {
+      graph.indexManager.forEachIndexEntry(propertyKey, (value, nodeRef) ->
+          distinctValuesByLabel
+              .computeIfAbsent(nodeRef.label(), label -> new HashMap<>())
+              .computeIfAbsent(propertyKey, key -> new HyperLogLog())
+              .add(value));
+    }
+    distinctValuesByLabel.forEach((label, sketches) -> {
+      final LabelStatistics statistics = byLabel.get(label);
+      if (statistics != null) sketches.forEach((key, sketch) -> statistics.distinctValues.put(key, sketch.estimate()));
+    });
+    return new GraphStatistics(System.currentTimeMillis(), sampleSize, byLabel);
+  }
+
+  byte[] serialize() throws IOException {
+    try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+      packer.packInt(FORMAT_VERSION);
+      packer.packLong(createdAtMillis);
+      packer.packInt(sampleSize);
+      packer.packMapHeader(byLabel.size());
+      for (LabelStatistics statistics : byLabel.values()) {
+        statistics.pack(packer);
+      }
+      return packer.toByteArray();
+    }
+  }
+
+  /** @return the deserialized statistics, or null if they were written in a different format */
+  static GraphStatistics deserialize(byte[] bytes) throws IOException {
+    try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(bytes)) {
+      if (unpacker.unpackInt() != FORMAT_VERSION) return null;
+      final long createdAtMillis = unpacker.unpackLong();
+      final int sampleSize = unpacker.unpackInt();
+      final int labelCount = unpacker.unpackMapHeader();
+      final Map<String, LabelStatistics> byLabel = new HashMap<>(labelCount);
+      for (int i = 0; i < labelCount; i++) {
+        final LabelStatistics statistics = LabelStatistics.unpack(unpacker);
+        byLabel.put(statistics.label, statistics);
+      }
+      return new GraphStatistics(createdAtMillis, sampleSize, byLabel);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "GraphStatistics[createdAtMillis=" + createdAtMillis + "; sampleSize=" + sampleSize + "; labels=" + byLabel.keySet() + "]";
+  }
+
+  public static final class LabelStatistics {
+    public final String label;
+    public final long nodeCount;
+    /** number of nodes that the sampled statistics are based on */
+    public final int sampledNodeCount;
+    /** in bytes, as written to storage by {@link overflowdb.storage.NodeSerializer} */
+    public final double averageSerializedSize;
+    private final Map<String, Double> fillRates;
+    private final Map<String, DegreeHistogram> outDegrees;
+    private final Map<String, DegreeHistogram> inDegrees;
+    private final Map<String, Long> distinctValues;
+
+    private LabelStatistics(String label, long nodeCount, int sampledNodeCount, double averageSerializedSize,
+                            Map<String, Double> fillRates,
+                            Map<String, DegreeHistogram> outDegrees,
+                            Map<String, DegreeHistogram> inDegrees,
+                            Map<String, Long> distinctValues) {
+      this.label = label;
+      this.nodeCount = nodeCount;
+      this.sampledNodeCount = sampledNodeCount;
+      this.averageSerializedSize = averageSerializedSize;
+      this.fillRates = fillRates;
+      this.outDegrees = outDegrees;
+      this.inDegrees = inDegrees;
+      this.distinctValues = distinctValues;
+    }
+
+    /** @return the fraction of nodes that have a value for the given property, between 0 and 1 */
+    public double fillRate(String propertyKey) {
+      return fillRates.getOrDefault(propertyKey, 0d);
+    }
+
+    /** @return the distribution of the number of outgoing edges with the given label */
+    public DegreeHistogram outDegree(String edgeLabel) {
+      return outDegrees.getOrDefault(edgeLabel, DegreeHistogram.EMPTY);
+    }
+
+    /** @return the distribution of the number of incoming edges with the given label */
+    public DegreeHistogram inDegree(String edgeLabel) {
+      return inDegrees.getOrDefault(edgeLabel, DegreeHistogram.EMPTY);
+    }
+
+    /** @return the estimated number of distinct values of the given property, or -1 if it isn't indexed */
+    public long distinctValues(String propertyKey) {
+      return distinctValues.getOrDefault(propertyKey, -1L);
+    }
+
+    /**
+     * @return the estimated number of nodes with any single value of the given property, assuming that values are
+     * evenly distributed. Without an index, all nodes that have the property are assumed to have the same value.
+     */
+    public double estimatedNodesPerValue(String propertyKey) {
+      final double nodesWithValue = nodeCount * fillRate(propertyKey);
+      final long distinctValues = distinctValues(propertyKey);
+      return distinctValues > 0 ? nodesWithValue / distinctValues : nodesWithValue;
+    }
+
+    private static LabelStatistics collect(Graph graph, String label, int sampleSize) {
+      final List<Node> nodes = graph.nodes.nodesByLabel(label);
+      final int nodeCount = nodes.size();
+      final int stride = Math.max(1, nodeCount / sampleSize);
+      final Map<String, Integer> filled = new HashMap<>();
+      final Map<String, DegreeHistogram.Builder> outDegrees = new HashMap<>();
+      final Map<String, DegreeHistogram.Builder> inDegrees = new HashMap<>();
+      final EdgeCursor edges = new EdgeCursor();
+      long serializedBytes = 0;
+      int sampled = 0;
+      for (int i = 0; i < nodeCount && sampled < sampleSize; i += stride) {
+        final NodeDb node = nodes.get(i) instanceof NodeRef ? ((NodeRef<?>) nodes.get(i)).get() : (NodeDb) nodes.get(i);
+        final NodeLayoutInformation layout = node.layoutInformation();
+        serializedBytes += serializedSize(graph, node);
+        for (String propertyKey : layout.propertyKeys()) {
+          if (node.property(Ordinals.ofPropertyKey(propertyKey)) != null) filled.merge(propertyKey, 1, Integer::sum);
+        }
+        recordDegrees(edges, node, Direction.OUT, layout.allowedOutEdgeLabelOrdinals(), outDegrees);
+        recordDegrees(edges, node, Direction.IN, layout.allowedInEdgeLabelOrdinals(), inDegrees);
+        sampled++;
+      }
+
+      final Map<String, Double> fillRates = new HashMap<>(filled.size());
+      for (Map.Entry<String, Integer> entry : filled.entrySet()) {
+        fillRates.put(entry.getKey(), entry.getValue() / (double) sampled);
+      }
+      return new LabelStatistics(label, nodeCount, sampled, sampled == 0 ? 0 : serializedBytes / (double) sampled,
+          fillRates, build(outDegrees), build(inDegrees), new HashMap<>());
+    }
+
+    /* serializing marks the node as clean, which mustn't hide pending changes from the next checkpoint */
+    private static int serializedSize(Graph graph, NodeDb node) {
+      final boolean wasDirty = node.isDirty();
+      try {
+        return graph.nodeSerializer.serialize(node).length;
+      } catch (IOException e) {
+        throw new RuntimeException("error while serializing node " + node.ref.id, e);
+      } finally {
+        if (wasDirty) node.markAsDirty();
+      }
+    }
+
+    private static void recordDegrees(EdgeCursor edges, Node node, Direction direction, int[] edgeLabelOrdinals,
+                                      Map<String, DegreeHistogram.Builder> degrees) {
+      for (int edgeLabelOrdinal : edgeLabelOrdinals) {
+        edges.reset(node, direction, edgeLabelOrdinal);
+        int degree = 0;
+        while (edges.next()) degree++;
+        degrees.computeIfAbsent(Ordinals.label(edgeLabelOrdinal), l -> new DegreeHistogram.Builder()).add(degree);
+      }
+    }
+
+    private static Map<String, DegreeHistogram> build(Map<String, DegreeHistogram.Builder> builders) {
+      final Map<String, DegreeHistogram> histograms = new HashMap<>(builders.size());
+      builders.forEach((edgeLabel, builder) -> histograms.put(edgeLabel, builder.build()));
+      return histograms;
+    }
+
+    private void pack(MessageBufferPacker packer) throws IOException {
+      packer.packString(label);
+      packer.packLong(nodeCount);
+      packer.packInt(sampledNodeCount);
+      packer.packDouble(averageSerializedSize);
+      packer.packMapHeader(fillRates.size());
+      for (Map.Entry<String, Double> entry : fillRates.entrySet()) {
+        packer.packString(entry.getKey());
+        packer.packDouble(entry.getValue());
+      }
+      packHistograms(packer, outDegrees);
+      packHistograms(packer, inDegrees);
+      packer.packMapHeader(distinctValues.size());
+      for (Map.Entry<String, Long> entry : distinctValues.entrySet()) {
+        packer.packString(entry.getKey());
+        packer.packLong(entry.getValue());
+      }
+    }
+
+    private static void packHistograms(MessageBufferPacker packer, Map<String, DegreeHistogram> histograms) throws IOException {
+      packer.packMapHeader(histograms.size());
+      for (Map.Entry<String, DegreeHistogram> entry : histograms.entrySet()) {
+        packer.packString(entry.getKey());
+        final DegreeHistogram histogram = entry.getValue();
+        packer.packLong(histogram.degreeSum);
+        packer.packInt(histogram.max);
+        packer.packArrayHeader(histogram.buckets.length);
+        for (long count : histogram.buckets) {
+          packer.packLong(count);
+        }
+      }
+    }
+
+    private static LabelStatistics unpack(MessageUnpacker unpacker) throws IOException {
+      final String label = unpacker.unpackString();
+      final long nodeCount = unpacker.unpackLong();
+      final int sampledNodeCount = unpacker.unpackInt();
+      final double averageSerializedSize = unpacker.unpackDouble();
+      final int fillRateCount = unpacker.unpackMapHeader();
+      final Map<String, Double> fillRates = new HashMap<>(fillRateCount);
+      for (int i = 0; i < fillRateCount; i++) {
+        fillRates.put(unpacker.unpackString(), unpacker.unpackDouble());
+      }
+      final Map<String, DegreeHistogram> outDegrees = unpackHistograms(unpacker);
+      final Map<String, DegreeHistogram> inDegrees = unpackHistograms(unpacker);
+      final int distinctValuesCount = unpacker.unpackMapHeader();
+      final Map<String, Long> distinctValues = new HashMap<>(distinctValuesCount);
+      for (int i = 0; i < distinctValuesCount; i++) {
+        distinctValues.put(unpacker.unpackString(), unpacker.unpackLong());
+      }
+      return new LabelStatistics(label, nodeCount, sampledNodeCount, averageSerializedSize,
+          fillRates, outDegrees, inDegrees, distinctValues);
+    }
+
+    private static Map<String, DegreeHistogram> unpackHistograms(MessageUnpacker unpacker) throws IOException {
+      final int histogramCount = unpacker.unpackMapHeader();
+      final Map<String, DegreeHistogram> histograms = new HashMap<>(histogramCount);
+      for (int i = 0; i < histogramCount; i++) {
+        final String edgeLabel = unpacker.unpackString();
+        final long degreeSum = unpacker.unpackLong();
+        final int max = unpacker.unpackInt();
+        final long[] buckets = new long[unpacker.unpackArrayHeader()];
+        for (int j = 0; j < buckets.length; j++) {
+          buckets[j] = unpacker.unpackLong();
+        }
+        histograms.put(edgeLabel, new DegreeHistogram(buckets, degreeSum, max));
+      }
+      return histograms;
+    }
+
+    @Override
+    public String toString() {
+      return "LabelStatistics[label=" + label + "; nodeCount=" + nodeCount + "; sampledNodeCount=" + sampledNodeCount +
+          "; averageSerializedSize=" + averageSerializedSize + "]";
+    }
+  }
+
+  /**
+   * Distribution of the number of edges with a given label and direction, over the sampled nodes of a label.
+   * Degrees are grouped in buckets of powers of two: bucket 0 holds degree 0, bucket `i` holds the degrees
+   * `[2^(i-1), 2^i)`.
+   */
+  public static final class DegreeHistogram {
+    static final DegreeHistogram EMPTY = new DegreeHistogram(new long[0], 0, 0);
+
+    private final long[] buckets;
+    private final long degreeSum;
+    private final int max;
+
+    private DegreeHistogram(long[] buckets, long degreeSum, int max) {
+      this.buckets = buckets;
+      this.degreeSum = degreeSum;
+      this.max = max;
+    }
+
+    public static int bucketOf(int degree) {
+      return 32 - Integer.numberOfLeadingZeros(degree);
+    }
+
+    /** @return the number of sampled nodes in the given bucket, see {@link #bucketOf} */
+    public long count(int bucket) {
+      return bucket < buckets.length ? buckets[bucket] : 0;
+    }
+
+    public int bucketCount() {
+      return buckets.length;
+    }
+
+    public long nodeCount() {
+      long nodeCount = 0;
+      for (long count : buckets) nodeCount += count;
+      return nodeCount;
+    }
+
+    public double mean() {
+      final long nodeCount = nodeCount();
+      return nodeCount == 0 ? 0 : degreeSum / (double) nodeCount;
+    }
+
+    public int max() {
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return "DegreeHistogram[mean=" + mean() + "; max=" + max + "; buckets=" + Arrays.toString(buckets) + "]";
+    }
+
+    static final class Builder {
+      private long[] buckets = new long[1];
+      private long degreeSum;
+      private int max;
+
+      void add(int degree) {
+        final int bucket = bucketOf(degree);
+        if (bucket >= buckets.length) buckets = Arrays.copyOf(buckets, bucket + 1);
+        buckets[bucket]++;
+        degreeSum += degree;
+        max = Math.max(max, degree);
+      }
+
+      DegreeHistogram build() {
+        return new DegreeHistogram(buckets, degreeSum, max);
+      }
+    }
+  }
+}
@@ -4,18 +4,59 @@ import org.h2.mvstore.MVMap;
 import overflowdb.storage.OdbStorage;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
 public final class IndexManager {
 
+  /** index types as persisted in the storage metadata */
+  private static final String INDEX_TYPE_EXACT = "EXACT";
+  private static final String INDEX_TYPE_RANGE = "RANGE";
+  private static final String INDEX_TYPE_COMPOSITE = "COMPOSITE";
+  private static final String INDEX_TYPE_TEXT_SUFFIX = ",TEXT";
+
+  /**
+   * Order of property values in range indexes: numbers are compared by their (exact) numeric value, irrespective of
+   * their boxed type (i.e. `Integer 3 < Long 4 < Double 4.5`), and precede all other values. Numbers with the same
+   * numeric value are ordered by type, so that e.g. `Integer 3` and `Long 3` remain different values, like in an exact
+   * index. Other values are grouped by type, and compared by their natural order within that type if they have one,
+   * or their string representation otherwise. The order is consistent with `equals`.
+   *
+   * Range bounds ignore the type of numbers though, e.g. a range from `Long 3` includes `Integer 3`,
+   * see {@link #compareToRangeBound}.
+   */
+  public static final Comparator<Object> RANGE_ORDER = IndexManager::compareValues;
+
   private final Graph graph;
-  private final Map<String, Map<Object, Set<NodeRef<?>>>> indexes = new ConcurrentHashMap<>();
+  private final Map<String, Map<Object, Postings>> indexes = new ConcurrentHashMap<>();
+  private final Set<String> rangeIndexes = ConcurrentHashMap.newKeySet();
+  private final Map<String, TextIndex> textIndexes = new ConcurrentHashMap<>();
+  /* composite (label, property) indexes live in `indexes` under their composite index name */
+  private final Set<String> compositeIndexNames = ConcurrentHashMap.newKeySet();
+  private final Map<String, Set<String>> compositeIndexLabelsByKey = new ConcurrentHashMap<>();
+  /* whether an index needs to be rewritten entirely on the next save, e.g. because it was just created */
   private final Map<String, Boolean> dirtyFlags = new ConcurrentHashMap<>();
+  /* values whose index entry changed since the last save: only those are written on the next save */
+  private final Map<String, Set<Object>> dirtyValues = new ConcurrentHashMap<>();
+  /* only graphs with a storage location ever save their indexes, otherwise the dirty values would just pile up */
+  private volatile boolean trackDirtyValues = false;
+  private final Map<String, UnindexedScanStats> unindexedScans = new ConcurrentHashMap<>();
+  /* number of unindexed scans after which a property index is created automatically, 0 means never */
+  private volatile int autoCreationThreshold = 0;
 
   public IndexManager(Graph graph) {
     this.graph = graph;
@@ -28,7 +69,8 @@ public final class IndexManager {
    */
   public void createNodePropertyIndex(final String propertyName) {
     checkPropertyName(propertyName);
-    if (indexes.containsKey(propertyName)) return;
+    // created eagerly, so that the property counts as indexed even if no node has it (yet)
+    if (indexes.putIfAbsent(propertyName, new ConcurrentHashMap<>()) != null) return;
     dirtyFlags.put(propertyName, true);
     graph.nodes.iterator().forEachRemaining(node -> {
       Object value = node.property(propertyName);
@@ -36,10 +78,129 @@ public final class IndexManager {
     });
   }
 
+  /**
+   * Create a range index for specified node property, i.e. an index that supports range lookups like
+   * {@link #lookupRange} in addition to exact lookups. Values are ordered by {@link #RANGE_ORDER}.
+   * If the property already has an exact index, it is converted into a range index.
+   */
+  public void createNodePropertyRangeIndex(final String propertyName) {
+    checkPropertyName(propertyName);
+    if (!rangeIndexes.add(propertyName)) return;
+    dirtyFlags.put(propertyName, true);
+    final Map<Object, Postings> existing = indexes.put(propertyName, new ConcurrentSkipListMap<>(RANGE_ORDER));
+    if (existing == null) {
+      graph.nodes.iterator().forEachRemaining(node -> {
+        Object value = node.property(propertyName);
+        if (value != null) put(propertyName, value, (NodeRef<?>) node);
+      });
+    } else {
+      existing.forEach((value, postings) -> postings.snapshot().forEach(nodeRef -> put(propertyName, value, nodeRef)));
+    }
+  }
+
+  /**
+   * Create a composite index for specified node label and property, i.e. an index that only contains nodes with the
+   * given label. Lookups for a label and property value don't need to filter by label, and the index is
+   * (potentially much) smaller than a property index, if the property is used by many labels.
+   */
+  public void createNodePropertyIndex(final String label, final String propertyName) {
+    checkPropertyName(propertyName);
+    if (!compositeIndexLabelsByKey.computeIfAbsent(propertyName, k -> ConcurrentHashMap.newKeySet()).add(label)) return;
+    final String indexName = compositeIndexName(label, propertyName);
+    compositeIndexNames.add(indexName);
+    dirtyFlags.put(indexName, true);
+    indexes.computeIfAbsent(indexName, k -> new ConcurrentHashMap<>());
+    graph.nodes(label).forEachRemaining(node -> {
+      Object value = node.property(propertyName);
+      if (value != null) put(indexName, value, (NodeRef<?>) node);
+    });
+  }
+
+  private static String compositeIndexName(final String label, final String propertyName) {
+    return label + ":" + propertyName;
+  }
+
   public boolean isIndexed(final String propertyName) {
     return indexes.containsKey(propertyName);
   }
 
+  /** @return true if there is a composite index for given label and property */
+  public boolean isIndexed(final String label, final String propertyName) {
+    final Set<String> labels = compositeIndexLabelsByKey.get(propertyName);
+    return labels != null && labels.contains(label);
+  }
+
+  /** @return true if nodes with given label are indexed for given property, in a property or composite index */
+  public boolean hasIndexFor(final String label, final String propertyName) {
+    return indexes.containsKey(propertyName) || isIndexed(label, propertyName);
+  }
+
+  public boolean isRangeIndexed(final String propertyName) {
+    return rangeIndexes.contains(propertyName);
+  }
+
+  /**
+   * Create a text index for specified (string) node property, i.e. an index that supports substring, prefix and
+   * regex lookups like {@link #lookupMatching} in addition to exact lookups. Creates an exact index for the property
+   * unless it's already indexed.
+   */
+  public void createNodePropertyTextIndex(final String propertyName) {
+    checkPropertyName(propertyName);
+    final TextIndex textIndex = new TextIndex();
+    if (textIndexes.putIfAbsent(propertyName, textIndex) != null) return;
+    if (indexes.containsKey(propertyName)) {
+      dirtyFlags.put(propertyName, true);
+      indexes.get(propertyName).keySet().forEach(value -> {
+        if (value instanceof String) textIndex.add((String) value);
+      });
+    } else {
+      createNodePropertyIndex(propertyName);
+    }
+  }
+
+  public boolean isTextIndexed(final String propertyName) {
+    return textIndexes.containsKey(propertyName);
+  }
+
+  /**
+   * Record that a traversal is about to scan nodes for a value of the given property, because there is no
+   * (suitable) index. If an auto creation threshold is configured and reached, an index for the property is
+   * created, i.e. callers should check for an index again afterwards.
+   * @return the statistics for the given property, to which the scan should report its progress
+   * @see Config#withIndexAutoCreationThreshold
+   */
+  public UnindexedScanStats recordUnindexedScan(final String propertyName, final boolean isRangeScan) {
+    final UnindexedScanStats stats = unindexedScans.computeIfAbsent(propertyName, UnindexedScanStats::new);
+    stats.recordScan(isRangeScan);
+    final int threshold = autoCreationThreshold;
+    if (threshold > 0 && stats.getScans() >= threshold) {
+      if (stats.getRangeScans() > 0) {
+        if (!isRangeIndexed(propertyName)) createNodePropertyRangeIndex(propertyName);
+      } else if (!isIndexed(propertyName)) {
+        createNodePropertyIndex(propertyName);
+      }
+    }
+    return stats;
+  }
+
+  /** @return the recorded unindexed scans per property, most nodes scanned first */
+  public List<UnindexedScanStats> getUnindexedScanReport() {
+    final List<UnindexedScanStats> report = new ArrayList<>(unindexedScans.values());
+    report.sort(Comparator.comparingLong(UnindexedScanStats::getNodesScanned).reversed());
+    return report;
+  }
+
+  public void clearUnindexedScanStats() {
+    unindexedScans.clear();
+  }
+
+  /** @see Config#withIndexAutoCreationThreshold */
+  public void setAutoCreationThreshold(int unindexedScans) {
+    if (unindexedScans < 0)
+      throw new IllegalArgumentException("threshold must not be negative, but was " + unindexedScans);
+    this.autoCreationThreshold = unindexedScans;
+  }
+
   private void checkPropertyName(String propertyName) {
     if (propertyName == null || propertyName.isEmpty())
       throw new IllegalArgumentException("Illegal property name: " + propertyName);
@@ -54,15 +215,28 @@ public final class IndexManager {
 
   public void putIfIndexed(final String key, final Object newValue, final NodeRef<?> nodeRef) {
     if (indexes.containsKey(key)) {
-      dirtyFlags.put(key, true);
       put(key, newValue, nodeRef);
+      markDirty(key, newValue);
+    }
+    final String label = nodeRef.label();
+    if (isIndexed(label, key)) {
+      final String indexName = compositeIndexName(label, key);
+      put(indexName, newValue, nodeRef);
+      markDirty(indexName, newValue);
     }
   }
 
   private void put(final String key, final Object value, final NodeRef<?> nodeRef) {
-    Map<Object, Set<NodeRef<?>>> keyMap = indexes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
-    Set<NodeRef<?>> objects = keyMap.computeIfAbsent(value, k -> ConcurrentHashMap.newKeySet());
-    objects.add(nodeRef);
+    Map<Object, Postings> keyMap = indexes.computeIfAbsent(key, k ->
+        rangeIndexes.contains(k) ? new ConcurrentSkipListMap<>(RANGE_ORDER) : new ConcurrentHashMap<>());
+    // adding within `compute` is atomic with respect to `remove` dropping the entry once it's empty
+    keyMap.compute(value, (k, postings) -> {
+      if (postings == null) postings = new Postings();
+      postings.add(nodeRef);
+      return postings;
+    });
+    final TextIndex textIndex = textIndexes.get(key);
+    if (textIndex != null && value instanceof String) textIndex.add((String) value);
   }
 
   /**
@@ -71,47 +245,357 @@ public final class IndexManager {
   public void dropNodePropertyIndex(final String key) {
     if (indexes.containsKey(key)) {
       indexes.remove(key).clear();
+      rangeIndexes.remove(key);
+      textIndexes.remove(key);
       dirtyFlags.remove(key);
+      dirtyValues.remove(key);
     }
   }
 
+  /**
+   * Drop the composite index for specified node label and property.
+   */
+  public void dropNodePropertyIndex(final String label, final String key) {
+    final Set<String> labels = compositeIndexLabelsByKey.get(key);
+    if (labels != null && labels.remove(label)) {
+      final String indexName = compositeIndexName(label, key);
+      compositeIndexNames.remove(indexName);
+      indexes.remove(indexName).clear();
+      dirtyFlags.remove(indexName);
+      dirtyValues.remove(indexName);
+    }
+  }
+
+  /** @return the properties with a property index, i.e. excluding composite indexes */
   public Set<String> getIndexedNodeProperties() {
-    return indexes.keySet();
+    return indexes.keySet().stream()
+        .filter(indexName -> !compositeIndexNames.contains(indexName))
+        .collect(Collectors.toSet());
   }
 
   public int getIndexedNodeCount(String propertyName) {
-    final Map<Object, Set<NodeRef<?>>> indexMap = this.indexes.get(propertyName);
-    return indexMap == null ? 0 : indexMap.values().stream().mapToInt(Set::size).sum();
+    final Map<Object, Postings> indexMap = this.indexes.get(propertyName);
+    return indexMap == null ? 0 : indexMap.values().stream().mapToInt(Postings::size).sum();
+  }
+
+  /** calls the given consumer with every indexed node of the given property index, along with its property value */
+  void forEachIndexEntry(final String propertyName, final BiConsumer<Object, NodeRef<?>> consumer) {
+    final Map<Object, Postings> indexMap = this.indexes.get(propertyName);
+    if (indexMap == null) return;
+    indexMap.forEach((value, postings) -> {
+      for (NodeRef<?> nodeRef : postings.snapshot()) {
+        consumer.accept(value, nodeRef);
+      }
+    });
   }
 
+  /** @return an immutable view on all nodes with given property value, as of the time of the lookup */
   public List<NodeRef<?>> lookup(final String key, final Object value) {
-    final Map<Object, Set<NodeRef<?>>> keyMap = indexes.get(key);
-    if (null == keyMap) {
-      return Collections.emptyList();
-    } else {
-      Set<NodeRef<?>> set = keyMap.get(value);
-      return set == null ? Collections.emptyList() : new ArrayList<>(set);
+    return postings(key, value).snapshot();
+  }
+
+  /** @return the number of nodes with given property value, without materializing them */
+  public int lookupCount(final String key, final Object value) {
+    return postings(key, value).size();
+  }
+
+  /**
+   * Lookup all nodes with given label and property value. Uses the composite index if there is one, and filters
+   * the result of the property index by label otherwise.
+   */
+  public List<NodeRef<?>> lookup(final String label, final String key, final Object value) {
+    return lookup(label, Collections.singletonMap(key, value));
+  }
+
+  /**
+   * @return the number of nodes with given label and property value - requires a composite index,
+   * see {@link #createNodePropertyIndex(String, String)}
+   */
+  public int lookupCount(final String label, final String key, final Object value) {
+    if (!isIndexed(label, key))
+      throw new IllegalArgumentException("no composite index for label " + label + " and property " + key);
+    return postings(compositeIndexName(label, key), value).size();
+  }
+
+  /**
+   * Lookup all nodes with given label (may be null, i.e. any label) that have all of the given property values.
+   * Intersects the index entries of all indexed properties, starting with the smallest one, and verifies the label
+   * and remaining (unindexed) properties on the result only. At least one of the properties must be indexed.
+   */
+  public List<NodeRef<?>> lookup(final String label, final Map<String, ?> propertyValues) {
+    final List<Postings> postingsList = new ArrayList<>(propertyValues.size());
+    final Map<String, Object> unindexed = new HashMap<>();
+    boolean labelVerified = label == null;
+    for (Map.Entry<String, ?> entry : propertyValues.entrySet()) {
+      final String key = entry.getKey();
+      final String indexName;
+      if (label != null && isIndexed(label, key)) {
+        indexName = compositeIndexName(label, key);
+        labelVerified = true;
+      } else if (indexes.containsKey(key)) {
+        indexName = key;
+      } else {
+        unindexed.put(key, entry.getValue());
+        continue;
+      }
+      final Postings postings = postings(indexName, entry.getValue());
+      if (postings.isEmpty()) return Collections.emptyList();
+      postingsList.add(postings);
+    }
+    if (postingsList.isEmpty())
+      throw new IllegalArgumentException("none of the properties " + propertyValues.keySet() + " is indexed");
+
+    if (postingsList.size() == 1 && labelVerified && unindexed.isEmpty()) return postingsList.get(0).snapshot();
+
+    postingsList.sort(Comparator.comparingInt(Postings::size));
+    final List<NodeRef<?>> result = new ArrayList<>();
+    for (NodeRef<?> nodeRef : postingsList.get(0).snapshot()) {
+      if (containedInAll(nodeRef, postingsList) &&
+          (labelVerified || label.equals(nodeRef.label())) &&
+          hasPropertyValues(nodeRef, unindexed)) {
+        result.add(nodeRef);
+      }
+    }
+    return result;
+  }
+
+  private Postings postings(final String indexName, final Object value) {
+    final Map<Object, Postings> keyMap = indexes.get(indexName);
+    final Postings postings = keyMap == null ? null : keyMap.get(value);
+    return postings == null ? Postings.EMPTY : postings;
+  }
+
+  private static boolean containedInAll(final NodeRef<?> nodeRef, final List<Postings> postingsList) {
+    for (int i = 1; i < postingsList.size(); i++) {
+      if (!postingsList.get(i).contains(nodeRef)) return false;
+    }
+    return true;
+  }
+
+  private static boolean hasPropertyValues(final NodeRef<?> nodeRef, final Map<String, Object> propertyValues) {
+    for (Map.Entry<String, Object> entry : propertyValues.entrySet()) {
+      if (!Objects.equals(entry.getValue(), nodeRef.property(entry.getKey()))) return false;
     }
+    return true;
+  }
+
+  /**
+   * Lookup all nodes with a value for the given property between `from` and `to`. A null bound is unbounded.
+   * Requires a range index, see {@link #createNodePropertyRangeIndex}.
+   */
+  public List<NodeRef<?>> lookupRange(final String key,
+                                      final Object from, final boolean fromInclusive,
+                                      final Object to, final boolean toInclusive) {
+    NavigableMap<Object, Postings> range = getRangeIndexMap(key);
+    if (from != null && to != null) {
+      final int comparison = compareToRangeBound(from, to);
+      if (comparison > 0 || (comparison == 0 && !(fromInclusive && toInclusive))) return Collections.emptyList();
+    }
+    if (from != null) range = range.tailMap(lowerBound(from, fromInclusive), fromInclusive);
+    if (to != null) range = range.headMap(upperBound(to, toInclusive), toInclusive);
+    return flatten(range.values());
+  }
+
+  /** Lookup all nodes with a value for the given property between `from` and `to` (both inclusive). */
+  public List<NodeRef<?>> lookupRange(final String key, final Object from, final Object to) {
+    return lookupRange(key, from, true, to, true);
+  }
+
+  /** Lookup all nodes with a value for the given property greater than `value`. */
+  public List<NodeRef<?>> lookupGreaterThan(final String key, final Object value) {
+    return lookupRange(key, value, false, null, false);
+  }
+
+  /** Lookup all nodes with a value for the given property less than `value`. */
+  public List<NodeRef<?>> lookupLessThan(final String key, final Object value) {
+    return lookupRange(key, null, false, value, false);
+  }
+
+  private NavigableMap<Object, Postings> getRangeIndexMap(final String key) {
+    if (!rangeIndexes.contains(key))
+      throw new IllegalArgumentException("property " + key + " does not have a range index");
+    final Map<Object, Postings> keyMap =
+        indexes.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>(RANGE_ORDER));
+    return (NavigableMap<Object, Postings>) keyMap;
+  }
+
+  private static List<NodeRef<?>> flatten(Collection<Postings> postingsCollection) {
+    final List<NodeRef<?>> result = new ArrayList<>();
+    postingsCollection.forEach(postings -> result.addAll(postings.snapshot()));
+    return result;
+  }
+
+  /** @see #RANGE_ORDER */
+  public static int compareValues(final Object a, final Object b) {
+    final boolean aIsNumber = a instanceof Number;
+    final boolean bIsNumber = b instanceof Number;
+    if (aIsNumber && bIsNumber) {
+      final int result = compareNumbers((Number) a, (Number) b);
+      if (result != 0) return result;
+      if (a instanceof RangeBound && b instanceof RangeBound) return Integer.compare(((RangeBound) a).side, ((RangeBound) b).side);
+      if (a instanceof RangeBound) return ((RangeBound) a).side;
+      if (b instanceof RangeBound) return -((RangeBound) b).side;
+    } else if (aIsNumber) {
+      return -1;
+    } else if (bIsNumber) {
+      return 1;
+    }
+
+    final Class<?> aClass = a.getClass();
+    final Class<?> bClass = b.getClass();
+    if (aClass != bClass) return aClass.getName().compareTo(bClass.getName());
+    if (a instanceof Comparable) return ((Comparable<Object>) a).compareTo(b);
+    return compareNonComparable(a, b);
+  }
+
+  /**
+   * Compares a value to the bound of a range: like {@link #RANGE_ORDER}, but numbers are only compared by their
+   * numeric value, i.e. a range from `Long 3` includes `Integer 3` and `Double 3.0`.
+   */
+  public static int compareToRangeBound(final Object value, final Object bound) {
+    if (value instanceof Number && bound instanceof Number) return compareNumbers((Number) value, (Number) bound);
+    return compareValues(value, bound);
+  }
+
+  /* values of the same type without a natural order: by their string representation, and only if that's the same,
+   * by something that's (usually) different for values that aren't equal */
+  private static int compareNonComparable(final Object a, final Object b) {
+    final int result = a.toString().compareTo(b.toString());
+    if (result != 0 || a.equals(b)) return result;
+    final int byHashCode = Integer.compare(a.hashCode(), b.hashCode());
+    if (byHashCode != 0) return byHashCode;
+    return Integer.compare(System.identityHashCode(a), System.identityHashCode(b));
+  }
+
+  private static int compareNumbers(final Number a, final Number b) {
+    final Number x = a instanceof RangeBound ? ((RangeBound) a).value : a;
+    final Number y = b instanceof RangeBound ? ((RangeBound) b).value : b;
+    final boolean xIsIntegral = isIntegral(x);
+    final boolean yIsIntegral = isIntegral(y);
+    if (xIsIntegral && yIsIntegral) return Long.compare(x.longValue(), y.longValue());
+    if (xIsIntegral) return compareLongToDouble(x.longValue(), y.doubleValue());
+    if (yIsIntegral) return -compareLongToDouble(y.longValue(), x.doubleValue());
+    return Double.compare(x.doubleValue(), y.doubleValue());
+  }
+
+  /* exact, unlike converting the long to double - which merges distinct longs above 2^53 */
+  private static int compareLongToDouble(final long l, final double d) {
+    if (Double.isNaN(d) || d >= 0x1p63) return -1; // NaN is greater than everything, like in `Double.compare`
+    if (d < -0x1p63) return 1;
+    final long truncated = (long) d;
+    if (l != truncated) return Long.compare(l, truncated);
+    final double fraction = d - truncated;
+    return fraction > 0 ? -1 : fraction < 0 ? 1 : 0;
+  }
+
+  private static boolean isIntegral(final Number n) {
+    return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+  }
+
+  private static Object lowerBound(final Object from, final boolean inclusive) {
+    return from instanceof Number ? new RangeBound((Number) from, inclusive ? -1 : 1) : from;
+  }
+
+  private static Object upperBound(final Object to, final boolean inclusive) {
+    return to instanceof Number ? new RangeBound((Number) to, inclusive ? 1 : -1) : to;
+  }
+
+  /**
+   * Numeric range bound that sorts directly before (side -1) or after (side 1) all numbers with the same numeric
+   * value, whatever their type. Never a key of the index, only used to look up ranges.
+   */
+  static final class RangeBound extends Number {
+    private final Number value;
+    private final int side;
+
+    RangeBound(Number value, int side) {
+      this.value = value;
+      this.side = side;
+    }
+
+    @Override
+    public int intValue() {
+      return value.intValue();
+    }
+
+    @Override
+    public long longValue() {
+      return value.longValue();
+    }
+
+    @Override
+    public float floatValue() {
+      return value.floatValue();
+    }
+
+    @Override
+    public double doubleValue() {
+      return value.doubleValue();
+    }
+  }
+
+  /** Lookup all nodes with a value for the given property that contains `substring`. Requires a text index. */
+  public List<NodeRef<?>> lookupContaining(final String key, final String substring) {
+    return lookupValues(key, getTextIndex(key).containing(substring));
+  }
+
+  /** Lookup all nodes with a value for the given property that starts with `prefix`. Requires a text index. */
+  public List<NodeRef<?>> lookupStartingWith(final String key, final String prefix) {
+    return lookupValues(key, getTextIndex(key).startingWith(prefix));
+  }
+
+  /** Lookup all nodes with a value for the given property that (entirely) matches `pattern`. Requires a text index. */
+  public List<NodeRef<?>> lookupMatching(final String key, final Pattern pattern) {
+    return lookupValues(key, getTextIndex(key).matching(pattern));
+  }
+
+  private TextIndex getTextIndex(final String key) {
+    final TextIndex textIndex = textIndexes.get(key);
+    if (textIndex == null)
+      throw new IllegalArgumentException("property " + key + " does not have a text index");
+    return textIndex;
+  }
+
+  private List<NodeRef<?>> lookupValues(final String key, final List<String> values) {
+    final Map<Object, Postings> keyMap = indexes.get(key);
+    if (keyMap == null) return Collections.emptyList();
+    final List<NodeRef<?>> result = new ArrayList<>();
+    for (String value : values) {
+      final Postings postings = keyMap.get(value);
+      if (postings != null) result.addAll(postings.snapshot());
+    }
+    return result;
   }
 
   void remove(final String key, final Object value, final NodeRef<?> nodeRef) {
-    dirtyFlags.put(key, true);
-    final Map<Object, Set<NodeRef<?>>> keyMap = indexes.get(key);
+    removeFromIndex(key, value, nodeRef);
+    final String label = nodeRef.label();
+    if (isIndexed(label, key)) removeFromIndex(compositeIndexName(label, key), value, nodeRef);
+  }
+
+  private void removeFromIndex(final String key, final Object value, final NodeRef<?> nodeRef) {
+    final Map<Object, Postings> keyMap = indexes.get(key);
     if (null != keyMap) {
-      Set<NodeRef<?>> objects = keyMap.get(value);
-      if (null != objects) {
-        objects.remove(nodeRef);
-        if (objects.isEmpty()) {
-          keyMap.remove(value);
+      Postings postings = keyMap.get(value);
+      if (null != postings) {
+        postings.remove(nodeRef);
+        if (keyMap.computeIfPresent(value, (k, p) -> p.isEmpty() ? null : p) == null) {
+          final TextIndex textIndex = textIndexes.get(key);
+          if (textIndex != null && value instanceof String) {
+            textIndex.remove((String) value);
+            // a concurrent `put` may have re-added the value in the meantime
+            if (keyMap.containsKey(value)) textIndex.add((String) value);
+          }
         }
       }
+      markDirty(key, value);
     }
   }
 
   void removeElement(final NodeRef<?> nodeRef) {
     NodeDb node = nodeRef.get();
     for (String propertyName : node.propertyKeys()) {
-        if (indexes.containsKey(propertyName)) {
+        if (hasIndexFor(node.label(), propertyName)) {
             Object value = node.property(propertyName);
             if (value != null) {
                 remove(propertyName, value, nodeRef);
@@ -120,36 +604,89 @@ public final class IndexManager {
     }
   }
 
-  private Map<Object, Set<NodeRef<?>>> getIndexMap(String propertyName) {
-    return this.indexes.get(propertyName);
-  }
-
   void initializeStoredIndices(OdbStorage storage) {
     storage.getIndexNames().forEach(indexName -> loadIndex(indexName, storage));
   }
 
   private void loadIndex(String indexName, OdbStorage storage) {
+    final String indexType = String.valueOf(storage.getIndexType(indexName));
+    if (indexType.startsWith(INDEX_TYPE_RANGE)) {
+      rangeIndexes.add(indexName);
+      indexes.put(indexName, new ConcurrentSkipListMap<>(RANGE_ORDER));
+    } else if (indexType.startsWith(INDEX_TYPE_COMPOSITE)) {
+      final int separatorIndex = indexName.indexOf(':');
+      final String label = indexName.substring(0, separatorIndex);
+      compositeIndexLabelsByKey.computeIfAbsent(indexName.substring(separatorIndex + 1), k -> ConcurrentHashMap.newKeySet()).add(label);
+      compositeIndexNames.add(indexName);
+    }
+    if (indexType.endsWith(INDEX_TYPE_TEXT_SUFFIX)) {
+      // the trigrams are derived from the indexed values, and therefore not persisted
+      textIndexes.put(indexName, new TextIndex());
+    }
     final MVMap<Object, long[]> indexMVMap = storage.openIndex(indexName);
     loadNodePropertyIndex(indexName, indexMVMap);
   }
 
   void storeIndexes(OdbStorage storage) {
-    getIndexedNodeProperties().forEach(propertyName ->
-            saveIndex(storage, propertyName, getIndexMap(propertyName)));
+    indexes.forEach((indexName, indexMap) -> saveIndex(storage, indexName, indexMap));
   }
 
-  private void saveIndex(OdbStorage storage, String propertyName, Map<Object, Set<NodeRef<?>>> indexMap) {
+  /** Keep track of changes from now on, so that {@link #storeIndexes} only needs to write those. */
+  void trackDirtyValues() {
+    trackDirtyValues = true;
+  }
+
+  /* number of values whose index entry changed since the last save, across all indexes */
+  int dirtyValueCount() {
+    return dirtyValues.values().stream().mapToInt(Set::size).sum();
+  }
+
+  /**
+   * Must be called after the index was changed: an index that's rewritten entirely doesn't need to track its values,
+   * but if the rewrite has started already, it may or may not contain the change.
+   */
+  private void markDirty(final String indexName, final Object value) {
+    if (!trackDirtyValues || dirtyFlags.getOrDefault(indexName, false)) return;
+    dirtyValues.computeIfAbsent(indexName, k -> ConcurrentHashMap.newKeySet()).add(value);
+  }
+
+  /**
+   * Writes the index entries that changed since the last save, or the entire index if it's new (or otherwise needs
+   * a rewrite, e.g. because its type changed).
+   * The dirty markers are reset before writing: concurrent modifications (e.g. during a checkpoint) must leave the
+   * index (or entry) dirty.
+   */
+  private void saveIndex(OdbStorage storage, String propertyName, Map<Object, Postings> indexMap) {
+    final Set<Object> changedValues = dirtyValues.get(propertyName);
     if (dirtyFlags.getOrDefault(propertyName, false)) {
+      dirtyFlags.put(propertyName, false);
+      if (changedValues != null) changedValues.clear();
       storage.clearIndex(propertyName);
+      storage.setIndexType(propertyName,
+          (rangeIndexes.contains(propertyName) ? INDEX_TYPE_RANGE :
+              compositeIndexNames.contains(propertyName) ? INDEX_TYPE_COMPOSITE : INDEX_TYPE_EXACT) +
+          (textIndexes.containsKey(propertyName) ? INDEX_TYPE_TEXT_SUFFIX : ""));
       final MVMap<Object, long[]> indexStore = storage.openIndex(propertyName);
       indexMap.entrySet().parallelStream().forEach(entry -> {
         final Object propertyValue = entry.getKey();
-        final Set<NodeRef<?>> nodeRefs = entry.getValue();
-        if (!nodeRefs.isEmpty()) {
-          indexStore.put(propertyValue, nodeRefs.stream().mapToLong(nodeRef -> nodeRef.id).toArray());
+        final long[] nodeIds = entry.getValue().ids();
+        if (nodeIds.length > 0) {
+          indexStore.put(propertyValue, nodeIds);
         }
       });
-      dirtyFlags.put(propertyName, false);
+    } else if (changedValues != null && !changedValues.isEmpty()) {
+      final MVMap<Object, long[]> indexStore = storage.openIndex(propertyName);
+      for (Iterator<Object> iterator = changedValues.iterator(); iterator.hasNext(); ) {
+        final Object propertyValue = iterator.next();
+        iterator.remove();
+        final Postings postings = indexMap.get(propertyValue);
+        final long[] nodeIds = postings == null ? null : postings.ids();
+        if (nodeIds == null || nodeIds.length == 0) {
+          indexStore.remove(propertyValue);
+        } else {
+          indexStore.put(propertyValue, nodeIds);
+        }
+      }
     }
   }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import overflowdb.util.PropertyHelper;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public abstract class Node extends Element implements NodeOrDetachedNode {
@@ -87,6 +88,45 @@ public abstract class Node extends Element implements NodeOrDetachedNode {
   public abstract boolean hasOut(String label);
   public abstract boolean hasIn(String label);
 
+  /* adjacent OUT nodes for given label ordinal, see `Ordinals` */
+  public abstract Iterator<Node> out(int edgeLabelOrdinal);
+
+  /* adjacent IN nodes for given label ordinal, see `Ordinals` */
+  public abstract Iterator<Node> in(int edgeLabelOrdinal);
+
+  /* adjacent OUT/IN nodes for given label ordinal, see `Ordinals` */
+  public abstract Iterator<Node> both(int edgeLabelOrdinal);
+
+  /* adjacent OUT edges for given label ordinal, see `Ordinals` */
+  public abstract Iterator<Edge> outE(int edgeLabelOrdinal);
+
+  /* adjacent IN edges for given label ordinal, see `Ordinals` */
+  public abstract Iterator<Edge> inE(int edgeLabelOrdinal);
+
+  /* adjacent OUT/IN edges for given label ordinal, see `Ordinals` */
+  public abstract Iterator<Edge> bothE(int edgeLabelOrdinal);
+
+  public abstract boolean hasOut(int edgeLabelOrdinal);
+  public abstract boolean hasIn(int edgeLabelOrdinal);
+
+  /* passes all adjacent OUT nodes to the given action - like `out()`, but without allocating an iterator */
+  public abstract void forEachOut(Consumer<? super Node> action);
+
+  /* passes adjacent OUT nodes for given label to the given action - like `out(label)`, but without allocating an iterator */
+  public abstract void forEachOut(String edgeLabel, Consumer<? super Node> action);
+
+  /* passes all adjacent IN nodes to the given action - like `in()`, but without allocating an iterator */
+  public abstract void forEachIn(Consumer<? super Node> action);
+
+  /* passes adjacent IN nodes for given label to the given action - like `in(label)`, but without allocating an iterator */
+  public abstract void forEachIn(String edgeLabel, Consumer<? super Node> action);
+
+  /* like `forEachOut(String, Consumer)`, for given label ordinal */
+  public abstract void forEachOut(int edgeLabelOrdinal, Consumer<? super Node> action);
+
+  /* like `forEachIn(String, Consumer)`, for given label ordinal */
+  public abstract void forEachIn(int edgeLabelOrdinal, Consumer<? super Node> action);
+
   /*Allows fast initialization from detached node data*/
   protected void _initializeFromDetached(DetachedNodeData data, Function<DetachedNodeData, Node> mapper){
     throw new RuntimeException("Detached initialization is not supported by node type " + label() + " of class " + getClass().getName() );
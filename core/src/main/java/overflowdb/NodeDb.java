@@ -6,6 +6,7 @@ import overflowdb.util.MultiIterator;
 import overflowdb.util.PropertyHelper;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Holds node properties and edges to adjacent nodes (including edge properties).
@@ -78,7 +79,7 @@ public abstract class NodeDb extends Node {
   @Override
   @SuppressWarnings("unchecked")
   public <A> A property(PropertyKey<A> key) {
-    return (A) property(key.name);
+    return (A) property(key.ordinal);
   }
 
   @Override
@@ -132,8 +133,11 @@ public abstract class NodeDb extends Node {
 
   @Override
   protected void setPropertyImpl(String key, Object value) {
+    final IndexManager indexManager = ref.graph.indexManager;
+    final Object oldValue = indexManager.hasIndexFor(label(), key) ? property(key) : null;
     updateSpecificProperty(key, value);
-    ref.graph.indexManager.putIfIndexed(key, value, ref);
+    if (oldValue != null && !oldValue.equals(value)) indexManager.remove(key, oldValue, ref);
+    indexManager.putIfIndexed(key, value, ref);
     /* marking as dirty *after* we updated - if node gets serialized before we finish, it'll be marked as dirty */
     this.markAsDirty();
   }
@@ -299,6 +303,7 @@ public abstract class NodeDb extends Node {
 
     int outBlockOffset = storeAdjacentNode(Direction.OUT, label, inNodeRef, keyValues);
     int inBlockOffset = inNodeRef.get().storeAdjacentNode(Direction.IN, label, thisNodeRef, keyValues);
+    ref.graph.edgeCounts.increment(label);
 
     Edge dummyEdge = instantiateDummyEdge(label, thisNodeRef, inNodeRef);
     dummyEdge.setOutBlockOffset(outBlockOffset);
@@ -316,8 +321,9 @@ public abstract class NodeDb extends Node {
   protected void addEdgeSilentImpl(String label, Node inNode, Object... keyValues) {
     final NodeRef<?> inNodeRef = (NodeRef) inNode;
 
-      storeAdjacentNode(Direction.OUT, label, inNodeRef, keyValues);
+    storeAdjacentNode(Direction.OUT, label, inNodeRef, keyValues);
     inNodeRef.get().storeAdjacentNode(Direction.IN, label, ref, keyValues);
+    ref.graph.edgeCounts.increment(label);
   }
 
   @Override
@@ -422,31 +428,113 @@ public abstract class NodeDb extends Node {
   }
 
   @Override
-  public boolean hasOut(String label) {
-    int offsetPos = getPositionInEdgeOffsets(Direction.OUT, label);
-    if (offsetPos == -1) {
-      return false;
+  public Iterator<Node> out(int edgeLabelOrdinal) {
+    return createAdjacentNodeIteratorByOffSet(getPositionInEdgeOffsets(Direction.OUT, edgeLabelOrdinal));
+  }
+
+  @Override
+  public Iterator<Node> in(int edgeLabelOrdinal) {
+    return createAdjacentNodeIteratorByOffSet(getPositionInEdgeOffsets(Direction.IN, edgeLabelOrdinal));
+  }
+
+  @Override
+  public Iterator<Node> both(int edgeLabelOrdinal) {
+    final MultiIterator<Node> multiIterator = new MultiIterator<>();
+    multiIterator.addIterator(out(edgeLabelOrdinal));
+    multiIterator.addIterator(in(edgeLabelOrdinal));
+    return multiIterator;
+  }
+
+  @Override
+  public Iterator<Edge> outE(int edgeLabelOrdinal) {
+    return createDummyEdgeIteratorByOffSet(adjacentNodes, Direction.OUT,
+        getPositionInEdgeOffsets(Direction.OUT, edgeLabelOrdinal), Ordinals.label(edgeLabelOrdinal));
+  }
+
+  @Override
+  public Iterator<Edge> inE(int edgeLabelOrdinal) {
+    return createDummyEdgeIteratorByOffSet(adjacentNodes, Direction.IN,
+        getPositionInEdgeOffsets(Direction.IN, edgeLabelOrdinal), Ordinals.label(edgeLabelOrdinal));
+  }
+
+  @Override
+  public Iterator<Edge> bothE(int edgeLabelOrdinal) {
+    final MultiIterator<Edge> multiIterator = new MultiIterator<>();
+    multiIterator.addIterator(outE(edgeLabelOrdinal));
+    multiIterator.addIterator(inE(edgeLabelOrdinal));
+    return multiIterator;
+  }
+
+  @Override
+  public void forEachOut(Consumer<? super Node> action) {
+    for (int labelOrdinal : layoutInformation().allowedOutEdgeLabelOrdinals()) {
+      forEachAdjacentNode(getPositionInEdgeOffsets(Direction.OUT, labelOrdinal), action);
     }
+  }
+
+  @Override
+  public void forEachOut(String edgeLabel, Consumer<? super Node> action) {
+    forEachAdjacentNode(getPositionInEdgeOffsets(Direction.OUT, edgeLabel), action);
+  }
+
+  @Override
+  public void forEachIn(Consumer<? super Node> action) {
+    for (int labelOrdinal : layoutInformation().allowedInEdgeLabelOrdinals()) {
+      forEachAdjacentNode(getPositionInEdgeOffsets(Direction.IN, labelOrdinal), action);
+    }
+  }
+
+  @Override
+  public void forEachIn(String edgeLabel, Consumer<? super Node> action) {
+    forEachAdjacentNode(getPositionInEdgeOffsets(Direction.IN, edgeLabel), action);
+  }
+
+  @Override
+  public void forEachOut(int edgeLabelOrdinal, Consumer<? super Node> action) {
+    forEachAdjacentNode(getPositionInEdgeOffsets(Direction.OUT, edgeLabelOrdinal), action);
+  }
+
+  @Override
+  public void forEachIn(int edgeLabelOrdinal, Consumer<? super Node> action) {
+    forEachAdjacentNode(getPositionInEdgeOffsets(Direction.IN, edgeLabelOrdinal), action);
+  }
+
+  private void forEachAdjacentNode(int offsetPos, Consumer<? super Node> action) {
+    if (offsetPos == -1) return;
     AdjacentNodes adjacentNodesTmp = this.adjacentNodes;
     int start = startIndex(adjacentNodesTmp, offsetPos);
-    int length = blockLength(adjacentNodesTmp, offsetPos);
-    if (length == 0) {
-      return false;
-    }
-    int strideSize = getStrideSize(label);
-    int exclusiveEnd = start + length;
+    int strideSize = strideSize(offsetPos);
     Object[] arr = adjacentNodesTmp.nodesWithEdgeProperties;
-    for (int i = start; i < arr.length && i < exclusiveEnd; i += strideSize) {
-      if (arr[i] != null) {
-        return true;
+    int exclusiveEnd = Math.min(arr.length, start + blockLength(adjacentNodesTmp, offsetPos));
+    for (int i = start; i < exclusiveEnd; i += strideSize) {
+      Object adjacentNode = arr[i];
+      if (adjacentNode != null) {
+        action.accept((Node) adjacentNode);
       }
     }
-    return false;
+  }
+
+  @Override
+  public boolean hasOut(String label) {
+    return hasAdjacentNode(getPositionInEdgeOffsets(Direction.OUT, label));
   }
 
   @Override
   public boolean hasIn(String label) {
-    int offsetPos = getPositionInEdgeOffsets(Direction.IN, label);
+    return hasAdjacentNode(getPositionInEdgeOffsets(Direction.IN, label));
+  }
+
+  @Override
+  public boolean hasOut(int edgeLabelOrdinal) {
+    return hasAdjacentNode(getPositionInEdgeOffsets(Direction.OUT, edgeLabelOrdinal));
+  }
+
+  @Override
+  public boolean hasIn(int edgeLabelOrdinal) {
+    return hasAdjacentNode(getPositionInEdgeOffsets(Direction.IN, edgeLabelOrdinal));
+  }
+
+  private boolean hasAdjacentNode(int offsetPos) {
     if (offsetPos == -1) {
       return false;
     }
@@ -456,7 +544,7 @@ public abstract class NodeDb extends Node {
     if (length == 0) {
       return false;
     }
-    int strideSize = getStrideSize(label);
+    int strideSize = strideSize(offsetPos);
     int exclusiveEnd = start + length;
     Object[] arr = adjacentNodesTmp.nodesWithEdgeProperties;
     for (int i = start; i < arr.length && i < exclusiveEnd; i += strideSize) {
@@ -470,12 +558,12 @@ public abstract class NodeDb extends Node {
   protected int outEdgeCount() {
     int count = 0;
     AdjacentNodes adjacentNodesTmp = this.adjacentNodes;
-    for (String label : layoutInformation().allowedOutEdgeLabels()) {
-      int offsetPos = getPositionInEdgeOffsets(Direction.OUT, label);
+    for (int labelOrdinal : layoutInformation().allowedOutEdgeLabelOrdinals()) {
+      int offsetPos = getPositionInEdgeOffsets(Direction.OUT, labelOrdinal);
       if (offsetPos != -1) {
         int start = startIndex(adjacentNodesTmp, offsetPos);
         int length = blockLength(adjacentNodesTmp, offsetPos);
-        int strideSize = getStrideSize(label);
+        int strideSize = strideSize(offsetPos);
         int exclusiveEnd = start + length;
         for (int i = start;
              i < adjacentNodesTmp.nodesWithEdgeProperties.length && i < exclusiveEnd;
@@ -504,7 +592,7 @@ public abstract class NodeDb extends Node {
     AdjacentNodes adjacentNodesTmp = this.adjacentNodes;
     int offsetPos = getPositionInEdgeOffsets(direction, label);
     int start = startIndex(adjacentNodesTmp, offsetPos);
-    int strideSize = getStrideSize(label);
+    int strideSize = strideSize(offsetPos);
     Object[] adjacentNodesWithEdgeProperties = adjacentNodesTmp.nodesWithEdgeProperties;
 
     int occurrenceCount = -1;
@@ -538,7 +626,7 @@ public abstract class NodeDb extends Node {
     int offsetPos = getPositionInEdgeOffsets(direction, label);
     int start = startIndex(adjacentNodesTmp, offsetPos);
     int length = blockLength(adjacentNodesTmp, offsetPos);
-    int strideSize = getStrideSize(label);
+    int strideSize = strideSize(offsetPos);
 
     Object[] adjacentNodesWithEdgeProperties = adjacentNodesTmp.nodesWithEdgeProperties;
     int currentOccurrence = 0;
@@ -565,13 +653,15 @@ public abstract class NodeDb extends Node {
    * thing that matters is that the offset is identical for both connected nodes (assuming thread safety).
    *
    * @param blockOffset must have been initialized
+   * @return false if the edge had been removed already
    */
-  protected final synchronized void removeEdge(Direction direction, String label, int blockOffset) {
+  protected final synchronized boolean removeEdge(Direction direction, String label, int blockOffset) {
     AdjacentNodes adjacentNodesTmp = this.adjacentNodes;
     int offsetPos = getPositionInEdgeOffsets(direction, label);
     int start = startIndex(adjacentNodesTmp, offsetPos) + blockOffset;
-    int strideSize = getStrideSize(label);
+    int strideSize = strideSize(offsetPos);
     Object[] adjacentNodesWithEdgeProperties = adjacentNodesTmp.nodesWithEdgeProperties;
+    boolean removed = adjacentNodesWithEdgeProperties[start] != null;
 
     for (int i = start; i < start + strideSize; i++) {
       adjacentNodesWithEdgeProperties[i] = null;
@@ -579,6 +669,7 @@ public abstract class NodeDb extends Node {
 
     /* marking as dirty *after* we updated - if node gets serialized before we finish, it'll be marked as dirty */
     this.markAsDirty();
+    return removed;
   }
 
   private Iterator<Edge> createDummyEdgeIterator(Direction direction, String... labels) {
@@ -599,11 +690,15 @@ public abstract class NodeDb extends Node {
 
   private Iterator<Edge> createDummyEdgeIteratorForSingleLabel(
       AdjacentNodes adjacentNodesTmp, Direction direction, String label) {
-    int offsetPos = getPositionInEdgeOffsets(direction, label);
+    return createDummyEdgeIteratorByOffSet(adjacentNodesTmp, direction, getPositionInEdgeOffsets(direction, label), label);
+  }
+
+  private Iterator<Edge> createDummyEdgeIteratorByOffSet(
+      AdjacentNodes adjacentNodesTmp, Direction direction, int offsetPos, String label) {
     if (offsetPos != -1) {
       int start = startIndex(adjacentNodesTmp, offsetPos);
       int length = blockLength(adjacentNodesTmp, offsetPos);
-      int strideSize = getStrideSize(label);
+      int strideSize = strideSize(offsetPos);
 
       return new DummyEdgeIterator(
           adjacentNodesTmp.nodesWithEdgeProperties, start, start + length, strideSize, direction, label, ref);
@@ -635,7 +730,7 @@ public abstract class NodeDb extends Node {
     if (offsetPos != -1) {
       int start = startIndex(adjacentNodesTmp, offsetPos);
       int length = blockLength(adjacentNodesTmp, offsetPos);
-      int strideSize = layoutInformation().getEdgePropertyCountByOffsetPos(offsetPos) + 1;
+      int strideSize = strideSize(offsetPos);
       return new ArrayOffsetIterator<>(adjacentNodesTmp.nodesWithEdgeProperties, start, start + length, strideSize);
     } else {
       return Collections.emptyIterator();
@@ -649,7 +744,7 @@ public abstract class NodeDb extends Node {
     if (offsetPos != -1) {
       int start = startIndex(adjacentNodesTmp, offsetPos);
       int length = blockLength(adjacentNodesTmp, offsetPos);
-      int strideSize = layoutInformation().getEdgePropertyCountByOffsetPos(offsetPos) + 1;
+      int strideSize = strideSize(offsetPos);
       return new overflowdb.misc.ArrayIter<A>(adjacentNodesTmp.nodesWithEdgeProperties, start, start + length, strideSize);
     } else {
       return scala.collection.Iterator.empty();
@@ -693,7 +788,7 @@ public abstract class NodeDb extends Node {
     }
     int start = startIndex(tmp, offsetPos);
     int length = blockLength(tmp, offsetPos);
-    int strideSize = getStrideSize(edgeLabel);
+    int strideSize = strideSize(offsetPos);
 
     Object[] adjacentNodesWithEdgeProperties = tmp.nodesWithEdgeProperties;
     int edgeOffsetLengthB2 = tmp.offsetLengths() >> 1;
@@ -728,17 +823,27 @@ public abstract class NodeDb extends Node {
     return sizeForNodeRef + allowedPropertyKeys.size();
   }
 
+  /* same as `getStrideSize`, for the edge label at the given position in edgeOffsets */
+  private int strideSize(int offsetPos) {
+    return layoutInformation().getEdgePropertyCountByOffsetPos(offsetPos) + 1;
+  }
+
   /**
    * @return The position in edgeOffsets array. -1 if the edge label is not supported
    */
-  private int getPositionInEdgeOffsets(Direction direction, String label) {
-    final Integer positionOrNull;
+  int getPositionInEdgeOffsets(Direction direction, String label) {
+    return getPositionInEdgeOffsets(direction, Ordinals.lookupLabel(label));
+  }
+
+  /**
+   * @return The position in edgeOffsets array for the given edge label ordinal. -1 if the edge label is not supported
+   */
+  final int getPositionInEdgeOffsets(Direction direction, int labelOrdinal) {
     if (direction == Direction.OUT) {
-      positionOrNull = layoutInformation().outEdgeToOffsetPosition(label);
+      return layoutInformation().outEdgeToOffsetPosition(labelOrdinal);
     } else {
-      positionOrNull = layoutInformation().inEdgeToOffsetPosition(label);
+      return layoutInformation().inEdgeToOffsetPosition(labelOrdinal);
     }
-      return Objects.requireNonNullElse(positionOrNull, -1);
   }
 
   /**
@@ -1,5 +1,7 @@
 package overflowdb;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -21,12 +23,14 @@ public class NodeLayoutInformation {
   private final Set<String> propertyKeys;
   private final String[] allowedOutEdgeLabels;
   private final String[] allowedInEdgeLabels;
+  private final int[] allowedOutEdgeLabelOrdinals;
+  private final int[] allowedInEdgeLabelOrdinals;
 
-  /* position for given OUT edge label in edgeOffsets */
-  private final Map<String, Integer> outEdgeToOffsetPosition;
+  /* position for given OUT edge label (by label ordinal, see `Ordinals`) in edgeOffsets, -1 if not allowed */
+  private final int[] outEdgeToOffsetPosition;
 
-  /* position for given IN edge label in edgeOffsets */
-  private final Map<String, Integer> inEdgeToOffsetPosition;
+  /* position for given IN edge label (by label ordinal, see `Ordinals`) in edgeOffsets, -1 if not allowed */
+  private final int[] inEdgeToOffsetPosition;
 
   /* possible edge property keys, grouped by edge label.
    * n.b. property keys are of type `HashSet` (rather than just `Set`) to ensure `.size` has constant time */
@@ -39,12 +43,18 @@ public class NodeLayoutInformation {
    * 1-based, because index `0` is the adjacent node ref */
   private final Map<LabelAndKey, Integer> edgeLabelAndKeyToStrideIndex;
 
+  /* same as `edgeLabelAndKeyToStrideIndex`, by label ordinal and property key ordinal: null if the edge label isn't
+   * part of this layout, -1 if the property key isn't allowed for the edge label */
+  private final int[][] strideIndexByEdgeLabelAndKeyOrdinal;
+
   public NodeLayoutInformation(String label,
                                Set<String> propertyKeys,
                                List<EdgeLayoutInformation> outEdgeLayouts,
                                List<EdgeLayoutInformation> inEdgeLayouts) {
     this.label = label;
     this.propertyKeys = propertyKeys;
+    Ordinals.ofLabel(label);
+    if (propertyKeys != null) propertyKeys.forEach(Ordinals::ofPropertyKey);
 
     Set<EdgeLayoutInformation> allEdgeLayouts = new HashSet<>();
     allEdgeLayouts.addAll(outEdgeLayouts);
@@ -52,6 +62,7 @@ public class NodeLayoutInformation {
 
     edgePropertyKeysByLabel = createEdgePropertyKeysByLabel(allEdgeLayouts);
     edgeLabelAndKeyToStrideIndex = createEdgeLabelAndKeyToStrideIndex(allEdgeLayouts);
+    strideIndexByEdgeLabelAndKeyOrdinal = createStrideIndexByEdgeLabelAndKeyOrdinal(allEdgeLayouts);
 
     /* create unique offsets for each edge type and direction
      * ordered by input order (first out, then in, same order as in outEdgeLayouts)
@@ -61,24 +72,39 @@ public class NodeLayoutInformation {
 
     allowedOutEdgeLabels = new String[outEdgeLayouts.size()];
     allowedInEdgeLabels = new String[inEdgeLayouts.size()];
+    allowedOutEdgeLabelOrdinals = new int[outEdgeLayouts.size()];
+    allowedInEdgeLabelOrdinals = new int[inEdgeLayouts.size()];
     int offsetPosition = 0;
     edgePropertyCountByOffsetPosition = new int[outEdgeLayouts.size() + inEdgeLayouts.size()];
     int i = 0;
-    outEdgeToOffsetPosition = new HashMap<>(outEdgeLayouts.size());
+    outEdgeToOffsetPosition = newOrdinalArray(outEdgeLayouts);
     for (EdgeLayoutInformation edgeLayout : outEdgeLayouts) {
       edgePropertyCountByOffsetPosition[offsetPosition] = edgePropertyKeysByLabel.get(edgeLayout.label).size();
-      outEdgeToOffsetPosition.put(edgeLayout.label, offsetPosition++);
+      outEdgeToOffsetPosition[Ordinals.ofLabel(edgeLayout.label)] = offsetPosition++;
+      allowedOutEdgeLabelOrdinals[i] = Ordinals.ofLabel(edgeLayout.label);
       allowedOutEdgeLabels[i++] = edgeLayout.label;
     }
     i = 0;
-    inEdgeToOffsetPosition = new HashMap<>(inEdgeLayouts.size());
+    inEdgeToOffsetPosition = newOrdinalArray(inEdgeLayouts);
     for (EdgeLayoutInformation edgeLayout : inEdgeLayouts) {
       edgePropertyCountByOffsetPosition[offsetPosition] = edgePropertyKeysByLabel.get(edgeLayout.label).size();
-      inEdgeToOffsetPosition.put(edgeLayout.label, offsetPosition++);
+      inEdgeToOffsetPosition[Ordinals.ofLabel(edgeLayout.label)] = offsetPosition++;
+      allowedInEdgeLabelOrdinals[i] = Ordinals.ofLabel(edgeLayout.label);
       allowedInEdgeLabels[i++] = edgeLayout.label;
     }
   }
 
+  /* an array that covers the ordinals of all given edge labels, filled with -1 */
+  private static int[] newOrdinalArray(Collection<EdgeLayoutInformation> edgeLayouts) {
+    int maxOrdinal = -1;
+    for (EdgeLayoutInformation edgeLayout : edgeLayouts) {
+      maxOrdinal = Math.max(maxOrdinal, Ordinals.ofLabel(edgeLayout.label));
+    }
+    int[] array = new int[maxOrdinal + 1];
+    Arrays.fill(array, -1);
+    return array;
+  }
+
   private Map<String, HashSet<String>> createEdgePropertyKeysByLabel(Set<EdgeLayoutInformation> allEdgeLayouts) {
     Map<String, HashSet<String>> edgePropertyKeysByLabel = new HashMap<>(allEdgeLayouts.size());
     for (EdgeLayoutInformation edgeLayout : allEdgeLayouts) {
@@ -102,6 +128,24 @@ public class NodeLayoutInformation {
     return edgeLabelAndKeyToStrideIndex;
   }
 
+  private int[][] createStrideIndexByEdgeLabelAndKeyOrdinal(Set<EdgeLayoutInformation> allEdgeLayouts) {
+    int[][] strideIndexByOrdinals = new int[newOrdinalArray(allEdgeLayouts).length][];
+    for (EdgeLayoutInformation edgeLayout : allEdgeLayouts) {
+      int maxKeyOrdinal = -1;
+      for (String propertyKey : edgeLayout.propertyKeys) {
+        maxKeyOrdinal = Math.max(maxKeyOrdinal, Ordinals.ofPropertyKey(propertyKey));
+      }
+      int[] strideIndexByKeyOrdinal = new int[maxKeyOrdinal + 1];
+      Arrays.fill(strideIndexByKeyOrdinal, -1);
+      for (String propertyKey : edgeLayout.propertyKeys) {
+        strideIndexByKeyOrdinal[Ordinals.ofPropertyKey(propertyKey)] =
+            edgeLabelAndKeyToStrideIndex.get(new LabelAndKey(edgeLayout.label, propertyKey));
+      }
+      strideIndexByOrdinals[Ordinals.ofLabel(edgeLayout.label)] = strideIndexByKeyOrdinal;
+    }
+    return strideIndexByOrdinals;
+  }
+
   private Iterable<String> sorted(Set<String> propertyKeys) {
     SortedSet<String> sortedSet = new TreeSet<>(String::compareTo);
     sortedSet.addAll(propertyKeys);
@@ -126,6 +170,16 @@ public class NodeLayoutInformation {
     return allowedInEdgeLabels;
   }
 
+  /* ordinals of `allowedOutEdgeLabels`, in the same order */
+  public int[] allowedOutEdgeLabelOrdinals() {
+    return allowedOutEdgeLabelOrdinals;
+  }
+
+  /* ordinals of `allowedInEdgeLabels`, in the same order */
+  public int[] allowedInEdgeLabelOrdinals() {
+    return allowedInEdgeLabelOrdinals;
+  }
+
   public Set<String> edgePropertyKeys(String edgeLabel) {
     return edgePropertyKeysByLabel.get(edgeLabel);
   }
@@ -133,17 +187,33 @@ public class NodeLayoutInformation {
   /* The number of different IN|OUT edge relations. E.g. a node has AST edges in and out, then we would have 2.
    * If in addition it has incoming ref edges it would have 3. */
   public int numberOfDifferentAdjacentTypes() {
-    return outEdgeToOffsetPosition.size() + inEdgeToOffsetPosition.size();
+    return allowedOutEdgeLabels.length + allowedInEdgeLabels.length;
   }
 
   /* position for given OUT edge label in OverflowDbNode.edgeOffsets */
   public Integer outEdgeToOffsetPosition(String edgeLabel) {
-    return outEdgeToOffsetPosition.get(edgeLabel);
+    int offsetPos = outEdgeToOffsetPosition(Ordinals.lookupLabel(edgeLabel));
+    return offsetPos == -1 ? null : offsetPos;
   }
 
   /* position for given IN edge label in OverflowDbNode.edgeOffsets */
   public Integer inEdgeToOffsetPosition(String edgeLabel) {
-    return inEdgeToOffsetPosition.get(edgeLabel);
+    int offsetPos = inEdgeToOffsetPosition(Ordinals.lookupLabel(edgeLabel));
+    return offsetPos == -1 ? null : offsetPos;
+  }
+
+  /* position for given OUT edge label ordinal in OverflowDbNode.edgeOffsets, -1 if the edge label is not allowed */
+  public final int outEdgeToOffsetPosition(int edgeLabelOrdinal) {
+    return edgeLabelOrdinal >= 0 && edgeLabelOrdinal < outEdgeToOffsetPosition.length
+        ? outEdgeToOffsetPosition[edgeLabelOrdinal]
+        : -1;
+  }
+
+  /* position for given IN edge label ordinal in OverflowDbNode.edgeOffsets, -1 if the edge label is not allowed */
+  public final int inEdgeToOffsetPosition(int edgeLabelOrdinal) {
+    return edgeLabelOrdinal >= 0 && edgeLabelOrdinal < inEdgeToOffsetPosition.length
+        ? inEdgeToOffsetPosition[edgeLabelOrdinal]
+        : -1;
   }
 
   /**
@@ -151,7 +221,19 @@ public class NodeLayoutInformation {
    * Return -1 if property key does not exist for given edgeLabel.
    */
   public int getEdgePropertyOffsetRelativeToAdjacentNodeRef(String edgeLabel, String propertyKey) {
-    return edgeLabelAndKeyToStrideIndex.getOrDefault(new LabelAndKey(edgeLabel, propertyKey), -1);
+    return getEdgePropertyOffsetRelativeToAdjacentNodeRef(
+        Ordinals.lookupLabel(edgeLabel), Ordinals.lookupPropertyKey(propertyKey));
+  }
+
+  /**
+   * Same as {@link #getEdgePropertyOffsetRelativeToAdjacentNodeRef(String, String)}, by label and key ordinals.
+   */
+  public final int getEdgePropertyOffsetRelativeToAdjacentNodeRef(int edgeLabelOrdinal, int propertyKeyOrdinal) {
+    if (edgeLabelOrdinal < 0 || edgeLabelOrdinal >= strideIndexByEdgeLabelAndKeyOrdinal.length) return -1;
+    final int[] strideIndexByKeyOrdinal = strideIndexByEdgeLabelAndKeyOrdinal[edgeLabelOrdinal];
+    if (strideIndexByKeyOrdinal == null || propertyKeyOrdinal < 0 || propertyKeyOrdinal >= strideIndexByKeyOrdinal.length)
+      return -1;
+    return strideIndexByKeyOrdinal[propertyKeyOrdinal];
   }
 
   /* gets edge property count by offsetPos*/
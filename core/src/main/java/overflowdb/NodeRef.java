@@ -5,6 +5,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -87,6 +88,8 @@ public abstract class NodeRef<N extends NodeDb> extends Node {
       /* read Node from disk */
       try {
         return getSynchronized();
+      } catch (QueryAbortedException e) {
+        throw e;
       } catch (Exception e) {
         throw new RuntimeException(e);
       }
@@ -104,6 +107,7 @@ public abstract class NodeRef<N extends NodeDb> extends Node {
       if (node == null) throw new IllegalStateException("unable to read node from disk; id=" + id);
       if (this.node != node) throw new AssertionError("invalid state after reading node from dist; id=" + id);
       graph.registerNodeRef(this);
+      QueryContext.nodeLoaded();
       return node;
     }
   }
@@ -190,6 +194,11 @@ public abstract class NodeRef<N extends NodeDb> extends Node {
     return get().property(key);
   }
 
+  @Override
+  public Object property(int propertyKeyOrdinal) {
+    return get().property(propertyKeyOrdinal);
+  }
+
   @Override
   public <A> Optional<A> propertyOption(PropertyKey<A> key) {
     return get().propertyOption(key);
@@ -297,6 +306,66 @@ public abstract class NodeRef<N extends NodeDb> extends Node {
     return this.get().bothE(edgeLabels);
   }
 
+  @Override
+  public Iterator<Node> out(int edgeLabelOrdinal) {
+    return this.get().out(edgeLabelOrdinal);
+  }
+
+  @Override
+  public Iterator<Node> in(int edgeLabelOrdinal) {
+    return this.get().in(edgeLabelOrdinal);
+  }
+
+  @Override
+  public Iterator<Node> both(int edgeLabelOrdinal) {
+    return this.get().both(edgeLabelOrdinal);
+  }
+
+  @Override
+  public Iterator<Edge> outE(int edgeLabelOrdinal) {
+    return this.get().outE(edgeLabelOrdinal);
+  }
+
+  @Override
+  public Iterator<Edge> inE(int edgeLabelOrdinal) {
+    return this.get().inE(edgeLabelOrdinal);
+  }
+
+  @Override
+  public Iterator<Edge> bothE(int edgeLabelOrdinal) {
+    return this.get().bothE(edgeLabelOrdinal);
+  }
+
+  @Override
+  public void forEachOut(Consumer<? super Node> action) {
+    this.get().forEachOut(action);
+  }
+
+  @Override
+  public void forEachOut(String edgeLabel, Consumer<? super Node> action) {
+    this.get().forEachOut(edgeLabel, action);
+  }
+
+  @Override
+  public void forEachIn(Consumer<? super Node> action) {
+    this.get().forEachIn(action);
+  }
+
+  @Override
+  public void forEachIn(String edgeLabel, Consumer<? super Node> action) {
+    this.get().forEachIn(edgeLabel, action);
+  }
+
+  @Override
+  public void forEachOut(int edgeLabelOrdinal, Consumer<? super Node> action) {
+    this.get().forEachOut(edgeLabelOrdinal, action);
+  }
+
+  @Override
+  public void forEachIn(int edgeLabelOrdinal, Consumer<? super Node> action) {
+    this.get().forEachIn(edgeLabelOrdinal, action);
+  }
+
   @Override
   public boolean hasOut(String label) {
     return this.get().hasOut(label);
@@ -307,6 +376,16 @@ public abstract class NodeRef<N extends NodeDb> extends Node {
     return this.get().hasIn(label);
   }
 
+  @Override
+  public boolean hasOut(int edgeLabelOrdinal) {
+    return this.get().hasOut(edgeLabelOrdinal);
+  }
+
+  @Override
+  public boolean hasIn(int edgeLabelOrdinal) {
+    return this.get().hasIn(edgeLabelOrdinal);
+  }
+
   /*Allows fast initialization from detached node data*/
   @Override
   protected void _initializeFromDetached(DetachedNodeData data, Function<DetachedNodeData, Node> mapper){
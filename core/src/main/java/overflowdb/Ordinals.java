@@ -0,0 +1,87 @@
+package overflowdb;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense int ordinals for labels (node and edge labels) and property keys, so that hot paths can look up e.g. the
+ * position of an edge label in a node's adjacency array with an array access, rather than hashing the label string.
+ *
+ * Ordinals are assigned once per JVM and never change: {@link NodeLayoutInformation} registers the labels and keys
+ * of its schema when it's created (usually during class initialization of the generated node classes), and
+ * {@link Graph#open} registers the remaining node and edge labels of the schema. Since layouts are static and may be
+ * shared by several graphs, the ordinals aren't specific to one graph, and they are never persisted - storage keeps
+ * using the strings.
+ *
+ * Callers should resolve ordinals once (e.g. when creating a traversal step) and then use the ordinal-based
+ * overloads on {@link Node}, such as {@link Node#out(int)} or {@link Element#property(int)}.
+ */
+public final class Ordinals {
+  private static final Table labels = new Table();
+  private static final Table propertyKeys = new Table();
+
+  private Ordinals() {}
+
+  /** @return the ordinal of the given node or edge label, which is assigned if it didn't have one yet */
+  public static int ofLabel(String label) {
+    return labels.ordinalOf(label);
+  }
+
+  /** @return the ordinal of the given node or edge label, or -1 if it doesn't have one */
+  public static int lookupLabel(String label) {
+    return labels.lookup(label);
+  }
+
+  public static String label(int ordinal) {
+    return labels.name(ordinal);
+  }
+
+  /** @return the ordinal of the given property key, which is assigned if it didn't have one yet */
+  public static int ofPropertyKey(String key) {
+    return propertyKeys.ordinalOf(key);
+  }
+
+  /** @return the ordinal of the given property key, or -1 if it doesn't have one */
+  public static int lookupPropertyKey(String key) {
+    return propertyKeys.lookup(key);
+  }
+
+  public static String propertyKey(int ordinal) {
+    return propertyKeys.name(ordinal);
+  }
+
+  private static final class Table {
+    private final ConcurrentHashMap<String, Integer> ordinalByName = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    int ordinalOf(String name) {
+      final Integer ordinal = ordinalByName.get(name);
+      return ordinal != null ? ordinal : register(name);
+    }
+
+    int lookup(String name) {
+      final Integer ordinal = ordinalByName.get(name);
+      return ordinal != null ? ordinal : -1;
+    }
+
+    String name(int ordinal) {
+      final String[] names = this.names;
+      if (ordinal < 0 || ordinal >= names.length || names[ordinal] == null)
+        throw new IllegalArgumentException("no name registered for ordinal " + ordinal);
+      return names[ordinal];
+    }
+
+    private synchronized int register(String name) {
+      final Integer existing = ordinalByName.get(name);
+      if (existing != null) return existing;
+
+      final int ordinal = size++;
+      if (ordinal == names.length) names = Arrays.copyOf(names, names.length * 2);
+      names[ordinal] = name;
+      /* publish the ordinal last, so that everyone who looked it up can resolve it */
+      ordinalByName.put(name, ordinal);
+      return ordinal;
+    }
+  }
+}
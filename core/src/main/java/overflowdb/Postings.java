@@ -0,0 +1,121 @@
+package overflowdb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The nodes of one index entry, i.e. all nodes with a given property value.
+ * Members are held in an array sorted by node id, which is never modified once published: that's a single
+ * reference per member, compared to a hash set entry of ~40 bytes, and lets {@link #snapshot()} hand out a
+ * view without copying. Writes go to small pending buffers first, which are merged into a new array when they
+ * grow beyond a fraction of the array size (or on the next read), so that bulk inserts don't copy the array
+ * for every single write.
+ */
+final class Postings {
+  private static final NodeRef<?>[] NO_MEMBERS = new NodeRef<?>[0];
+  static final Postings EMPTY = new Postings();
+  private static final int MIN_PENDING_BEFORE_MERGE = 32;
+
+  private NodeRef<?>[] members = NO_MEMBERS;
+  /* invariant: pendingAdds are not in `members`, pendingRemoves are in `members` */
+  private Set<NodeRef<?>> pendingAdds;
+  private Set<NodeRef<?>> pendingRemoves;
+  private int size;
+
+  synchronized void add(final NodeRef<?> nodeRef) {
+    if (pendingRemoves != null && pendingRemoves.remove(nodeRef)) {
+      size++;
+    } else if (indexOf(nodeRef.id) < 0) {
+      if (pendingAdds == null) pendingAdds = new HashSet<>();
+      if (pendingAdds.add(nodeRef)) {
+        size++;
+        mergeIfPendingExceedsThreshold();
+      }
+    }
+  }
+
+  synchronized void remove(final NodeRef<?> nodeRef) {
+    if (pendingAdds != null && pendingAdds.remove(nodeRef)) {
+      size--;
+    } else if (indexOf(nodeRef.id) >= 0) {
+      if (pendingRemoves == null) pendingRemoves = new HashSet<>();
+      if (pendingRemoves.add(nodeRef)) {
+        size--;
+        mergeIfPendingExceedsThreshold();
+      }
+    }
+  }
+
+  synchronized boolean contains(final NodeRef<?> nodeRef) {
+    if (pendingAdds != null && pendingAdds.contains(nodeRef)) return true;
+    if (pendingRemoves != null && pendingRemoves.contains(nodeRef)) return false;
+    return indexOf(nodeRef.id) >= 0;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /** @return an immutable view on the current members, sorted by node id */
+  synchronized List<NodeRef<?>> snapshot() {
+    merge();
+    return Collections.unmodifiableList(Arrays.asList(members));
+  }
+
+  /** @return the ids of the current members, in ascending order */
+  long[] ids() {
+    final List<NodeRef<?>> snapshot = snapshot();
+    final long[] ids = new long[snapshot.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = snapshot.get(i).id;
+    }
+    return ids;
+  }
+
+  private int indexOf(final long id) {
+    int low = 0;
+    int high = members.length - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final long midId = members[mid].id;
+      if (midId < id) low = mid + 1;
+      else if (midId > id) high = mid - 1;
+      else return mid;
+    }
+    return -1;
+  }
+
+  private void mergeIfPendingExceedsThreshold() {
+    final int pending = (pendingAdds == null ? 0 : pendingAdds.size()) + (pendingRemoves == null ? 0 : pendingRemoves.size());
+    if (pending >= Math.max(MIN_PENDING_BEFORE_MERGE, members.length >> 3)) merge();
+  }
+
+  private void merge() {
+    final boolean hasAdds = pendingAdds != null && !pendingAdds.isEmpty();
+    final boolean hasRemoves = pendingRemoves != null && !pendingRemoves.isEmpty();
+    if (!hasAdds && !hasRemoves) return;
+
+    final NodeRef<?>[] adds = hasAdds ? pendingAdds.toArray(NO_MEMBERS) : NO_MEMBERS;
+    Arrays.sort(adds, (a, b) -> Long.compare(a.id, b.id));
+    final NodeRef<?>[] merged = new NodeRef<?>[size];
+    int i = 0, j = 0, k = 0;
+    while (i < members.length || j < adds.length) {
+      if (j == adds.length || (i < members.length && members[i].id < adds[j].id)) {
+        final NodeRef<?> member = members[i++];
+        if (!hasRemoves || !pendingRemoves.contains(member)) merged[k++] = member;
+      } else {
+        merged[k++] = adds[j++];
+      }
+    }
+    members = merged;
+    pendingAdds = null;
+    pendingRemoves = null;
+  }
+}
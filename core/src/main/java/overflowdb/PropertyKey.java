@@ -2,9 +2,12 @@ package overflowdb;
 
 public class PropertyKey<A> {
   public final String name;
+  /** see {@link Ordinals} */
+  public final int ordinal;
 
   public PropertyKey(String name) {
     this.name = name;
+    this.ordinal = Ordinals.ofPropertyKey(name);
   }
 
   public Property<A> of(A value) {
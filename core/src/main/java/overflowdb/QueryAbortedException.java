@@ -0,0 +1,24 @@
+package overflowdb;
+
+/** Thrown when a query exceeded a limit of its {@link QueryContext}, or was cancelled. */
+public class QueryAbortedException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public enum Reason {
+    TIMEOUT,
+    CANCELLED,
+    MAX_ELEMENTS_VISITED,
+    MAX_NODES_LOADED
+  }
+
+  public final Reason reason;
+
+  /** what the query did until it was aborted */
+  public final QueryContext.Statistics statistics;
+
+  public QueryAbortedException(Reason reason, QueryContext.Statistics statistics) {
+    super("query aborted: " + reason + "; " + statistics);
+    this.reason = reason;
+    this.statistics = statistics;
+  }
+}
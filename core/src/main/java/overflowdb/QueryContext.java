@@ -0,0 +1,159 @@
+package overflowdb;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Limits for running a query, e.g. a user-supplied traversal on a query server: a timeout, the maximum number of
+ * elements visited, and the maximum number of nodes loaded from storage (i.e. faulted in after they had overflowed).
+ * The query may also be cancelled from another thread.
+ *
+ * Enforcement is cooperative: the steps that expand the graph (e.g. `out`, `both`, `repeat`) and the algorithms in
+ * `overflowdb.algorithm` report each element they visit to the context that was current when they were created, and
+ * throw a {@link QueryAbortedException} as soon as a limit is exceeded. Traversals are lazy, so they need to be
+ * consumed within {@link #run(Supplier)}, e.g.
+ * <pre>
+ * QueryContext.create()
+ *   .withTimeout(Duration.ofSeconds(30))
+ *   .withMaxNodesLoaded(100_000)
+ *   .run(() -> cpg.method.repeat(_.both)(_.emit).l);
+ * </pre>
+ */
+public final class QueryContext {
+  private static final ThreadLocal<QueryContext> CURRENT = new ThreadLocal<>();
+
+  /* the clock and the cancellation flag are only checked every this many visits, so that visiting stays cheap */
+  private static final int CHECK_INTERVAL = 1024;
+
+  private long timeoutNanos = Long.MAX_VALUE;
+  private long maxElementsVisited = Long.MAX_VALUE;
+  private long maxNodesLoaded = Long.MAX_VALUE;
+
+  private final AtomicLong elementsVisited = new AtomicLong();
+  private final AtomicLong nodesLoaded = new AtomicLong();
+  private volatile long startNanos = -1;
+  private volatile boolean cancelled;
+
+  private QueryContext() {}
+
+  public static QueryContext create() {
+    return new QueryContext();
+  }
+
+  /** @return the context of the query that's running on the current thread, or null if there is none */
+  public static QueryContext current() {
+    return CURRENT.get();
+  }
+
+  /** the timeout starts when the query is {@link #run(Supplier) run} */
+  public QueryContext withTimeout(Duration timeout) {
+    if (timeout.isNegative()) throw new IllegalArgumentException("timeout must not be negative, but was " + timeout);
+    this.timeoutNanos = timeout.toNanos();
+    return this;
+  }
+
+  public QueryContext withMaxElementsVisited(long maxElementsVisited) {
+    this.maxElementsVisited = maxElementsVisited;
+    return this;
+  }
+
+  public QueryContext withMaxNodesLoaded(long maxNodesLoaded) {
+    this.maxNodesLoaded = maxNodesLoaded;
+    return this;
+  }
+
+  /**
+   * Runs the given query with this as the current context of this thread, i.e. all steps that are created by the
+   * query check the limits of this context.
+   *
+   * @throws QueryAbortedException if a limit was exceeded or the query was cancelled
+   */
+  public <T> T run(Supplier<T> query) {
+    if (startNanos == -1) startNanos = System.nanoTime();
+    final QueryContext previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      checkLimits();
+      return query.get();
+    } finally {
+      if (previous == null) CURRENT.remove();
+      else CURRENT.set(previous);
+    }
+  }
+
+  /** Cancels the query, which aborts at its next check. May be called from any thread. */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * To be called by steps and algorithms for every element they visit.
+   *
+   * @throws QueryAbortedException if a limit was exceeded or the query was cancelled
+   */
+  public void visit() {
+    final long visited = elementsVisited.incrementAndGet();
+    if (visited > maxElementsVisited) abort(QueryAbortedException.Reason.MAX_ELEMENTS_VISITED);
+    if ((visited & (CHECK_INTERVAL - 1)) == 0) checkLimits();
+  }
+
+  /**
+   * Checks the timeout and the cancellation flag straight away, e.g. before a step that doesn't visit elements for a
+   * long time.
+   *
+   * @throws QueryAbortedException if the query timed out or was cancelled
+   */
+  public void checkLimits() {
+    if (cancelled) abort(QueryAbortedException.Reason.CANCELLED);
+    if (timeoutNanos != Long.MAX_VALUE && startNanos != -1 && System.nanoTime() - startNanos > timeoutNanos)
+      abort(QueryAbortedException.Reason.TIMEOUT);
+  }
+
+  /** called by {@link NodeRef} whenever a node was loaded from storage, on the thread that needed it */
+  static void nodeLoaded() {
+    final QueryContext context = CURRENT.get();
+    if (context != null && context.nodesLoaded.incrementAndGet() > context.maxNodesLoaded)
+      context.abort(QueryAbortedException.Reason.MAX_NODES_LOADED);
+  }
+
+  public long elementsVisited() {
+    return elementsVisited.get();
+  }
+
+  public long nodesLoaded() {
+    return nodesLoaded.get();
+  }
+
+  /** @return what the query did so far */
+  public Statistics statistics() {
+    final long startNanos = this.startNanos;
+    final Duration elapsed = startNanos == -1 ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - startNanos);
+    return new Statistics(elementsVisited.get(), nodesLoaded.get(), elapsed);
+  }
+
+  private void abort(QueryAbortedException.Reason reason) {
+    throw new QueryAbortedException(reason, statistics());
+  }
+
+  public static final class Statistics {
+    public final long elementsVisited;
+    public final long nodesLoaded;
+    public final Duration elapsed;
+
+    Statistics(long elementsVisited, long nodesLoaded, Duration elapsed) {
+      this.elementsVisited = elementsVisited;
+      this.nodesLoaded = nodesLoaded;
+      this.elapsed = elapsed;
+    }
+
+    @Override
+    public String toString() {
+      return "Statistics[elementsVisited=" + elementsVisited + "; nodesLoaded=" + nodesLoaded + "; elapsed=" + elapsed + "]";
+    }
+  }
+}
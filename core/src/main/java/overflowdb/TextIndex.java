@@ -0,0 +1,275 @@
+package overflowdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Substring, prefix and regex lookups over the distinct string values of an indexed property.
+ * Holds the values in sorted order (for prefix lookups) and maps each trigram to the values containing it
+ * (for substring and regex lookups). Lookups only narrow down the candidate values via the trigrams of
+ * literals that any match must contain, and then verify each candidate - i.e. the results are exact, and
+ * a query without (sufficiently long) literals degrades to a scan over the distinct values.
+ */
+final class TextIndex {
+  private static final int GRAM_LENGTH = 3;
+
+  private final NavigableSet<String> values = new ConcurrentSkipListSet<>();
+  private final Map<Long, Set<String>> valuesByTrigram = new ConcurrentHashMap<>();
+
+  void add(final String value) {
+    if (values.add(value)) {
+      forEachTrigram(value, trigram -> valuesByTrigram.compute(trigram, (k, valuesWithTrigram) -> {
+        if (valuesWithTrigram == null) valuesWithTrigram = ConcurrentHashMap.newKeySet();
+        valuesWithTrigram.add(value);
+        return valuesWithTrigram;
+      }));
+    }
+  }
+
+  void remove(final String value) {
+    if (values.remove(value)) {
+      forEachTrigram(value, trigram -> valuesByTrigram.computeIfPresent(trigram, (k, valuesWithTrigram) -> {
+        valuesWithTrigram.remove(value);
+        return valuesWithTrigram.isEmpty() ? null : valuesWithTrigram;
+      }));
+    }
+  }
+
+  int size() {
+    return values.size();
+  }
+
+  /** @return all values that contain the given substring */
+  List<String> containing(final String substring) {
+    final List<String> result = new ArrayList<>();
+    for (String value : candidates(Collections.singletonList(substring), "")) {
+      if (value.contains(substring)) result.add(value);
+    }
+    return result;
+  }
+
+  /** @return all values that start with the given prefix */
+  List<String> startingWith(final String prefix) {
+    final List<String> result = new ArrayList<>();
+    for (String value : values.tailSet(prefix, true)) {
+      if (!value.startsWith(prefix)) break;
+      result.add(value);
+    }
+    return result;
+  }
+
+  /** @return all values that (entirely) match the given pattern */
+  List<String> matching(final Pattern pattern) {
+    final RegexLiterals literals = RegexLiterals.of(pattern);
+    final List<String> result = new ArrayList<>();
+    for (String value : candidates(literals.required, literals.prefix)) {
+      if (pattern.matcher(value).matches()) result.add(value);
+    }
+    return result;
+  }
+
+  /**
+   * @return a superset of all values that contain the given literals and start with the given prefix:
+   * intersects the values of all trigrams of the literals, starting with the rarest trigram
+   */
+  private Collection<String> candidates(final Collection<String> literals, final String prefix) {
+    final List<Set<String>> valueSets = new ArrayList<>();
+    for (String literal : literals) {
+      final boolean[] unknownTrigram = new boolean[1];
+      forEachTrigram(literal, trigram -> {
+        final Set<String> valuesWithTrigram = valuesByTrigram.get(trigram);
+        if (valuesWithTrigram == null) unknownTrigram[0] = true;
+        else valueSets.add(valuesWithTrigram);
+      });
+      if (unknownTrigram[0]) return Collections.emptyList();
+    }
+
+    if (valueSets.isEmpty()) {
+      return prefix.isEmpty() ? values : startingWith(prefix);
+    }
+
+    valueSets.sort(Comparator.comparingInt(Set::size));
+    final List<String> result = new ArrayList<>();
+    final Set<String> rarest = valueSets.get(0);
+    for (String value : rarest) {
+      if (!value.startsWith(prefix)) continue;
+      boolean inAllSets = true;
+      for (int i = 1; i < valueSets.size() && inAllSets; i++) {
+        inAllSets = valueSets.get(i).contains(value);
+      }
+      if (inAllSets) result.add(value);
+    }
+    return result;
+  }
+
+  private static void forEachTrigram(final String s, final LongConsumer consumer) {
+    for (int i = 0; i + GRAM_LENGTH <= s.length(); i++) {
+      consumer.accept(((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+    }
+  }
+
+  /**
+   * Literal strings that every (entire) match of a regex must contain, and the literal prefix every match must
+   * start with. Extraction is deliberately conservative: constructs whose effect on literals is non-trivial
+   * (alternation, case insensitivity, lookarounds, quoting etc.) yield no literals at all, and the contents of
+   * groups and character classes are skipped.
+   */
+  static final class RegexLiterals {
+    private static final RegexLiterals NONE = new RegexLiterals("", Collections.emptyList());
+    private static final int UNSUPPORTED_FLAGS =
+        Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.LITERAL | Pattern.CANON_EQ | Pattern.UNICODE_CASE;
+
+    final String prefix;
+    final List<String> required;
+
+    private RegexLiterals(String prefix, List<String> required) {
+      this.prefix = prefix;
+      this.required = required;
+    }
+
+    static RegexLiterals of(final Pattern pattern) {
+      if ((pattern.flags() & UNSUPPORTED_FLAGS) != 0) return NONE;
+      return of(pattern.pattern());
+    }
+
+    static RegexLiterals of(final String regex) {
+      final Extraction extraction = new Extraction();
+      final int n = regex.length();
+      int i = 0;
+      while (i < n) {
+        final char c = regex.charAt(i);
+        switch (c) {
+          case '\\':
+            if (i + 1 >= n) return NONE;
+            final char escaped = regex.charAt(i + 1);
+            if (Character.isLetterOrDigit(escaped)) {
+              // only predefined character classes and word boundaries: others (e.g. \p{..}, \Q, \x..) span more input
+              if ("dDwWsSbB".indexOf(escaped) < 0) return NONE;
+              extraction.breakLiteral();
+            } else {
+              extraction.current.append(escaped);
+            }
+            i += 2;
+            break;
+          case '[':
+            i = skipCharacterClass(regex, i);
+            if (i < 0) return NONE;
+            extraction.breakLiteral();
+            break;
+          case '(':
+            if (regex.startsWith("(?", i) && !regex.startsWith("(?:", i)) {
+              // inline flags: dotall, multiline and unix lines don't affect literals, everything else is unsupported
+              int j = i + 2;
+              while (j < n && "smd".indexOf(regex.charAt(j)) >= 0) j++;
+              if (j == i + 2 || j >= n || regex.charAt(j) != ')') return NONE;
+              i = j + 1;
+            } else {
+              i = skipGroup(regex, i);
+              if (i < 0) return NONE;
+              extraction.breakLiteral();
+            }
+            break;
+          case '*':
+          case '?':
+          case '+':
+          case '{':
+            // the quantified char is optional (or repeated), so it ends the literal without being part of it
+            final int length = extraction.current.length();
+            if (length > 0) extraction.current.setLength(length - 1);
+            extraction.breakLiteral();
+            if (c == '{') {
+              i = regex.indexOf('}', i);
+              if (i < 0) return NONE;
+            }
+            i++;
+            // reluctant or possessive quantifier
+            if (i < n && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) i++;
+            break;
+          case '^':
+            if (i > 0) extraction.breakLiteral();
+            i++;
+            break;
+          case '$':
+            if (i < n - 1) extraction.breakLiteral();
+            i++;
+            break;
+          case '|':
+          case ')':
+            return NONE;
+          case '.':
+            extraction.breakLiteral();
+            i++;
+            break;
+          default:
+            extraction.current.append(c);
+            i++;
+        }
+      }
+      extraction.breakLiteral();
+      return new RegexLiterals(extraction.prefix, extraction.required);
+    }
+
+    /** @return index after the character class starting at `start`, or -1 if it's not supported */
+    private static int skipCharacterClass(String regex, int start) {
+      int i = start + 1;
+      if (i < regex.length() && regex.charAt(i) == '^') i++;
+      if (i < regex.length() && regex.charAt(i) == ']') i++;
+      while (i < regex.length()) {
+        final char c = regex.charAt(i);
+        if (c == '\\') i += 2;
+        else if (c == '[') return -1; // nested classes, unions, intersections
+        else if (c == ']') return i + 1;
+        else i++;
+      }
+      return -1;
+    }
+
+    /** @return index after the group starting at `start`, or -1 if it's not supported */
+    private static int skipGroup(String regex, int start) {
+      int depth = 0;
+      int i = start;
+      while (i < regex.length()) {
+        final char c = regex.charAt(i);
+        if (c == '\\') {
+          i += 2;
+        } else if (c == '[') {
+          i = skipCharacterClass(regex, i);
+          if (i < 0) return -1;
+        } else {
+          if (c == '(') depth++;
+          else if (c == ')' && --depth == 0) return i + 1;
+          i++;
+        }
+      }
+      return -1;
+    }
+
+    private static final class Extraction {
+      private final StringBuilder current = new StringBuilder();
+      private final List<String> required = new ArrayList<>();
+      private String prefix = "";
+      /* whether we haven't consumed anything but literal chars yet, i.e. `current` is a prefix of every match */
+      private boolean atStart = true;
+
+      void breakLiteral() {
+        if (current.length() > 0) {
+          if (atStart) prefix = current.toString();
+          required.add(current.toString());
+          current.setLength(0);
+        }
+        atStart = false;
+      }
+    }
+  }
+
+}
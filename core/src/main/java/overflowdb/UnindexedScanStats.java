@@ -0,0 +1,72 @@
+package overflowdb;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics about traversals that had to scan nodes for a property value, because the property isn't indexed.
+ * Collected by {@link IndexManager#recordUnindexedScan}, reported by {@link IndexManager#getUnindexedScanReport()}.
+ * A property with many scans over many nodes, but few hits (i.e. a low selectivity) is a good index candidate.
+ */
+public final class UnindexedScanStats {
+  private final String propertyName;
+  private final LongAdder scans = new LongAdder();
+  private final LongAdder rangeScans = new LongAdder();
+  private final LongAdder nodesScanned = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder elapsedNanos = new LongAdder();
+
+  UnindexedScanStats(String propertyName) {
+    this.propertyName = propertyName;
+  }
+
+  void recordScan(boolean isRangeScan) {
+    scans.increment();
+    if (isRangeScan) rangeScans.increment();
+  }
+
+  /** to be called by the scan as it progresses, e.g. once per hit */
+  public void record(long nodesScanned, long hits, long elapsedNanos) {
+    this.nodesScanned.add(nodesScanned);
+    this.hits.add(hits);
+    this.elapsedNanos.add(elapsedNanos);
+  }
+
+  public String getPropertyName() {
+    return propertyName;
+  }
+
+  public long getScans() {
+    return scans.sum();
+  }
+
+  /** number of scans for a range of values, rather than a single value */
+  public long getRangeScans() {
+    return rangeScans.sum();
+  }
+
+  public long getNodesScanned() {
+    return nodesScanned.sum();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public Duration getElapsed() {
+    return Duration.ofNanos(elapsedNanos.sum());
+  }
+
+  /** @return share of scanned nodes that matched, between 0 and 1 */
+  public double getSelectivity() {
+    final long scanned = getNodesScanned();
+    return scanned == 0 ? 0 : (double) getHits() / scanned;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d scans (%d range scans), %d nodes scanned, %d hits (selectivity %.4f), %dms",
+        propertyName, getScans(), getRangeScans(), getNodesScanned(), getHits(), getSelectivity(),
+        getElapsed().toMillis());
+  }
+}
@@ -0,0 +1,393 @@
+package overflowdb.storage;
+
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log of applied diffs, stored next to the mvstore file.
+ * Every applied diff is appended as one record and forced to disk before `applyDiff` returns, so that small
+ * incremental updates are durable without rewriting the affected nodes. On open, the records are replayed on top of
+ * the last committed storage version; once the graph state has been committed (on checkpoint or close),
+ * the log is truncated.
+ *
+ * Every record has a sequence number, and the storage commits the sequence number of the last record it contains
+ * together with the data (see {@link OdbStorage#setChangeLogSequenceNumber}). Replay skips all records up to that
+ * number, e.g. if we crashed after a checkpoint's commit, but before the log was truncated. This relies on the storage
+ * only ever committing complete checkpoints, i.e. the change log can't be combined with overflow, which commits spilled
+ * nodes at any time.
+ *
+ * format: file header `[MAGIC, FORMAT_VERSION]`, followed by records `[payloadLength, crc32c(payload), payload]`.
+ * The payload is a msgpack stream: the record's sequence number, followed by the operations, each starting with its
+ * opcode. Property values use the same `[ValueType.id, value]` encoding as the {@link NodeSerializer}.
+ * A torn record at the end of the file (e.g. a crash during `append`) is detected via length and checksum, and dropped.
+ */
+public class ChangeLog implements AutoCloseable {
+    public static final int MAGIC = 0x4f44424c; // "ODBL"
+    public static final int FORMAT_VERSION = 2;
+    public static final String FILE_SUFFIX = ".changelog";
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte OP_ADD_NODE = 1;
+    private static final byte OP_SET_PROPERTIES = 2;
+    private static final byte OP_ADD_EDGE = 3;
+    private static final byte OP_SET_PROPERTY = 4;
+    private static final byte OP_REMOVE_NODE = 5;
+    private static final byte OP_REMOVE_EDGE = 6;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final NodeSerializer nodeSerializer;
+    private final NodeDeserializer nodeDeserializer;
+    private long lastSequenceNumber = 0;
+
+    /** callback for replaying the recorded operations, in the order they were originally applied */
+    public interface Visitor {
+        void addNode(long id, String label);
+
+        void setProperties(long id, Object[] keyValues);
+
+        void addEdge(long outNodeId, String label, long inNodeId, Object[] keyValues);
+
+        void setProperty(long id, String key, Object value);
+
+        void removeNode(long id);
+
+        /** @param occurrence see {@link overflowdb.NodeDb} - differentiates multiple edges with the same label between the same two nodes */
+        void removeEdge(long outNodeId, String label, long inNodeId, int occurrence);
+    }
+
+    public static Path pathFor(File storageFile) {
+        return new File(storageFile.getAbsolutePath() + FILE_SUFFIX).toPath();
+    }
+
+    public static ChangeLog open(Path path, NodeSerializer nodeSerializer, NodeDeserializer nodeDeserializer) {
+        try {
+            return new ChangeLog(path, nodeSerializer, nodeDeserializer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to open change log at " + path, e);
+        }
+    }
+
+    private ChangeLog(Path path, NodeSerializer nodeSerializer, NodeDeserializer nodeDeserializer) throws IOException {
+        this.path = path;
+        this.nodeSerializer = nodeSerializer;
+        this.nodeDeserializer = nodeDeserializer;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < FILE_HEADER_SIZE) {
+            writeFileHeader();
+        } else {
+            verifyFileHeader();
+        }
+        channel.position(channel.size());
+    }
+
+    private void writeFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.force(true);
+    }
+
+    private void verifyFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        int magic = header.getInt();
+        int formatVersion = header.getInt();
+        if (magic != MAGIC) {
+            throw new BackwardsCompatibilityError("not an overflowdb change log: " + path);
+        }
+        if (formatVersion != FORMAT_VERSION) {
+            throw new BackwardsCompatibilityError(String.format(
+                "attempting to open change log with different version: %s; this version of overflowdb requires the version to be exactly %s",
+                formatVersion, FORMAT_VERSION));
+        }
+    }
+
+    public Record newRecord() {
+        return new Record();
+    }
+
+    /** appends the given record and forces it to disk */
+    public synchronized void append(Record record) {
+        try {
+            MessageBufferPacker sequenceNumberPacker = MessagePack.newDefaultBufferPacker();
+            sequenceNumberPacker.packLong(lastSequenceNumber + 1);
+            byte[] payload = concat(sequenceNumberPacker.toByteArray(), record.packer.toByteArray());
+            CRC32C crc = new CRC32C();
+            crc.update(payload, 0, payload.length);
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            lastSequenceNumber++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to append to change log at " + path, e);
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /** sequence number of the last appended (or replayed) record - the storage commits it together with the data */
+    public synchronized long lastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    /**
+     * Replays all complete records with a sequence number above the given one. An incomplete or corrupt record ends
+     * the replay, and is cut off the file together with everything after it.
+     * @param committedSequenceNumber sequence number of the last record that's contained in the committed storage
+     * @return number of replayed records
+     */
+    public synchronized int replay(Visitor visitor, long committedSequenceNumber) {
+        lastSequenceNumber = Math.max(lastSequenceNumber, committedSequenceNumber);
+        try {
+            long position = FILE_HEADER_SIZE;
+            final long size = channel.size();
+            int recordCount = 0;
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (position + RECORD_HEADER_SIZE <= size) {
+                recordHeader.clear();
+                readFully(recordHeader, position);
+                recordHeader.flip();
+                int payloadLength = recordHeader.getInt();
+                int expectedCrc = recordHeader.getInt();
+                if (payloadLength < 0 || position + RECORD_HEADER_SIZE + payloadLength > size) break;
+
+                ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+                readFully(payload, position + RECORD_HEADER_SIZE);
+                CRC32C crc = new CRC32C();
+                crc.update(payload.array(), 0, payloadLength);
+                if ((int) crc.getValue() != expectedCrc) break;
+
+                if (replayRecord(payload.array(), visitor, committedSequenceNumber)) recordCount++;
+                position += RECORD_HEADER_SIZE + payloadLength;
+            }
+            if (position < size) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+            channel.position(position);
+            return recordCount;
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to replay change log at " + path, e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("unexpected end of change log at position " + position);
+            position += read;
+        }
+    }
+
+    /** @return false if the record was skipped, because the storage already contains it */
+    private boolean replayRecord(byte[] payload, Visitor visitor, long committedSequenceNumber) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(payload)) {
+            final long sequenceNumber = unpacker.unpackLong();
+            if (sequenceNumber <= committedSequenceNumber) return false;
+            lastSequenceNumber = sequenceNumber;
+            try {
+                replayOperations(unpacker, visitor);
+            } catch (RuntimeException e) {
+                throw new IllegalStateException(
+                    "unable to replay record " + sequenceNumber + " of change log at " + path + ": " + e.getMessage(), e);
+            }
+            return true;
+        }
+    }
+
+    private void replayOperations(MessageUnpacker unpacker, Visitor visitor) throws IOException {
+        while (unpacker.hasNext()) {
+            final byte op = unpacker.unpackByte();
+            switch (op) {
+                case OP_ADD_NODE -> visitor.addNode(unpacker.unpackLong(), unpacker.unpackString());
+                case OP_SET_PROPERTIES -> {
+                    long id = unpacker.unpackLong();
+                    visitor.setProperties(id, unpackKeyValues(unpacker));
+                }
+                case OP_ADD_EDGE -> {
+                    long outNodeId = unpacker.unpackLong();
+                    String label = unpacker.unpackString();
+                    long inNodeId = unpacker.unpackLong();
+                    visitor.addEdge(outNodeId, label, inNodeId, unpackKeyValues(unpacker));
+                }
+                case OP_SET_PROPERTY -> {
+                    long id = unpacker.unpackLong();
+                    String key = unpacker.unpackString();
+                    visitor.setProperty(id, key, nodeDeserializer.unpackDirectValue(unpacker));
+                }
+                case OP_REMOVE_NODE -> visitor.removeNode(unpacker.unpackLong());
+                case OP_REMOVE_EDGE -> {
+                    long outNodeId = unpacker.unpackLong();
+                    String label = unpacker.unpackString();
+                    long inNodeId = unpacker.unpackLong();
+                    visitor.removeEdge(outNodeId, label, inNodeId, unpacker.unpackInt());
+                }
+                default -> throw new IOException("unknown change log operation: " + op);
+            }
+        }
+    }
+
+    private Object[] unpackKeyValues(MessageUnpacker unpacker) throws IOException {
+        int count = unpacker.unpackMapHeader();
+        Object[] keyValues = new Object[count * 2];
+        for (int i = 0; i < keyValues.length; i += 2) {
+            keyValues[i] = unpacker.unpackString();
+            keyValues[i + 1] = nodeDeserializer.unpackDirectValue(unpacker);
+        }
+        return keyValues;
+    }
+
+    /**
+     * discards all records - to be called once their effects have been committed to the storage.
+     * Sequence numbers continue where they left off.
+     */
+    public synchronized void truncate() {
+        try {
+            channel.truncate(FILE_HEADER_SIZE);
+            channel.position(FILE_HEADER_SIZE);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to truncate change log at " + path, e);
+        }
+    }
+
+    public long sizeInBytes() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to close change log at " + path, e);
+        }
+    }
+
+    /** closes and removes the log file - to be called once the graph has been fully persisted */
+    public synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to delete change log at " + path, e);
+        }
+    }
+
+    /** the operations of one applied diff, appended to the log as a single record */
+    public class Record {
+        private final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        private int operationCount = 0;
+
+        private Record() {}
+
+        public void addNode(long id, String label) {
+            try {
+                startOperation(OP_ADD_NODE);
+                packer.packLong(id);
+                packer.packString(label);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void setProperties(long id, Map<String, Object> properties) {
+            try {
+                startOperation(OP_SET_PROPERTIES);
+                packer.packLong(id);
+                packer.packMapHeader(properties.size());
+                for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                    packer.packString(entry.getKey());
+                    nodeSerializer.packPropertyValue(packer, entry.getValue());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void addEdge(long outNodeId, String label, long inNodeId, Object[] keyValues) {
+            try {
+                startOperation(OP_ADD_EDGE);
+                packer.packLong(outNodeId);
+                packer.packString(label);
+                packer.packLong(inNodeId);
+                packer.packMapHeader(keyValues.length / 2);
+                for (int i = 0; i < keyValues.length; i += 2) {
+                    packer.packString((String) keyValues[i]);
+                    nodeSerializer.packPropertyValue(packer, keyValues[i + 1]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void setProperty(long id, String key, Object value) {
+            try {
+                startOperation(OP_SET_PROPERTY);
+                packer.packLong(id);
+                packer.packString(key);
+                nodeSerializer.packPropertyValue(packer, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void removeNode(long id) {
+            try {
+                startOperation(OP_REMOVE_NODE);
+                packer.packLong(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void removeEdge(long outNodeId, String label, long inNodeId, int occurrence) {
+            try {
+                startOperation(OP_REMOVE_EDGE);
+                packer.packLong(outNodeId);
+                packer.packString(label);
+                packer.packLong(inNodeId);
+                packer.packInt(occurrence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void startOperation(byte op) throws IOException {
+            packer.packByte(op);
+            operationCount++;
+        }
+
+        public boolean isEmpty() {
+            return operationCount == 0;
+        }
+    }
+}
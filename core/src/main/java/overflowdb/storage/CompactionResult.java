@@ -0,0 +1,28 @@
+package overflowdb.storage;
+
+import java.time.Duration;
+
+/** outcome of {@link OdbStorage#compact} */
+public final class CompactionResult {
+    public final StorageStats before;
+    public final StorageStats after;
+    public final Duration elapsed;
+    /** false if the time budget ran out before the target fill rate was reached */
+    public final boolean completed;
+
+    public CompactionResult(StorageStats before, StorageStats after, Duration elapsed, boolean completed) {
+        this.before = before;
+        this.after = after;
+        this.elapsed = elapsed;
+        this.completed = completed;
+    }
+
+    public long reclaimedBytes() {
+        return before.fileSizeBytes - after.fileSizeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompactionResult(before=%s, after=%s, elapsed=%s, completed=%s)", before, after, elapsed, completed);
+    }
+}
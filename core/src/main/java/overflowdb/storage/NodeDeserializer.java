@@ -16,7 +16,6 @@ import overflowdb.util.StringInterner;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +31,6 @@ public class NodeDeserializer extends BookKeeper {
     private final Map<String, NodeFactory<?>> nodeFactoryByLabel;
     private final OdbStorage storage;
     private final StringInterner stringInterner;
-    private final ThreadLocal<Map<Integer, String>> stringCache = ThreadLocal.withInitial(HashMap::new);
 
     public NodeDeserializer(Graph graph, Map<String, NodeFactory<?>> nodeFactoryByLabel, boolean statsEnabled, OdbStorage storage) {
         super(statsEnabled);
@@ -57,9 +55,7 @@ public class NodeDeserializer extends BookKeeper {
             final int labelStringId = unpacker.unpackInt();
             final Object[] properties = unpackProperties(unpacker);
 
-            Map<Integer, String> cache = stringCache.get();
-            final String label = cache.computeIfAbsent(labelStringId,
-                    storage::reverseLookupStringToIntMapping);
+            final String label = storage.reverseLookupStringToIntMapping(labelStringId);
             NodeDb node = ((NodeFactory) getNodeFactory(label)).createNode(graph, id, ref);
             PropertyHelper.attachProperties(node, properties);
 
@@ -70,8 +66,6 @@ public class NodeDeserializer extends BookKeeper {
 
             if (statsEnabled) recordStatistics(startTimeNanos);
             return node;
-        } finally {
-            stringCache.get().clear();
         }
     }
 
@@ -79,9 +73,7 @@ public class NodeDeserializer extends BookKeeper {
         int edgeTypesCount = unpacker.unpackInt();
         for (int edgeTypeIdx = 0; edgeTypeIdx < edgeTypesCount; edgeTypeIdx++) {
             int edgeLabelId = unpacker.unpackInt();
-            Map<Integer, String> cache = stringCache.get();
-            String edgeLabel = cache.computeIfAbsent(edgeLabelId,
-                    storage::reverseLookupStringToIntMapping);
+            String edgeLabel = storage.reverseLookupStringToIntMapping(edgeLabelId);
             int edgeCount = unpacker.unpackInt();
             boolean hasProperties = hasEdgeProperties(node, edgeLabel);
             for (int edgeIdx = 0; edgeIdx < edgeCount; edgeIdx++) {
@@ -121,9 +113,7 @@ public class NodeDeserializer extends BookKeeper {
         int resIdx = 0;
         for (int propertyIdx = 0; propertyIdx < propertyCount; propertyIdx++) {
             int keyId = unpacker.unpackInt();
-            Map<Integer, String> cache = stringCache.get();
-            final String key = cache.computeIfAbsent(keyId,
-                    storage::reverseLookupStringToIntMapping);
+            final String key = storage.reverseLookupStringToIntMapping(keyId);
             final Object unpackedProperty = unpackDirectValue(unpacker);
             res[resIdx++] = key;
             res[resIdx++] = unpackedProperty;
@@ -131,7 +121,7 @@ public class NodeDeserializer extends BookKeeper {
         return res;
     }
 
-    private Object unpackDirectValue(final MessageUnpacker unpacker) throws IOException {
+    Object unpackDirectValue(final MessageUnpacker unpacker) throws IOException {
         unpacker.unpackArrayHeader(); // array structure is always size 2: [typeId, value]
         final byte valueTypeId = unpacker.unpackByte();
         return switch (ValueTypes.lookup(valueTypeId)) {
@@ -141,6 +141,12 @@ public class NodeSerializer extends BookKeeper {
         }
     }
 
+    /** packs a single property value, converted for persistence if necessary - used by the {@link ChangeLog} */
+    void packPropertyValue(final MessageBufferPacker packer, final Object value) throws IOException {
+        Object valueMaybeConverted = convertPropertyForPersistence == null ? value : convertPropertyForPersistence.apply(value);
+        packTypedValue(packer, valueMaybeConverted);
+    }
+
     /**
      * format: `[ValueType.id, value]`
      */
@@ -5,6 +5,8 @@ import overflowdb.NodeDb;
 import overflowdb.NodeRef;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.stream.StreamSupport;
@@ -24,17 +26,58 @@ public class NodesWriter {
 
     /**
      * Writes all references to storage, blocks until complete.
-     * Serialization happens in parallel, however writing to storage happens sequentially, to avoid lock contention in mvstore.
+     * With a single storage shard, serialization happens in parallel, however writing to storage happens sequentially,
+     * to avoid lock contention in mvstore. With multiple shards, each shard is serialized and written by its own thread.
      */
     public void writeAndClearBatched(Spliterator<? extends Node> nodes, int estimatedTotalCount) {
-        StreamSupport.stream(nodes, true)
-                .map(this::serializeIfDirty)
-                .filter(Objects::nonNull)
-                .sequential()
-                .forEach(serializedNode -> storage.persist(serializedNode.id, serializedNode.data));
+        write(nodes, true);
     }
 
-    private SerializedNode serializeIfDirty(Node node) {
+    /**
+     * Writes all dirty nodes to storage, but keeps them in memory - used for checkpoints while the graph remains open.
+     * Nodes are marked clean before they're serialized, so any concurrent mutation marks them dirty again and they'll
+     * be picked up by the next checkpoint. Blocks until complete.
+     * @return number of nodes written
+     */
+    public int writeDirty(Spliterator<? extends Node> nodes) {
+        return write(nodes, false);
+    }
+
+    private int write(Spliterator<? extends Node> nodes, boolean clearRefs) {
+        final int shardCount = storage.getShardCount();
+        if (shardCount == 1) {
+            return StreamSupport.stream(nodes, true)
+                    .map(node -> serializeIfDirty(node, clearRefs))
+                    .filter(Objects::nonNull)
+                    .sequential()
+                    .mapToInt(serializedNode -> {
+                        storage.persist(serializedNode.id, serializedNode.data);
+                        return 1;
+                    })
+                    .sum();
+        } else {
+            final List<List<Node>> nodesByShard = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) nodesByShard.add(new ArrayList<>());
+            nodes.forEachRemaining(node -> {
+                if (node != null) nodesByShard.get(storage.shardOf(node.id())).add(node);
+            });
+
+            // one writer per shard, i.e. there's no lock contention within an mvstore
+            return nodesByShard.parallelStream().mapToInt(shardNodes -> {
+                int writtenCount = 0;
+                for (Node node : shardNodes) {
+                    SerializedNode serializedNode = serializeIfDirty(node, clearRefs);
+                    if (serializedNode != null) {
+                        storage.persist(serializedNode.id, serializedNode.data);
+                        writtenCount++;
+                    }
+                }
+                return writtenCount;
+            }).sum();
+        }
+    }
+
+    private SerializedNode serializeIfDirty(Node node, boolean clearRef) {
         NodeDb nodeDb = null;
         NodeRef<?> ref = null;
         if (node instanceof NodeDb) {
@@ -48,7 +91,7 @@ public class NodesWriter {
         if (nodeDb != null && nodeDb.isDirty()) {
             try {
                 byte[] data = nodeSerializer.serialize(nodeDb);
-                NodeRef.clear(ref);
+                if (clearRef) NodeRef.clear(ref);
                 return new SerializedNode(ref.id(), data);
             } catch (IOException e) {
                 throw new RuntimeException(e);
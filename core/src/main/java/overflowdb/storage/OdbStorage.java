@@ -3,12 +3,17 @@ package overflowdb.storage;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import overflowdb.Config;
+import overflowdb.util.MultiIterator;
 import overflowdb.util.StringInterner;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class OdbStorage implements AutoCloseable {
@@ -20,9 +25,18 @@ public class OdbStorage implements AutoCloseable {
     public static final String METADATA_KEY_STRING_TO_INT_MAX_ID = "STRING_TO_INT_MAX_ID";
     public static final String METADATA_KEY_LIBRARY_VERSIONS_MAX_ID = "LIBRARY_VERSIONS_MAX_ID";
     public static final String METADATA_PREFIX_LIBRARY_VERSIONS = "LIBRARY_VERSIONS_ENTRY_";
+    public static final String METADATA_KEY_SHARD_COUNT = "SHARD_COUNT";
+    public static final String METADATA_PREFIX_INDEX_TYPE = "INDEX_TYPE_";
+    public static final String METADATA_KEY_EDGE_COUNT = "EDGE_COUNT";
+    public static final String METADATA_PREFIX_EDGE_COUNT = "EDGE_COUNT_";
+    public static final String METADATA_KEY_STATISTICS = "STATISTICS";
+    public static final String METADATA_KEY_CHANGE_LOG_SEQUENCE_NUMBER = "CHANGE_LOG_SEQUENCE_NUMBER";
+    private static final String SHARD_FILE_SUFFIX = ".shard";
     private static final String INDEX_PREFIX = "index_";
     public static final int DEFAULT_COMPACT_FILL_RATE = 50; // In percent
     public static final int DEFAULT_COMMIT_BUFFER_SIZE = 1024 * 64; // 64 MB
+    /* minimum number of bytes to rewrite per compaction round - small enough to report progress and check the time budget */
+    private static final int COMPACTION_WRITE_BYTES_PER_ROUND = 16 * 1024 * 1024;
 
 
     private final File mvstoreFile;
@@ -30,6 +44,11 @@ public class OdbStorage implements AutoCloseable {
     private final Config config;
     protected MVStore mvstore;
     private MVMap<Long, byte[]> nodesMVMap;
+    /* node storage shards: shard 0 is the primary `mvstore` (which also holds metadata, glossary and indexes),
+     * all others only hold nodes. Initialized together with `mvstore`. */
+    private int shardCount = 1;
+    private MVStore[] shardStores;
+    private MVMap<Long, byte[]>[] shardNodesMVMaps;
     private MVMap<String, String> metadataMVMap;
     private MVMap<String, Integer> stringToIntMappings;
     private MVMap<Integer, String> intToStringMappings;
@@ -37,6 +56,10 @@ public class OdbStorage implements AutoCloseable {
     private final AtomicInteger stringToIntMappingsMaxId = new AtomicInteger(0);
     private int libraryVersionsIdCurrentRun;
     private final boolean isTemporary;
+    private volatile long lastWriteNanos = System.nanoTime();
+    /* writes and commits hold the read lock, compaction holds the write lock: it commits each store, and then rewrites
+     * chunks without retaining old versions, which is only safe if nothing else writes or commits in the meantime */
+    private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
 
     /* In-heap caches in front of the MVStore-backed string<->int glossary maps. The glossary is
      * consulted once per property key, edge label and node label on every (de)serialization, so a
@@ -46,8 +69,10 @@ public class OdbStorage implements AutoCloseable {
      * assigned to the same string under concurrent serialization. */
     private final java.util.concurrent.ConcurrentHashMap<String, Integer> stringToIntCache =
             new java.util.concurrent.ConcurrentHashMap<>();
-    private final java.util.concurrent.ConcurrentHashMap<Integer, String> intToStringCache =
-            new java.util.concurrent.ConcurrentHashMap<>();
+    /* Reverse glossary, indexed by string id: ids are dense, so decoding a key or label on the deserialization
+     * hot path is a single array load, without boxing or hashing. The array is never modified once published:
+     * new entries are added to a copy, which is then published via the volatile field (copy-on-write). */
+    private volatile String[] intToStringArray = new String[64];
 
     public static OdbStorage createWithTempFile(StringInterner stringInterner) {
         Config defaultConfig = Config.withDefaults();
@@ -86,6 +111,7 @@ public class OdbStorage implements AutoCloseable {
             if (mvstoreFile.exists() && mvstoreFile.length() > 0) {
                 verifyStorageVersion();
                 initializeStringToIntMaxId();
+                initializeReverseGlossary();
             }
         } else {
             try {
@@ -109,6 +135,14 @@ public class OdbStorage implements AutoCloseable {
         }
     }
 
+    private void initializeReverseGlossary() {
+        String[] strings = new String[Math.max(intToStringArray.length, stringToIntMappingsMaxId.get() + 1)];
+        getIntToStringMappings().forEach((id, s) -> {
+            if (id < strings.length) strings[id] = stringInterner.intern(s);
+        });
+        intToStringArray = strings;
+    }
+
     /** storage version must be exactly the same */
     private void verifyStorageVersion() {
         ensureMVStoreAvailable();
@@ -128,16 +162,41 @@ public class OdbStorage implements AutoCloseable {
 
     public void persist(long id, byte[] node) {
         if (!closed) {
-            getNodesMVMap().put(id, node);
+            compactionLock.readLock().lock();
+            try {
+                getNodesMVMap(shardOf(id)).put(id, node);
+            } finally {
+                compactionLock.readLock().unlock();
+            }
+            lastWriteNanos = System.nanoTime();
         }
     }
 
+    /** sequence number of the last change log record that's contained in the committed storage, see {@link ChangeLog} */
+    public long getChangeLogSequenceNumber() {
+        String sequenceNumber = getMetaDataMVMap().get(METADATA_KEY_CHANGE_LOG_SEQUENCE_NUMBER);
+        return sequenceNumber == null ? 0 : Long.parseLong(sequenceNumber);
+    }
+
+    /** to be called before {@link #flush()}, so that the sequence number is committed together with the data */
+    public void setChangeLogSequenceNumber(long sequenceNumber) {
+        getMetaDataMVMap().put(METADATA_KEY_CHANGE_LOG_SEQUENCE_NUMBER, String.valueOf(sequenceNumber));
+    }
+
     /** flush any remaining changes in underlying storage to disk */
     public void flush() {
-        if (mvstore != null) {
+        if (mvstore == null) return;
+        compactionLock.readLock().lock();
+        try {
             getMetaDataMVMap().put(METADATA_KEY_STORAGE_FORMAT_VERSION, String.format("%s", STORAGE_FORMAT_VERSION));
             getMetaDataMVMap().put(METADATA_KEY_STRING_TO_INT_MAX_ID, String.format("%s", stringToIntMappingsMaxId.get()));
+            // commit the node shards first, so that the primary (with glossary and indexes) never refers to uncommitted nodes
+            for (int shard = 1; shard < shardCount; shard++) {
+                shardStores[shard].commit();
+            }
             mvstore.commit();
+        } finally {
+            compactionLock.readLock().unlock();
         }
     }
 
@@ -145,24 +204,161 @@ public class OdbStorage implements AutoCloseable {
     public void close() {
         closed = true;
         flush();
-        if (mvstore != null) mvstore.close();
-        if (isTemporary && mvstoreFile != null && mvstoreFile.exists()) {
-            mvstoreFile.delete();
+        if (mvstore != null) {
+            for (int shard = 1; shard < shardCount; shard++) {
+                shardStores[shard].close();
+            }
+            mvstore.close();
+        }
+        if (isTemporary && mvstoreFile != null) {
+            for (int shard = 1; shard < shardCount; shard++) {
+                File shardFile = getShardFile(shard);
+                if (shardFile.exists()) shardFile.delete();
+            }
+            if (mvstoreFile.exists()) mvstoreFile.delete();
         }
     }
 
+    /** number of node storage shards, see {@link Config#withStorageShards(int)} */
+    public int getShardCount() {
+        ensureMVStoreAvailable();
+        return shardCount;
+    }
+
+    /** the shard that stores the node with the given id */
+    public int shardOf(long nodeId) {
+        ensureMVStoreAvailable();
+        if (shardCount == 1) return 0;
+        // node ids are often assigned sequentially or in strides - spread them evenly nevertheless
+        return Math.floorMod(Long.hashCode(nodeId * 0x9E3779B97F4A7C15L), shardCount);
+    }
+
+    /** file of the given shard - shard 0 is the primary storage file */
+    public File getShardFile(int shard) {
+        return shard == 0 ? mvstoreFile : new File(mvstoreFile.getAbsolutePath() + SHARD_FILE_SUFFIX + shard);
+    }
+
     public File getStorageFile() {
         return mvstoreFile;
     }
 
     public void removeNode(final Long id) {
-        getNodesMVMap().remove(id);
+        compactionLock.readLock().lock();
+        try {
+            getNodesMVMap(shardOf(id)).remove(id);
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        lastWriteNanos = System.nanoTime();
+    }
+
+    /** time since nodes have last been written to or removed from the storage */
+    public Duration timeSinceLastWrite() {
+        return Duration.ofNanos(System.nanoTime() - lastWriteNanos);
+    }
+
+    /** size metrics of the storage files, across all shards */
+    public StorageStats getStorageStats() {
+        ensureMVStoreAvailable();
+        StorageStats stats = StorageStats.of(shardStores[0]);
+        for (int shard = 1; shard < shardCount; shard++) {
+            stats = stats.plus(StorageStats.of(shardStores[shard]));
+        }
+        return stats;
+    }
+
+    public CompactionResult compact(int targetFillRate, Duration timeBudget) {
+        return compact(targetFillRate, timeBudget, stats -> {});
+    }
+
+    /**
+     * Rewrites sparsely filled chunks until the share of live data in each shard reaches `targetFillRate` (in percent),
+     * or the time budget is used up, and then moves chunks together to shrink the files.
+     * Compaction commits and syncs all changes first, so that it can rewrite all chunks, including those that have just
+     * been written. Writes to the storage (e.g. spilled nodes) wait until compaction is complete. Use
+     * {@link overflowdb.Graph#compact} to compact the storage of an open graph, which commits a checkpoint first.
+     * @param progressListener informed about the current storage stats after each compaction round
+     */
+    public CompactionResult compact(int targetFillRate, Duration timeBudget, Consumer<StorageStats> progressListener) {
+        if (targetFillRate < 0 || targetFillRate > 100)
+            throw new IllegalArgumentException("target fill rate must be between 0 and 100, but was " + targetFillRate);
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos = startNanos + timeBudget.toNanos();
+        compactionLock.writeLock().lock();
+        try {
+            final StorageStats before = getStorageStats();
+            boolean completed = true;
+            for (int shard = 0; shard < shardCount && !closed; shard++) {
+                completed &= compact(shardStores[shard], targetFillRate, deadlineNanos, progressListener);
+            }
+            return new CompactionResult(before, getStorageStats(), Duration.ofNanos(System.nanoTime() - startNanos), completed);
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
     }
 
+    private boolean compact(MVStore store, int targetFillRate, long deadlineNanos, Consumer<StorageStats> progressListener) {
+        store.commit();
+        store.sync();
+        // we never read old versions, and everything is synced - the old chunks are only kept around for the
+        // retention time, which would stop us from rewriting recently written chunks
+        final int retentionTime = store.getRetentionTime();
+        final int versionsToKeep = store.getVersionsToKeep();
+        store.setRetentionTime(0);
+        store.setVersionsToKeep(0);
+        try {
+            while (store.getFileStore().getChunksFillRate() < targetFillRate) {
+                if (System.nanoTime() >= deadlineNanos || closed) return false;
+                boolean rewritten = store.compact(targetFillRate, COMPACTION_WRITE_BYTES_PER_ROUND);
+                store.commit();
+                progressListener.accept(getStorageStats());
+                if (!rewritten) break;
+            }
+
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis <= 0) return false;
+            store.compactFile((int) Math.min(Integer.MAX_VALUE, remainingMillis));
+            return true;
+        } finally {
+            store.sync();
+            store.setRetentionTime(retentionTime);
+            store.setVersionsToKeep(versionsToKeep);
+        }
+    }
+
+    /** all serialized nodes, across all shards */
     public Set<Map.Entry<Long, byte[]>> allNodes() {
-        return getNodesMVMap().entrySet();
+        ensureMVStoreAvailable();
+        if (shardCount == 1) return getNodesMVMap().entrySet();
+
+        return new AbstractSet<Map.Entry<Long, byte[]>>() {
+            @Override
+            public Iterator<Map.Entry<Long, byte[]>> iterator() {
+                final MultiIterator<Map.Entry<Long, byte[]>> multiIterator = new MultiIterator<>();
+                for (MVMap<Long, byte[]> shardNodes : shardNodesMVMaps) {
+                    multiIterator.addIterator(shardNodes.entrySet().iterator());
+                }
+                return multiIterator;
+            }
+
+            @Override
+            public int size() {
+                return (int) persistedNodeCount();
+            }
+        };
     }
 
+    /** number of serialized nodes, across all shards */
+    public long persistedNodeCount() {
+        ensureMVStoreAvailable();
+        long count = 0;
+        for (MVMap<Long, byte[]> shardNodes : shardNodesMVMaps) {
+            count += shardNodes.sizeAsLong();
+        }
+        return count;
+    }
+
+    /** nodes of the primary shard - if there's only one shard (the default), that's all nodes */
     public MVMap<Long, byte[]> getNodesMVMap() {
         ensureMVStoreAvailable();
         if (nodesMVMap == null)
@@ -170,6 +366,11 @@ public class OdbStorage implements AutoCloseable {
         return nodesMVMap;
     }
 
+    public MVMap<Long, byte[]> getNodesMVMap(int shard) {
+        ensureMVStoreAvailable();
+        return shardNodesMVMaps[shard];
+    }
+
     public MVMap<String, String> getMetaDataMVMap() {
         ensureMVStoreAvailable();
         if (metadataMVMap == null)
@@ -222,12 +423,25 @@ public class OdbStorage implements AutoCloseable {
 
     private int createStringToIntMapping(String s) {
         final int index = stringToIntMappingsMaxId.incrementAndGet();
-        getStringToIntMappings().put(s, index);
-        getIntToStringMappings().put(index, s);
-        intToStringCache.put(index, s);
+        compactionLock.readLock().lock();
+        try {
+            getStringToIntMappings().put(s, index);
+            getIntToStringMappings().put(index, s);
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        publishReverseMapping(index, s);
         return index;
     }
 
+    private synchronized void publishReverseMapping(int stringId, String s) {
+        String[] current = intToStringArray;
+        if (stringId < current.length && current[stringId] != null) return;
+        String[] copy = Arrays.copyOf(current, stringId < current.length ? current.length : Math.max(stringId + 1, current.length * 2));
+        copy[stringId] = s;
+        intToStringArray = copy;
+    }
+
     /**
      * initialize list with correct size - we want to use it as an reverse index,
      * and ArrayList.ensureCapacity doesn't actually grow the list... */
@@ -238,27 +452,64 @@ public class OdbStorage implements AutoCloseable {
     }
 
     public String reverseLookupStringToIntMapping(int stringId) {
-        String cached = intToStringCache.get(stringId);
-        if (cached != null) return cached;
+        final String[] strings = intToStringArray;
+        if (stringId >= 0 && stringId < strings.length) {
+            final String s = strings[stringId];
+            if (s != null) return s;
+        }
+        return loadReverseMapping(stringId);
+    }
+
+    private String loadReverseMapping(int stringId) {
         String s = getIntToStringMappings().get(stringId);
         if (s == null) return null;
         String interned = stringInterner.intern(s);
-        intToStringCache.put(stringId, interned);
+        publishReverseMapping(stringId, interned);
         return interned;
     }
 
     private void ensureMVStoreAvailable() {
         if (mvstore == null) {
-            mvstore = initializeMVStore();
+            mvstore = initializeMVStore(mvstoreFile);
+            initializeShards();
             persistOdbLibraryVersion();
             this.libraryVersionsIdCurrentRun = initializeLibraryVersionsIdCurrentRun();
         }
     }
 
-    private MVStore initializeMVStore() {
+    /** the shard count is fixed when the storage is created - an existing storage keeps its own shard count */
+    @SuppressWarnings("unchecked")
+    private void initializeShards() {
+        MVMap<String, String> metaData = getMetaDataMVMap();
+        if (metaData.containsKey(METADATA_KEY_SHARD_COUNT)) {
+            shardCount = Integer.parseInt(metaData.get(METADATA_KEY_SHARD_COUNT));
+        } else {
+            // storages from before sharding was introduced don't have a shard count: they have exactly one shard
+            shardCount = mvstore.openMap("nodes").isEmpty() ? config.getStorageShards() : 1;
+            metaData.put(METADATA_KEY_SHARD_COUNT, String.valueOf(shardCount));
+        }
+
+        shardStores = new MVStore[shardCount];
+        shardNodesMVMaps = new MVMap[shardCount];
+        shardStores[0] = mvstore;
+        shardNodesMVMaps[0] = getNodesMVMap();
+        for (int shard = 1; shard < shardCount; shard++) {
+            shardStores[shard] = initializeMVStore(getShardFile(shard));
+            shardNodesMVMaps[shard] = shardStores[shard].openMap("nodes");
+        }
+    }
+
+    private MVStore initializeMVStore(File file) {
+        /* with a background compactor, compaction doesn't need to happen opportunistically on the writing thread */
+        int autoCompactFillRate = config.getBackgroundCompaction().isPresent() ? 0 : DEFAULT_COMPACT_FILL_RATE;
         MVStore.Builder builder = new MVStore.Builder()
                 .autoCommitDisabled()
-                .autoCompactFillRate(DEFAULT_COMPACT_FILL_RATE);
+                .autoCompactFillRate(autoCompactFillRate);
+        if (config.isChangeLogEnabled()) {
+            /* the change log is replayed on top of the last commit, which therefore must be a complete checkpoint:
+             * mvstore must not commit by itself once the unsaved changes exceed its buffer */
+            builder.autoCommitBufferSize(0);
+        }
 
         switch (config.getStorageCompressionMode()) {
             case LZF:
@@ -278,7 +529,7 @@ public class OdbStorage implements AutoCloseable {
         if (config.getPageSplitSize().isPresent()) {
             builder.pageSplitSize(config.getPageSplitSize().get());
         }
-        builder.fileName(mvstoreFile.getAbsolutePath());
+        builder.fileName(file.getAbsolutePath());
         return builder.open();
     }
 
@@ -321,6 +572,58 @@ public class OdbStorage implements AutoCloseable {
         return INDEX_PREFIX + indexName;
     }
 
+    /** @return the type of the given stored index, as persisted via {@link #setIndexType}, or null if none was persisted */
+    public String getIndexType(String indexName) {
+        return getMetaDataMVMap().get(METADATA_PREFIX_INDEX_TYPE + indexName);
+    }
+
+    public void setIndexType(String indexName, String indexType) {
+        getMetaDataMVMap().put(METADATA_PREFIX_INDEX_TYPE + indexName, indexType);
+    }
+
+    /** Replaces the persisted number of edges by label, see {@link #getEdgeCounts}. */
+    public void persistEdgeCounts(Map<String, Long> countByLabel) {
+        MVMap<String, String> metaData = getMetaDataMVMap();
+        List<String> staleKeys = new ArrayList<>();
+        for (String key : metaData.keySet()) {
+            if (key.startsWith(METADATA_PREFIX_EDGE_COUNT) &&
+                    !countByLabel.containsKey(key.substring(METADATA_PREFIX_EDGE_COUNT.length()))) {
+                staleKeys.add(key);
+            }
+        }
+        staleKeys.forEach(metaData::remove);
+        long total = 0;
+        for (Map.Entry<String, Long> entry : countByLabel.entrySet()) {
+            metaData.put(METADATA_PREFIX_EDGE_COUNT + entry.getKey(), String.valueOf(entry.getValue()));
+            total += entry.getValue();
+        }
+        metaData.put(METADATA_KEY_EDGE_COUNT, String.valueOf(total));
+    }
+
+    /** @return the number of edges by label as persisted via {@link #persistEdgeCounts}, or null if none were persisted */
+    public Map<String, Long> getEdgeCounts() {
+        MVMap<String, String> metaData = getMetaDataMVMap();
+        if (!metaData.containsKey(METADATA_KEY_EDGE_COUNT)) return null;
+        Map<String, Long> countByLabel = new HashMap<>();
+        for (String key : metaData.keySet()) {
+            if (key.startsWith(METADATA_PREFIX_EDGE_COUNT)) {
+                countByLabel.put(key.substring(METADATA_PREFIX_EDGE_COUNT.length()), Long.parseLong(metaData.get(key)));
+            }
+        }
+        return countByLabel;
+    }
+
+    /** Replaces the persisted graph statistics, see {@link #getStatistics}. */
+    public void persistStatistics(byte[] statistics) {
+        getMetaDataMVMap().put(METADATA_KEY_STATISTICS, Base64.getEncoder().encodeToString(statistics));
+    }
+
+    /** @return the graph statistics as persisted via {@link #persistStatistics}, or null if none were persisted */
+    public byte[] getStatistics() {
+        String statistics = getMetaDataMVMap().get(METADATA_KEY_STATISTICS);
+        return statistics == null ? null : Base64.getDecoder().decode(statistics);
+    }
+
     public void clearIndices() {
         getIndexNames().forEach(this::clearIndex);
     }
@@ -330,7 +633,7 @@ public class OdbStorage implements AutoCloseable {
     }
 
     public byte[] getSerializedNode(long nodeId) {
-        return getNodesMVMap().get(nodeId);
+        return getNodesMVMap(shardOf(nodeId)).get(nodeId);
     }
 
     private void persistOdbLibraryVersion() {
@@ -0,0 +1,49 @@
+package overflowdb.storage;
+
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVStore;
+
+/**
+ * Size metrics of the storage files, summed up over all shards.
+ * Live and dead bytes are estimates, derived from mvstore's fill rates: `dead` bytes belong to chunks or pages that
+ * are no longer referenced, and are reclaimed by compaction.
+ */
+public final class StorageStats {
+    public final long fileSizeBytes;
+    public final long liveBytes;
+    public final long deadBytes;
+    public final int chunkCount;
+
+    public StorageStats(long fileSizeBytes, long liveBytes, int chunkCount) {
+        this.fileSizeBytes = fileSizeBytes;
+        this.liveBytes = liveBytes;
+        this.deadBytes = fileSizeBytes - liveBytes;
+        this.chunkCount = chunkCount;
+    }
+
+    static StorageStats of(MVStore store) {
+        FileStore<?> fileStore = store.getFileStore();
+        long fileSize = fileStore.size();
+        // `fillRate`: share of the file occupied by chunks, `chunksFillRate`: share of live data within those chunks
+        long liveBytes = fileSize * store.getFillRate() / 100 * fileStore.getChunksFillRate() / 100;
+        int[] chunkCount = new int[1];
+        store.populateInfo((key, value) -> {
+            if ("info.CHUNK_COUNT".equals(key)) chunkCount[0] = Integer.parseInt(value);
+        });
+        return new StorageStats(fileSize, liveBytes, chunkCount[0]);
+    }
+
+    StorageStats plus(StorageStats other) {
+        return new StorageStats(fileSizeBytes + other.fileSizeBytes, liveBytes + other.liveBytes, chunkCount + other.chunkCount);
+    }
+
+    /** share of live data in the storage files, in percent */
+    public int liveRatio() {
+        return fileSizeBytes == 0 ? 100 : (int) (liveBytes * 100 / fileSizeBytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StorageStats(fileSize=%d, live=%d, dead=%d, chunks=%d)", fileSizeBytes, liveBytes, deadBytes, chunkCount);
+    }
+}
@@ -0,0 +1,73 @@
+package overflowdb.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A set of non-negative longs (e.g. node ids) that can be modified by multiple threads concurrently.
+ * Bits are held in fixed-size chunks which are only allocated once a bit in their range is set, so that
+ * sparse or huge ranges of values don't need one contiguous array.
+ */
+public class ConcurrentBitSet {
+  private static final int CHUNK_BITS_SHIFT = 16; // 65536 bits, i.e. 8kB per chunk
+  private static final int WORDS_PER_CHUNK = (1 << CHUNK_BITS_SHIFT) >>> 6;
+
+  private volatile AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(16);
+
+  /** @return true if the value was newly added, false if it had been in the set already */
+  public boolean add(long value) {
+    final AtomicLongArray chunk = chunkFor(value);
+    final int wordIndex = (int) (value >>> 6) & (WORDS_PER_CHUNK - 1);
+    final long mask = 1L << value;
+    long word;
+    do {
+      word = chunk.get(wordIndex);
+      if ((word & mask) != 0) return false;
+    } while (!chunk.compareAndSet(wordIndex, word, word | mask));
+    return true;
+  }
+
+  public boolean contains(long value) {
+    checkValue(value);
+    final AtomicReferenceArray<AtomicLongArray> chunks = this.chunks;
+    final long chunkIndex = value >>> CHUNK_BITS_SHIFT;
+    if (chunkIndex >= chunks.length()) return false;
+    final AtomicLongArray chunk = chunks.get((int) chunkIndex);
+    return chunk != null && (chunk.get((int) (value >>> 6) & (WORDS_PER_CHUNK - 1)) & (1L << value)) != 0;
+  }
+
+  private AtomicLongArray chunkFor(long value) {
+    checkValue(value);
+    final long chunkIndex = value >>> CHUNK_BITS_SHIFT;
+    final AtomicReferenceArray<AtomicLongArray> chunks = this.chunks;
+    if (chunkIndex < chunks.length()) {
+      final AtomicLongArray chunk = chunks.get((int) chunkIndex);
+      if (chunk != null) return chunk;
+    }
+    return allocateChunk(chunkIndex);
+  }
+
+  /* all writes to `chunks` happen here, so that growing the array can't lose a concurrently allocated chunk */
+  private synchronized AtomicLongArray allocateChunk(long chunkIndex) {
+    if (chunkIndex >= Integer.MAX_VALUE - 8) throw new IllegalArgumentException("value too large");
+    AtomicReferenceArray<AtomicLongArray> chunks = this.chunks;
+    if (chunkIndex >= chunks.length()) {
+      final int newLength = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(chunkIndex + 1, chunks.length() * 2L));
+      final AtomicReferenceArray<AtomicLongArray> newChunks = new AtomicReferenceArray<>(newLength);
+      for (int i = 0; i < chunks.length(); i++) {
+        newChunks.set(i, chunks.get(i));
+      }
+      this.chunks = chunks = newChunks;
+    }
+    AtomicLongArray chunk = chunks.get((int) chunkIndex);
+    if (chunk == null) {
+      chunk = new AtomicLongArray(WORDS_PER_CHUNK);
+      chunks.set((int) chunkIndex, chunk);
+    }
+    return chunk;
+  }
+
+  private static void checkValue(long value) {
+    if (value < 0) throw new IllegalArgumentException("value must not be negative, but was " + value);
+  }
+}
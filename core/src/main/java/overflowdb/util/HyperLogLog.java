@@ -0,0 +1,133 @@
+package overflowdb.util;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct values that were added, in constant space: `2^precision` registers of one byte
+ * each, i.e. 4KB for the default precision, with a standard error of about `1.04 / sqrt(2^precision)` (1.6%).
+ * Small cardinalities are counted via linear counting, which is close to exact.
+ *
+ * Values are hashed by their string representation if they're strings, by their numeric value if they're integral
+ * numbers (i.e. `Integer 3` and `Long 3` are the same value, like for range bounds, see
+ * {@link overflowdb.IndexManager#compareToRangeBound}),
+ * and by their `hashCode` otherwise. Not thread-safe.
+ */
+public final class HyperLogLog {
+  public static final int DEFAULT_PRECISION = 12;
+  private static final int MIN_PRECISION = 4;
+  private static final int MAX_PRECISION = 16;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+      throw new IllegalArgumentException(
+          "precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ", but was " + precision);
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  private HyperLogLog(byte[] registers) {
+    this.precision = Integer.numberOfTrailingZeros(registers.length);
+    this.registers = registers;
+  }
+
+  public void add(Object value) {
+    addHash(hash(value));
+  }
+
+  /** @param hash a 64 bit hash of the value, with all bits well distributed */
+  public void addHash(long hash) {
+    final int register = (int) (hash >>> (64 - precision));
+    /* position of the first 1-bit in the remaining bits - the sentinel bit caps it for an all-zero remainder */
+    final int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+    if (rank > registers[register]) registers[register] = (byte) rank;
+  }
+
+  /** adds all values of the given sketch to this one, which requires both to have the same precision */
+  public void merge(HyperLogLog other) {
+    if (other.precision != precision)
+      throw new IllegalArgumentException("cannot merge sketches with precision " + precision + " and " + other.precision);
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+    }
+  }
+
+  /** @return the estimated number of distinct values */
+  public long estimate() {
+    final int m = registers.length;
+    double sum = 0;
+    int zeroRegisters = 0;
+    for (byte rank : registers) {
+      sum += 1.0 / (1L << rank);
+      if (rank == 0) zeroRegisters++;
+    }
+    final double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+    final double estimate = alpha * m * m / sum;
+    if (estimate <= 2.5 * m && zeroRegisters > 0) {
+      return Math.round(m * Math.log((double) m / zeroRegisters));
+    }
+    return Math.round(estimate);
+  }
+
+  public int precision() {
+    return precision;
+  }
+
+  public byte[] toByteArray() {
+    return registers.clone();
+  }
+
+  /** @param registers as returned by {@link #toByteArray()} */
+  public static HyperLogLog fromByteArray(byte[] registers) {
+    final int precision = Integer.numberOfTrailingZeros(registers.length);
+    if (registers.length != 1 << precision || precision < MIN_PRECISION || precision > MAX_PRECISION)
+      throw new IllegalArgumentException("invalid number of registers: " + registers.length);
+    return new HyperLogLog(registers.clone());
+  }
+
+  public static long hash(Object value) {
+    if (value instanceof String) {
+      final String string = (String) value;
+      long hash = 0xcbf29ce484222325L; // FNV-1a
+      for (int i = 0; i < string.length(); i++) {
+        hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
+      }
+      return mix(hash);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return mix(((Number) value).longValue());
+    } else {
+      return mix(value == null ? 0 : value.hashCode());
+    }
+  }
+
+  /* finalizer of MurmurHash3, so that similar inputs (e.g. consecutive numbers) end up in unrelated registers */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb93fe53ba87bL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return "HyperLogLog[precision=" + precision + "; estimate=" + estimate() + "]";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof HyperLogLog && Arrays.equals(registers, ((HyperLogLog) o).registers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(registers);
+  }
+}
@@ -0,0 +1,227 @@
+package overflowdb.util;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import overflowdb.Node;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A set of nodes (by id), e.g. to keep track of visited nodes in a traversal. The graph assigns node ids densely,
+ * starting at 0, so this is usually a plain bitset with a single bit per node, i.e. there's no hashing and no
+ * allocation per member. Ids that are far beyond the current members (e.g. user-provided ids, or the first few
+ * members in a huge graph) go to lazily allocated chunks instead, so that a handful of large ids don't require a
+ * huge array.
+ *
+ * Not thread-safe, see {@link ConcurrentBitSet} for that. Short-lived users can {@link #acquire()} an instance
+ * from a small pool of the current thread, and {@link #release()} it when done, which saves (re)allocating and
+ * growing the array for every traversal. Users that may be abandoned before they're done (e.g. lazy iterators that
+ * are only partially consumed) can {@link #acquire(Object)} one on behalf of an owner instead: the set goes back to
+ * the pool once the owner is garbage collected, unless it has been released before.
+ */
+public final class NodeBitSet {
+  private static final long[] NO_WORDS = new long[0];
+  private static final int MAX_DENSE_WORDS = 1 << 22; // 2^28 ids, 32MB
+  private static final int MIN_DENSE_WORDS = 1 << 10; // always allow a dense array up to 64k ids
+  private static final int CHUNK_SHIFT = 12; // 4096 ids per chunk
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+  private static final int MAX_POOLED_PER_THREAD = 4;
+  /* pooled instances keep their array only up to this size (256k ids, 32KB), rather than pinning up to 32MB each */
+  private static final int MAX_POOLED_WORDS = 4 * MIN_DENSE_WORDS;
+  private static final ThreadLocal<Pool> POOL = ThreadLocal.withInitial(Pool::new);
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  private long[] words = NO_WORDS;
+  /* range of words that may have bits set, so that `clear` doesn't need to touch the entire array */
+  private int minUsedWord = Integer.MAX_VALUE;
+  private int maxUsedWord = -1;
+  private TLongObjectHashMap<long[]> chunks;
+  private int size;
+  /* set if acquired on behalf of an owner, returns this set to the pool it came from */
+  private Cleaner.Cleanable reclaim;
+
+  /** @return an empty instance, reused from the pool of the current thread if available */
+  public static NodeBitSet acquire() {
+    final NodeBitSet pooled = POOL.get().poll();
+    return pooled != null ? pooled : new NodeBitSet();
+  }
+
+  /**
+   * Like {@link #acquire()}, but the set is also handed back to the pool of the current thread once the given owner
+   * has become unreachable, in case it's never released. The owner should be the object that holds on to the set.
+   */
+  public static NodeBitSet acquire(Object owner) {
+    final NodeBitSet bitSet = acquire();
+    bitSet.reclaim = CLEANER.register(owner, new Reclaim(bitSet, POOL.get()));
+    return bitSet;
+  }
+
+  /** @return the number of instances that are pooled for the current thread */
+  public static int pooledCount() {
+    return POOL.get().size();
+  }
+
+  /** Clears this set and hands it back to the pool of the current thread, i.e. it must not be used afterwards. */
+  public void release() {
+    if (reclaim != null) {
+      final Cleaner.Cleanable reclaim = this.reclaim;
+      this.reclaim = null;
+      reclaim.clean();
+    } else {
+      clear();
+      POOL.get().offer(this);
+    }
+  }
+
+  public boolean add(Node node) {
+    return add(node.id());
+  }
+
+  /** @return true if the id was newly added, false if it had been in the set already */
+  public boolean add(long id) {
+    final boolean added;
+    if (isDense(id)) {
+      if (chunks != null && chunkContains(id)) return false;
+      final int wordIndex = (int) (id >>> 6);
+      if (wordIndex >= words.length) {
+        words = Arrays.copyOf(words, Math.min(MAX_DENSE_WORDS, Math.max(wordIndex + 1, words.length * 2)));
+      }
+      final long word = words[wordIndex];
+      words[wordIndex] = word | (1L << id);
+      added = word != words[wordIndex];
+      if (added) {
+        minUsedWord = Math.min(minUsedWord, wordIndex);
+        maxUsedWord = Math.max(maxUsedWord, wordIndex);
+      }
+    } else {
+      if (chunks == null) chunks = new TLongObjectHashMap<>();
+      long[] chunk = chunks.get(id >> CHUNK_SHIFT);
+      if (chunk == null) {
+        chunk = new long[1 << (CHUNK_SHIFT - 6)];
+        chunks.put(id >> CHUNK_SHIFT, chunk);
+      }
+      final int wordIndex = ((int) id & CHUNK_MASK) >>> 6;
+      final long word = chunk[wordIndex];
+      chunk[wordIndex] = word | (1L << id);
+      added = word != chunk[wordIndex];
+    }
+    if (added) size++;
+    return added;
+  }
+
+  public boolean contains(Node node) {
+    return contains(node.id());
+  }
+
+  public boolean contains(long id) {
+    if (id >= 0 && (id >>> 6) < words.length && (words[(int) (id >>> 6)] & (1L << id)) != 0) return true;
+    return chunks != null && chunkContains(id);
+  }
+
+  public boolean remove(Node node) {
+    return remove(node.id());
+  }
+
+  /** @return true if the id was in the set */
+  public boolean remove(long id) {
+    final boolean removed;
+    if (id >= 0 && (id >>> 6) < words.length && (words[(int) (id >>> 6)] & (1L << id)) != 0) {
+      words[(int) (id >>> 6)] &= ~(1L << id);
+      removed = true;
+    } else if (chunks != null && chunkContains(id)) {
+      chunks.get(id >> CHUNK_SHIFT)[((int) id & CHUNK_MASK) >>> 6] &= ~(1L << id);
+      removed = true;
+    } else {
+      removed = false;
+    }
+    if (removed) size--;
+    return removed;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /* number of ids that fit into the dense array without growing it */
+  long denseCapacity() {
+    return (long) words.length << 6;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    if (maxUsedWord >= 0) Arrays.fill(words, minUsedWord, maxUsedWord + 1, 0L);
+    minUsedWord = Integer.MAX_VALUE;
+    maxUsedWord = -1;
+    chunks = null;
+    size = 0;
+  }
+
+  /**
+   * Ids within the dense array, or those that it may grow to: that's everything up to a minimum size, and beyond
+   * that only ids within a reasonable distance of the number of members, so that the array stays reasonably dense.
+   */
+  private boolean isDense(long id) {
+    if (id < 0) return false;
+    final long wordIndex = id >>> 6;
+    return wordIndex < words.length ||
+        (wordIndex < MAX_DENSE_WORDS && (wordIndex < MIN_DENSE_WORDS || wordIndex < 4L * size));
+  }
+
+  private boolean chunkContains(long id) {
+    final long[] chunk = chunks.get(id >> CHUNK_SHIFT);
+    return chunk != null && (chunk[((int) id & CHUNK_MASK) >>> 6] & (1L << id)) != 0;
+  }
+
+  /**
+   * Instances of a thread that can be reused. Those whose owner has been garbage collected are handed back by the
+   * cleaner's thread, i.e. they take a detour via a concurrent queue and are only cleared when they're polled.
+   */
+  static final class Pool {
+    private final ArrayDeque<NodeBitSet> available = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<NodeBitSet> reclaimed = new ConcurrentLinkedQueue<>();
+
+    NodeBitSet poll() {
+      drainReclaimed();
+      return available.pollFirst();
+    }
+
+    void offer(NodeBitSet bitSet) {
+      if (bitSet.words.length > MAX_POOLED_WORDS) bitSet.words = NO_WORDS;
+      if (available.size() < MAX_POOLED_PER_THREAD && !available.contains(bitSet)) available.addFirst(bitSet);
+    }
+
+    int size() {
+      drainReclaimed();
+      return available.size();
+    }
+
+    private void drainReclaimed() {
+      NodeBitSet bitSet;
+      while ((bitSet = reclaimed.poll()) != null) {
+        bitSet.clear();
+        offer(bitSet);
+      }
+    }
+  }
+
+  /** must not reference the owner, otherwise it would never become unreachable */
+  static final class Reclaim implements Runnable {
+    private final NodeBitSet bitSet;
+    private final Pool pool;
+
+    Reclaim(NodeBitSet bitSet, Pool pool) {
+      this.bitSet = bitSet;
+      this.pool = pool;
+    }
+
+    @Override
+    public void run() {
+      pool.reclaimed.add(bitSet);
+    }
+  }
+}
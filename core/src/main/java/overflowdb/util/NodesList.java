@@ -213,6 +213,12 @@ public class NodesList {
     nodesWriter.writeAndClearBatched(Arrays.spliterator(nodes), nodes.length);
   }
 
+  /** persists all dirty nodes, but keeps them in memory
+   * @return number of nodes written */
+  public int persistDirty(NodesWriter nodesWriter) {
+    return nodesWriter.writeDirty(Arrays.spliterator(nodes));
+  }
+
   public static class NodesIterator implements Iterator<Node> {
     private final Node[] snapshot;
     private int idx = 0;
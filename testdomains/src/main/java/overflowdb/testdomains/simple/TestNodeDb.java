@@ -3,6 +3,7 @@ package overflowdb.testdomains.simple;
 import overflowdb.NodeLayoutInformation;
 import overflowdb.NodeRef;
 import overflowdb.NodeDb;
+import overflowdb.Ordinals;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -71,6 +72,33 @@ public class TestNodeDb extends NodeDb {
     }
   }
 
+  private static final int STRING_PROPERTY_ORDINAL = Ordinals.ofPropertyKey(TestNode.STRING_PROPERTY);
+  private static final int STRING_LIST_PROPERTY_ORDINAL = Ordinals.ofPropertyKey(TestNode.STRING_LIST_PROPERTY);
+  private static final int INT_PROPERTY_ORDINAL = Ordinals.ofPropertyKey(TestNode.INT_PROPERTY);
+  private static final int INT_LIST_PROPERTY_ORDINAL = Ordinals.ofPropertyKey(TestNode.INT_LIST_PROPERTY);
+  private static final int FUNKY_LIST_PROPERTY_ORDINAL = Ordinals.ofPropertyKey(TestNode.FUNKY_LIST_PROPERTY);
+  private static final int CONTAINED_TESTNODE_PROPERTY_ORDINAL = Ordinals.ofPropertyKey(TestNode.CONTAINED_TESTNODE_PROPERTY);
+
+  /* same as `property(String)`, but comparing ints rather than strings */
+  @Override
+  public Object property(int propertyKeyOrdinal) {
+    if (propertyKeyOrdinal == STRING_PROPERTY_ORDINAL) {
+      return stringProperty();
+    } else if (propertyKeyOrdinal == STRING_LIST_PROPERTY_ORDINAL) {
+      return stringListProperty();
+    } else if (propertyKeyOrdinal == INT_PROPERTY_ORDINAL) {
+      return intProperty();
+    } else if (propertyKeyOrdinal == INT_LIST_PROPERTY_ORDINAL) {
+      return _intListProperty;
+    } else if (propertyKeyOrdinal == FUNKY_LIST_PROPERTY_ORDINAL) {
+      return funkyList();
+    } else if (propertyKeyOrdinal == CONTAINED_TESTNODE_PROPERTY_ORDINAL) {
+      return containedTestNode();
+    } else {
+      return propertyDefaultValue(Ordinals.propertyKey(propertyKeyOrdinal));
+    }
+  }
+
   @Override
   protected void updateSpecificProperty(String key, Object value) {
     if (TestNode.STRING_PROPERTY.equals(key)) {
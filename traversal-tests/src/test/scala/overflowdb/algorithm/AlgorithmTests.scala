@@ -2,7 +2,7 @@ package overflowdb.algorithm
 
 import org.scalatest.matchers.should.Matchers._
 import org.scalatest.wordspec.AnyWordSpec
-import overflowdb.Node
+import overflowdb.{Direction, Node}
 import overflowdb.traversal.testdomains.simple.{Connection, SimpleDomain}
 
 import java.util.ArrayList
@@ -166,6 +166,69 @@ class AlgorithmTests extends AnyWordSpec {
             idoms.get(b.id()) shouldBe a.id()
             idoms.get(c.id()) shouldBe a.id()
             idoms.get(d.id()) shouldBe a.id()
+            DominatorTree.computeDominators(a, Direction.OUT, Connection.Label) shouldBe idoms
+            graph.close()
+        }
+
+        "compute the dominator trees of many roots in parallel" in {
+            val graph = SimpleDomain.newGraph
+            // one small random CFG with loops per root, plus nodes that only the exit reaches backwards
+            val random = new scala.util.Random(42)
+            val cfgs = (0 until 50).map { _ =>
+                val cfg = (0 until 2 + random.nextInt(40)).map(_ => graph.addNode("thing"))
+                cfg.indices.drop(1).foreach { i =>
+                    cfg(random.nextInt(i)).addEdge(Connection.Label, cfg(i))
+                }
+                (0 until cfg.size / 2).foreach { _ =>
+                    cfg(random.nextInt(cfg.size)).addEdge(Connection.Label, cfg(random.nextInt(cfg.size)))
+                }
+                graph.addNode("thing").addEdge(Connection.Label, cfg.last)
+                cfg
+            }
+
+            // reference: the dominators of a node are the nodes without which it is unreachable from the root
+            def reachable(root: Node, without: Node, successors: Node => Iterator[Node]): Set[Node] = {
+                var seen = Set(root)
+                var todo = List(root)
+                while (todo.nonEmpty) {
+                    val next = successors(todo.head).filter(n => n != without && !seen.contains(n)).toList
+                    seen ++= next
+                    todo = next ++ todo.tail
+                }
+                seen
+            }
+            def expected(root: Node, successors: Node => Iterator[Node]): Map[Long, Long] = {
+                val all = reachable(root, null, successors)
+                val dominators = all.map { v =>
+                    v -> all.filter(d => d != v && (d == root || !reachable(root, d, successors).contains(v)))
+                }.toMap
+                (all - root).map { v =>
+                    // the immediate dominator is the strict dominator that all other strict dominators dominate
+                    val idom = dominators(v).find(d => dominators(v) - d == dominators(d)).get
+                    v.id() -> idom.id()
+                }.toMap
+            }
+
+            val dominatorTrees = DominatorTree.computeAll(cfgs.map(_.head).asJava, Direction.OUT, Connection.Label).asScala
+            dominatorTrees.map(_.root) shouldBe cfgs.map(_.head)
+            dominatorTrees.zip(cfgs).foreach { case (dominators, cfg) =>
+                dominators.size shouldBe cfg.size
+                dominators.immediateDominator(0) shouldBe -1
+                (1 until dominators.size).foreach { i =>
+                    dominators.immediateDominator(i) should be < i
+                    dominators.dominates(0, i) shouldBe true
+                    dominators.dominates(i, dominators.immediateDominator(i)) shouldBe false
+                }
+                dominators.toIdMap.asScala.toMap shouldBe expected(cfg.head, _.out(Connection.Label).asScala)
+                dominators.toIdMap shouldBe DominatorTree.computeDominators(cfg.head, n => n.out(Connection.Label))
+            }
+
+            val postDominatorTrees = DominatorTree.computeAll(
+                cfgs.map(_.last).asJava, n => n.in(Connection.Label), java.util.concurrent.ForkJoinPool.commonPool()).asScala
+            postDominatorTrees.zip(cfgs).foreach { case (postDominators, cfg) =>
+                postDominators.toIdMap.asScala.toMap shouldBe expected(cfg.last, _.in(Connection.Label).asScala)
+                postDominators.toIdMap shouldBe DominatorTree.computePostDominators(cfg.last, n => n.in(Connection.Label))
+            }
             graph.close()
         }
     }
@@ -193,7 +256,49 @@ class AlgorithmTests extends AnyWordSpec {
             val sccSets = sccs.asScala.map(_.asScala.toSet).toSet
             sccSets should contain (Set(a, b, c))
             sccSets should contain (Set(d))
-            
+
+            val sccsViaCursor = StronglyConnectedComponents.compute(nodes, Direction.OUT, Connection.Label)
+            sccsViaCursor.asScala.map(_.asScala.toSet).toSet shouldBe sccSets
+            StronglyConnectedComponents.compute(nodes, Direction.OUT, "UNKNOWN_LABEL").size() shouldBe 4
+
+            graph.close()
+        }
+
+        "find the same components in parallel" in {
+            val graph = SimpleDomain.newGraph
+            // cycles of different lengths, which are connected to each other (and to nodes on no cycle) at random
+            val random = new scala.util.Random(42)
+            val nodes = (0 until 20000).map(_ => graph.addNode("thing"))
+            var start = 0
+            while (start < nodes.size) {
+                val length = math.min(1 + random.nextInt(20000 / 4), nodes.size - start)
+                (start until start + length).foreach { i =>
+                    if (length > 1) nodes(i).addEdge(Connection.Label, nodes(start + (i - start + 1) % length))
+                }
+                start += length
+            }
+            (0 until 5000).foreach { _ =>
+                nodes(random.nextInt(nodes.size)).addEdge(Connection.Label, nodes(random.nextInt(nodes.size)))
+            }
+
+            val snapshot = CsrGraph.of(nodes.asJava, Direction.OUT, Connection.Label)
+            val sequential = StronglyConnectedComponents.compute(snapshot)
+            val parallel = StronglyConnectedComponents.computeParallel(snapshot)
+            def memberSets(components: StronglyConnectedComponents.Components): Set[Set[Int]] =
+                (0 until components.count).map { component =>
+                    components.members.slice(components.offsets()(component), components.offsets()(component + 1)).toSet
+                }.toSet
+            parallel.count shouldBe sequential.count
+            memberSets(parallel) shouldBe memberSets(sequential)
+            sequential.count should be < nodes.size
+
+            // reverse topological order: edges between components lead to earlier components
+            (0 until snapshot.nodeCount).foreach { node =>
+                (snapshot.offsets()(node) until snapshot.offsets()(node + 1)).foreach { edge =>
+                    sequential.componentOf(snapshot.targets()(edge)) should be <= sequential.componentOf(node)
+                }
+            }
+            StronglyConnectedComponents.compute(nodes.asJava, n => n.out(Connection.Label)).size shouldBe sequential.count
             graph.close()
         }
     }
@@ -222,6 +327,9 @@ class AlgorithmTests extends AnyWordSpec {
                 ranks.get(hub.id()) should be > ranks.get(b.id())
                 ranks.get(hub.id()) should be > ranks.get(c.id())
             }
+            val ranksViaCursor = PageRank.compute(nodes, Direction.OUT, Connection.Label)
+            ranksViaCursor.keySet() shouldBe ranks.keySet()
+            ranks.keySet().forEach(id => ranksViaCursor.get(id).doubleValue() shouldBe (ranks.get(id).doubleValue() +- 1e-9))
             graph.close()
         }
 
@@ -242,6 +350,7 @@ class AlgorithmTests extends AnyWordSpec {
             degrees.get(hub.id()) shouldBe 2
             degrees.get(a.id()) shouldBe 0
             degrees.get(b.id()) shouldBe 0
+            PageRank.inDegree(nodes, Direction.OUT) shouldBe degrees
             graph.close()
         }
 
@@ -251,6 +360,32 @@ class AlgorithmTests extends AnyWordSpec {
             ranks.isEmpty shouldBe true
             graph.close()
         }
+
+        "rank large graphs in parallel, via a snapshot" in {
+            val graph = SimpleDomain.newGraph
+            // a cycle of 50000 nodes, in which every 100th node also points at the first node
+            val nodes = (0 until 50000).map(_ => graph.addNode("thing"))
+            nodes.indices.foreach { i =>
+                nodes(i).addEdge(Connection.Label, nodes((i + 1) % nodes.size))
+                if (i % 100 == 0 && i > 0) nodes(i).addEdge(Connection.Label, nodes.head)
+            }
+
+            val snapshot = CsrGraph.of(nodes.asJava, Direction.OUT, Connection.Label)
+            snapshot.nodeCount shouldBe 50000
+            snapshot.edgeCount shouldBe 50000 + 499
+            snapshot.outDegree(snapshot.indexOf(nodes(100))) shouldBe 2
+            snapshot.transpose.outDegree(snapshot.indexOf(nodes.head)) shouldBe 500
+
+            val ranks = PageRank.compute(snapshot, PageRank.DEFAULT_DAMPING_FACTOR, PageRank.DEFAULT_MAX_ITERATIONS, PageRank.DEFAULT_TOLERANCE)
+            ranks.sum shouldBe (1.0 +- 1e-6)
+            ranks(snapshot.indexOf(nodes.head)) should be > ranks(snapshot.indexOf(nodes(50)))
+            // same results as with the successor function
+            val byId = PageRank.compute(nodes.asJava, n => n.out(Connection.Label))
+            nodes.foreach { node =>
+                byId.get(node.id).doubleValue shouldBe (ranks(snapshot.indexOf(node)) +- 1e-12)
+            }
+            graph.close()
+        }
     }
 
     "ContextSensitivePathFinder" should {
@@ -71,6 +71,23 @@ class GenericGraphTraversalTests extends AnyWordSpec with ExampleGraphSetup {
       graph.E.hasNot(Distance).size shouldBe 4
     }
 
+    "leave unknown property keys and labels unregistered" in {
+      // the ordinal tables are global and never cleared, i.e. they'd grow with every unknown name
+      val key = "unregisteredPropertyKey"
+      val label = "unregisteredLabel"
+      graph.V.has(key).size shouldBe 0
+      graph.V.hasNot(key).size shouldBe 9
+      graph.V.has(key, "value").size shouldBe 0
+      graph.V.hasNot(key, "value").size shouldBe 9
+      graph.V.property[String](key).size shouldBe 0
+      center.start.out(label).size shouldBe 0
+      center.start.bothE(label).size shouldBe 0
+      graph.V.hasOut(label).size shouldBe 0
+      graph.V.hasIn(label).size shouldBe 0
+      Ordinals.lookupPropertyKey(key) shouldBe -1
+      Ordinals.lookupLabel(label) shouldBe -1
+    }
+
     "filter by property key/value" in {
       graph.V.has(Name, "R1").size shouldBe 1
       graph.V.has(Name.of("R1")).size shouldBe 1
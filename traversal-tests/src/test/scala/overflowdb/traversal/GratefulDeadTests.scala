@@ -57,6 +57,25 @@ class GratefulDeadTests extends AnyWordSpec {
       gratefulDead.songs.performances.lessThanEqual(1).size shouldBe 243
     }
 
+    "property filter served from text index" in {
+      val graph = GratefulDead.newGraphWithData
+      graph.indexManager.createNodePropertyTextIndex(Artist.PropertyNames.Name)
+      val gratefulDead = GratefulDead.traversal(graph)
+
+      gratefulDead.artists.name(".*Bob.*").size shouldBe 3
+      gratefulDead.artists.name("Bob.*").size shouldBe 3
+      gratefulDead.artists.name("(?s)Bob_Dyla[mn]$").size shouldBe 1
+      gratefulDead.artists.name("Bob|Bob_Dylan").size shouldBe 1
+      gratefulDead.artists.nameStartsWith("Bob").size shouldBe 3
+      gratefulDead.artists.nameContains("M").size shouldBe 30
+      gratefulDead.artists.nameContains("Dylan").size shouldBe 1
+      gratefulDead.artists.nameContains("does not exist").size shouldBe 0
+      // song names are in the same index, but must not end up in an artist traversal
+      gratefulDead.songs.name.l should contain("BERTHA")
+      gratefulDead.artists.name("BERTHA").size shouldBe 0
+      intercept[InvalidRegexException] { gratefulDead.artists.name("this regexp is invalid [") }
+    }
+
     "throw useful exception when passing invalid regexp" in {
       intercept[InvalidRegexException] { gratefulDead.artists.name("this regexp is invalid [") }
     }
@@ -0,0 +1,59 @@
+package overflowdb.traversal
+
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.wordspec.AnyWordSpec
+import overflowdb._
+import overflowdb.traversal.testdomains.simple.Thing.Properties.Name
+import overflowdb.traversal.testdomains.simple.{Connection, ExampleGraphSetup, SimpleDomain, Thing}
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelTraversalTests extends AnyWordSpec with ExampleGraphSetup {
+
+  "yield the same results as the sequential traversal" in {
+    simpleDomain.things.par.count shouldBe 9
+    simpleDomain.things.par.out.toSet shouldBe simpleDomain.things.out.toSetImmutable
+    simpleDomain.things.par.in(Connection.Label).has(Name.name, "Center").toSet shouldBe Set(center)
+    simpleDomain.things.par.both.groupCount shouldBe simpleDomain.things.both.groupCount
+    simpleDomain.things.par.map(_.name).filter(_.startsWith("R")).toList shouldBe List("R1", "R2", "R3", "R4", "R5")
+    simpleDomain.things.par.flatMap(_.out).label(nonExistingLabel).count shouldBe 0
+    simpleDomain.things.map(_.name).par.groupCount(_.head) shouldBe Map('L' -> 3, 'C' -> 1, 'R' -> 5)
+  }
+
+  "only process the remaining elements of a partially consumed traversal" in {
+    val things = simpleDomain.things
+    things.next()
+    things.par.count shouldBe 8
+    things.hasNext shouldBe false
+  }
+
+  "split up the work between workers" in {
+    val graph = SimpleDomain.newGraph
+    (0 until 10000).foreach(i => graph + (Thing.Label, Name.of(s"thing$i")))
+    val pool = new ForkJoinPool(4)
+    try {
+      val threads = java.util.concurrent.ConcurrentHashMap.newKeySet[Thread]()
+      val visited = new AtomicInteger
+      SimpleDomain.traversal(graph).things.par.withPool(pool).foreach { _ =>
+        threads.add(Thread.currentThread())
+        visited.incrementAndGet()
+      }
+      visited.get shouldBe 10000
+      threads.size should be > 1
+      threads.contains(Thread.currentThread()) shouldBe false
+    } finally {
+      pool.shutdown()
+      graph.close()
+    }
+  }
+
+  "propagate exceptions" in {
+    val pool = new ForkJoinPool(2)
+    try {
+      intercept[IllegalStateException] {
+        simpleDomain.things.par.withPool(pool).map(_ => throw new IllegalStateException("boom")).toList
+      }
+    } finally pool.shutdown()
+  }
+}
@@ -4,7 +4,7 @@ import org.scalatest.matchers.should.Matchers._
 import org.scalatest.wordspec.AnyWordSpec
 import overflowdb._
 import overflowdb.traversal.testdomains.simple.Thing.Properties.Name
-import overflowdb.traversal.testdomains.simple.{ExampleGraphSetup, Thing, ThingTraversal}
+import overflowdb.traversal.testdomains.simple.{Connection, ExampleGraphSetup, SimpleDomain, Thing, ThingTraversal}
 
 import scala.collection.mutable
 import scala.jdk.CollectionConverters.IteratorHasAsScala
@@ -245,6 +245,25 @@ class PathTraversalTests extends AnyWordSpec with ExampleGraphSetup {
             complexPathResult shouldBe List(Seq(center, l1, l2))
         }
 
+        "share the common prefix of paths" in {
+            val start    = TrackedPath.start(center)
+            val viaLeft  = start.appended(l1)
+            val viaRight = start.appended(r1)
+            viaLeft.parent shouldBe theSameInstanceAs(viaRight.parent)
+            viaLeft.appended(l2).toVector shouldBe Vector(center, l1, l2)
+            viaRight.length shouldBe 2
+            viaLeft.appended(center).isSimple shouldBe false
+        }
+
+        "track long paths through repeat" in {
+            val graph = SimpleDomain.newGraph
+            val nodes = (0 until 10000).map(_ => graph + Thing.Label)
+            nodes.sliding(2).foreach { case Seq(a, b) => a.addEdge(Connection.Label, b) }
+            val paths = nodes.head.start.enablePathTracking.repeat(_.out)(using _.maxDepth(nodes.size - 1)).path.l
+            paths shouldBe List(nodes.toVector)
+            graph.close()
+        }
+
         "handle duplicate path elements correctly" in {
             val pathWithDuplicates = center.start.enablePathTracking.both.path.toSetMutable
             pathWithDuplicates should contain allOf(
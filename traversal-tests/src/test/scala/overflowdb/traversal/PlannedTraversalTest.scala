@@ -0,0 +1,113 @@
+package overflowdb.traversal
+
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.wordspec.AnyWordSpec
+import overflowdb._
+import overflowdb.traversal.testdomains.simple.Thing.Properties.{Name, Size}
+import overflowdb.traversal.testdomains.simple.{Connection, SimpleDomain, Thing}
+
+class PlannedTraversalTest extends AnyWordSpec {
+
+  "use the index for filters on starting steps" in new Fixture {
+    def verifyResults() = {
+      traversal.label(Thing.Label).has(Size.of(3)).has(Name.of("two")).toSetMutable shouldBe Set(two2)
+      traversal.label(Thing.Label).has(Name.of("two")).toSetMutable shouldBe Set(two1, two2)
+      traversal.label(Thing.Label).has(Name.of("two")).has(Name.of("one")).toSetMutable shouldBe Set.empty
+      traversal.all.has(Name.of("two")).hasNot(Size.of(3)).toSetMutable shouldBe Set(two1)
+      traversal.all.has(Name.name).hasNot(Size.name).toSetMutable shouldBe Set(one)
+    }
+
+    verifyResults()
+    explain(traversal.label(Thing.Label).has(Size.of(3)).has(Name.of("two"))) should startWith("Scan")
+
+    graph.indexManager.createNodePropertyIndex(Name.name)
+    verifyResults()
+    val plan = explain(traversal.label(Thing.Label).has(Size.of(3)).has(Name.of("two")))
+    plan should startWith("IndexLookup(Some(Set(thing)),Map(name -> two))")
+    plan should include("PropertyIn(size,List(3))")
+    plan should not include "PropertyIn(name"
+    explain(traversal.all.has(Name.of("two"))) shouldBe "IndexLookup(None,Map(name -> two))"
+  }
+
+  "find the same nodes with or without index if the value is a number of another type" in new Fixture {
+    def verifyResults() = {
+      // size is an Int property, the scan compares with `==`
+      traversal.label(Thing.Label).has(Size.name, 3L).l shouldBe List(two2)
+      traversal.all.has(Size.name, 3.0).l shouldBe List(two2)
+      traversal.label(Thing.Label).has(Size.name, 3.5).l shouldBe List.empty
+    }
+
+    verifyResults()
+    graph.indexManager.createNodePropertyIndex(Size.name)
+    verifyResults()
+    explain(traversal.label(Thing.Label).has(Size.name, 3L)) should startWith("IndexLookupAny(Some(Set(thing)),size,")
+    explain(traversal.label(Thing.Label).has(Size.name, 1e20)) should startWith("Scan")
+  }
+
+  "restrict the scanned labels by label filters" in new Fixture {
+    explain(traversal.all.label(Thing.Label)) shouldBe "Scan(Some(Set(thing)))"
+    explain(traversal.all.label("unknown")) shouldBe "Scan(Some(Set(unknown)))"
+    explain(traversal.all.label("unknown").label(Thing.Label)) shouldBe "Empty"
+    explain(traversal.label(Thing.Label).labelNot(Thing.Label)) shouldBe "Empty"
+    explain(traversal.all.labelNot("unknown")) should startWith("Scan(None) -> Filter(Label(")
+
+    traversal.all.label(Thing.Label).toSetMutable shouldBe Set(one, two1, two2)
+    traversal.all.label("unknown", Thing.Label).has(Name.of("one")).l shouldBe List(one)
+    traversal.all.labelNot(Thing.Label).l shouldBe List.empty
+    traversal.all.label("unknown").l shouldBe List.empty
+  }
+
+  "check user-provided predicates last" in new Fixture {
+    var checked = List.empty[Any]
+    val result = traversal.label(Thing.Label)
+      .has(Name.where { name => checked = name :: checked; true })
+      .has(Size.of(2))
+      .l
+    result shouldBe List(two1)
+    checked shouldBe List("two")
+  }
+
+  "order filters by selectivity if there are statistics" in new Fixture {
+    def plan = explain(traversal.label(Thing.Label).has(Name.of("two")).has(Size.of(2)))
+    plan.indexOf("PropertyIn(name") should be < plan.indexOf("PropertyIn(size")
+
+    // all three things have a name, but only two have a size: a size value is expected to be more selective
+    graph.updateStatistics()
+    plan.indexOf("PropertyIn(size") should be < plan.indexOf("PropertyIn(name")
+    traversal.label(Thing.Label).has(Name.of("two")).has(Size.of(2)).l shouldBe List(two1)
+  }
+
+  "apply filters regularly once the traversal has been consumed" in new Fixture {
+    graph.indexManager.createNodePropertyIndex(Name.name)
+    val started = traversal.label(Thing.Label).has(Name.of("two"))
+    started.hasNext shouldBe true
+    started.has(Size.of(3)).l shouldBe List(two2)
+  }
+
+  "push down index lookups of generated property steps" in new Fixture {
+    graph.indexManager.createNodePropertyIndex(Name.name)
+    val things = traversal.label(Thing.Label).has(Size.name).cast[Thing]
+    val byName = filter.StringPropertyFilter.exactMultiple[Thing, String](
+      things,
+      thing => Option(thing.name),
+      Seq("two", "three"),
+      Name.name
+    )
+    explain(byName) should startWith("IndexLookupAny(Some(Set(thing)),name,List(two, three))")
+    byName.toSetMutable shouldBe Set(two1, two2)
+  }
+
+  private def explain(traversal: Iterator[?]): String =
+    traversal.asInstanceOf[PlannedTraversal[?]].explain
+
+  private class Fixture {
+    val graph = SimpleDomain.newGraph
+
+    val one  = graph + (Thing.Label, Name.of("one"))
+    val two1 = graph + (Thing.Label, Name.of("two"), Size.of(2))
+    val two2 = graph + (Thing.Label, Name.of("two"), Size.of(3))
+    one.addEdge(Connection.Label, two1)
+
+    def traversal = SimpleDomain.traversal(graph)
+  }
+}
@@ -0,0 +1,68 @@
+package overflowdb.traversal
+
+import org.scalatest.matchers.should.Matchers._
+import org.scalatest.wordspec.AnyWordSpec
+import overflowdb.traversal.testdomains.simple.{Connection, ExampleGraphSetup, Thing}
+import overflowdb.traversal.testdomains.simple.Thing.Properties.Name
+
+class ProfilerTests extends AnyWordSpec with ExampleGraphSetup {
+
+  /* most tests work with this simple graph:
+   * L3 <- L2 <- L1 <- Center -> R1 -> R2 -> R3 -> R4 -> R5
+   */
+  "record every step of a traversal" in {
+    val (result, report) = Profiler.profile(centerTrav.out.out.l)
+    result.toSet shouldBe Set(l2, r2)
+    report.steps.map(_.name) shouldBe Seq("out", "out")
+    report.steps.map(_.elementsConsumed) shouldBe Seq(1, 2)
+    report.steps.map(_.elementsProduced) shouldBe Seq(2, 2)
+    report.steps.foreach { step =>
+      step.selfTimeNanos should be >= 0L
+      step.selfTimeNanos should be <= step.totalTimeNanos
+    }
+    report.totalTimeNanos should be >= report.steps.map(_.selfTimeNanos).sum
+  }
+
+  "record the steps of repeated traversals as children" in {
+    val (result, report) = Profiler.profile(centerTrav.repeat(_.out)(using _.maxDepth(2)).l)
+    result.toSet shouldBe Set(l2, r2)
+    report.steps.map(_.name) shouldBe Seq("repeat")
+    val repeat = report.steps.head
+    repeat.elementsConsumed shouldBe 1
+    repeat.elementsProduced shouldBe 2
+    repeat.children.map(_.name) shouldBe Seq("out")
+    repeat.children.head.elementsProduced shouldBe 4
+    repeat.selfTimeNanos should be <= repeat.totalTimeNanos
+    report.allSteps.map(_.name) shouldBe Seq("repeat", "out")
+  }
+
+  "record the plan of starting steps and their filters" in {
+    val (result, report) = Profiler.profile(simpleDomain.all.has(Name.of("Center")).out(Connection.Label).l)
+    result.toSet shouldBe Set(l1, r1)
+    report.steps.map(_.name) shouldBe Seq("all", s"out(${Connection.Label})")
+    report.steps.head.description should startWith("Scan(None) -> Filter(PropertyIn(name")
+    report.steps.head.elementsProduced shouldBe 1
+    report.render should include("all [Scan(None)")
+  }
+
+  "record `profile` markers, including the time of the steps before" in {
+    val (result, report) = Profiler.profile(centerTrav.out.map(_.label).profile("labels").l)
+    result shouldBe List(Thing.Label, Thing.Label)
+    report.steps.map(_.name) shouldBe Seq("out", "labels")
+    report.steps(1).elementsConsumed shouldBe 2
+    report.steps(1).elementsProduced shouldBe 2
+    report.steps(1).totalTimeNanos should be >= report.steps.head.totalTimeNanos
+  }
+
+  "keep tracking paths" in {
+    val (paths, report) = Profiler.profile(centerTrav.enablePathTracking.out.out.path.l)
+    paths.toSet shouldBe Set(Seq(center, l1, l2), Seq(center, r1, r2))
+    report.steps.map(_.name) shouldBe Seq("out", "out")
+  }
+
+  "not record anything outside of a profiled query" in {
+    centerTrav.out.profile("ignored").l.toSet shouldBe Set(l1, r1)
+    val (_, report) = Profiler.profile(centerTrav.l)
+    report.steps shouldBe empty
+  }
+}
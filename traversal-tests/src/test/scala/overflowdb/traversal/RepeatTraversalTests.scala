@@ -3,6 +3,7 @@ package overflowdb.traversal
 import org.scalatest.matchers.should.Matchers._
 import org.scalatest.wordspec.AnyWordSpec
 import overflowdb._
+import overflowdb.util.NodeBitSet
 import overflowdb.traversal.testdomains.simple.Thing.Properties.Name
 import overflowdb.traversal.testdomains.simple.{Connection, ExampleGraphSetup, SimpleDomain, Thing, ThingTraversal}
 import scala.collection.mutable
@@ -393,6 +394,48 @@ class RepeatTraversalTests extends AnyWordSpec with ExampleGraphSetup {
     //    ).times(repeatCount).values[String](Name.name).next() shouldBe "b"
   }
 
+  "parallel breadth first search" should {
+    "yield the same elements as the sequential search" in {
+      def verify(behaviour: RepeatBehaviour.Builder[Thing] => RepeatBehaviour.Builder[Thing]) = {
+        val parallelBehaviour = behaviour.andThen(_.parallel)
+        centerTrav.repeat(_.followedBy)(using parallelBehaviour).toSetMutable shouldBe
+          centerTrav.repeat(_.followedBy)(using behaviour.andThen(_.breadthFirstSearch)).toSetMutable
+      }
+      verify(_.maxDepth(2))
+      verify(_.emit)
+      verify(_.emitAllButFirst.maxDepth(3))
+      verify(_.emit(_.name.filter(_.startsWith("L"))))
+      verify(_.until(_.name.filter(_.endsWith("2"))))
+      verify(_.whilst(_.name.filter(_ != "R3")))
+      verify(_.emit.dedup)
+    }
+
+    "return elements level by level" in {
+      val levels = centerTrav.repeat(_.followedBy)(using _.emit.parallel).name.map(_.drop(1).toIntOption.getOrElse(0)).l
+      levels shouldBe List(0, 1, 1, 2, 2, 3, 3, 4, 5)
+    }
+
+    "expand each node once with dedup, despite cycles and converging paths" in {
+      val graph = SimpleDomain.newGraph
+      val things = (0 until 10000).map(i => graph + (Thing.Label, Name.of(s"thing$i")))
+      // a binary-tree-like structure with back edges to the root, i.e. many paths lead to the same nodes
+      things.indices.foreach { i =>
+        if (2 * i + 1 < things.size) things(i) --- Connection.Label --> things(2 * i + 1)
+        if (2 * i + 2 < things.size) things(i) --- Connection.Label --> things(2 * i + 2)
+        if (i % 100 == 0) things(i) --- Connection.Label --> things(0)
+        if (i > 0 && i % 7 == 0) things(i) --- Connection.Label --> things(i / 2)
+      }
+
+      val expanded = new java.util.concurrent.atomic.AtomicInteger
+      val reached = things.head.start
+        .repeat(_.sideEffect(_ => expanded.incrementAndGet()).out)(using _.emit.dedup.parallel)
+        .toSetMutable
+      reached.size shouldBe things.size
+      expanded.get shouldBe things.size
+      graph.close()
+    }
+  }
+
   "support .path step" when {
     "using `maxDepth` modulator" in {
       centerTrav.enablePathTracking.repeat(_.out)(using _.maxDepth(2)).path.toSetMutable shouldBe Set(
@@ -455,4 +498,76 @@ class RepeatTraversalTests extends AnyWordSpec with ExampleGraphSetup {
 
   }
 
+  "abort a runaway repeat via the query context" should {
+    def runaway(repeated: => Iterator[?]) = {
+      val context = QueryContext.create().withMaxElementsVisited(10000)
+      val aborted = intercept[QueryAbortedException] { context.run(() => repeated.size) }
+      aborted.reason shouldBe QueryAbortedException.Reason.MAX_ELEMENTS_VISITED
+      aborted.statistics.elementsVisited shouldBe 10001
+    }
+
+    "without path tracking" in {
+      runaway(centerTrav.repeat(_.both)(using _.emit))
+      runaway(centerTrav.repeat(_.both)(using _.emit.breadthFirstSearch))
+    }
+
+    "with path tracking" in {
+      runaway(centerTrav.enablePathTracking.repeat(_.both)(using _.emit))
+    }
+
+    "in parallel" in {
+      val context = QueryContext.create().withMaxElementsVisited(10000)
+      val aborted = intercept[QueryAbortedException] {
+        context.run(() => centerTrav.repeat(_.both)(using _.emit.parallel).size)
+      }
+      aborted.reason shouldBe QueryAbortedException.Reason.MAX_ELEMENTS_VISITED
+      // the workers race, i.e. some of them may visit another element before they notice
+      aborted.statistics.elementsVisited should be > 10000L
+    }
+
+    "in parallel, once cancelled" in {
+      val context = QueryContext.create()
+      val aborted = intercept[QueryAbortedException] {
+        context.run(() => centerTrav.repeat(_.sideEffect(_ => context.cancel()).both)(using _.emit.parallel).l)
+      }
+      aborted.reason shouldBe QueryAbortedException.Reason.CANCELLED
+    }
+  }
+
+  "return the bitset for dedup to the pool" should {
+    // a new thread starts with an empty pool
+    def onNewThread(test: => Unit): Unit = {
+      var failure: Throwable = null
+      val thread = new Thread(() => try test catch { case t: Throwable => failure = t })
+      thread.start()
+      thread.join()
+      if (failure != null) throw failure
+    }
+
+    "once the iterator is exhausted" in onNewThread {
+      centerTrav.repeat(_.followedBy)(using _.dedup).l
+      NodeBitSet.pooledCount() shouldBe 1
+    }
+
+    "if the query is aborted" in onNewThread {
+      val context = QueryContext.create().withMaxElementsVisited(3)
+      intercept[QueryAbortedException] { context.run(() => centerTrav.repeat(_.both)(using _.dedup.emit).size) }
+      NodeBitSet.pooledCount() shouldBe 1
+    }
+
+    "if the iterator is abandoned after the first element" in onNewThread {
+      // in a method of its own, so that the stack frame doesn't keep the iterator alive
+      def firstElement() = centerTrav.repeat(_.both)(using _.dedup.emit).headOption
+      firstElement() shouldBe defined
+      // the abandoned iterator has to be garbage collected first
+      var attempts = 0
+      while (NodeBitSet.pooledCount() == 0 && attempts < 100) {
+        System.gc()
+        Thread.sleep(20)
+        attempts += 1
+      }
+      NodeBitSet.pooledCount() shouldBe 1
+    }
+  }
+
 }
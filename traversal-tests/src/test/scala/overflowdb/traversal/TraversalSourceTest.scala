@@ -3,7 +3,7 @@ package overflowdb.traversal
 import org.scalatest.matchers.should.Matchers._
 import org.scalatest.wordspec.AnyWordSpec
 import overflowdb._
-import overflowdb.traversal.testdomains.simple.Thing.Properties.Name
+import overflowdb.traversal.testdomains.simple.Thing.Properties.{Name, Size}
 import overflowdb.traversal.testdomains.simple.{Connection, SimpleDomain, Thing}
 
 class TraversalSourceTest extends AnyWordSpec {
@@ -35,6 +35,69 @@ class TraversalSourceTest extends AnyWordSpec {
     verifyTraversalResults()
   }
 
+  "property lookup with composite index" in new Fixture {
+    graph.indexManager.createNodePropertyIndex(Thing.Label, Name.name)
+    verifyTraversalResults()
+  }
+
+  "lookup by multiple properties with and without indexes" in new Fixture {
+    two1.setProperty(Size.name, 2)
+    two2.setProperty(Size.name, 3)
+
+    def verifyResults() = {
+      traversal.labelAndProperties(Thing.Label, Name.of("two"), Size.of(3)).toSetMutable shouldBe Set(two2)
+      traversal.labelAndProperties(Thing.Label, Name.of("two")).toSetMutable shouldBe Set(two1, two2)
+      traversal.labelAndProperties(Thing.Label, Name.of("one"), Size.of(3)).toSetMutable shouldBe Set.empty
+      traversal.labelAndProperties("unknown", Name.of("two"), Size.of(3)).toSetMutable shouldBe Set.empty
+    }
+
+    verifyResults()
+    traversal.statistics shouldBe None
+    graph.updateStatistics()
+    traversal.statistics.map(_.forLabel(Thing.Label).fillRate(Size.name)) shouldBe Some(2.0 / 3)
+    verifyResults()
+    graph.indexManager.createNodePropertyIndex(Size.name)
+    verifyResults()
+    graph.indexManager.createNodePropertyIndex(Thing.Label, Name.name)
+    verifyResults()
+  }
+
+  "property range lookup with and without range index" in new Fixture {
+    one.setProperty(Size.name, 1)
+    two1.setProperty(Size.name, 2)
+    two2.setProperty(Size.name, 3)
+
+    def verifyRangeResults() = {
+      traversal.hasRange(Size.name, 1, 2).toSetMutable shouldBe Set(one, two1)
+      traversal.hasGreaterThan(Size.name, 1).toSetMutable shouldBe Set(two1, two2)
+      traversal.hasLessThan(Size.name, 3L).toSetMutable shouldBe Set(one, two1)
+      traversal.hasLessThan(Size.name, 1).toSetMutable shouldBe Set.empty
+    }
+
+    verifyRangeResults()
+    graph.indexManager.createNodePropertyRangeIndex(Size.name)
+    verifyRangeResults()
+  }
+
+  "record unindexed scans and auto-create index" in new Fixture {
+    traversal.has(Name.of("two")).head shouldBe two1
+    val stats = graph.indexManager.getUnindexedScanReport.get(0)
+    stats.getPropertyName shouldBe Name.name
+    stats.getScans shouldBe 1
+    stats.getHits shouldBe 1
+    stats.getNodesScanned shouldBe 2
+
+    traversal.hasGreaterThan(Name.name, "one").toSetMutable shouldBe Set(two1, two2)
+    stats.getScans shouldBe 2
+    stats.getRangeScans shouldBe 1
+    graph.indexManager.isIndexed(Name.name) shouldBe false
+
+    graph.indexManager.setAutoCreationThreshold(3)
+    verifyTraversalResults()
+    graph.indexManager.isRangeIndexed(Name.name) shouldBe true
+    stats.getScans shouldBe 3
+  }
+
   private class Fixture {
     val graph = SimpleDomain.newGraph
 
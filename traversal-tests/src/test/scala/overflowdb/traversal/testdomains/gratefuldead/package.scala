@@ -10,15 +10,15 @@ package object gratefuldead {
     def wroteSongs: Traversal[Song] = trav.flatMap(_.wroteSongs)
 
     def name: Traversal[String] = trav.map(_.name)
-    def name(regexp: String): Traversal[Artist] = StringPropertyFilter.regexp(trav)(_.name, regexp)
+    def name(regexp: String): Traversal[Artist] = StringPropertyFilter.regexp(trav, _.name, regexp, Artist.PropertyNames.Name)
     def name(regexps: String*): Traversal[Artist] = StringPropertyFilter.regexpMultiple(trav)(_.name, regexps)
     def nameNot(regexp: String): Traversal[Artist] = StringPropertyFilter.regexpNot(trav)(_.name, regexp)
     def nameNot(regexps: String*): Traversal[Artist] = StringPropertyFilter.regexpNotMultiple(trav)(_.name, regexps)
     def nameExact(value: String): Traversal[Artist] = PropertyFilter.exact(trav)(_.name, value)
     def nameExact(values: String*): Traversal[Artist] = PropertyFilter.exactMultiple(trav)(_.name, values)
-    def nameContains(value: String): Traversal[Artist] = StringPropertyFilter.contains(trav)(_.name, value)
+    def nameContains(value: String): Traversal[Artist] = StringPropertyFilter.contains(trav, _.name, value, Artist.PropertyNames.Name)
     def nameContainsNot(value: String): Traversal[Artist] = StringPropertyFilter.containsNot(trav)(_.name, value)
-    def nameStartsWith(value: String): Traversal[Artist] = StringPropertyFilter.startsWith(trav)(_.name, value)
+    def nameStartsWith(value: String): Traversal[Artist] = StringPropertyFilter.startsWith(trav, _.name, value, Artist.PropertyNames.Name)
     def nameEndsWith(value: String): Traversal[Artist] = StringPropertyFilter.endsWith(trav)(_.name, value)
   }
 
@@ -1,6 +1,7 @@
 package overflowdb.algorithm;
 
 import overflowdb.Node;
+import overflowdb.QueryContext;
 
 import java.util.*;
 import java.util.function.Function;
@@ -69,6 +70,7 @@ public class ContextSensitivePathFinder {
             Function<Node, Iterator<ContextEdge>> getEdges,
             int maxStackDepth) {
 
+        QueryContext context = QueryContext.current();
         Queue<SearchState> queue = new ArrayDeque<>();
         Set<SearchState> visited = new HashSet<>();
 
@@ -78,6 +80,7 @@ public class ContextSensitivePathFinder {
 
         while (!queue.isEmpty()) {
             SearchState curr = queue.poll();
+            if (context != null) context.visit();
             if (curr.node.id() == target.id()) {
                 return Optional.of(new Path(curr.path));
             }
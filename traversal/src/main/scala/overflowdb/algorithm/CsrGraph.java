@@ -0,0 +1,136 @@
+package overflowdb.algorithm;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import overflowdb.Direction;
+import overflowdb.Node;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * An immutable snapshot of the subgraph induced by a collection of nodes, in compressed sparse row (CSR) form:
+ * the nodes are numbered densely from 0, and the successors of node {@code i} are
+ * {@code targets[offsets[i]] .. targets[offsets[i + 1] - 1]}. Algorithms that visit every edge many times (e.g.
+ * {@link PageRank}) walk the successors once to build the snapshot, and then only read primitive arrays.
+ *
+ * Only edges between nodes of the collection are part of the snapshot. Nodes that are in the collection more than
+ * once are only numbered once; edges that exist more than once (e.g. with different labels) stay separate.
+ */
+public final class CsrGraph {
+    private final Node[] nodes;
+    private final TLongIntHashMap indexById;
+    private final int[] offsets;
+    private final int[] targets;
+
+    private CsrGraph(Node[] nodes, TLongIntHashMap indexById, int[] offsets, int[] targets) {
+        this.nodes = nodes;
+        this.indexById = indexById;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * @param nodes         the nodes of the subgraph
+     * @param getSuccessors function returning the outgoing neighbours of a node
+     */
+    public static CsrGraph of(Collection<Node> nodes, Function<Node, Iterator<Node>> getSuccessors) {
+        return of(nodes, SuccessorCursor.of(getSuccessors));
+    }
+
+    /**
+     * Like {@link #of(Collection, Function)}, but follows the given edges via an {@link overflowdb.EdgeCursor}.
+     *
+     * @param direction  direction of the edges to follow, usually OUT
+     * @param edgeLabels labels of the edges to follow - all if none are given
+     */
+    public static CsrGraph of(Collection<Node> nodes, Direction direction, String... edgeLabels) {
+        return of(nodes, SuccessorCursor.of(direction, edgeLabels));
+    }
+
+    static CsrGraph of(Collection<Node> nodes, Supplier<SuccessorCursor> successorCursors) {
+        TLongIntHashMap indexById = new TLongIntHashMap(nodes.size(), 0.5f, -1, -1);
+        Node[] nodeByIndex = new Node[nodes.size()];
+        int count = 0;
+        for (Node node : nodes) {
+            if (indexById.putIfAbsent(node.id(), count) == -1) {
+                nodeByIndex[count++] = node;
+            }
+        }
+        if (count < nodeByIndex.length) {
+            nodeByIndex = Arrays.copyOf(nodeByIndex, count);
+        }
+
+        SuccessorCursor successors = successorCursors.get();
+        int[] offsets = new int[count + 1];
+        TIntArrayList targets = new TIntArrayList(count * 2);
+        for (int index = 0; index < count; index++) {
+            successors.reset(nodeByIndex[index]);
+            for (Node successor = successors.next(); successor != null; successor = successors.next()) {
+                int target = indexById.get(successor.id());
+                if (target != -1) {
+                    targets.add(target);
+                }
+            }
+            offsets[index + 1] = targets.size();
+        }
+        return new CsrGraph(nodeByIndex, indexById, offsets, targets.toArray());
+    }
+
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public Node node(int index) {
+        return nodes[index];
+    }
+
+    /** @return the index of the given node, or -1 if it's not part of this snapshot */
+    public int indexOf(Node node) {
+        return indexById.get(node.id());
+    }
+
+    public int outDegree(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * @return the start of the successors of each node in {@link #targets()}, with an additional entry for the end
+     * of the last node's successors. Not to be modified.
+     */
+    public int[] offsets() {
+        return offsets;
+    }
+
+    /** @return the indexes of the successors of all nodes, see {@link #offsets()}. Not to be modified. */
+    public int[] targets() {
+        return targets;
+    }
+
+    /** @return the same nodes (with the same indexes) with all edges reversed, i.e. predecessors instead of successors */
+    public CsrGraph transpose() {
+        int count = nodes.length;
+        int[] reversedOffsets = new int[count + 1];
+        for (int target : targets) {
+            reversedOffsets[target + 1]++;
+        }
+        for (int index = 0; index < count; index++) {
+            reversedOffsets[index + 1] += reversedOffsets[index];
+        }
+        int[] reversedTargets = new int[targets.length];
+        int[] next = Arrays.copyOf(reversedOffsets, count);
+        for (int source = 0; source < count; source++) {
+            for (int edge = offsets[source]; edge < offsets[source + 1]; edge++) {
+                reversedTargets[next[targets[edge]]++] = source;
+            }
+        }
+        return new CsrGraph(nodes, indexById, reversedOffsets, reversedTargets);
+    }
+}
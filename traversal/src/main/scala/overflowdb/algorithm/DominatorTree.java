@@ -1,49 +1,40 @@
 package overflowdb.algorithm;
 
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TLongIntHashMap;
-import gnu.trove.map.hash.TLongLongHashMap;
+import overflowdb.Direction;
 import overflowdb.Node;
+import overflowdb.QueryContext;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Computes dominator and post-dominator trees using the Lengauer-Tarjan algorithm.
- * Time complexity: O(E * alpha(V)), virtually linear.
+ * Time complexity: O(E * log(V)), on primitive arrays: the nodes that are reachable from the root are numbered
+ * densely in DFS order first, so that all further steps work with indexes rather than node ids.
+ *
+ * {@link #computeAll} computes the trees of many roots (e.g. the CFGs of all methods) concurrently.
  */
 public class DominatorTree {
     private final Node root;
-    private final Function<Node, Iterator<Node>> getSuccessors;
+    private final Supplier<SuccessorCursor> successorCursors;
 
-    // Node ID -> DFS index (1-based)
-    private final TLongIntHashMap dfnum;
+    // Node ID -> DFS index
+    private final TLongIntHashMap indexById = new TLongIntHashMap(16, 0.5f, -1, -1);
     // DFS index -> Node
-    private final List<Node> vertex;
-    // Node ID -> Parent Node ID in DFS tree
-    private final TLongLongHashMap parent;
-    // Node ID -> Semi-dominator Node ID
-    private final TLongLongHashMap sdom;
-    // Node ID -> Immediate dominator Node ID
-    private final TLongLongHashMap idom;
-
-    // Link-Eval data structures
-    private final TLongLongHashMap ancestor;
-    private final TLongLongHashMap label;
-
-    // Predecessors list built during the initial DFS walk
-    private final Map<Long, List<Long>> predecessors;
-
-    private DominatorTree(Node root, Function<Node, Iterator<Node>> getSuccessors) {
+    private final List<Node> vertex = new ArrayList<>();
+    // DFS index -> DFS index of the parent in the DFS tree
+    private final TIntArrayList parent = new TIntArrayList();
+    // edges between reachable nodes, as pairs of DFS indexes (source, target)
+    private final TIntArrayList edges = new TIntArrayList();
+
+    private DominatorTree(Node root, Supplier<SuccessorCursor> successorCursors) {
         this.root = root;
-        this.getSuccessors = getSuccessors;
-        this.dfnum = new TLongIntHashMap();
-        this.vertex = new ArrayList<>();
-        this.parent = new TLongLongHashMap();
-        this.sdom = new TLongLongHashMap();
-        this.idom = new TLongLongHashMap();
-        this.ancestor = new TLongLongHashMap();
-        this.label = new TLongLongHashMap();
-        this.predecessors = new HashMap<>();
+        this.successorCursors = successorCursors;
     }
 
     /**
@@ -53,15 +44,21 @@ public class DominatorTree {
      * @return Map of Node ID to its Immediate Dominator Node ID.
      */
     public static Map<Long, Long> computeDominators(Node root, Function<Node, Iterator<Node>> getSuccessors) {
-        DominatorTree dt = new DominatorTree(root, getSuccessors);
-        dt.run();
-        
-        Map<Long, Long> result = new HashMap<>();
-        dt.idom.forEachEntry((nodeId, domId) -> {
-            result.put(nodeId, domId);
-            return true;
-        });
-        return result;
+        return computeDominators(root, SuccessorCursor.of(getSuccessors));
+    }
+
+    /**
+     * Like {@link #computeDominators(Node, Function)}, but follows the given edges via {@link overflowdb.EdgeCursor}s,
+     * i.e. without allocating an iterator per node. For post-dominators, pass the exit node and {@link Direction#IN}.
+     * @param direction Direction of the edges to follow.
+     * @param edgeLabels Labels of the edges to follow - all if none are given.
+     */
+    public static Map<Long, Long> computeDominators(Node root, Direction direction, String... edgeLabels) {
+        return computeDominators(root, SuccessorCursor.of(direction, edgeLabels));
+    }
+
+    private static Map<Long, Long> computeDominators(Node root, Supplier<SuccessorCursor> successorCursors) {
+        return new DominatorTree(root, successorCursors).run().toIdMap();
     }
 
     /**
@@ -74,124 +71,248 @@ public class DominatorTree {
         return computeDominators(exit, getPredecessors);
     }
 
-    private void run() {
-        computeDfsAndPredecessors();
+    /**
+     * Computes the dominator trees of all given roots concurrently on the common fork-join pool, e.g. for the CFGs
+     * of all methods. For post-dominator trees, pass the exit nodes and {@link Direction#IN}.
+     * @param direction Direction of the edges to follow.
+     * @param edgeLabels Labels of the edges to follow - all if none are given.
+     * @return the dominator tree of each root, in the order of the roots.
+     */
+    public static List<Dominators> computeAll(Collection<Node> roots, Direction direction, String... edgeLabels) {
+        return computeAll(roots, SuccessorCursor.of(direction, edgeLabels), ForkJoinPool.commonPool());
+    }
 
-        int n = vertex.size();
-        if (n <= 1) {
-            return;
-        }
+    /**
+     * Like {@link #computeAll(Collection, Direction, String...)}, with the given successor supplier, which is called
+     * concurrently, and on the given pool.
+     */
+    public static List<Dominators> computeAll(Collection<Node> roots,
+                                              Function<Node, Iterator<Node>> getSuccessors,
+                                              ForkJoinPool pool) {
+        return computeAll(roots, SuccessorCursor.of(getSuccessors), pool);
+    }
 
-        @SuppressWarnings("unchecked")
-        List<Long>[] bucket = new List[n + 1];
-        for (int i = 1; i <= n; i++) {
-            bucket[i] = new ArrayList<>();
-        }
+    private static List<Dominators> computeAll(Collection<Node> roots,
+                                               Supplier<SuccessorCursor> successorCursors,
+                                               ForkJoinPool pool) {
+        final Node[] rootArray = roots.toArray(new Node[0]);
+        final Dominators[] results = new Dominators[rootArray.length];
+        final QueryContext context = QueryContext.current();
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
 
-        for (int i = 0; i < n; i++) {
-            long id = vertex.get(i).id();
-            sdom.put(id, id);
-        }
-
-        for (int i = n - 1; i >= 1; i--) {
-            Node w = vertex.get(i);
-            long wId = w.id();
-            long pId = parent.get(wId);
-
-            List<Long> preds = predecessors.get(wId);
-            if (preds != null) {
-                for (long vId : preds) {
-                    long u = eval(vId);
-                    if (dfnum.containsKey(u) && dfnum.get(sdom.get(u)) < dfnum.get(sdom.get(wId))) {
-                        sdom.put(wId, sdom.get(u));
-                    }
+            @Override
+            protected void compute() {
+                List<RecursiveAction> tasks = new ArrayList<>(rootArray.length);
+                for (int i = 0; i < rootArray.length; i++) {
+                    final int index = i;
+                    tasks.add(new RecursiveAction() {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected void compute() {
+                            if (context != null) context.checkLimits();
+                            results[index] = new DominatorTree(rootArray[index], successorCursors).run();
+                        }
+                    });
                 }
+                invokeAll(tasks);
             }
+        });
+        return Arrays.asList(results);
+    }
 
-            long sdomW = sdom.get(wId);
-            int sdomWIndex = dfnum.get(sdomW);
-            bucket[sdomWIndex].add(wId);
+    private Dominators run() {
+        computeDfsAndEdges();
+        final int n = vertex.size();
+        final int[] parent = this.parent.toArray();
 
-            link(pId, wId);
+        // predecessors of each node, as DFS indexes
+        final int[] predecessorOffsets = new int[n + 1];
+        for (int i = 1; i < edges.size(); i += 2) {
+            predecessorOffsets[edges.getQuick(i) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            predecessorOffsets[i + 1] += predecessorOffsets[i];
+        }
+        final int[] predecessors = new int[edges.size() / 2];
+        final int[] next = Arrays.copyOf(predecessorOffsets, n);
+        for (int i = 0; i < edges.size(); i += 2) {
+            predecessors[next[edges.getQuick(i + 1)]++] = edges.getQuick(i);
+        }
 
-            int pIndex = dfnum.get(pId);
-            for (long vId : bucket[pIndex]) {
-                long u = eval(vId);
-                idom.put(vId, dfnum.get(sdom.get(u)) < dfnum.get(sdom.get(vId)) ? u : pId);
-            }
-            bucket[pIndex].clear();
+        // semi-dominators are DFS indexes as well, i.e. comparable by their value
+        final int[] semi = new int[n];
+        final int[] idom = new int[n];
+        final int[] ancestor = new int[n];
+        final int[] label = new int[n];
+        // nodes by semi-dominator, as linked lists
+        final int[] bucketHead = new int[n];
+        final int[] bucketNext = new int[n];
+        final int[] path = new int[n];
+        for (int i = 0; i < n; i++) {
+            semi[i] = i;
+            ancestor[i] = -1;
+            label[i] = i;
+            bucketHead[i] = -1;
         }
 
-        for (int i = 1; i < n; i++) {
-            Node w = vertex.get(i);
-            long wId = w.id();
-            long idomW = idom.get(wId);
-            if (idomW != sdom.get(wId)) {
-                idom.put(wId, idom.get(idomW));
+        for (int w = n - 1; w >= 1; w--) {
+            for (int edge = predecessorOffsets[w]; edge < predecessorOffsets[w + 1]; edge++) {
+                int u = eval(predecessors[edge], ancestor, label, semi, path);
+                if (semi[u] < semi[w]) {
+                    semi[w] = semi[u];
+                }
+            }
+            bucketNext[w] = bucketHead[semi[w]];
+            bucketHead[semi[w]] = w;
+
+            int p = parent[w];
+            ancestor[w] = p;
+
+            for (int v = bucketHead[p]; v != -1; v = bucketNext[v]) {
+                int u = eval(v, ancestor, label, semi, path);
+                idom[v] = semi[u] < semi[v] ? u : p;
             }
+            bucketHead[p] = -1;
         }
-    }
 
-    private void computeDfsAndPredecessors() {
-        class Frame {
-            final Node node;
-            final Iterator<Node> it;
-            Frame(Node node, Iterator<Node> it) {
-                this.node = node;
-                this.it = it;
+        for (int w = 1; w < n; w++) {
+            if (idom[w] != semi[w]) {
+                idom[w] = idom[idom[w]];
             }
         }
+        if (n > 0) {
+            idom[0] = -1;
+        }
+        return new Dominators(vertex.toArray(new Node[0]), idom, indexById);
+    }
 
-        Deque<Frame> stack = new ArrayDeque<>();
-        dfnum.put(root.id(), 1);
-        vertex.add(root);
-        label.put(root.id(), root.id());
-        stack.push(new Frame(root, getSuccessors.apply(root)));
+    private void computeDfsAndEdges() {
+        // one cursor per depth of the DFS, reused for all nodes at that depth
+        List<SuccessorCursor> cursors = new ArrayList<>();
+        TIntArrayList stack = new TIntArrayList();
+        visit(root, -1);
+        push(stack, cursors, 0);
 
         while (!stack.isEmpty()) {
-            Frame curr = stack.peek();
-            if (curr.it.hasNext()) {
-                Node v = curr.it.next();
-                long vId = v.id();
-                long uId = curr.node.id();
-                predecessors.computeIfAbsent(vId, k -> new ArrayList<>()).add(uId);
-
-                if (!dfnum.containsKey(vId)) {
-                    dfnum.put(vId, vertex.size() + 1);
-                    vertex.add(v);
-                    label.put(vId, vId);
-                    parent.put(vId, uId);
-                    stack.push(new Frame(v, getSuccessors.apply(v)));
+            int depth = stack.size() - 1;
+            Node v = cursors.get(depth).next();
+            if (v != null) {
+                int u = stack.getQuick(depth);
+                int vIndex = indexById.get(v.id());
+                boolean discovered = vIndex == -1;
+                if (discovered) {
+                    vIndex = visit(v, u);
+                }
+                edges.add(u);
+                edges.add(vIndex);
+                if (discovered) {
+                    push(stack, cursors, vIndex);
                 }
             } else {
-                stack.pop();
+                stack.removeAt(depth);
             }
         }
     }
 
-    private void link(long v, long w) {
-        ancestor.put(w, v);
+    private int visit(Node node, int parentIndex) {
+        int index = vertex.size();
+        indexById.put(node.id(), index);
+        vertex.add(node);
+        parent.add(parentIndex);
+        return index;
     }
 
-    private long eval(long v) {
-        long anc = ancestor.get(v);
-        if (anc == 0) {
-            return label.get(v);
+    private void push(TIntArrayList stack, List<SuccessorCursor> cursors, int index) {
+        int depth = stack.size();
+        if (depth == cursors.size()) {
+            cursors.add(successorCursors.get());
         }
-        compress(v);
-        return label.get(v);
+        cursors.get(depth).reset(vertex.get(index));
+        stack.add(index);
     }
 
-    private void compress(long v) {
-        long anc = ancestor.get(v);
-        if (ancestor.get(anc) != 0) {
-            compress(anc);
-            long labelV = label.get(v);
-            long labelAnc = label.get(anc);
-            if (dfnum.get(sdom.get(labelAnc)) < dfnum.get(sdom.get(labelV))) {
-                label.put(v, labelAnc);
+    /** @return the node with the minimal semi-dominator on the path from `v` to the root of its tree in the forest */
+    private static int eval(int v, int[] ancestor, int[] label, int[] semi, int[] path) {
+        if (ancestor[v] == -1) {
+            return v;
+        }
+        // path compression, iteratively: collect the path first, then compress it starting next to the root
+        int length = 0;
+        for (int x = v; ancestor[ancestor[x]] != -1; x = ancestor[x]) {
+            path[length++] = x;
+        }
+        while (length > 0) {
+            int x = path[--length];
+            int a = ancestor[x];
+            if (semi[label[a]] < semi[label[x]]) {
+                label[x] = label[a];
+            }
+            ancestor[x] = ancestor[a];
+        }
+        return label[v];
+    }
+
+    /**
+     * The dominator tree of the nodes that are reachable from a root: the nodes are numbered in DFS order, i.e. the
+     * root has index 0, and the tree is an array of the immediate dominator's index of each node (-1 for the root).
+     */
+    public static final class Dominators {
+        private final Node[] nodes;
+        private final int[] idom;
+        private final TLongIntHashMap indexById;
+
+        private Dominators(Node[] nodes, int[] idom, TLongIntHashMap indexById) {
+            this.nodes = nodes;
+            this.idom = idom;
+            this.indexById = indexById;
+        }
+
+        public Node root() {
+            return nodes[0];
+        }
+
+        /** @return the number of nodes that are reachable from the root */
+        public int size() {
+            return nodes.length;
+        }
+
+        public Node node(int index) {
+            return nodes[index];
+        }
+
+        /** @return the index of the given node, or -1 if it's not reachable from the root */
+        public int indexOf(Node node) {
+            return indexById.get(node.id());
+        }
+
+        /** @return the index of the immediate dominator of the node with the given index, or -1 for the root */
+        public int immediateDominator(int index) {
+            return idom[index];
+        }
+
+        /** @return the immediate dominator of each node by index, see {@link #immediateDominator}. Not to be modified. */
+        public int[] immediateDominators() {
+            return idom;
+        }
+
+        /** @return whether the node with index `a` dominates the node with index `b` */
+        public boolean dominates(int a, int b) {
+            // a node's dominators have smaller DFS indexes, so walking up the tree can stop early
+            for (int x = b; x >= a; x = idom[x]) {
+                if (x == a) return true;
+            }
+            return false;
+        }
+
+        /** @return Map of Node ID to its Immediate Dominator Node ID, for all nodes but the root */
+        public Map<Long, Long> toIdMap() {
+            Map<Long, Long> result = new HashMap<>(nodes.length * 2);
+            for (int i = 1; i < nodes.length; i++) {
+                result.put(nodes[i].id(), nodes[idom[i]].id());
             }
-            ancestor.put(v, ancestor.get(anc));
+            return result;
         }
     }
 }
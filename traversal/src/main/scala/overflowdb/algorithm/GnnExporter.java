@@ -1,7 +1,10 @@
 package overflowdb.algorithm;
 
-import overflowdb.Edge;
+import overflowdb.Direction;
+import overflowdb.EdgeCursor;
 import overflowdb.Node;
+import overflowdb.QueryContext;
+import overflowdb.util.NodeBitSet;
 import gnu.trove.list.array.TLongArrayList;
 
 import java.util.*;
@@ -38,7 +41,7 @@ public class GnnExporter {
         long[] nodeIds = new long[nodeCount];
         String[] nodeLabels = new String[nodeCount];
         
-        Set<Long> nodeSet = new HashSet<>(nodeCount);
+        NodeBitSet nodeSet = new NodeBitSet();
         int idx = 0;
         for (Node node : nodes) {
             long id = node.id();
@@ -52,16 +55,17 @@ public class GnnExporter {
         TLongArrayList dstList = new TLongArrayList();
         List<String> labelList = new ArrayList<>();
 
+        QueryContext context = QueryContext.current();
+        EdgeCursor outEdges = new EdgeCursor();
         for (Node node : nodes) {
-            Iterator<Edge> outEdges = node.outE();
-            while (outEdges.hasNext()) {
-                Edge edge = outEdges.next();
-                Node inNode = edge.inNode();
-                long inId = inNode.id();
+            if (context != null) context.visit();
+            outEdges.reset(node, Direction.OUT);
+            while (outEdges.next()) {
+                long inId = outEdges.adjacentNode().id();
                 if (nodeSet.contains(inId)) {
                     srcList.add(node.id());
                     dstList.add(inId);
-                    labelList.add(edge.label());
+                    labelList.add(outEdges.label());
                 }
             }
         }
@@ -1,6 +1,7 @@
 package overflowdb.algorithm;
 
 import overflowdb.Node;
+import overflowdb.QueryContext;
 import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -14,6 +15,7 @@ public class HeapWalker implements Iterator<Node> {
     private final ArrayDeque<Node> stack = new ArrayDeque<>();
     private final ArrayDeque<Node> childBuffer = new ArrayDeque<>();
     private final String[] edgeLabels;
+    private final QueryContext context = QueryContext.current();
 
     private Node nextNode;
 
@@ -40,6 +42,7 @@ public class HeapWalker implements Iterator<Node> {
         }
 
         nextNode = stack.pop();
+        if (context != null) context.visit();
 
         // Add children to stack
         // We iterate children and push them.
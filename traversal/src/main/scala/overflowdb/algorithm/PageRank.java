@@ -1,14 +1,18 @@
 package overflowdb.algorithm;
 
-import gnu.trove.map.hash.TLongDoubleHashMap;
 import gnu.trove.map.hash.TLongIntHashMap;
+import overflowdb.Direction;
 import overflowdb.Node;
+import overflowdb.QueryContext;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * Ranking utilities for a directed graph defined by a node universe and a successor function.
@@ -23,6 +27,8 @@ import java.util.function.Function;
  *
  * <p>Both measures only consider edges whose endpoints are inside the given node collection, so the
  * caller can rank an arbitrary subgraph (for example a call graph) without first materialising it.
+ * {@link #compute} takes a {@link CsrGraph} snapshot of the subgraph first, so that the iterations don't
+ * need to walk the edges of the graph again.
  */
 public class PageRank {
 
@@ -32,6 +38,8 @@ public class PageRank {
     public static final int DEFAULT_MAX_ITERATIONS = 100;
     /** Convergence threshold: stop once the total rank change between two iterations is smaller. */
     public static final double DEFAULT_TOLERANCE = 1.0e-6;
+    /* number of nodes per parallel task - graphs of up to this size are ranked on the calling thread */
+    private static final int CHUNK_SIZE = 16 * 1024;
 
     private PageRank() {
     }
@@ -46,6 +54,21 @@ public class PageRank {
      */
     public static Map<Long, Integer> inDegree(Collection<Node> nodes,
                                                Function<Node, Iterator<Node>> getSuccessors) {
+        return inDegree(nodes, SuccessorCursor.of(getSuccessors).get());
+    }
+
+    /**
+     * Like {@link #inDegree(Collection, Function)}, but follows the given edges via an {@link overflowdb.EdgeCursor},
+     * i.e. without allocating an iterator per node.
+     *
+     * @param direction  direction of the edges to follow, usually OUT
+     * @param edgeLabels labels of the edges to follow - all if none are given
+     */
+    public static Map<Long, Integer> inDegree(Collection<Node> nodes, Direction direction, String... edgeLabels) {
+        return inDegree(nodes, SuccessorCursor.of(direction, edgeLabels).get());
+    }
+
+    private static Map<Long, Integer> inDegree(Collection<Node> nodes, SuccessorCursor successors) {
         TLongIntHashMap degree = new TLongIntHashMap(nodes.size());
         for (Node node : nodes) {
             if (!degree.containsKey(node.id())) {
@@ -53,9 +76,9 @@ public class PageRank {
             }
         }
         for (Node node : nodes) {
-            Iterator<Node> successors = getSuccessors.apply(node);
-            while (successors.hasNext()) {
-                long succId = successors.next().id();
+            successors.reset(node);
+            for (Node successor = successors.next(); successor != null; successor = successors.next()) {
+                long succId = successor.id();
                 if (degree.containsKey(succId)) {
                     degree.increment(succId);
                 }
@@ -97,80 +120,127 @@ public class PageRank {
                                             double dampingFactor,
                                             int maxIterations,
                                             double tolerance) {
-        int count = nodes.size();
-        Map<Long, Double> result = new HashMap<>(count);
-        if (count == 0) {
-            return result;
-        }
+        return compute(nodes, SuccessorCursor.of(getSuccessors), dampingFactor, maxIterations, tolerance);
+    }
 
-        // Precompute out-degrees restricted to the universe so dangling-node handling is correct.
-        TLongIntHashMap outDegree = new TLongIntHashMap(count);
-        for (Node node : nodes) {
-            outDegree.put(node.id(), 0);
+    /**
+     * Like {@link #compute(Collection, Function)}, but follows the given edges via an {@link overflowdb.EdgeCursor},
+     * i.e. without allocating an iterator per node and iteration.
+     *
+     * @param direction  direction of the edges to follow, usually OUT
+     * @param edgeLabels labels of the edges to follow - all if none are given
+     */
+    public static Map<Long, Double> compute(Collection<Node> nodes, Direction direction, String... edgeLabels) {
+        return compute(nodes, SuccessorCursor.of(direction, edgeLabels), DEFAULT_DAMPING_FACTOR,
+                DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE);
+    }
+
+    private static Map<Long, Double> compute(Collection<Node> nodes,
+                                             Supplier<SuccessorCursor> successorCursors,
+                                             double dampingFactor,
+                                             int maxIterations,
+                                             double tolerance) {
+        CsrGraph graph = CsrGraph.of(nodes, successorCursors);
+        double[] rank = compute(graph, dampingFactor, maxIterations, tolerance);
+        Map<Long, Double> result = new HashMap<>(rank.length);
+        for (int index = 0; index < rank.length; index++) {
+            result.put(graph.node(index).id(), rank[index]);
         }
-        for (Node node : nodes) {
-            int degree = 0;
-            Iterator<Node> successors = getSuccessors.apply(node);
-            while (successors.hasNext()) {
-                if (outDegree.containsKey(successors.next().id())) {
-                    degree++;
-                }
-            }
-            outDegree.put(node.id(), degree);
+        return result;
+    }
+
+    /**
+     * Runs PageRank on a snapshot of the graph, which only reads primitive arrays after the snapshot was taken. Each
+     * iteration pulls the rank of every node from its predecessors, in parallel over ranges of node indexes if the
+     * graph is large enough.
+     *
+     * @return the PageRank score of every node, by its index in the snapshot
+     */
+    public static double[] compute(CsrGraph graph, double dampingFactor, int maxIterations, double tolerance) {
+        final int count = graph.nodeCount();
+        double[] rank = new double[count];
+        if (count == 0) {
+            return rank;
         }
 
-        double initial = 1.0 / count;
-        TLongDoubleHashMap rank = new TLongDoubleHashMap(count);
-        for (Node node : nodes) {
-            rank.put(node.id(), initial);
+        final CsrGraph predecessors = graph.transpose();
+        final int[] offsets = predecessors.offsets();
+        final int[] sources = predecessors.targets();
+        final int[] outDegree = new int[count];
+        for (int index = 0; index < count; index++) {
+            outDegree[index] = graph.outDegree(index);
         }
 
-        double baseRank = (1.0 - dampingFactor) / count;
-        TLongDoubleHashMap nextRank = new TLongDoubleHashMap(count);
+        Arrays.fill(rank, 1.0 / count);
+        double[] nextRank = new double[count];
+        // the share of its rank that a node passes on to each successor
+        final double[] contribution = new double[count];
+        final int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final double[] danglingByChunk = new double[chunks];
+        final double[] deltaByChunk = new double[chunks];
+        final QueryContext context = QueryContext.current();
+
         for (int iteration = 0; iteration < maxIterations; iteration++) {
-            // Rank held by dangling nodes (no outgoing edges) is redistributed evenly.
-            double danglingSum = 0.0;
-            for (Node node : nodes) {
-                if (outDegree.get(node.id()) == 0) {
-                    danglingSum += rank.get(node.id());
-                }
-            }
-            double danglingContribution = dampingFactor * danglingSum / count;
+            if (context != null) context.checkLimits();
+            final double[] currentRank = rank;
+            final double[] next = nextRank;
 
-            for (Node node : nodes) {
-                nextRank.put(node.id(), baseRank + danglingContribution);
-            }
-            for (Node node : nodes) {
-                int degree = outDegree.get(node.id());
-                if (degree == 0) {
-                    continue;
-                }
-                double share = dampingFactor * rank.get(node.id()) / degree;
-                Iterator<Node> successors = getSuccessors.apply(node);
-                while (successors.hasNext()) {
-                    long succId = successors.next().id();
-                    if (nextRank.containsKey(succId)) {
-                        nextRank.put(succId, nextRank.get(succId) + share);
+            forEachChunk(chunks, count, (chunk, from, until) -> {
+                double dangling = 0.0;
+                for (int index = from; index < until; index++) {
+                    if (outDegree[index] == 0) {
+                        dangling += currentRank[index];
+                        contribution[index] = 0.0;
+                    } else {
+                        contribution[index] = dampingFactor * currentRank[index] / outDegree[index];
                     }
                 }
-            }
+                danglingByChunk[chunk] = dangling;
+            });
+            // Rank held by dangling nodes (no outgoing edges) is redistributed evenly.
+            final double baseRank = (1.0 - dampingFactor) / count + dampingFactor * sum(danglingByChunk) / count;
 
-            double delta = 0.0;
-            for (Node node : nodes) {
-                delta += Math.abs(nextRank.get(node.id()) - rank.get(node.id()));
-            }
-            TLongDoubleHashMap swap = rank;
-            rank = nextRank;
-            nextRank = swap;
+            forEachChunk(chunks, count, (chunk, from, until) -> {
+                double delta = 0.0;
+                for (int index = from; index < until; index++) {
+                    double pulled = 0.0;
+                    for (int edge = offsets[index]; edge < offsets[index + 1]; edge++) {
+                        pulled += contribution[sources[edge]];
+                    }
+                    next[index] = baseRank + pulled;
+                    delta += Math.abs(next[index] - currentRank[index]);
+                }
+                deltaByChunk[chunk] = delta;
+            });
 
-            if (delta < tolerance) {
+            rank = next;
+            nextRank = currentRank;
+            if (sum(deltaByChunk) < tolerance) {
                 break;
             }
         }
+        return rank;
+    }
 
-        for (Node node : nodes) {
-            result.put(node.id(), rank.get(node.id()));
+    private interface ChunkBody {
+        void apply(int chunk, int from, int until);
+    }
+
+    private static void forEachChunk(int chunks, int count, ChunkBody body) {
+        if (chunks == 1) {
+            body.apply(0, 0, count);
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(chunk ->
+                body.apply(chunk, chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE)));
         }
-        return result;
+    }
+
+    /* sequentially, so that the result doesn't depend on the order in which the chunks were done */
+    private static double sum(double[] values) {
+        double sum = 0.0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
     }
 }
@@ -1,35 +1,48 @@
 package overflowdb.algorithm;
 
-import gnu.trove.map.hash.TLongIntHashMap;
+import overflowdb.Direction;
 import overflowdb.Node;
+import overflowdb.QueryContext;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- * Computes Strongly Connected Components (SCC) using Tarjan's algorithm.
- * Time complexity: O(V + E), memory-optimized and stack-safe.
+ * Computes Strongly Connected Components (SCC) of the subgraph induced by a collection of nodes, on a
+ * {@link CsrGraph} snapshot of it.
+ *
+ * Sequentially via Tarjan's algorithm: time complexity O(V + E), on primitive arrays and stack-safe.
+ * In parallel (for large graphs, e.g. whole-program call graphs) via forward-backward decomposition: nodes that
+ * can't be part of a cycle are trimmed first, then the SCC of a pivot node is the intersection of the nodes it
+ * reaches and the nodes that reach it, and the remaining nodes fall apart into three independent partitions, which
+ * are processed concurrently - small partitions via Tarjan's algorithm again.
  */
 public class StronglyConnectedComponents {
-    private final Collection<Node> nodes;
-    private final Function<Node, Iterator<Node>> getSuccessors;
-
-    private final TLongIntHashMap dfn;
-    private final TLongIntHashMap low;
-    private final Set<Long> onStack;
-    private final Deque<Node> stack;
-    private final List<Set<Node>> sccs;
-    private int index;
-
-    private StronglyConnectedComponents(Collection<Node> nodes, Function<Node, Iterator<Node>> getSuccessors) {
-        this.nodes = nodes;
-        this.getSuccessors = getSuccessors;
-        this.dfn = new TLongIntHashMap();
-        this.low = new TLongIntHashMap();
-        this.onStack = new HashSet<>();
-        this.stack = new ArrayDeque<>();
-        this.sccs = new ArrayList<>();
-        this.index = 0;
+    /* partitions of up to this many nodes are processed via Tarjan's algorithm, rather than split up further */
+    private static final int SEQUENTIAL_THRESHOLD = 4096;
+    /* color of the nodes whose component is known */
+    private static final int DONE = -1;
+
+    private final CsrGraph graph;
+    private final int[] componentOf;
+    private final AtomicInteger componentCount = new AtomicInteger();
+    private final QueryContext context = QueryContext.current();
+
+    /* state of Tarjan's algorithm, by node index - partitions are disjoint, so they can share it */
+    private final int[] dfn;
+    private final int[] low;
+    private final boolean[] onStack;
+
+    private StronglyConnectedComponents(CsrGraph graph) {
+        this.graph = graph;
+        this.componentOf = new int[graph.nodeCount()];
+        this.dfn = new int[graph.nodeCount()];
+        this.low = new int[graph.nodeCount()];
+        this.onStack = new boolean[graph.nodeCount()];
     }
 
     /**
@@ -39,80 +52,354 @@ public class StronglyConnectedComponents {
      * @return List of sets of nodes, where each set represents a Strongly Connected Component.
      */
     public static List<Set<Node>> compute(Collection<Node> nodes, Function<Node, Iterator<Node>> getSuccessors) {
-        StronglyConnectedComponents solver = new StronglyConnectedComponents(nodes, getSuccessors);
-        solver.run();
-        return solver.sccs;
+        return compute(nodes, SuccessorCursor.of(getSuccessors));
+    }
+
+    /**
+     * Like {@link #compute(Collection, Function)}, but follows the given edges via {@link overflowdb.EdgeCursor}s,
+     * i.e. without allocating an iterator per node.
+     * @param direction Direction of the edges to follow.
+     * @param edgeLabels Labels of the edges to follow - all if none are given.
+     */
+    public static List<Set<Node>> compute(Collection<Node> nodes, Direction direction, String... edgeLabels) {
+        return compute(nodes, SuccessorCursor.of(direction, edgeLabels));
+    }
+
+    private static List<Set<Node>> compute(Collection<Node> nodes, Supplier<SuccessorCursor> successorCursors) {
+        return compute(CsrGraph.of(nodes, successorCursors)).toNodeSets();
+    }
+
+    /**
+     * Sequentially via Tarjan's algorithm.
+     * @return the components in reverse topological order, i.e. every component comes before the components that
+     * have edges to it.
+     */
+    public static Components compute(CsrGraph graph) {
+        StronglyConnectedComponents solver = new StronglyConnectedComponents(graph);
+        int[] all = new int[graph.nodeCount()];
+        for (int node = 0; node < all.length; node++) {
+            all[node] = node;
+        }
+        solver.tarjan(all, null, 0);
+        return solver.components();
+    }
+
+    /** In parallel on the common fork-join pool, see {@link #computeParallel(CsrGraph, ForkJoinPool)}. */
+    public static Components computeParallel(CsrGraph graph) {
+        return computeParallel(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * In parallel via forward-backward decomposition, on the given pool.
+     * @return the components, in no particular order.
+     */
+    public static Components computeParallel(CsrGraph graph, ForkJoinPool pool) {
+        StronglyConnectedComponents solver = new StronglyConnectedComponents(graph);
+        CsrGraph predecessors = graph.transpose();
+        int[] color = new int[graph.nodeCount()];
+        int[] remaining = solver.trim(predecessors, color);
+        if (remaining.length > 0) {
+            pool.invoke(solver.partition(remaining, predecessors, color));
+        }
+        return solver.components();
     }
 
-    private void run() {
-        for (Node node : nodes) {
-            if (!dfn.containsKey(node.id())) {
-                dfsIterative(node);
+    /**
+     * Tarjan's algorithm on the given nodes, which only follows edges to nodes of the same partition, i.e. with
+     * the given color - or all edges if there are no colors.
+     */
+    private void tarjan(int[] nodes, int[] color, int partition) {
+        final int[] offsets = graph.offsets();
+        final int[] targets = graph.targets();
+        final int[] stack = new int[nodes.length];
+        final int[] callStack = new int[nodes.length];
+        final int[] nextEdge = new int[nodes.length];
+        int stackSize = 0;
+        int index = 0;
+        for (int node : nodes) {
+            dfn[node] = -1;
+        }
+
+        for (int root : nodes) {
+            if (dfn[root] != -1) {
+                continue;
+            }
+            if (context != null) context.visit();
+            int depth = 0;
+            callStack[0] = root;
+            nextEdge[0] = offsets[root];
+            dfn[root] = low[root] = index++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int u = callStack[depth];
+                if (nextEdge[depth] < offsets[u + 1]) {
+                    int v = targets[nextEdge[depth]++];
+                    if (color != null && color[v] != partition) {
+                        continue;
+                    }
+                    if (dfn[v] == -1) {
+                        if (context != null) context.visit();
+                        dfn[v] = low[v] = index++;
+                        stack[stackSize++] = v;
+                        onStack[v] = true;
+                        depth++;
+                        callStack[depth] = v;
+                        nextEdge[depth] = offsets[v];
+                    } else if (onStack[v]) {
+                        low[u] = Math.min(low[u], dfn[v]);
+                    }
+                } else {
+                    depth--;
+                    if (depth >= 0) {
+                        int parent = callStack[depth];
+                        low[parent] = Math.min(low[parent], low[u]);
+                    }
+
+                    if (low[u] == dfn[u]) {
+                        int component = componentCount.getAndIncrement();
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            componentOf[w] = component;
+                        } while (w != u);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Repeatedly removes the nodes without predecessors or successors (among the nodes that aren't removed yet),
+     * which are components of their own - for call graphs, that's most of them.
+     * @return the remaining nodes
+     */
+    private int[] trim(CsrGraph predecessors, int[] color) {
+        final int count = graph.nodeCount();
+        final int[] offsets = graph.offsets();
+        final int[] targets = graph.targets();
+        final int[] predecessorOffsets = predecessors.offsets();
+        final int[] sources = predecessors.targets();
+        final int[] inDegree = new int[count];
+        final int[] outDegree = new int[count];
+        final int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        for (int node = 0; node < count; node++) {
+            inDegree[node] = predecessors.outDegree(node);
+            outDegree[node] = graph.outDegree(node);
+            if (inDegree[node] == 0 || outDegree[node] == 0) {
+                queue[tail++] = node;
+                color[node] = DONE;
+            }
+        }
+
+        while (head < tail) {
+            int node = queue[head++];
+            componentOf[node] = componentCount.getAndIncrement();
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int successor = targets[edge];
+                if (color[successor] != DONE && --inDegree[successor] == 0) {
+                    queue[tail++] = successor;
+                    color[successor] = DONE;
+                }
+            }
+            for (int edge = predecessorOffsets[node]; edge < predecessorOffsets[node + 1]; edge++) {
+                int predecessor = sources[edge];
+                if (color[predecessor] != DONE && --outDegree[predecessor] == 0) {
+                    queue[tail++] = predecessor;
+                    color[predecessor] = DONE;
+                }
+            }
+        }
+
+        int[] remaining = new int[count - tail];
+        int i = 0;
+        for (int node = 0; node < count; node++) {
+            if (color[node] != DONE) {
+                remaining[i++] = node;
             }
         }
+        return remaining;
+    }
+
+    private Partition partition(int[] nodes, CsrGraph predecessors, int[] color) {
+        return new Partition(nodes, color, predecessors, new AtomicInteger(1), 0);
     }
 
-    private void dfsIterative(Node startNode) {
-        class Frame {
-            final Node node;
-            final Iterator<Node> it;
-            Frame(Node node, Iterator<Node> it) {
-                this.node = node;
-                this.it = it;
-            }
-        }
-
-        Deque<Frame> callStack = new ArrayDeque<>();
-        
-        long startId = startNode.id();
-        dfn.put(startId, index);
-        low.put(startId, index);
-        index++;
-        stack.push(startNode);
-        onStack.add(startId);
-        callStack.push(new Frame(startNode, getSuccessors.apply(startNode)));
-
-        while (!callStack.isEmpty()) {
-            Frame frame = callStack.peek();
-            Node u = frame.node;
-            long uId = u.id();
-
-            if (frame.it.hasNext()) {
-                Node v = frame.it.next();
-                long vId = v.id();
-
-                if (!dfn.containsKey(vId)) {
-                    dfn.put(vId, index);
-                    low.put(vId, index);
-                    index++;
-                    stack.push(v);
-                    onStack.add(vId);
-                    callStack.push(new Frame(v, getSuccessors.apply(v)));
-                } else if (onStack.contains(vId)) {
-                    low.put(uId, Math.min(low.get(uId), dfn.get(vId)));
+    /**
+     * The nodes of one color, i.e. that may share components with each other, but not with any other nodes.
+     * Partitions only ever change the colors of their own nodes, and to fresh colors.
+     */
+    private final class Partition extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] nodes;
+        private final int[] color;
+        private final CsrGraph predecessors;
+        private final AtomicInteger colorCount;
+        private final int partition;
+
+        Partition(int[] nodes, int[] color, CsrGraph predecessors, AtomicInteger colorCount, int partition) {
+            this.nodes = nodes;
+            this.color = color;
+            this.predecessors = predecessors;
+            this.colorCount = colorCount;
+            this.partition = partition;
+        }
+
+        @Override
+        protected void compute() {
+            if (context != null) context.checkLimits();
+            if (nodes.length <= SEQUENTIAL_THRESHOLD) {
+                tarjan(nodes, color, partition);
+                return;
+            }
+
+            // forward: everything the pivot reaches
+            final int pivot = nodes[0];
+            final int forward = colorCount.getAndIncrement();
+            final int[] queue = new int[nodes.length];
+            colorReachable(pivot, forward, queue);
+
+            // backward: everything that reaches the pivot - the pivot's component if it's reached forward as well
+            final int backward = colorCount.getAndIncrement();
+            final int component = componentCount.getAndIncrement();
+            color[pivot] = DONE;
+            componentOf[pivot] = component;
+            queue[0] = pivot;
+            int head = 0;
+            int tail = 1;
+            final int[] offsets = predecessors.offsets();
+            final int[] sources = predecessors.targets();
+            while (head < tail) {
+                int node = queue[head++];
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    int predecessor = sources[edge];
+                    if (color[predecessor] == forward) {
+                        color[predecessor] = DONE;
+                        componentOf[predecessor] = component;
+                        queue[tail++] = predecessor;
+                    } else if (color[predecessor] == partition) {
+                        color[predecessor] = backward;
+                        queue[tail++] = predecessor;
+                    }
                 }
-            } else {
-                callStack.pop();
-                if (!callStack.isEmpty()) {
-                    Node parent = callStack.peek().node;
-                    long parentId = parent.id();
-                    low.put(parentId, Math.min(low.get(parentId), low.get(uId)));
+            }
+
+            List<Partition> subPartitions = new ArrayList<>(3);
+            for (int subColor : new int[]{forward, backward, partition}) {
+                int[] subNodes = nodesOfColor(subColor);
+                if (subNodes.length > 0) {
+                    subPartitions.add(new Partition(subNodes, color, predecessors, colorCount, subColor));
                 }
+            }
+            invokeAll(subPartitions);
+        }
 
-                if (low.get(uId) == dfn.get(uId)) {
-                    Set<Node> scc = new HashSet<>();
-                    while (true) {
-                        Node v = stack.pop();
-                        long vId = v.id();
-                        onStack.remove(vId);
-                        scc.add(v);
-                        if (vId == uId) {
-                            break;
-                        }
+        /** colors all nodes of this partition that are reachable from the given node of this partition */
+        private void colorReachable(int start, int to, int[] queue) {
+            final int[] offsets = graph.offsets();
+            final int[] targets = graph.targets();
+            color[start] = to;
+            queue[0] = start;
+            int head = 0;
+            int tail = 1;
+            while (head < tail) {
+                int node = queue[head++];
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    int successor = targets[edge];
+                    if (color[successor] == partition) {
+                        color[successor] = to;
+                        queue[tail++] = successor;
                     }
-                    sccs.add(scc);
                 }
             }
         }
+
+        private int[] nodesOfColor(int wanted) {
+            int count = 0;
+            for (int node : nodes) {
+                if (color[node] == wanted) count++;
+            }
+            int[] result = new int[count];
+            int i = 0;
+            for (int node : nodes) {
+                if (color[node] == wanted) result[i++] = node;
+            }
+            return result;
+        }
+    }
+
+    private Components components() {
+        return new Components(graph, componentOf, componentCount.get());
+    }
+
+    /**
+     * The strongly connected components of a {@link CsrGraph}, as ranges of node indexes: the nodes of component
+     * {@code c} are {@code members[offsets[c]] .. members[offsets[c + 1] - 1]}.
+     */
+    public static final class Components {
+        private final CsrGraph graph;
+        private final int[] componentOf;
+        private final int[] offsets;
+        private final int[] members;
+
+        private Components(CsrGraph graph, int[] componentOf, int count) {
+            this.graph = graph;
+            this.componentOf = componentOf;
+            this.offsets = new int[count + 1];
+            for (int component : componentOf) {
+                offsets[component + 1]++;
+            }
+            for (int component = 0; component < count; component++) {
+                offsets[component + 1] += offsets[component];
+            }
+            this.members = new int[componentOf.length];
+            int[] next = Arrays.copyOf(offsets, count);
+            for (int node = 0; node < componentOf.length; node++) {
+                members[next[componentOf[node]]++] = node;
+            }
+        }
+
+        public int count() {
+            return offsets.length - 1;
+        }
+
+        /** @return the component of the node with the given index */
+        public int componentOf(int node) {
+            return componentOf[node];
+        }
+
+        public int size(int component) {
+            return offsets[component + 1] - offsets[component];
+        }
+
+        /** @return the start of each component in {@link #members()}, plus its end. Not to be modified. */
+        public int[] offsets() {
+            return offsets;
+        }
+
+        /** @return the node indexes of all components, see {@link #offsets()}. Not to be modified. */
+        public int[] members() {
+            return members;
+        }
+
+        public Set<Node> nodes(int component) {
+            Set<Node> nodes = new HashSet<>(size(component) * 2);
+            for (int i = offsets[component]; i < offsets[component + 1]; i++) {
+                nodes.add(graph.node(members[i]));
+            }
+            return nodes;
+        }
+
+        public List<Set<Node>> toNodeSets() {
+            List<Set<Node>> components = new ArrayList<>(count());
+            for (int component = 0; component < count(); component++) {
+                components.add(nodes(component));
+            }
+            return components;
+        }
     }
 }
@@ -0,0 +1,66 @@
+package overflowdb.algorithm;
+
+import overflowdb.Direction;
+import overflowdb.EdgeCursor;
+import overflowdb.Node;
+import overflowdb.QueryContext;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The successors of one node at a time, for the algorithms in this package: either via a user-provided successor
+ * function (which allocates an iterator per node), or via an {@link EdgeCursor} that follows the given edges
+ * (which doesn't allocate anything per node or edge).
+ *
+ * Every node whose successors are visited counts towards the limits of the {@link QueryContext} that was current when
+ * the cursor was created.
+ */
+abstract class SuccessorCursor {
+    private final QueryContext context = QueryContext.current();
+
+    /** start with the successors of the given node */
+    final void reset(Node node) {
+        if (context != null) context.visit();
+        start(node);
+    }
+
+    abstract void start(Node node);
+
+    /** @return the next successor of the current node, or null if there are no more */
+    abstract Node next();
+
+    static Supplier<SuccessorCursor> of(Function<Node, Iterator<Node>> getSuccessors) {
+        return () -> new SuccessorCursor() {
+            private Iterator<Node> successors = Collections.emptyIterator();
+
+            @Override
+            void start(Node node) {
+                successors = getSuccessors.apply(node);
+            }
+
+            @Override
+            Node next() {
+                return successors.hasNext() ? successors.next() : null;
+            }
+        };
+    }
+
+    static Supplier<SuccessorCursor> of(Direction direction, String... edgeLabels) {
+        return () -> new SuccessorCursor() {
+            private final EdgeCursor edges = new EdgeCursor();
+
+            @Override
+            void start(Node node) {
+                edges.reset(node, direction, edgeLabels);
+            }
+
+            @Override
+            Node next() {
+                return edges.next() ? edges.adjacentNode() : null;
+            }
+        };
+    }
+}
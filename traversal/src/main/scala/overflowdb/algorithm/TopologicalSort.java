@@ -2,6 +2,7 @@ package overflowdb.algorithm;
 
 import gnu.trove.map.hash.TLongIntHashMap;
 import overflowdb.Node;
+import overflowdb.QueryContext;
 
 import java.util.*;
 import java.util.function.Function;
@@ -16,6 +17,7 @@ public class TopologicalSort {
      * @throws CycleDetectedException if the graph contains a cycle.
      */
     public static List<Node> sort(Collection<Node> nodes, Function<Node, Iterator<Node>> getSuccessors) {
+        QueryContext context = QueryContext.current();
         List<Node> result = new ArrayList<>(nodes.size());
         TLongIntHashMap inDegree = new TLongIntHashMap(nodes.size());
         Map<Long, Node> nodeById = new HashMap<>(nodes.size());
@@ -26,6 +28,7 @@ public class TopologicalSort {
         }
 
         for (Node node : nodes) {
+            if (context != null) context.visit();
             Iterator<Node> successors = getSuccessors.apply(node);
             while (successors.hasNext()) {
                 Node successor = successors.next();
@@ -46,6 +49,7 @@ public class TopologicalSort {
         while (!queue.isEmpty()) {
             Node u = queue.poll();
             result.add(u);
+            if (context != null) context.visit();
 
             Iterator<Node> successors = getSuccessors.apply(u);
             while (successors.hasNext()) {
@@ -1,7 +1,8 @@
 package overflowdb.traversal
 
+import overflowdb.traversal.ElementTraversal.propertyOf
 import overflowdb.traversal.help.Doc
-import overflowdb.{Element, Property, PropertyPredicate, PropertyKey}
+import overflowdb.{Element, Ordinals, Property, PropertyPredicate, PropertyKey}
 
 import scala.jdk.CollectionConverters.*
 
@@ -12,20 +13,19 @@ class ElementTraversal[E <: Element](val traversal: Iterator[E]) extends AnyVal:
     @Doc(info = "Traverse to the element label")
     def label: Traversal[String] = traversal.map(_.label)
 
-    /** filter by the element label Note: do not use as the first step in a traversal, e.g.
-      * `traversalSource.all.label(value)`. Use `traversalSource.label` instead, it is much faster
-      * TODO: make the above an automatic optimisation
+    /** filter by the element label. Directly after a starting step (e.g.
+      * `traversalSource.all.label(value)`) this only scans nodes with the given label, see
+      * [[PlannedTraversal]]
       */
     def label(value: String): Traversal[E] =
-        traversal.filter(_.label == value)
+        PlannedTraversal.filter(traversal, PlanFilter.Label(Set(value), negate = false))
 
-    /** filter by the element labels Note: do not use as the first step in a traversal, e.g.
-      * `traversalSource.all.label(value)`. Use `traversalSource.label` instead, it is much faster
-      * TODO: make the above an automatic optimisation
+    /** filter by the element labels. Directly after a starting step (e.g.
+      * `traversalSource.all.label(value)`) this only scans nodes with the given labels, see
+      * [[PlannedTraversal]]
       */
     def label(values: String*): Traversal[E] =
-        val wanted = values.toSet
-        traversal.filter(element => wanted.contains(element.label))
+        PlannedTraversal.filter(traversal, PlanFilter.Label(values.toSet, negate = false))
 
     /** alias for {{{label}}} */
     def hasLabel(value: String): Traversal[E] = label(value)
@@ -35,12 +35,11 @@ class ElementTraversal[E <: Element](val traversal: Iterator[E]) extends AnyVal:
 
     /** filter by the element label (inverse) */
     def labelNot(value: String): Traversal[E] =
-        traversal.filterNot(_.label == value)
+        PlannedTraversal.filter(traversal, PlanFilter.Label(Set(value), negate = true))
 
     /** filter by the element labels (inverse) */
     def labelNot(value1: String, valueN: String*): Traversal[E] =
-        val unwanted = (valueN :+ value1).toSet
-        traversal.filterNot(element => unwanted.contains(element.label))
+        PlannedTraversal.filter(traversal, PlanFilter.Label((valueN :+ value1).toSet, negate = true))
 
     /** Filter elements by existence of property (irrespective of value) */
     def has(key: PropertyKey[?]): Traversal[E] = has(key.name)
@@ -50,11 +49,21 @@ class ElementTraversal[E <: Element](val traversal: Iterator[E]) extends AnyVal:
 
     /** Filter elements by existence of property (irrespective of value) */
     def has(name: String): Traversal[E] =
-        traversal.filter(_.property(name) != null)
+        val propertyValue = propertyOf(name)
+        val filter = PlanFilter.PropertyCheck(s"$name exists")(
+          propertyValue(_) != null,
+          statistics => statistics.nodeCount * statistics.fillRate(name)
+        )
+        PlannedTraversal.filter(traversal, filter)
 
     /** Filter elements by (non-)existence of property (irrespective of value) */
     def hasNot(name: String): Traversal[E] =
-        traversal.filter(_.property(name) == null)
+        val propertyValue = propertyOf(name)
+        val filter = PlanFilter.PropertyCheck(s"$name not exists")(
+          propertyValue(_) == null,
+          statistics => statistics.nodeCount * (1 - statistics.fillRate(name))
+        )
+        PlannedTraversal.filter(traversal, filter)
 
     /** Filter elements by property value */
     def has(keyValue: Property[?]): Traversal[E] =
@@ -86,17 +95,24 @@ class ElementTraversal[E <: Element](val traversal: Iterator[E]) extends AnyVal:
       *   }}}
       */
     def has[A](propertyPredicate: PropertyPredicate[A]): Traversal[E] =
-        traversal.filter(element =>
+        val filter = PlanFilter.Custom(s"${propertyPredicate.key.name} matches predicate")(element =>
             propertyPredicate.predicate(element.property(propertyPredicate.key))
         )
+        PlannedTraversal.filter(traversal, filter)
 
     /** Filter elements by property value */
     def has(key: String, value: Any): Traversal[E] =
-        traversal.filter(_.property(key) == value)
+        val propertyValue = propertyOf(key)
+        PlannedTraversal.filter(traversal, PlanFilter.PropertyIn(key, Seq(value))(propertyValue(_) == value))
 
     /** Filter elements by property value */
     def hasNot(key: String, value: Any): Traversal[E] =
-        traversal.filter(_.property(key) != value)
+        val propertyValue = propertyOf(key)
+        val filter = PlanFilter.PropertyCheck(s"$key != $value")(
+          propertyValue(_) != value,
+          statistics => statistics.nodeCount - statistics.estimatedNodesPerValue(key)
+        )
+        PlannedTraversal.filter(traversal, filter)
 
     /** Filter elements by property with given predicate.
       * @example
@@ -112,22 +128,36 @@ class ElementTraversal[E <: Element](val traversal: Iterator[E]) extends AnyVal:
       *   }}}
       */
     def hasNot[A](propertyPredicate: PropertyPredicate[A]): Traversal[E] =
-        traversal.filterNot(element =>
-            propertyPredicate.predicate(element.property(propertyPredicate.key))
+        val filter = PlanFilter.Custom(s"${propertyPredicate.key.name} doesn't match predicate")(element =>
+            !propertyPredicate.predicate(element.property(propertyPredicate.key))
         )
+        PlannedTraversal.filter(traversal, filter)
 
     def property[A](key: PropertyKey[A]): Traversal[A] =
         property(key.name)
 
     def property[A](key: String): Traversal[A] =
-        traversal.map(_.property(key).asInstanceOf[A]).filter(_ != null)
+        val propertyValue = propertyOf(key)
+        traversal.map(propertyValue(_).asInstanceOf[A]).filter(_ != null)
 
     def propertyOption[A](key: PropertyKey[A]): Traversal[Option[A]] =
         propertyOption(key.name)
 
     def propertyOption[A](key: String): Traversal[Option[A]] =
-        traversal.map(element => Option(element.property(key).asInstanceOf[A]))
+        val propertyValue = propertyOf(key)
+        traversal.map(element => Option(propertyValue(element).asInstanceOf[A]))
 
     def propertiesMap: Traversal[Map[String, Object]] =
         traversal.map(_.propertiesMap.asScala.toMap)
 end ElementTraversal
+
+object ElementTraversal:
+
+    /** Reads the given property by ordinal, or by name if the key doesn't have an ordinal: keys
+      * aren't registered here, since they may come from user input and the ordinal table is never
+      * cleared
+      */
+    private def propertyOf(key: String): Element => Object =
+        val ordinal = Ordinals.lookupPropertyKey(key)
+        if ordinal != -1 then _.property(ordinal) else _.property(key)
+end ElementTraversal
@@ -1,8 +1,9 @@
 package overflowdb.traversal
 
-import overflowdb.Graph
+import overflowdb.{Graph, NodeRef}
 
 import scala.jdk.CollectionConverters.IteratorHasAsScala
+import scala.util.matching.Regex
 
 class InitialTraversal[+A <: overflowdb.Node] private (
   graph: Graph,
@@ -19,14 +20,39 @@ class InitialTraversal[+A <: overflowdb.Node] private (
         arr.get(idx - 1)
 
     // we can only do this if the iterator itself is virgin, e.g. `val trav = cpg.method; trav.next; trav.fullNameExact(...)` cannot use the index
-    def canUseIndex(key: String): Boolean = idx == 0 && graph.indexManager.isIndexed(key)
+    def canUseIndex(key: String): Boolean = idx == 0 && graph.indexManager.hasIndexFor(label, key)
 
     def getByIndex(key: String, value: Any): Option[Iterator[A]] =
         if canUseIndex(key) then
-            val nodes = graph.indexManager.lookup(key, value)
-            Some(nodes.iterator().asScala.label(label).cast[A])
+            // uses the composite (label, key) index if available, and filters by label otherwise
+            val nodes = graph.indexManager.lookup(label, key, value)
+            Some(nodes.iterator().asScala.cast[A])
         else
             None
+
+    def canUseTextIndex(key: String): Boolean = idx == 0 && graph.indexManager.isTextIndexed(key)
+
+    def getByRegex(key: String, regex: Regex): Option[Iterator[A]] =
+        Option.when(canUseTextIndex(key))(fromIndex(graph.indexManager.lookupMatching(key, regex.pattern)))
+
+    def getByContains(key: String, value: String): Option[Iterator[A]] =
+        Option.when(canUseTextIndex(key))(fromIndex(graph.indexManager.lookupContaining(key, value)))
+
+    def getByPrefix(key: String, prefix: String): Option[Iterator[A]] =
+        Option.when(canUseTextIndex(key))(fromIndex(graph.indexManager.lookupStartingWith(key, prefix)))
+
+    /** this starting step as a plan that filter steps can be added to, see [[PlannedTraversal]] */
+    private[traversal] def plan: PlannedTraversal[A] =
+        PlannedTraversal.from[A](graph, label)
+
+    /** Parallel traversal over the remaining nodes, which are split up in place, i.e. without copying */
+    def par[B >: A]: ParallelTraversal[B] =
+        val remaining = arr.subList(idx, arr.size())
+        idx = arr.size()
+        ParallelTraversal.from[B](remaining)
+
+    private def fromIndex(nodes: java.util.List[NodeRef[?]]): Iterator[A] =
+        nodes.iterator().asScala.label(label).cast[A]
 end InitialTraversal
 
 object InitialTraversal:
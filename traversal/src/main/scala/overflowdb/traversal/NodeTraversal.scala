@@ -1,13 +1,15 @@
 package overflowdb.traversal
 
 import overflowdb.traversal.help.Doc
-import overflowdb.{Edge, Node}
+import overflowdb.util.NodeBitSet
+import overflowdb.{Edge, Node, Ordinals, QueryContext}
 
 import scala.jdk.CollectionConverters.IteratorHasAsScala
 
 class NodeTraversal[E <: Node](val traversal: Iterator[E]) extends AnyVal:
     type Traversal[A] = Iterator[A]
     import ImplicitsTmp.*
+    import NodeTraversal.{expand, singleLabelOrdinal}
     @Doc(info = "Traverse to node id")
     def id: Traversal[Long] = traversal.map(_.id)
 
@@ -33,61 +35,77 @@ class NodeTraversal[E <: Node](val traversal: Iterator[E]) extends AnyVal:
     /** follow outgoing edges to adjacent nodes */
     @Doc(info = "follow outgoing edges to adjacent nodes")
     def out: Traversal[Node] =
-        traversal.flatMap(_.out.asScala)
+        expand("out", traversal)(_.out)
 
     /** follow outgoing edges of given labels to adjacent nodes */
     def out(labels: String*): Traversal[Node] =
-        traversal.flatMap(_.out(labels*).asScala)
+        val ordinal = singleLabelOrdinal(labels)
+        if ordinal != -1 then expand(s"out(${labels.head})", traversal)(_.out(ordinal))
+        else expand(s"out(${labels.mkString(", ")})", traversal)(_.out(labels*))
 
     /** follow incoming edges to adjacent nodes */
     def in: Traversal[Node] =
-        traversal.flatMap(_.in.asScala)
+        expand("in", traversal)(_.in)
 
     /** follow incoming edges of given label to adjacent nodes */
     def in(labels: String*): Traversal[Node] =
-        traversal.flatMap(_.in(labels*).asScala)
+        val ordinal = singleLabelOrdinal(labels)
+        if ordinal != -1 then expand(s"in(${labels.head})", traversal)(_.in(ordinal))
+        else expand(s"in(${labels.mkString(", ")})", traversal)(_.in(labels*))
 
     /** follow incoming and outgoing edges to adjacent nodes */
     def both: Traversal[Node] =
-        traversal.flatMap(_.both.asScala)
+        expand("both", traversal)(_.both)
 
     /** follow incoming and outgoing edges of given labels to adjacent nodes */
     def both(labels: String*): Traversal[Node] =
-        traversal.flatMap(_.both(labels*).asScala)
+        val ordinal = singleLabelOrdinal(labels)
+        if ordinal != -1 then expand(s"both(${labels.head})", traversal)(_.both(ordinal))
+        else expand(s"both(${labels.mkString(", ")})", traversal)(_.both(labels*))
 
     /** follow outgoing edges */
     def outE: Traversal[Edge] =
-        traversal.flatMap(_.outE.asScala)
+        expand("outE", traversal)(_.outE)
 
     /** follow outgoing edges of given label */
     def outE(labels: String*): Traversal[Edge] =
-        traversal.flatMap(_.outE(labels*).asScala)
+        val ordinal = singleLabelOrdinal(labels)
+        if ordinal != -1 then expand(s"outE(${labels.head})", traversal)(_.outE(ordinal))
+        else expand(s"outE(${labels.mkString(", ")})", traversal)(_.outE(labels*))
 
     /** follow incoming edges */
     def inE: Traversal[Edge] =
-        traversal.flatMap(_.inE.asScala)
+        expand("inE", traversal)(_.inE)
 
     /** follow incoming edges of given label */
     def inE(labels: String*): Traversal[Edge] =
-        traversal.flatMap(_.inE(labels*).asScala)
+        val ordinal = singleLabelOrdinal(labels)
+        if ordinal != -1 then expand(s"inE(${labels.head})", traversal)(_.inE(ordinal))
+        else expand(s"inE(${labels.mkString(", ")})", traversal)(_.inE(labels*))
 
     /** follow incoming and outgoing edges */
     def bothE: Traversal[Edge] =
-        traversal.flatMap(_.bothE.asScala)
+        expand("bothE", traversal)(_.bothE)
 
     /** follow incoming and outgoing edges of given label */
     def bothE(labels: String*): Traversal[Edge] =
-        traversal.flatMap(_.bothE(labels*).asScala)
+        val ordinal = singleLabelOrdinal(labels)
+        if ordinal != -1 then expand(s"bothE(${labels.head})", traversal)(_.bothE(ordinal))
+        else expand(s"bothE(${labels.mkString(", ")})", traversal)(_.bothE(labels*))
 
     /** Filter: keep nodes that have an outgoing edge with the given label */
     @Doc(info = "keep nodes that have an outgoing edge with the given label")
     def hasOut(label: String): Traversal[E] =
-        traversal.filter(_.hasOut(label))
+        val ordinal = Ordinals.lookupLabel(label)
+        if ordinal != -1 then traversal.filter(_.hasOut(ordinal))
+        else traversal.filter(_.hasOut(label))
 
     /** Filter: keep nodes that have an incoming edge with the given label */
     @Doc(info = "keep nodes that have an incoming edge with the given label")
     def hasIn(label: String): Traversal[E] =
-        traversal.filter(_.hasIn(label))
+        val ordinal = Ordinals.lookupLabel(label)
+        if ordinal != -1 then traversal.filter(_.hasIn(ordinal))
+        else traversal.filter(_.hasIn(label))
 
     /** Traverse to nodes reachable within `maxDepth` steps in the given direction */
     @Doc(info = "traverse to nodes reachable within maxDepth steps in the given direction")
@@ -95,29 +113,65 @@ class NodeTraversal[E <: Node](val traversal: Iterator[E]) extends AnyVal:
       maxDepth: Int,
       direction: overflowdb.Direction = overflowdb.Direction.BOTH
     ): Traversal[Node] =
-        val visited      = scala.collection.mutable.LinkedHashSet.empty[Node]
-        var currentQueue = scala.collection.mutable.Queue.empty[Node]
-
-        traversal.foreach { node =>
-            if visited.add(node) then
-                currentQueue.enqueue(node)
+        Profiler.step(s"neighborhood($maxDepth, $direction)", traversal) { traversal =>
+            val visited      = NodeBitSet.acquire()
+            val results      = scala.collection.mutable.ArrayBuffer.empty[Node]
+            var currentQueue = scala.collection.mutable.Queue.empty[Node]
+
+            traversal.foreach { node =>
+                if visited.add(node) then
+                    results.addOne(node)
+                    currentQueue.enqueue(node)
+            }
+
+            val context = QueryContext.current()
+            var depth   = 0
+            try
+                while depth < maxDepth && currentQueue.nonEmpty do
+                    val nextQueue = scala.collection.mutable.Queue.empty[Node]
+                    while currentQueue.nonEmpty do
+                        val node = currentQueue.dequeue()
+                        if context != null then context.visit()
+                        val adjacent = direction match
+                            case overflowdb.Direction.OUT  => node.out.asScala
+                            case overflowdb.Direction.IN   => node.in.asScala
+                            case overflowdb.Direction.BOTH => node.both.asScala
+                        adjacent.foreach { adj =>
+                            if visited.add(adj) then
+                                results.addOne(adj)
+                                nextQueue.enqueue(adj)
+                        }
+                    currentQueue = nextQueue
+                    depth += 1
+            finally visited.release()
+            results.iterator
         }
+    end neighborhood
+end NodeTraversal
 
-        var depth = 0
-        while depth < maxDepth && currentQueue.nonEmpty do
-            val nextQueue = scala.collection.mutable.Queue.empty[Node]
-            while currentQueue.nonEmpty do
-                val node = currentQueue.dequeue()
-                val adjacent = direction match
-                    case overflowdb.Direction.OUT  => node.out.asScala
-                    case overflowdb.Direction.IN   => node.in.asScala
-                    case overflowdb.Direction.BOTH => node.both.asScala
-                adjacent.foreach { adj =>
-                    if visited.add(adj) then
-                        nextQueue.enqueue(adj)
+object NodeTraversal:
+
+    /** @return
+      *   the ordinal of the label if there's exactly one, or -1 - labels without an ordinal aren't
+      *   registered, since they may come from user input and the ordinal table is never cleared
+      */
+    private def singleLabelOrdinal(labels: Seq[String]): Int =
+        if labels.sizeIs == 1 then Ordinals.lookupLabel(labels.head) else -1
+
+    /** `flatMap` to the adjacent elements of each node, which reports each node to the
+      * [[overflowdb.QueryContext]] that was current when the step was created, if any, and is
+      * recorded by the current [[Profiler]], if any
+      */
+    private def expand[A <: Node, B](name: => String, nodes: Iterator[A])(
+      adjacent: A => java.util.Iterator[B]
+    ): Iterator[B] =
+        val context = QueryContext.current()
+        Profiler.step(name, nodes) { nodes =>
+            if context == null then nodes.flatMap(adjacent(_).asScala)
+            else
+                nodes.flatMap { node =>
+                    context.visit()
+                    adjacent(node).asScala
                 }
-            currentQueue = nextQueue
-            depth += 1
-        visited.iterator
-    end neighborhood
+        }
 end NodeTraversal
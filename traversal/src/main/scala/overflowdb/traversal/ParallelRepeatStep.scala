@@ -0,0 +1,96 @@
+package overflowdb.traversal
+
+import overflowdb.{Node, QueryContext}
+import overflowdb.util.ConcurrentBitSet
+
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue}
+import scala.jdk.CollectionConverters.*
+
+object ParallelRepeatStep:
+
+    /** Level-synchronous breadth first search for [[RepeatBehaviour.Builder.parallel]]: all
+      * elements of the current level (the frontier) are expanded in parallel, and the next level
+      * is only started once the current one is complete. Levels are computed lazily, i.e. one at a
+      * time as the results are consumed.
+      *
+      * With `dedup`, elements are marked as visited as soon as they are discovered (rather than when
+      * they are expanded), so that each element is expanded at most once, even if multiple workers
+      * discover it. Nodes are tracked in a concurrent bitset over their ids.
+      *
+      * The [[QueryContext]] of the query is installed on the worker threads while they expand
+      * elements, so that its limits apply to the repeated steps as well.
+      */
+    def apply[A](
+      repeatTraversal: Traversal[A] => Traversal[A],
+      behaviour: RepeatBehaviour[A]
+    ): A => Traversal[A] =
+        (element: A) =>
+            new ParallelRepeatStepIterator[A](
+              element,
+              elem => repeatTraversal(Iterator.single(elem)),
+              behaviour
+            )
+end ParallelRepeatStep
+
+class ParallelRepeatStepIterator[A](
+  element: A,
+  repeatTraversal: A => Iterator[A],
+  behaviour: RepeatBehaviour[A]
+) extends Iterator[A]:
+    private val visitedNodes                = new ConcurrentBitSet // only used if dedup enabled
+    private val visitedOther                = ConcurrentHashMap.newKeySet[Any]()
+    private var frontier: java.util.List[A] = java.util.Collections.singletonList(element)
+    private var depth                       = 0
+    private var levelResults: Iterator[A]   = Iterator.empty
+    private val context                     = QueryContext.current()
+
+    if behaviour.dedupEnabled then markVisited(element)
+
+    override def hasNext: Boolean =
+        while !levelResults.hasNext && !frontier.isEmpty do expandFrontier()
+        levelResults.hasNext
+
+    override def next(): A =
+        if !hasNext then throw new NoSuchElementException("next on empty iterator")
+        levelResults.next()
+
+    private def expandFrontier(): Unit =
+        if behaviour.maxDepthReached(depth) then
+            levelResults = frontier.asScala.iterator
+            frontier = java.util.Collections.emptyList()
+        else
+            if context != null then context.checkLimits()
+            val currentDepth = depth
+            val emitted      = new ConcurrentLinkedQueue[A]
+            frontier = ParallelTraversal
+                .from[A](frontier)
+                .flatMap { element =>
+                    if context == null then expand(element, currentDepth, emitted)
+                    else
+                        context.visit()
+                        // the steps only load nodes while they're consumed - i.e. consume them within the context
+                        context.run(() => expand(element, currentDepth, emitted).toList)
+                }
+                .toJavaList
+            depth += 1
+            levelResults = emitted.iterator.asScala
+
+    private def expand(element: A, currentDepth: Int, emitted: ConcurrentLinkedQueue[A]): Iterator[A] =
+        if // `while/repeat` behaviour, i.e. check every time
+            behaviour.whileConditionIsDefinedAndEmpty(element) ||
+            // `repeat/until` behaviour, i.e. only check the `until` condition from depth 1
+            (currentDepth > 0 && behaviour.untilConditionReached(element))
+        then
+            emitted.add(element)
+            Iterator.empty
+        else
+            if behaviour.shouldEmit(element, currentDepth) then emitted.add(element)
+            val repeat = repeatTraversal(element)
+            if behaviour.dedupEnabled then repeat.filter(markVisited) else repeat
+
+    /** @return true if the element hadn't been visited yet */
+    private def markVisited(element: A): Boolean =
+        element match
+            case node: Node if node.id >= 0 => visitedNodes.add(node.id)
+            case other                      => visitedOther.add(other)
+end ParallelRepeatStepIterator
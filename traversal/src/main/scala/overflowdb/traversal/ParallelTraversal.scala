@@ -0,0 +1,145 @@
+package overflowdb.traversal
+
+import overflowdb.Node
+
+import java.util.concurrent.{ExecutionException, ForkJoinPool}
+import java.util.stream.{Collectors, Stream, StreamSupport}
+import java.util.{Spliterator, Spliterators}
+import scala.jdk.CollectionConverters.*
+
+/** A traversal whose steps run in parallel on a fork-join pool: the starting elements are split into
+  * chunks, and each chunk is pushed through the downstream steps by a separate worker. Created via
+  * `.par`, e.g. `cpg.call.par.filter(...).out.groupCount`.
+  *
+  * Steps must not depend on the order in which elements are processed, and the functions passed to
+  * them must be safe to call concurrently. The terminal steps don't preserve the order of the
+  * elements either, apart from `toList`. Runs on the common fork-join pool, unless specified otherwise
+  * via `withPool`.
+  */
+class ParallelTraversal[A] private (stream: Stream[A], pool: Option[ForkJoinPool]):
+
+    def map[B](f: A => B): ParallelTraversal[B] =
+        copy(stream.map(a => f(a)))
+
+    def filter(p: A => Boolean): ParallelTraversal[A] =
+        copy(stream.filter(a => p(a)))
+
+    def filterNot(p: A => Boolean): ParallelTraversal[A] =
+        copy(stream.filter(a => !p(a)))
+
+    def flatMap[B](f: A => IterableOnce[B]): ParallelTraversal[B] =
+        copy(stream.flatMap(a => ParallelTraversal.sequentialStream(f(a).iterator)))
+
+    def collect[B](pf: PartialFunction[A, B]): ParallelTraversal[B] =
+        flatMap(a => pf.lift(a))
+
+    def cast[B]: ParallelTraversal[B] =
+        this.asInstanceOf[ParallelTraversal[B]]
+
+    /** Run the steps on the given pool rather than the common fork-join pool */
+    def withPool(pool: ForkJoinPool): ParallelTraversal[A] =
+        new ParallelTraversal(stream, Some(pool))
+
+    /** Execute the traversal and count the elements */
+    def count: Long =
+        run(stream.count())
+
+    /** Execute the traversal and apply the given function to each element, in no particular order */
+    def foreach(f: A => Unit): Unit =
+        run(stream.forEach(a => f(a)))
+
+    /** Execute the traversal without returning anything */
+    def iterate(): Unit =
+        foreach(_ => ())
+
+    /** Execute the traversal and convert the result to a list, preserving the order of the elements */
+    def toList: List[A] =
+        toJavaList.asScala.toList
+
+    private[traversal] def toJavaList: java.util.List[A] =
+        run(stream.collect(Collectors.toList[A]))
+
+    /** Execute the traversal and convert the result to a list - shorthand for `toList` */
+    def l: List[A] = toList
+
+    def toSet[B >: A]: Set[B] =
+        run(stream.collect(Collectors.toSet[A])).asScala.toSet
+
+    /** group elements and count how often they appear */
+    def groupCount[B >: A]: Map[B, Int] =
+        groupCount(identity[A])
+
+    /** group elements by a given transformation function and count how often the results appear */
+    def groupCount[B](by: A => B): Map[B, Int] =
+        val counts = run(stream.collect(Collectors.groupingByConcurrent((a: A) => by(a), Collectors.counting())))
+        counts.asScala.view.mapValues(_.intValue).toMap
+
+    private def copy[B](stream: Stream[B]): ParallelTraversal[B] =
+        new ParallelTraversal(stream, pool)
+
+    /** terminal operations run on the fork-join pool they are invoked from, hence the detour via `submit` */
+    private def run[B](terminalOp: => B): B =
+        pool match
+            case None => terminalOp
+            case Some(pool) =>
+                try pool.submit(() => terminalOp).get()
+                catch case e: ExecutionException => throw e.getCause
+end ParallelTraversal
+
+object ParallelTraversal:
+
+    /** @param elements must not be modified while the traversal executes */
+    def from[A](elements: java.util.List[? <: A]): ParallelTraversal[A] =
+        val stream = StreamSupport.stream(elements.spliterator(), true)
+        new ParallelTraversal(stream.asInstanceOf[Stream[A]], None)
+
+    /** Buffers the remaining elements of the given traversal, so they can be split up */
+    def from[A](traversal: IterableOnce[A]): ParallelTraversal[A] =
+        traversal match
+            case initial: InitialTraversal[A @unchecked] => initial.par
+            case _ =>
+                val elements = new java.util.ArrayList[A]
+                traversal.iterator.foreach(elements.add)
+                from(elements)
+
+    private def sequentialStream[A](iterator: Iterator[A]): Stream[A] =
+        StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator.asJava, Spliterator.ORDERED), false)
+
+    extension [A <: Node](traversal: ParallelTraversal[A])
+        /** follow outgoing edges to adjacent nodes */
+        def out: ParallelTraversal[Node] =
+            traversal.flatMap(_.out.asScala)
+
+        /** follow outgoing edges of given labels to adjacent nodes */
+        def out(labels: String*): ParallelTraversal[Node] =
+            traversal.flatMap(_.out(labels*).asScala)
+
+        /** follow incoming edges to adjacent nodes */
+        def in: ParallelTraversal[Node] =
+            traversal.flatMap(_.in.asScala)
+
+        /** follow incoming edges of given labels to adjacent nodes */
+        def in(labels: String*): ParallelTraversal[Node] =
+            traversal.flatMap(_.in(labels*).asScala)
+
+        /** follow incoming and outgoing edges to adjacent nodes */
+        def both: ParallelTraversal[Node] =
+            traversal.flatMap(_.both.asScala)
+
+        /** follow incoming and outgoing edges of given labels to adjacent nodes */
+        def both(labels: String*): ParallelTraversal[Node] =
+            traversal.flatMap(_.both(labels*).asScala)
+
+        /** Filter by given label */
+        def label(value: String): ParallelTraversal[A] =
+            traversal.filter(_.label == value)
+
+        /** Filter elements by property value */
+        def has(key: String, value: Any): ParallelTraversal[A] =
+            traversal.filter(_.property(key) == value)
+
+        /** Filter elements by existence of property (irrespective of value) */
+        def has(key: String): ParallelTraversal[A] =
+            traversal.filter(_.property(key) != null)
+    end extension
+end ParallelTraversal
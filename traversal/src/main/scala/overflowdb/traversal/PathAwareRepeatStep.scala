@@ -1,5 +1,6 @@
 package overflowdb.traversal
 
+import overflowdb.QueryContext
 import overflowdb.traversal.RepeatBehaviour.SearchAlgorithm
 
 import scala.collection.{mutable, Iterator}
@@ -19,23 +20,24 @@ object PathAwareRepeatStep:
     def apply[A](
       repeatTraversal: Traversal[A] => Traversal[A],
       behaviour: RepeatBehaviour[A]
-    ): A => PathAwareTraversal[A] = (element: A) =>
-        new PathAwareTraversal[A](new Iterator[(A, Vector[Any])]:
-            private val visited                                   = mutable.Set.empty[A]
-            private val emitSack: mutable.Queue[(A, Vector[Any])] = mutable.Queue.empty
+    ): TrackedPath[A] => PathAwareTraversal[A] = (start: TrackedPath[A]) =>
+        new PathAwareTraversal[A](new Iterator[TrackedPath[A]]:
+            private val visited                                = new Visited[A]
+            private val emitSack: mutable.Queue[TrackedPath[A]] = mutable.Queue.empty
             private val worklist: Worklist[WorklistItem[A]] = behaviour.searchAlgorithm match
                 case SearchAlgorithm.DepthFirst   => new LifoWorklist()
                 case SearchAlgorithm.BreadthFirst => new FifoWorklist()
+            private val context = QueryContext.current()
 
-            worklist.addItem(WorklistItem(
-              new PathAwareTraversal(Iterator.single((element, Vector.empty))),
-              0
-            ))
+            // the repeated steps extend the path of the start element, rather than starting a new one
+            worklist.addItem(WorklistItem(new PathAwareTraversal(Iterator.single(start)), 0))
 
             def hasNext: Boolean =
                 if emitSack.isEmpty then
                     traverseOnWorklist()
-                emitSack.nonEmpty || worklistTopHasNext
+                val hasNext = emitSack.nonEmpty || worklistTopHasNext
+                if !hasNext then visited.release()
+                hasNext
 
             private def traverseOnWorklist(): Unit =
                 var continue = true
@@ -47,7 +49,9 @@ object PathAwareRepeatStep:
                     else if behaviour.maxDepthReached(depth) then
                         continue = false
                     else
-                        val (currentElement, currentPath) = trav.next()
+                        val currentPath    = trav.next()
+                        val currentElement = currentPath.element
+                        if context != null then context.visit()
                         if behaviour.dedupEnabled then visited.addOne(currentElement)
 
                         val shouldStop =
@@ -58,21 +62,18 @@ object PathAwareRepeatStep:
 
                         if shouldStop then
                             // we just consumed an element from the traversal, so in lieu adding to the emit sack
-                            emitSack.enqueue((currentElement, currentPath))
+                            emitSack.enqueue(currentPath)
                             continue = false
                         else
                             val nextLevelTraversal =
                                 val repeat =
-                                    repeatTraversal(new PathAwareTraversal(Iterator.single((
-                                      currentElement,
-                                      currentPath
-                                    ))))
+                                    repeatTraversal(new PathAwareTraversal(Iterator.single(currentPath)))
                                 if behaviour.dedupEnabled then repeat.filterNot(visited.contains)
                                 else repeat
                             worklist.addItem(WorklistItem(nextLevelTraversal, depth + 1))
 
                             if behaviour.shouldEmit(currentElement, depth) then
-                                emitSack.enqueue((currentElement, currentPath))
+                                emitSack.enqueue(currentPath)
 
                             if emitSack.nonEmpty then
                                 continue = false
@@ -84,7 +85,7 @@ object PathAwareRepeatStep:
             private inline def worklistTopHasNext: Boolean =
                 worklist.nonEmpty && worklist.head.traversal.hasNext
 
-            override def next(): (A, Vector[Any]) =
+            override def next(): TrackedPath[A] =
                 val result =
                     if emitSack.nonEmpty then
                         emitSack.dequeue()
@@ -94,7 +95,7 @@ object PathAwareRepeatStep:
                         throw new NoSuchElementException("next on empty iterator")
 
                 if behaviour.dedupEnabled then
-                    visited.addOne(result._1)
+                    visited.addOne(result.element)
                 result
         )
 end PathAwareRepeatStep
@@ -1,54 +1,80 @@
 package overflowdb.traversal
 
-import scala.annotation.tailrec
-import scala.collection.{IterableOnce, Iterator}
-
-class PathAwareTraversal[A](val wrapped: Iterator[(A, Vector[Any])]) extends Iterator[A]:
+import scala.collection.{mutable, IterableOnce, Iterator}
+
+/** An element of a [[PathAwareTraversal]] along with the path that led to it, i.e. a pointer to the
+  * path of the element it was derived from. Paths are immutable and share their common prefix, so a
+  * step allocates a single path entry per element, irrespective of the path length. The path is
+  * only copied into a `Vector` when it's materialized, e.g. by the `path` step.
+  */
+final class TrackedPath[+A] private (val element: A, val parent: TrackedPath[Any], val length: Int):
+
+    /** @return the path of the given element, which was derived from this element */
+    def appended[B](next: B): TrackedPath[B] = new TrackedPath(next, this, length + 1)
+
+    /** @return all elements of the path, starting with the first one */
+    def toVector: Vector[Any] =
+        val elements               = new Array[Any](length)
+        var path: TrackedPath[Any] = this
+        var i                      = length - 1
+        while i >= 0 do
+            elements(i) = path.element
+            path = path.parent
+            i -= 1
+        elements.toVector
+
+    /** @return true if the path doesn't contain any element twice */
+    def isSimple: Boolean =
+        val seen                   = mutable.HashSet.empty[Any]
+        var path: TrackedPath[Any] = this
+        while path != null && seen.add(path.element) do path = path.parent
+        path == null
+end TrackedPath
+
+object TrackedPath:
+    def start[A](element: A): TrackedPath[A] = new TrackedPath(element, null, 1)
+
+class PathAwareTraversal[A](val wrapped: Iterator[TrackedPath[A]]) extends Iterator[A]:
     type Traversal[A] = Iterator[A]
 
     override def hasNext: Boolean = wrapped.hasNext
 
-    override def next(): A = wrapped.next()._1
+    override def next(): A = wrapped.next().element
 
     override def map[B](f: A => B): PathAwareTraversal[B] =
-        new PathAwareTraversal[B](wrapped.map { case (a, p) =>
-            (f(a), p.appended(a))
+        new PathAwareTraversal[B](wrapped.map { path =>
+            path.appended(f(path.element))
         })
 
     override def flatMap[B](f: A => IterableOnce[B]): PathAwareTraversal[B] =
-        new PathAwareTraversal[B](wrapped.flatMap { case (a, p) =>
-            val ap = p.appended(a)
-            f(a).iterator.map {
-                (_, ap)
-            }
+        new PathAwareTraversal[B](wrapped.flatMap { path =>
+            f(path.element).iterator.map(path.appended)
         })
 
     override def distinctBy[B](f: A => B): PathAwareTraversal[A] =
-        new PathAwareTraversal[A](wrapped.distinctBy {
-            case (a, p) => f(a)
-        })
+        new PathAwareTraversal[A](wrapped.distinctBy { path => f(path.element) })
 
     override def collect[B](pf: PartialFunction[A, B]): PathAwareTraversal[B] = flatMap(pf.lift)
 
     override def filter(p: A => Boolean): PathAwareTraversal[A] =
-        new PathAwareTraversal(wrapped.filter { case (a, _) => p(a) })
+        new PathAwareTraversal(wrapped.filter { path => p(path.element) })
 
     override def filterNot(p: A => Boolean): PathAwareTraversal[A] =
-        new PathAwareTraversal(wrapped.filterNot { case (a, _) => p(a) })
+        new PathAwareTraversal(wrapped.filterNot { path => p(path.element) })
 
     override def duplicate: (Iterator[A], Iterator[A]) =
         val (iter1, iter2) = wrapped.duplicate
         (new PathAwareTraversal(iter1), new PathAwareTraversal(iter2))
 
     private[traversal] def _union[B](traversals: (Traversal[A] => Traversal[B])*): Traversal[B] =
-        new PathAwareTraversal(wrapped.flatMap { case (a, p) =>
+        new PathAwareTraversal(wrapped.flatMap { path =>
             traversals.iterator.flatMap { inner =>
-                val result = inner(new PathAwareTraversal(Iterator.single((a, p))))
+                val result = inner(new PathAwareTraversal(Iterator.single(path)))
                 result match
                     case stillPathAware: PathAwareTraversal[?] =>
                         stillPathAware.asInstanceOf[PathAwareTraversal[B]].wrapped
                     case notPathAware =>
-                        notPathAware.iterator.map { (b: B) => (b, p.appended(a)) }
+                        notPathAware.iterator.map { (b: B) => path.appended(b) }
             }
         })
 
@@ -57,40 +83,40 @@ class PathAwareTraversal[A](val wrapped: Iterator[(A, Vector[Any])]) extends Ite
     )(
       options: PartialFunction[BranchOn, Traversal[A] => Traversal[NewEnd]]
     ): Traversal[NewEnd] =
-        new PathAwareTraversal(wrapped.flatMap { case (a, p) =>
-            val branchOnValue: BranchOn = on(Iterator.single(a)).nextOption().orNull
+        new PathAwareTraversal(wrapped.flatMap { path =>
+            val branchOnValue: BranchOn = on(Iterator.single(path.element)).nextOption().orNull
             val traversal = options
                 .applyOrElse(
                   branchOnValue,
                   (failState: BranchOn) => (unused: Traversal[A]) => Iterator.empty[NewEnd]
                 )
-                .apply(new PathAwareTraversal(Iterator.single((a, p))))
+                .apply(new PathAwareTraversal(Iterator.single(path)))
 
             traversal match
                 case stillPathAware: PathAwareTraversal[?] =>
                     stillPathAware.asInstanceOf[PathAwareTraversal[NewEnd]].wrapped
                 case notPathAware =>
-                    notPathAware.iterator.map { (b: NewEnd) => (b, p.appended(a)) }
+                    notPathAware.iterator.map { (b: NewEnd) => path.appended(b) }
         })
 
     private[traversal] def _coalesce[NewEnd](options: (Traversal[A] => Traversal[NewEnd])*)
       : Traversal[NewEnd] =
-        new PathAwareTraversal(wrapped.flatMap { case (a, p) =>
+        new PathAwareTraversal(wrapped.flatMap { path =>
             options.iterator
                 .map { inner =>
-                    val result = inner(new PathAwareTraversal(Iterator.single((a, p))))
+                    val result = inner(new PathAwareTraversal(Iterator.single(path)))
                     result match
                         case stillPathAware: PathAwareTraversal[?] =>
                             stillPathAware.asInstanceOf[PathAwareTraversal[NewEnd]].wrapped
                         case notPathAware =>
-                            notPathAware.iterator.map { (b: NewEnd) => (b, p.appended(a)) }
+                            notPathAware.iterator.map { (b: NewEnd) => path.appended(b) }
                 }
                 .find(_.hasNext)
                 .getOrElse(Iterator.empty)
         })
 
     private[traversal] def _sideEffect(f: A => ?): PathAwareTraversal[A] =
-        new PathAwareTraversal(wrapped.map {
-            case (a, p) => f(a); (a, p)
+        new PathAwareTraversal(wrapped.map { path =>
+            f(path.element); path
         })
 end PathAwareTraversal
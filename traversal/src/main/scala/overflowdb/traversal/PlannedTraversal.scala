@@ -0,0 +1,264 @@
+package overflowdb.traversal
+
+import overflowdb.{Element, Graph, GraphStatistics, Node, NodeRef}
+
+import scala.jdk.CollectionConverters.*
+import scala.math.ScalaNumber
+import scala.jdk.OptionConverters.*
+
+/** A filter step that was applied to a [[PlannedTraversal]], i.e. that hasn't been evaluated yet */
+private[traversal] sealed trait PlanFilter:
+    def matches(element: Element): Boolean
+
+private[traversal] object PlanFilter:
+
+    /** element has one of the given labels, or none of them if `negate` */
+    final case class Label(labels: Set[String], negate: Boolean) extends PlanFilter:
+        def matches(element: Element): Boolean = labels.contains(element.label) != negate
+
+    /** property has one of the given values - may be served from an index */
+    final case class PropertyIn(key: String, values: Seq[Any])(predicate: Element => Boolean)
+        extends PlanFilter:
+        def matches(element: Element): Boolean = predicate(element)
+
+    /** any other check of a property that we defined, i.e. that's cheap and has no side effects
+      * @param estimate
+      *   the expected number of matching nodes of a label, based on its statistics
+      */
+    final case class PropertyCheck(description: String)(
+      predicate: Element => Boolean,
+      val estimate: GraphStatistics.LabelStatistics => Double
+    ) extends PlanFilter:
+        def matches(element: Element): Boolean = predicate(element)
+
+    /** a user-provided predicate, which is only ever evaluated after all other filters */
+    final case class Custom(description: String)(predicate: Element => Boolean) extends PlanFilter:
+        def matches(element: Element): Boolean = predicate(element)
+end PlanFilter
+
+/** A starting step (all nodes, or all nodes with given labels) along with the filter steps that were
+  * applied to it, e.g. `cpg.call.has(LineNumber, 10).has(Name, "foo")`. Nothing is evaluated until the
+  * traversal is consumed - then the plan is optimized and turned into a single iterator:
+  *   - label filters restrict the labels that are scanned, rather than checking every node
+  *   - property values that are indexed (for all scanned labels) are looked up in the index, see
+  *     [[overflowdb.IndexManager.lookup(label:String,propertyValues:java.util.Map[String,*])*]]
+  *   - the remaining filters are checked in a single pass, the most selective first if there are
+  *     [[overflowdb.Graph.statistics]]. User-provided predicates (e.g. `has(Name.where(...))`) keep
+  *     their relative order, and are checked after all other filters.
+  *
+  * Filter steps only join the plan while it's unconsumed - afterwards they're regular iterator steps.
+  *
+  * @param profile
+  *   the step of the current [[Profiler]] that records the execution of the plan, or null
+  */
+class PlannedTraversal[+A <: Node] private[traversal] (
+  graph: Graph,
+  labels: Option[Set[String]],
+  filters: Vector[PlanFilter],
+  profile: StepProfile
+) extends Iterator[A]:
+    import PlannedTraversal.*
+
+    private var physical: Iterator[A] = null
+
+    override def hasNext: Boolean = physicalIterator.hasNext
+
+    override def next(): A = physicalIterator.next()
+
+    private[traversal] def isStarted: Boolean = physical != null
+
+    private[traversal] def withFilter(filter: PlanFilter): PlannedTraversal[A] =
+        new PlannedTraversal[A](graph, labels, filters :+ filter, profile)
+
+    /** @return a description of how this traversal will be executed, e.g. for debugging slow queries */
+    def explain: String = optimize().toString
+
+    private def physicalIterator: Iterator[A] =
+        if physical == null then
+            val plan = optimize()
+            physical =
+                if profile == null then plan.execute(graph).asInstanceOf[Iterator[A]]
+                else
+                    profile.details = plan.toString
+                    Profiler.instrument(profile, Iterator.empty)(_ => plan.execute(graph)).asInstanceOf[Iterator[A]]
+        physical
+
+    private def optimize(): PhysicalPlan =
+        var scannedLabels  = labels
+        val labelChecks    = Vector.newBuilder[PlanFilter]
+        val propertyValues = Vector.newBuilder[PlanFilter.PropertyIn]
+        val propertyChecks = Vector.newBuilder[PlanFilter.PropertyCheck]
+        val custom         = Vector.newBuilder[PlanFilter]
+        filters.foreach {
+            case PlanFilter.Label(wanted, false) =>
+                scannedLabels = Some(scannedLabels.fold(wanted)(_.intersect(wanted)))
+            case filter @ PlanFilter.Label(unwanted, true) =>
+                if scannedLabels.isDefined then scannedLabels = scannedLabels.map(_ -- unwanted)
+                else labelChecks += filter
+            case filter: PlanFilter.PropertyIn    => propertyValues += filter
+            case filter: PlanFilter.PropertyCheck => propertyChecks += filter
+            case filter: PlanFilter.Custom        => custom += filter
+        }
+        if scannedLabels.exists(_.isEmpty) then return PhysicalPlan(Source.Empty, Vector.empty)
+
+        val (source, remainingValues) = chooseSource(scannedLabels, propertyValues.result())
+        val statistics = scannedLabels match
+            case Some(labels) if labels.size == 1 =>
+                graph.statistics().toScala.flatMap(statistics => Option(statistics.forLabel(labels.head)))
+            case _ => None
+        val builtIn = statistics match
+            case Some(statistics) =>
+                (remainingValues ++ propertyChecks.result()).sortBy(estimate(_, statistics))
+            case None => remainingValues ++ propertyChecks.result()
+        PhysicalPlan(source, labelChecks.result() ++ builtIn ++ custom.result())
+    end optimize
+
+    /** index lookup with all indexed single property values (the index intersects them), or with the
+      * indexed value set that has the fewest nodes, or a scan of the labels if nothing is indexed
+      */
+    private def chooseSource(
+      labels: Option[Set[String]],
+      propertyValues: Vector[PlanFilter.PropertyIn]
+    ): (Source, Vector[PlanFilter]) =
+        val indexManager = graph.indexManager
+        def indexable(filter: PlanFilter.PropertyIn): Boolean =
+            labels.fold(indexManager.isIndexed(filter.key))(_.forall(indexManager.hasIndexFor(_, filter.key)))
+        val indexed = propertyValues.flatMap { filter =>
+            if indexable(filter) then lookupValues(filter.values).map(filter -> _) else None
+        }
+        val singleValues = indexed.collect { case (filter, Seq(value)) => filter -> value }.distinctBy(_._1.key)
+        if singleValues.nonEmpty then
+            val lookup = Source.IndexLookup(labels, singleValues.map((filter, value) => filter.key -> value).toMap)
+            (lookup, propertyValues.filterNot(filter => singleValues.exists(_._1 eq filter)))
+        else
+            val valueSets = indexed.filter(_._2.nonEmpty)
+            if valueSets.isEmpty then (Source.Scan(labels), propertyValues)
+            else
+                def count(key: String, values: Seq[Any]): Long =
+                    values.map { value =>
+                        if indexManager.isIndexed(key) then indexManager.lookupCount(key, value).toLong
+                        else labels.get.iterator.map(indexManager.lookupCount(_, key, value).toLong).sum
+                    }.sum
+                val (smallest, values) = valueSets.minBy((filter, values) => count(filter.key, values))
+                (Source.IndexLookupAny(labels, smallest.key, values), propertyValues.filterNot(_ eq smallest))
+    end chooseSource
+end PlannedTraversal
+
+object PlannedTraversal:
+
+    /** all nodes of the graph */
+    def all(graph: Graph): PlannedTraversal[Node] =
+        new PlannedTraversal[Node](graph, None, Vector.empty, Profiler.register("all"))
+
+    def from[A <: Node](graph: Graph, label: String): PlannedTraversal[A] =
+        new PlannedTraversal[A](graph, Some(Set(label)), Vector.empty, Profiler.register(s"label($label)"))
+
+    /** @return the given traversal with the given filter in its plan, or None if it isn't a starting step
+      *   or has been consumed already, i.e. the filter needs to be applied as a regular step
+      */
+    private[traversal] def withFilter[A](traversal: Iterator[A], filter: PlanFilter): Option[Iterator[A]] =
+        traversal match
+            case plan: PlannedTraversal[?] if !plan.isStarted =>
+                Some(plan.withFilter(filter).asInstanceOf[Iterator[A]])
+            case initial: InitialTraversal[?] if initial.idx == 0 =>
+                Some(initial.plan.withFilter(filter).asInstanceOf[Iterator[A]])
+            case _ => None
+
+    /** adds the filter to the plan of the given traversal if possible, see [[withFilter]], or applies it straight away */
+    private[traversal] def filter[A <: Element](traversal: Iterator[A], filter: PlanFilter): Iterator[A] =
+        withFilter(traversal, filter).getOrElse(Profiler.step(filter.toString, traversal)(_.filter(filter.matches)))
+
+    /** @return
+      *   the values to look up in an index, so that it finds the same elements as a scan: that
+      *   compares with `==`, i.e. `3 == 3L`, while the index uses `equals`. Numbers are therefore
+      *   looked up in all boxed types that have the same value. None if that's not possible, e.g.
+      *   for null or for floating point numbers that are equal to several integers
+      */
+    private def lookupValues(values: Seq[Any]): Option[Seq[Any]] =
+        val equivalents = values.map {
+            case null | _: ScalaNumber => None
+            case float: java.lang.Float if math.abs(float) >= (1 << 24) => None
+            case double: java.lang.Double if math.abs(double) >= (1L << 53) => None
+            case char: java.lang.Character => Some(numericEquivalents(Integer.valueOf(char.charValue), char))
+            case number: (java.lang.Byte | java.lang.Short | java.lang.Integer | java.lang.Long | java.lang.Float |
+                    java.lang.Double) =>
+                Some(numericEquivalents(number, number))
+            case value => Some(Seq(value))
+        }
+        // not `distinct`, which would use `==` as well
+        if equivalents.contains(None) then None
+        else Some(equivalents.flatten.flatten.distinctBy(value => (value.getClass, value)))
+
+    private def numericEquivalents(number: Number, value: Any): Seq[Any] =
+        Seq[Any](
+          number.byteValue,
+          number.shortValue,
+          number.intValue,
+          number.longValue,
+          number.floatValue,
+          number.doubleValue,
+          number.intValue.toChar
+        ).filter(_ == value)
+
+    private def estimate(filter: PlanFilter, statistics: GraphStatistics.LabelStatistics): Double =
+        filter match
+            case PlanFilter.PropertyIn(key, values) =>
+                statistics.estimatedNodesPerValue(key) * values.distinct.size
+            case check: PlanFilter.PropertyCheck => check.estimate(statistics)
+            case _                               => statistics.nodeCount.toDouble
+
+    private sealed trait Source:
+        def nodes(graph: Graph): Iterator[Node]
+
+    private object Source:
+        case object Empty extends Source:
+            def nodes(graph: Graph): Iterator[Node] = Iterator.empty
+
+        final case class Scan(labels: Option[Set[String]]) extends Source:
+            def nodes(graph: Graph): Iterator[Node] =
+                labels match
+                    case None => graph.nodes().asScala
+                    case Some(labels) =>
+                        val nodesList = overflowdb.Misc.extractNodesList(graph)
+                        labels.iterator.flatMap(label => nodesList.nodesByLabel(label).asScala)
+
+        final case class IndexLookup(labels: Option[Set[String]], propertyValues: Map[String, Any])
+            extends Source:
+            def nodes(graph: Graph): Iterator[Node] =
+                val values = propertyValues.asJava
+                labels match
+                    case None         => fromIndex(graph.indexManager.lookup(null, values))
+                    case Some(labels) => labels.iterator.flatMap(label => fromIndex(graph.indexManager.lookup(label, values)))
+
+        final case class IndexLookupAny(labels: Option[Set[String]], key: String, values: Seq[Any]) extends Source:
+            def nodes(graph: Graph): Iterator[Node] =
+                val indexManager = graph.indexManager
+                labels match
+                    case None => values.iterator.flatMap(value => fromIndex(indexManager.lookup(key, value)))
+                    case Some(labels) =>
+                        for
+                            label <- labels.iterator
+                            value <- values.iterator
+                            node  <- fromIndex(indexManager.lookup(label, key, value))
+                        yield node
+
+        private def fromIndex(nodes: java.util.List[NodeRef[?]]): Iterator[Node] =
+            nodes.iterator().asScala
+    end Source
+
+    private final case class PhysicalPlan(source: Source, filters: Vector[PlanFilter]):
+        def execute(graph: Graph): Iterator[Node] =
+            val nodes = source.nodes(graph)
+            if filters.isEmpty then nodes
+            else
+                val fused = filters.toArray
+                nodes.filter { node =>
+                    var i = 0
+                    while i < fused.length && fused(i).matches(node) do i += 1
+                    i == fused.length
+                }
+
+        override def toString: String =
+            if filters.isEmpty then source.toString
+            else s"$source -> Filter(${filters.mkString(", ")})"
+end PlannedTraversal
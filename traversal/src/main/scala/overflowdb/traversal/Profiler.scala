@@ -0,0 +1,298 @@
+package overflowdb.traversal
+
+import overflowdb.QueryContext
+
+import java.lang.management.ManagementFactory
+import scala.collection.mutable
+
+/** Profiles the traversals that are created and consumed within [[Profiler.profile]]: every step
+  * that expands or filters the graph (e.g. `out`, `has`, `repeat`, the starting step with its
+  * [[PlannedTraversal plan]]), and every `profile(name)` marker, records
+  *   - the number of elements it consumed and produced
+  *   - its self time, i.e. excluding the time spent in the steps it pulled elements from
+  *   - the number of nodes it loaded from storage, and the bytes it allocated (as measured per thread
+  *     by the JVM, if supported)
+  *
+  * The result is a tree of [[StepProfile]]s: the steps of a traversal are siblings in the order they
+  * were created, and the steps of a nested traversal (e.g. the one given to `repeat`) are children of
+  * the step that runs it. Once the query is done, one [[TraversalStepEvent]] per step is committed to
+  * JFR, if it's recording.
+  *
+  * Steps only record their own thread, i.e. work on the worker threads of [[ParallelTraversal]] isn't
+  * accounted for.
+  */
+object Profiler:
+    private val current = new ThreadLocal[Profiler]
+
+    /** runs the given query, which needs to consume its traversals, e.g.
+      * `Profiler.profile(cpg.method.name("foo").repeat(_.out)(using _.maxDepth(3)).l)`
+      */
+    def profile[A](query: => A): (A, ProfileReport) =
+        val context = QueryContext.current()
+        if context == null then QueryContext.create().run(() => run(QueryContext.current(), query))
+        else run(context, query)
+
+    private def run[A](context: QueryContext, query: => A): (A, ProfileReport) =
+        val profiler = new Profiler(context)
+        val previous = current.get()
+        current.set(profiler)
+        val result =
+            try profiler.measure(profiler.root)(query)
+            finally current.set(previous)
+        val report = new ProfileReport(profiler.root, profiler.allocationTracked)
+        report.commitEvents()
+        (result, report)
+
+    /** Records the given step of the current profiler, if any: runs `step` with the upstream
+      * elements, and instruments the resulting iterator.
+      */
+    private[traversal] def step[A, B](name: => String, input: Iterator[A])(step: Iterator[A] => Iterator[B]): Iterator[B] =
+        nestedStep(name, input)((upstream, _) => step(upstream))
+
+    /** like [[step]], for steps that run nested traversals: they need to be created via the given
+      * [[Scope]], so that their steps are recorded as children of this step
+      */
+    private[traversal] def nestedStep[A, B](name: => String, input: Iterator[A])(
+      step: (Iterator[A], Scope) => Iterator[B]
+    ): Iterator[B] =
+        val profile = register(name)
+        if profile == null then step(input, Scope.Noop)
+        else instrument(profile, input)(step(_, new Scope(profile)))
+
+    /** Records the elements that pass this point of the traversal, and the time it took to produce
+      * them (i.e. including the steps before, unlike all other steps).
+      */
+    private[traversal] def mark[A](name: String, input: Iterator[A]): Iterator[A] =
+        val profile = register(name)
+        if profile == null then input
+        else
+            input match
+                case tracked: PathAwareTraversal[A @unchecked] =>
+                    new PathAwareTraversal(new ProfiledIterator(tracked.wrapped, profile, countIn = true))
+                case _ => new ProfiledIterator(input, profile, countIn = true)
+
+    /** @return the step with the given name in the current scope of the current profiler, or null if
+      *   nothing is being profiled on this thread
+      */
+    private[traversal] def register(name: => String): StepProfile =
+        val profiler = current.get()
+        if profiler == null then null else profiler.scope.next(name)
+
+    /** runs `step` with the upstream elements, and instruments the resulting iterator */
+    private[traversal] def instrument[A, B](profile: StepProfile, input: Iterator[A])(
+      step: Iterator[A] => Iterator[B]
+    ): Iterator[B] =
+        val profiler = profile.profiler
+        // path-aware traversals need to stay path-aware, so that the following steps track the path
+        input match
+            case tracked: PathAwareTraversal[A @unchecked] =>
+                val upstream = new PathAwareTraversal(new UpstreamIterator(tracked.wrapped, profile))
+                profiler.measure(profile)(step(upstream.asInstanceOf[Iterator[A]])) match
+                    case output: PathAwareTraversal[B @unchecked] =>
+                        new PathAwareTraversal(new ProfiledIterator(output.wrapped, profile, countIn = false))
+                    case output => new ProfiledIterator(output, profile, countIn = false)
+            case _ =>
+                val output = profiler.measure(profile)(step(new UpstreamIterator(input, profile)))
+                new ProfiledIterator(output, profile, countIn = false)
+
+    /** the steps that are created while running a function, e.g. the traversal that's repeated */
+    private[traversal] class Scope(owner: StepProfile):
+        private var nextIndex = 0
+
+        private[Profiler] def next(name: String): StepProfile =
+            val step = owner.child(nextIndex, name)
+            nextIndex += 1
+            step
+
+        /** @return the given function, creating the steps of each invocation in this scope */
+        def apply[X, Y](function: X => Y): X => Y = (x: X) =>
+            val profiler = owner.profiler
+            if Thread.currentThread() ne profiler.thread then function(x)
+            else
+                val previous = profiler.scope
+                profiler.scope = new Scope(owner)
+                try function(x)
+                finally profiler.scope = previous
+    end Scope
+
+    private[traversal] object Scope:
+        object Noop extends Scope(null):
+            override def apply[X, Y](function: X => Y): X => Y = function
+
+    /** the output of a step: the time spent in here is the step's */
+    private final class ProfiledIterator[A](underlying: Iterator[A], profile: StepProfile, countIn: Boolean)
+        extends Iterator[A]:
+        private val profiler = profile.profiler
+
+        override def hasNext: Boolean = profiler.measure(profile)(underlying.hasNext)
+
+        override def next(): A =
+            val element = profiler.measure(profile)(underlying.next())
+            profile.elementsOut += 1
+            if countIn then profile.elementsIn += 1
+            element
+
+    /** the input of a step: the time spent in here belongs to the steps before */
+    private final class UpstreamIterator[A](underlying: Iterator[A], profile: StepProfile) extends Iterator[A]:
+        private val profiler = profile.profiler
+
+        override def hasNext: Boolean = profiler.measure(null)(underlying.hasNext)
+
+        override def next(): A =
+            val element = profiler.measure(null)(underlying.next())
+            profile.elementsIn += 1
+            element
+
+    private val threadBean: com.sun.management.ThreadMXBean =
+        ManagementFactory.getThreadMXBean match
+            case bean: com.sun.management.ThreadMXBean
+                if bean.isThreadAllocatedMemorySupported && bean.isThreadAllocatedMemoryEnabled =>
+                bean
+            case _ => null
+end Profiler
+
+private[traversal] final class Profiler(context: QueryContext):
+    import Profiler.*
+
+    val thread                   = Thread.currentThread()
+    val root                     = new StepProfile("query", this)
+    val allocationTracked        = threadBean != null
+    var scope: Profiler.Scope    = new Profiler.Scope(root)
+    private var frame: StepProfile = null
+
+    /** Runs `body` as part of the given step - or as part of the steps it pulls elements from, if null -
+      * and adds the time, loaded nodes and allocated bytes to the step, and to the total of the
+      * enclosing step's children.
+      */
+    inline def measure[T](step: StepProfile)(inline body: T): T =
+        if Thread.currentThread() ne thread then body
+        else
+            val parent         = frame
+            val startNanos     = System.nanoTime()
+            val startLoaded    = context.nodesLoaded()
+            val startAllocated = allocatedBytes()
+            frame = step
+            try body
+            finally
+                frame = parent
+                val nanos     = System.nanoTime() - startNanos
+                val loaded    = context.nodesLoaded() - startLoaded
+                val allocated = allocatedBytes() - startAllocated
+                if step != null then step.record(nanos, loaded, allocated)
+                if parent != null then parent.recordChildren(nanos, loaded, allocated)
+
+    private def allocatedBytes(): Long =
+        if threadBean == null then 0 else threadBean.getCurrentThreadAllocatedBytes
+end Profiler
+
+/** The profile of one step, see [[Profiler]] */
+final class StepProfile private[traversal] (val name: String, private[traversal] val profiler: Profiler):
+    private[traversal] var elementsIn: Long  = 0
+    private[traversal] var elementsOut: Long = 0
+    private[traversal] var details: String   = ""
+    private var totalNanos: Long             = 0
+    private var childrenNanos: Long          = 0
+    private var totalLoaded: Long            = 0
+    private var childrenLoaded: Long         = 0
+    private var totalAllocated: Long         = 0
+    private var childrenAllocated: Long      = 0
+    private val childSteps                   = mutable.ArrayBuffer.empty[StepProfile]
+
+    /** number of elements this step pulled from the step before */
+    def elementsConsumed: Long = elementsIn
+
+    def elementsProduced: Long = elementsOut
+
+    /** e.g. the plan of a starting step */
+    def description: String = details
+
+    def selfTimeNanos: Long = totalNanos - childrenNanos
+
+    /** including the steps it pulled elements from */
+    def totalTimeNanos: Long = totalNanos
+
+    def nodesLoaded: Long = totalLoaded - childrenLoaded
+
+    def allocatedBytes: Long = totalAllocated - childrenAllocated
+
+    /** the steps of the traversals that this step ran */
+    def children: Seq[StepProfile] = childSteps.toSeq
+
+    private[traversal] def record(nanos: Long, loaded: Long, allocated: Long): Unit =
+        totalNanos += nanos
+        totalLoaded += loaded
+        totalAllocated += allocated
+
+    private[traversal] def recordChildren(nanos: Long, loaded: Long, allocated: Long): Unit =
+        childrenNanos += nanos
+        childrenLoaded += loaded
+        childrenAllocated += allocated
+
+    /** the step that was created as the `index`th of a scope - nested traversals create their steps once
+      * per invocation, which all add up in the same children
+      */
+    private[traversal] def child(index: Int, name: String): StepProfile =
+        if index < childSteps.size && childSteps(index).name == name then childSteps(index)
+        else
+            val existing = if index < childSteps.size then childSteps.find(_.name == name) else None
+            existing.getOrElse {
+                val step = new StepProfile(name, profiler)
+                childSteps.addOne(step)
+                step
+            }
+
+    override def toString: String =
+        s"StepProfile($name, in=$elementsIn, out=$elementsOut, self=${selfTimeNanos}ns, loaded=$nodesLoaded, allocated=$allocatedBytes)"
+end StepProfile
+
+/** The result of [[Profiler.profile]]: the steps of the query, and anything that wasn't spent in them */
+final class ProfileReport private[traversal] (query: StepProfile, val allocationTracked: Boolean):
+
+    def steps: Seq[StepProfile] = query.children
+
+    /** all steps, parents before their children */
+    def allSteps: Seq[StepProfile] =
+        def withChildren(step: StepProfile): Seq[StepProfile] = step +: step.children.flatMap(withChildren)
+        steps.flatMap(withChildren)
+
+    def totalTimeNanos: Long = query.totalTimeNanos
+
+    /** time that wasn't spent in any of the steps, e.g. in lambdas of `map` and `filter` */
+    def otherTimeNanos: Long = totalTimeNanos - allSteps.map(_.selfTimeNanos).sum
+
+    /** renders the steps as an indented tree, with one line per step */
+    def render: String =
+        val builder = new StringBuilder
+        def renderStep(step: StepProfile, depth: Int): Unit =
+            builder.append("  " * depth).append(step.name)
+            if step.description.nonEmpty then builder.append(" [").append(step.description).append("]")
+            builder.append(s": in=${step.elementsConsumed}, out=${step.elementsProduced}")
+            builder.append(f", self=${step.selfTimeNanos / 1e6}%.3fms, total=${step.totalTimeNanos / 1e6}%.3fms")
+            builder.append(s", loaded=${step.nodesLoaded}")
+            if allocationTracked then builder.append(s", allocated=${step.allocatedBytes}B")
+            builder.append('\n')
+            step.children.foreach(renderStep(_, depth + 1))
+        steps.foreach(renderStep(_, 0))
+        builder.append(f"other: ${otherTimeNanos / 1e6}%.3fms, total: ${totalTimeNanos / 1e6}%.3fms")
+        builder.result()
+
+    override def toString: String = render
+
+    private[traversal] def commitEvents(): Unit =
+        def commit(step: StepProfile, parentPath: String): Unit =
+            val path  = if parentPath.isEmpty then step.name else s"$parentPath/${step.name}"
+            val event = new TraversalStepEvent
+            if event.isEnabled then
+                event.step = step.name
+                event.path = path
+                event.description = step.description
+                event.elementsIn = step.elementsConsumed
+                event.elementsOut = step.elementsProduced
+                event.selfTime = step.selfTimeNanos
+                event.totalTime = step.totalTimeNanos
+                event.nodesLoaded = step.nodesLoaded
+                event.allocatedBytes = if allocationTracked then step.allocatedBytes else -1
+                event.commit()
+                step.children.foreach(commit(_, path))
+        steps.foreach(commit(_, ""))
+end ProfileReport
@@ -8,6 +8,7 @@ trait RepeatBehaviour[A]:
     val whileCondition: Option[A => Iterator[?]]
     val maxDepth: Option[Int]
     val dedupEnabled: Boolean
+    val parallel: Boolean
 
     def maxDepthReached(currentDepth: Int): Boolean =
         maxDepth.isDefined && maxDepth.get <= currentDepth
@@ -41,6 +42,7 @@ object RepeatBehaviour:
         private var _whileCondition: Option[Traversal[A] => Traversal[?]] = None
         private var _maxDepth: Option[Int]                                = None
         private var _dedupEnabled: Boolean                                = false
+        private var _parallel: Boolean                                    = false
         private var _searchAlgorithm: SearchAlgorithm.Value = SearchAlgorithm.DepthFirst
 
         /** configure search algorithm to go "breadth first", rather than the default "depth first"
@@ -108,6 +110,18 @@ object RepeatBehaviour:
             _dedupEnabled = true
             this
 
+        /** Expand each level of the breadth first search in parallel, on the common fork-join pool.
+          * The elements are returned level by level, but in no particular order within a level. The
+          * repeat traversal and all conditions must be safe to call concurrently. Ignored for path
+          * tracking traversals.
+          * @see
+          *   [[ParallelRepeatStep]]
+          */
+        def parallel: Builder[A] =
+            _searchAlgorithm = SearchAlgorithm.BreadthFirst
+            _parallel = true
+            this
+
         private[traversal] def build: RepeatBehaviour[A] =
             new RepeatBehaviour[A]:
                 override val searchAlgorithm: SearchAlgorithm.Value = _searchAlgorithm
@@ -117,6 +131,7 @@ object RepeatBehaviour:
                     _whileCondition.map(_.andThen(_.iterator).compose(Iterator.single))
                 final override val maxDepth: Option[Int] = _maxDepth
                 final override val dedupEnabled          = _dedupEnabled
+                final override val parallel              = _parallel
                 override def shouldEmit(element: A, currentDepth: Int): Boolean =
                     _shouldEmit(element, currentDepth)
     end Builder
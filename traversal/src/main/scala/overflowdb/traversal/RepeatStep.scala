@@ -3,6 +3,9 @@ package overflowdb.traversal
 import overflowdb.traversal.RepeatBehaviour.SearchAlgorithm
 import overflowdb.traversal.RepeatStep.{FifoWorklist, LifoWorklist, Worklist, WorklistItem}
 
+import overflowdb.{Node, QueryContext}
+import overflowdb.util.NodeBitSet
+
 import scala.collection.{mutable, Iterator}
 object RepeatStep:
 
@@ -17,12 +20,14 @@ object RepeatStep:
       repeatTraversal: Traversal[A] => Traversal[A],
       behaviour: RepeatBehaviour[A]
     ): A => Traversal[A] =
-        (element: A) =>
-            new RepeatStepIterator[A](
-              element,
-              elem => repeatTraversal(Iterator.single(elem)),
-              behaviour
-            )
+        if behaviour.parallel then ParallelRepeatStep(repeatTraversal, behaviour)
+        else
+            (element: A) =>
+                new RepeatStepIterator[A](
+                  element,
+                  elem => repeatTraversal(Iterator.single(elem)),
+                  behaviour
+                )
 
             /** stores work still to do. depending on the underlying collection type, the behaviour
               * of the repeat step changes
@@ -50,6 +55,34 @@ object RepeatStep:
         override def removeHead(): Unit     = queue.dequeue()
 
     case class WorklistItem[A](traversal: Iterator[A], depth: Int)
+
+    /** elements visited so far, for `dedup`: nodes go to a bitset (borrowed from the thread's pool until
+      * `release`, or until this is garbage collected if the iterator is abandoned early, e.g. via `take`),
+      * other elements to a hash set
+      */
+    class Visited[A]:
+        private var nodes: NodeBitSet      = null
+        private var others: mutable.Set[A] = null
+
+        def addOne(element: A): Unit =
+            element match
+                case node: Node =>
+                    if nodes == null then nodes = NodeBitSet.acquire(this)
+                    nodes.add(node)
+                case other =>
+                    if others == null then others = mutable.Set.empty
+                    others.addOne(other)
+
+        def contains(element: A): Boolean =
+            element match
+                case node: Node => nodes != null && nodes.contains(node)
+                case other      => others != null && others.contains(other)
+
+        def release(): Unit =
+            if nodes != null then
+                nodes.release()
+                nodes = null
+    end Visited
 end RepeatStep
 
 class RepeatStepIterator[A](
@@ -58,8 +91,9 @@ class RepeatStepIterator[A](
   behaviour: RepeatBehaviour[A]
 ) extends Iterator[A]:
     import RepeatStep.*
-    val visited                    = mutable.Set.empty[A] // only used if dedup enabled
+    val visited                    = new Visited[A] // only used if dedup enabled
     val emitSack: mutable.Queue[A] = mutable.Queue.empty
+    private val context            = QueryContext.current()
     val worklist: Worklist[WorklistItem[A]] = behaviour.searchAlgorithm match
         case SearchAlgorithm.DepthFirst   => new LifoWorklist()
         case SearchAlgorithm.BreadthFirst => new FifoWorklist()
@@ -69,8 +103,14 @@ class RepeatStepIterator[A](
     def hasNext: Boolean =
         if emitSack.isEmpty then
             // this may add elements to the emit sack and/or modify the worklist
-            traverseOnWorklist()
-        emitSack.nonEmpty || worklistTopHasNext
+            try traverseOnWorklist()
+            catch
+                case e: Throwable => // e.g. a QueryAbortedException: we won't be asked again
+                    visited.release()
+                    throw e
+        val hasNext = emitSack.nonEmpty || worklistTopHasNext
+        if !hasNext then visited.release()
+        hasNext
 
     private def traverseOnWorklist(): Unit =
         var stop = false
@@ -80,6 +120,7 @@ class RepeatStepIterator[A](
             else if behaviour.maxDepthReached(depth) then stop = true
             else
                 val element = trav.next()
+                if context != null then context.visit()
                 if behaviour.dedupEnabled then visited.addOne(element)
                 if // `while/repeat` behaviour, i.e. check every time
                     behaviour.whileConditionIsDefinedAndEmpty(element) ||
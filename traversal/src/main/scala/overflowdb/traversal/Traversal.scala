@@ -131,40 +131,21 @@ class TraversalSugarExt[A](val iter: Iterator[A]) extends AnyVal:
           verbose = true
         )
 
-    /** Monitor the rate and time taken for elements to flow through this traversal step */
+    /** Execute the following steps in parallel, see [[ParallelTraversal]]. Unless this is the start of the
+      * traversal, the elements so far are buffered first, so they can be split up between the workers.
+      */
+    @Doc(info = "execute the following steps in parallel")
+    def par: ParallelTraversal[A] =
+        ParallelTraversal.from(iter)
+
+    /** Record the number of elements that flow through this point of the traversal, and the time it
+      * took to produce them, as a step of the current [[Profiler.profile]]. Does nothing otherwise.
+      */
     @Doc(info = "monitor the rate and time taken for elements to flow through this traversal step")
     def profile(name: String): Traversal[A] =
-        new ProfileIterator[A](iter, name)
+        Profiler.mark(name, iter)
 end TraversalSugarExt
 
-class ProfileIterator[A](val underlying: Iterator[A], name: String) extends Iterator[A]:
-    private var count     = 0
-    private var totalNs   = 0L
-    private var isDone    = false
-    private var startTime = 0L
-
-    override def hasNext: Boolean =
-        if isDone then return false
-        if startTime == 0L then
-            startTime = System.nanoTime()
-        val start = System.nanoTime()
-        val hn    = underlying.hasNext
-        totalNs += (System.nanoTime() - start)
-        if !hn then
-            val totalMs = totalNs / 1000000.0
-            println(s"[Profile: $name] Completed in $totalMs ms, processed $count elements.")
-            isDone = true
-        hn
-
-    override def next(): A =
-        if startTime == 0L then
-            startTime = System.nanoTime()
-        val start = System.nanoTime()
-        val res   = underlying.next()
-        totalNs += (System.nanoTime() - start)
-        count += 1
-        res
-end ProfileIterator
 class TraversalFilterExt[A](val iterator: Iterator[A]) extends AnyVal:
     type Traversal[A] = Iterator[A]
 
@@ -350,13 +331,13 @@ class TraversalTrackingExt[A](val iterator: Iterator[A]) extends AnyVal:
         iterator match
             case pathAwareTraversal: PathAwareTraversal[?] =>
                 throw new RuntimeException("path tracking is already enabled")
-            case _ => new PathAwareTraversal[A](iterator.map { a => (a, Vector.empty) })
+            case _ => new PathAwareTraversal[A](iterator.map(TrackedPath.start))
 
     @Doc(info = "enable path tracking - prerequisite for path/simplePath steps")
     def discardPathTracking: Traversal[A] =
         iterator match
             case pathAwareTraversal: PathAwareTraversal[?] =>
-                pathAwareTraversal.asInstanceOf[PathAwareTraversal[A]].wrapped.map { _._1 }
+                pathAwareTraversal.asInstanceOf[PathAwareTraversal[A]].wrapped.map(_.element)
             case _ => iterator
 
     def isPathTracking: Boolean = iterator.isInstanceOf[PathAwareTraversal[?]]
@@ -374,9 +355,7 @@ class TraversalTrackingExt[A](val iterator: Iterator[A]) extends AnyVal:
     @Doc(info = "retrieve entire path that has been traversed thus far")
     def path: Traversal[Vector[Any]] = iterator match
         case tracked: PathAwareTraversal[?] =>
-            tracked.asInstanceOf[PathAwareTraversal[A]].wrapped.map { case (a, p) =>
-                p.appended(a)
-            }
+            tracked.asInstanceOf[PathAwareTraversal[A]].wrapped.map(_.toVector)
         case _ =>
             throw new AssertionError(
               "path tracking not enabled, please make sure you have a `PathAwareTraversal`, e.g. via `Traversal.enablePathTracking`"
@@ -385,10 +364,7 @@ class TraversalTrackingExt[A](val iterator: Iterator[A]) extends AnyVal:
 
     def simplePath: Traversal[A] = iterator match
         case tracked: PathAwareTraversal[?] =>
-            new PathAwareTraversal(tracked.asInstanceOf[PathAwareTraversal[A]].wrapped.filter {
-                case (a, p) =>
-                    mutable.Set.from(p).addOne(a).size == 1 + p.size
-            })
+            new PathAwareTraversal(tracked.asInstanceOf[PathAwareTraversal[A]].wrapped.filter(_.isSimple))
         case _ =>
             throw new AssertionError(
               "path tracking not enabled, please make sure you have a `PathAwareTraversal`, e.g. via `Traversal.enablePathTracking`"
@@ -442,13 +418,12 @@ class TraversalRepeatExt[A](val trav: Iterator[A]) extends AnyVal:
                 .asInstanceOf[Traversal[B] => Traversal[
                   B
                 ]] // this cast usually :tm: safe, because `B` is a supertype of `A`
-        trav match
-            case tracked: PathAwareTraversal[?] =>
-                val step = PathAwareRepeatStep(_repeatTraversal, behaviour)
-                new PathAwareTraversal(tracked.asInstanceOf[PathAwareTraversal[A]].wrapped.flatMap {
-                    case (a, p) =>
-                        step.apply(a).wrapped.map { case (aa, pp) => (aa, p ++ pp) }
-                })
-            case _ => trav.flatMap(RepeatStep(_repeatTraversal, behaviour))
+        Profiler.nestedStep("repeat", trav) { (trav, nested) =>
+            trav match
+                case tracked: PathAwareTraversal[?] =>
+                    val step = PathAwareRepeatStep(nested(_repeatTraversal), behaviour)
+                    new PathAwareTraversal(tracked.asInstanceOf[PathAwareTraversal[A]].wrapped.flatMap(step.apply(_).wrapped))
+                case _ => trav.flatMap(RepeatStep(nested(_repeatTraversal), behaviour))
+        }
     end repeat
 end TraversalRepeatExt
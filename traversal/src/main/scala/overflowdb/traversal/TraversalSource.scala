@@ -1,14 +1,15 @@
 package overflowdb.traversal
 
-import overflowdb.{Graph, Node, Property}
+import overflowdb.{Graph, GraphStatistics, IndexManager, Node, Property, UnindexedScanStats}
 
 import scala.jdk.CollectionConverters.*
+import scala.jdk.OptionConverters.*
 
 class TraversalSource(graph: Graph):
     type Traversal[+A] = Iterator[A]
     import ImplicitsTmp.*
     def all: Traversal[Node] =
-        graph.nodes().asScala
+        PlannedTraversal.all(graph)
 
     def id[NodeType: DefaultsToNode](id: Long): Traversal[NodeType] =
         Option(graph.node(id)).iterator.asInstanceOf[Traversal[NodeType]]
@@ -31,31 +32,118 @@ class TraversalSource(graph: Graph):
 
     /** Start traversal with all nodes that have given property value */
     def has(key: String, value: Any): Traversal[Node] =
-        if graph.indexManager.isIndexed(key) then
-            val nodes = graph.indexManager.lookup(key, value)
-            nodes.asScala.iterator
+        val indexManager = graph.indexManager
+        unindexedScanStats(key, isRangeScan = false, indexManager.isIndexed(key)) match
+            case None =>
+                indexManager.lookup(key, value).asScala.iterator
+            case Some(stats) =>
+                new UnindexedScan[Node](graph.nodes().asScala, _.property(key) == value, stats)
+
+    /** Records an unindexed scan for the given key (which may create an index), unless it's indexed.
+      * @return the stats the scan should report to, or None if the key is indexed (now)
+      */
+    private def unindexedScanStats(
+      key: String,
+      isRangeScan: Boolean,
+      isIndexed: => Boolean
+    ): Option[UnindexedScanStats] =
+        if isIndexed then None
         else
-            // maybe print a warning: may make sense to create an index
-            new ElementTraversal(graph.nodes().asScala.iterator).has(key, value)
+            val stats = graph.indexManager.recordUnindexedScan(key, isRangeScan)
+            Option.unless(isIndexed)(stats)
 
-    /** Start traversal with all nodes with given label that have given property value Inspects the
-      * cardinality of the indices of the properties and labels, and takes the smaller one
+    /** Start traversal with all nodes that have a value for given property between `from` and `to`
+      * (both inclusive). Served from the range index if the property has one, see
+      * [[overflowdb.IndexManager.createNodePropertyRangeIndex]]. Values are compared as defined by
+      * [[overflowdb.IndexManager.RANGE_ORDER]].
+      */
+    def hasRange(key: String, from: Any, to: Any): Traversal[Node] =
+        hasRange(key, from, true, to, true)
+
+    /** Start traversal with all nodes that have a value for given property greater than `value` */
+    def hasGreaterThan(key: String, value: Any): Traversal[Node] =
+        hasRange(key, value, false, null, false)
+
+    /** Start traversal with all nodes that have a value for given property less than `value` */
+    def hasLessThan(key: String, value: Any): Traversal[Node] =
+        hasRange(key, null, false, value, false)
+
+    private def hasRange(
+      key: String,
+      from: Any,
+      fromInclusive: Boolean,
+      to: Any,
+      toInclusive: Boolean
+    ): Traversal[Node] =
+        val indexManager = graph.indexManager
+        unindexedScanStats(key, isRangeScan = true, indexManager.isRangeIndexed(key)) match
+            case None =>
+                val nodes = indexManager.lookupRange(
+                  key,
+                  from.asInstanceOf[AnyRef],
+                  fromInclusive,
+                  to.asInstanceOf[AnyRef],
+                  toInclusive
+                )
+                nodes.asScala.iterator
+            case Some(stats) =>
+                def inRange(value: Any): Boolean =
+                    def cmp(bound: Any) = IndexManager.compareToRangeBound(value, bound)
+                    value != null &&
+                    (from == null || (if fromInclusive then cmp(from) >= 0 else cmp(from) > 0)) &&
+                    (to == null || (if toInclusive then cmp(to) <= 0 else cmp(to) < 0))
+                new UnindexedScan[Node](graph.nodes().asScala, node => inRange(node.property(key)), stats)
+
+    /** Start traversal with all nodes with given label that have given property value. Uses the
+      * composite (label, property) index if there is one. Otherwise inspects the cardinality of the
+      * property index entry and the label, and takes the smaller one
       */
     def labelAndProperty(label: String, property: Property[?]): Traversal[Node] =
         this.labelAndProperty(label, property.key.name, property.value)
 
-    /** Start traversal with all nodes with given label that have given property value Inspects the
-      * cardinality of the indices of the properties and labels, and takes the smaller one
+    /** Start traversal with all nodes with given label that have given property value. Uses the
+      * composite (label, property) index if there is one. Otherwise inspects the cardinality of the
+      * property index entry and the label, and takes the smaller one
       */
     def labelAndProperty(label: String, propertyKey: String, propertyValue: Any): Traversal[Node] =
-        lazy val propertyIsIndexed    = graph.indexManager.isIndexed(propertyKey)
-        lazy val nodesByPropertyIndex = graph.indexManager.lookup(propertyKey, propertyValue)
-        lazy val cardinalityByLabel   = graph.nodeCount(label)
+        val indexManager = graph.indexManager
+        unindexedScanStats(propertyKey, isRangeScan = false, indexManager.hasIndexFor(label, propertyKey)) match
+            case Some(stats) =>
+                new UnindexedScan[Node](this.label(label), _.property(propertyKey) == propertyValue, stats)
+            case None
+                if indexManager.isIndexed(label, propertyKey) ||
+                    indexManager.lookupCount(propertyKey, propertyValue) <= graph.nodeCount(label) =>
+                indexManager.lookup(label, propertyKey, propertyValue).asScala.iterator
+            case None =>
+                new ElementTraversal(this.label(label)).has(propertyKey, propertyValue)
 
-        if propertyIsIndexed && nodesByPropertyIndex.size <= cardinalityByLabel then
-            new ElementTraversal(nodesByPropertyIndex.asScala.iterator).label(label)
+    /** Statistics about the graph's contents as of the last [[overflowdb.Graph.updateStatistics]], if any */
+    def statistics: Option[GraphStatistics] =
+        graph.statistics().toScala
+
+    /** Start traversal with all nodes with given label that have all given property values. If any
+      * of the properties are indexed, the index entries are intersected (smallest first), and only
+      * the remaining properties are checked on the result. Otherwise the properties are checked one
+      * after another - the most selective first, if there are [[statistics]]
+      */
+    def labelAndProperties(label: String, properties: Property[?]*): Traversal[Node] =
+        val indexManager = graph.indexManager
+        if properties.exists(property => indexManager.hasIndexFor(label, property.key.name)) then
+            val propertyValues = properties.map(property => property.key.name -> property.value).toMap
+            indexManager.lookup(label, propertyValues.asJava).asScala.iterator
         else
-            new ElementTraversal(this.label(label)).has(propertyKey, propertyValue)
+            val bySelectivity = statistics match
+                case Some(statistics) =>
+                    properties.sortBy(property => statistics.estimatedNodesPerValue(label, property.key.name))
+                case None => properties
+            bySelectivity.foldLeft(this.label(label)) { (traversal, property) =>
+                val key = property.key.name
+                new UnindexedScan[Node](
+                  traversal,
+                  _.property(key) == property.value,
+                  indexManager.recordUnindexedScan(key, false)
+                )
+            }
 end TraversalSource
 
 object TraversalSource:
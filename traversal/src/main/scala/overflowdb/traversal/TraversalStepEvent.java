@@ -0,0 +1,49 @@
+package overflowdb.traversal;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** The profile of one traversal step, committed to JFR by {@link Profiler} once the query is done. */
+@Name("overflowdb.TraversalStep")
+@Label("Traversal Step")
+@Category("OverflowDB")
+@Description("Profile of a traversal step, as recorded by overflowdb.traversal.Profiler")
+@StackTrace(false)
+public class TraversalStepEvent extends jdk.jfr.Event {
+    @Label("Step")
+    public String step;
+
+    @Label("Path")
+    @Description("Names of the steps from the query to this step, separated by '/'")
+    public String path;
+
+    @Label("Description")
+    public String description;
+
+    @Label("Elements In")
+    public long elementsIn;
+
+    @Label("Elements Out")
+    public long elementsOut;
+
+    @Label("Self Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long selfTime;
+
+    @Label("Total Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long totalTime;
+
+    @Label("Nodes Loaded")
+    public long nodesLoaded;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the step, or -1 if the JVM doesn't measure allocations")
+    @DataAmount
+    public long allocatedBytes;
+}
@@ -0,0 +1,31 @@
+package overflowdb.traversal
+
+import overflowdb.UnindexedScanStats
+
+/** Filters the underlying nodes by given predicate, and reports the nodes scanned, hits and time spent
+  * to the given stats as it goes - i.e. partially consumed scans (e.g. `.head`) are accounted for, too.
+  * Time spent downstream of the scan is not included.
+  */
+class UnindexedScan[A](underlying: Iterator[A], predicate: A => Boolean, stats: UnindexedScanStats)
+    extends Iterator[A]:
+    private var nextElement: A = scala.compiletime.uninitialized
+    private var ready          = false
+
+    override def hasNext: Boolean =
+        if !ready then
+            val start   = System.nanoTime()
+            var scanned = 0L
+            while !ready && underlying.hasNext do
+                val element = underlying.next()
+                scanned += 1
+                if predicate(element) then
+                    nextElement = element
+                    ready = true
+            stats.record(scanned, if ready then 1 else 0, System.nanoTime() - start)
+        ready
+
+    override def next(): A =
+        if !hasNext then throw new NoSuchElementException()
+        ready = false
+        nextElement
+end UnindexedScan
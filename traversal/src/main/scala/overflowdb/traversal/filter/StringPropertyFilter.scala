@@ -13,6 +13,23 @@ object StringPropertyFilter:
         val valueRegex = regexpCompile(regexp)
         trav.filter(node => valueRegex.matches(accessor(node)))
 
+    /** like `regexp`, but served from the text index with given name if `traversal` is an unconsumed
+      * initial traversal and the property is text indexed, see
+      * [[overflowdb.IndexManager.createNodePropertyTextIndex]]
+      */
+    def regexp[NodeType](
+      traversal: Traversal[NodeType],
+      accessor: NodeType => String,
+      regexp: String,
+      indexName: String
+    ): Traversal[NodeType] =
+        traversal match
+            case init: overflowdb.traversal.InitialTraversal[NodeType]
+                if init.canUseTextIndex(indexName) =>
+                init.getByRegex(indexName, regexpCompile(regexp)).get
+            case _ =>
+                this.regexp(traversal)(accessor, regexp)
+
     def regexpNot[NodeType](
       trav: Traversal[NodeType]
     )(accessor: NodeType => String, regexp: String): Traversal[NodeType] =
@@ -56,6 +73,20 @@ object StringPropertyFilter:
     ): Traversal[NodeType] =
         trav.filter(accessor(_).contains(value))
 
+    /** like `contains`, but served from the text index with given name if possible, see `regexp` */
+    def contains[NodeType](
+      traversal: Traversal[NodeType],
+      accessor: NodeType => String,
+      value: String,
+      indexName: String
+    ): Traversal[NodeType] =
+        traversal match
+            case init: overflowdb.traversal.InitialTraversal[NodeType]
+                if init.canUseTextIndex(indexName) =>
+                init.getByContains(indexName, value).get
+            case _ =>
+                contains(traversal)(accessor, value)
+
     def containsNot[NodeType](
       trav: Traversal[NodeType]
     )(accessor: NodeType => String, value: String): Traversal[NodeType] =
@@ -66,6 +97,20 @@ object StringPropertyFilter:
     )(accessor: NodeType => String, value: String): Traversal[NodeType] =
         trav.filter(accessor(_).startsWith(value))
 
+    /** like `startsWith`, but served from the text index with given name if possible, see `regexp` */
+    def startsWith[NodeType](
+      traversal: Traversal[NodeType],
+      accessor: NodeType => String,
+      value: String,
+      indexName: String
+    ): Traversal[NodeType] =
+        traversal match
+            case init: overflowdb.traversal.InitialTraversal[NodeType]
+                if init.canUseTextIndex(indexName) =>
+                init.getByPrefix(indexName, value).get
+            case _ =>
+                startsWith(traversal)(accessor, value)
+
     def endsWith[NodeType](trav: Traversal[NodeType])(
       accessor: NodeType => String,
       value: String
@@ -86,6 +131,11 @@ object StringPropertyFilter:
                 if init.canUseIndex(indexName) =>
                 needles.iterator
                     .flatMap(needle => init.getByIndex(indexName, needle).get)
+            case plan: overflowdb.traversal.PlannedTraversal[?] if !plan.isStarted =>
+                val filter = overflowdb.traversal.PlanFilter.PropertyIn(indexName, needles) { node =>
+                    accessor(node.asInstanceOf[NodeType]).exists(needles.contains)
+                }
+                plan.withFilter(filter).asInstanceOf[Traversal[NodeType]]
             case _ =>
                 var iteration                             = 0
                 var needleSet: mutable.HashSet[ValueType] = null